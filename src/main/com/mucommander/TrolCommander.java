@@ -40,6 +40,7 @@ import com.mucommander.bookmark.file.BookmarkProtocolProvider;
 import com.mucommander.command.Command;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
+import com.mucommander.commons.file.ArchiveEntryCache;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.impl.ftp.FTPProtocolProvider;
@@ -498,6 +499,9 @@ public class TrolCommander {
     }
 
     private static class ConfigureFsTask extends LauncherTask {
+        /** Name of the folder of the preferences folder that the entries of archives are cached in */
+        private static final String ARCHIVE_CACHE_FOLDER = "archive_cache";
+
         ConfigureFsTask(LauncherCmdHelper helper, LauncherTask... depends) {
             super("configure_fs", helper, depends);
         }
@@ -519,6 +523,9 @@ public class TrolCommander {
             // Use CredentialsManager for file URL authentication
             FileFactory.setDefaultAuthenticator(CredentialsManager.getAuthenticator());
 
+            // Persist the entries of the archives that have been listed
+            ArchiveEntryCache.setCacheFolder(PlatformManager.getPreferencesFolder().getChild(ARCHIVE_CACHE_FOLDER));
+
             // Register the application-specific 'bookmark' protocol.
             FileFactory.registerProtocol(BookmarkProtocolProvider.BOOKMARK, new com.mucommander.bookmark.file.BookmarkProtocolProvider());
         }
@@ -253,14 +253,14 @@ public abstract class AbstractArchiveEntryFile extends AbstractFile {
 
     /**
      * Delegates to the archive file's {@link AbstractArchiveFile#getEntryInputStream(ArchiveEntry,ArchiveEntryIterator)}}
-     * method.
+     * method, with the entry read from the archive if this entry was loaded from {@link ArchiveEntryCache}.
      *
      * @throws UnsupportedFileOperationException if the underlying archive file does not support
      * {@link FileOperation#READ_FILE} operations.
      */
     @Override
     public InputStream getInputStream() throws IOException {
-        return archiveFile.getEntryInputStream(entry, null);
+        return archiveFile.getEntryInputStream(archiveFile.getReadableEntry(entry), null);
     }
 
     /**
@@ -25,7 +25,6 @@ import com.mucommander.commons.file.impl.ProxyFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -58,6 +57,11 @@ import java.util.WeakHashMap;
  * This tree is recreated (<code>getEntryIterator()</code> is called again) only if the archive file has changed, i.e.
  * if its date has changed since the tree was created.
  *
+ * <p>The trees of read-only archives are persisted by {@link ArchiveEntryCache}, so that an archive that has already
+ * been listed is listed again without being read, as long as it hasn't changed. The entries loaded from the cache
+ * are not associated with the objects of the archive implementation, the archive is thus read again when the contents
+ * of one of these entries is first read.
+ *
  * <p>Files returned by the <code>ls()</code> are {@link AbstractArchiveEntryFile} instances which use an {@link ArchiveEntry}
  * object to retrieve the entry's attributes. In turn, these <code>AbstractArchiveEntryFile</code> instances query the
  * associated <code>AbstractArchiveFile</code> to list their content.
@@ -83,14 +87,24 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     /** Archive entries tree */
     private ArchiveEntryTree entryTreeRoot;
 
+    /** Guards the entries tree, so that it is created only once when several threads list this archive at the same
+     * time, and that it is not modified while it is being read */
+    private final Object entriesTreeLock = new Object();
+
     /** Date this file had when the entries tree was created. Used to detect if the archive file has changed and entries
      * need to be reloaded */
     private long entryTreeDate;
 
+    /** <code>true</code> if the entries tree has been loaded from {@link ArchiveEntryCache} rather than read from
+     * the archive */
+    private boolean entryTreeFromCache;
+
     /** Caches {@link AbstractArchiveEntryFile} instances so that there is only one AbstractArchiveEntryFile
      * corresponding to the same entry at any given time, to avoid attribute inconsistencies. The key is the
-     * corresponding ArchiveEntry. */
-    private WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
+     * corresponding ArchiveEntry. Entries that are archives themselves are cached as the {@link AbstractArchiveFile}
+     * wrapping the entry file, so that the entries tree of nested archives is not recreated, i.e. the nested archive
+     * not extracted and read again, every time a path inside it is resolved. */
+    private WeakHashMap<ArchiveEntry, AbstractFile> archiveEntryFiles;
 
     /**
      * Creates an AbstractArchiveFile on top of the given file.
@@ -110,9 +124,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     private void createEntriesTree() throws IOException {
-        // TODO: this method is not thread-safe and needs to be synchronized
         ArchiveEntryTree treeRoot = new ArchiveEntryTree();
         archiveEntryFiles = new WeakHashMap<>();
+        // The tree doesn't need to be cached again if it is read to replace the tree loaded from the cache
+        boolean cached = entryTreeFromCache && getLastModifiedDate() == entryTreeDate;
 
         long start = System.currentTimeMillis();
         ArchiveEntryIterator entries = getEntryIterator();
@@ -125,7 +140,12 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             getLogger().info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
 
             this.entryTreeRoot = treeRoot;
+            this.entryTreeFromCache = false;
             declareEntriesTreeUpToDate();
+
+            if (this instanceof AbstractROArchiveFile && !cached) {
+                ArchiveEntryCache.save(this, treeRoot);
+            }
         }
         finally {
             try {
@@ -138,15 +158,69 @@ public abstract class AbstractArchiveFile extends ProxyFile {
 
     /**
      * Checks if the entries tree exists and if this file hasn't been modified since the tree was last created.
-     * If any of those 2 conditions isn't met, the entries tree is (re)created.
+     * If any of those 2 conditions isn't met, the entries tree is (re)created. Threads that call this method while
+     * the tree is being created wait for it to be created rather than creating it again.
      *
      * @throws IOException if an error occurred while creating the tree
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
     private void checkEntriesTree() throws IOException {
-        if (this.entryTreeRoot == null || getLastModifiedDate() != this.entryTreeDate) {
-            createEntriesTree();
+        synchronized (entriesTreeLock) {
+            if (this.entryTreeRoot == null || getLastModifiedDate() != this.entryTreeDate) {
+                if (!loadEntriesTreeFromCache()) {
+                    createEntriesTree();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the entries tree of this read-only archive from {@link ArchiveEntryCache}, if it has been cached since
+     * the archive was last modified.
+     *
+     * @return <code>true</code> if the tree has been loaded from the cache
+     */
+    private boolean loadEntriesTreeFromCache() {
+        if (!(this instanceof AbstractROArchiveFile)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        ArchiveEntryTree treeRoot = ArchiveEntryCache.load(this);
+        if (treeRoot == null) {
+            return false;
+        }
+        getLogger().info("entries tree loaded from cache in "+(System.currentTimeMillis()-start)+" ms");
+
+        archiveEntryFiles = new WeakHashMap<>();
+        this.entryTreeRoot = treeRoot;
+        this.entryTreeFromCache = true;
+        declareEntriesTreeUpToDate();
+        return true;
+    }
+
+    /**
+     * Returns the entry read from the archive that corresponds to the given entry. Entries loaded from
+     * {@link ArchiveEntryCache} are not associated with the objects of the archive implementation: the entries tree is
+     * read from the archive the first time such an entry is looked up, so that its contents can be read.
+     *
+     * @param entry an entry of this archive
+     * @return the given entry, or the entry read from the archive if it was loaded from the cache
+     * @throws IOException if an error occurred while reading the archive, or if the entry is no longer in the archive
+     */
+    ArchiveEntry getReadableEntry(ArchiveEntry entry) throws IOException {
+        if (!ArchiveEntryCache.isCachedEntry(entry)) {
+            return entry;
+        }
+        synchronized (entriesTreeLock) {
+            if (entryTreeFromCache || entryTreeRoot == null || getLastModifiedDate() != entryTreeDate) {
+                createEntriesTree();
+            }
+            int entryNode = entryTreeRoot.findEntryNode(entry.getPath());
+            if (entryNode == ArchiveEntryTree.NOT_FOUND) {
+                throw new IOException("Entry not found in archive: " + entry.getPath());
+            }
+            return entryTreeRoot.getEntry(entryNode);
         }
     }
 
@@ -157,7 +231,9 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * {@link #checkEntriesTree()} is called.
      */
     protected void declareEntriesTreeUpToDate() {
-        this.entryTreeDate = getLastModifiedDate();
+        synchronized (entriesTreeLock) {
+            this.entryTreeDate = getLastModifiedDate();
+        }
     }
 
     /**
@@ -170,8 +246,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected void addToEntriesTree(ArchiveEntry entry) throws IOException {
-        checkEntriesTree();
-        entryTreeRoot.addArchiveEntry(entry);
+        synchronized (entriesTreeLock) {
+            checkEntriesTree();
+            entryTreeRoot.addArchiveEntry(entry);
+        }
     }
 
     /**
@@ -184,12 +262,13 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException {
-        checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
+        synchronized (entriesTreeLock) {
+            checkEntriesTree();
+            int entryNode = entryTreeRoot.findEntryNode(entry.getPath());
 
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
+            if(entryNode!=ArchiveEntryTree.NOT_FOUND) {
+                entryTreeRoot.removeEntryNode(entryNode);
+            }
         }
     }
 
@@ -210,44 +289,50 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected AbstractFile[] ls(AbstractArchiveEntryFile entryFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();        
+        AbstractFile files[];
+        synchronized (entriesTreeLock) {
+            // Make sure the entries tree is created and up-to-date
+            checkEntriesTree();
 
-        if (!entryFile.isBrowsable()) {
-            throw new IOException();
-        }
+            if (!entryFile.isBrowsable()) {
+                throw new IOException();
+            }
+
+            int matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+            if (matchNode == ArchiveEntryTree.NOT_FOUND) {
+                throw new IOException();
+            }
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
-        if (matchNode == null) {
-            throw new IOException();
+            files = ls(matchNode, entryFile, filenameFilter);
         }
 
-        return ls(matchNode, entryFile, filenameFilter, fileFilter);
+        return fileFilter==null?files:fileFilter.filter(files);
     }
 
     /**
-     * Returns the contents (direct children) of the specified tree node.
+     * Returns the contents (direct children) of the specified tree node. This method must be called while holding
+     * {@link #entriesTreeLock}.
      *
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
+    private AbstractFile[] ls(int treeNode, AbstractFile parentFile, FilenameFilter filenameFilter) throws IOException {
         AbstractFile files[];
-        int nbChildren = treeNode.getChildCount();
+        int nbChildren = entryTreeRoot.getChildCount(treeNode);
 
         // No FilenameFilter, create entry files and store them directly into an array
         if(filenameFilter==null) {
             files = new AbstractFile[nbChildren];
 
             for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+                files[c] = getArchiveEntryFile(entryTreeRoot.getEntry(entryTreeRoot.getChild(treeNode, c)), parentFile);
             }
         }
         // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
         else {
             List<AbstractFile> filesV = new Vector<>();
             for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+                ArchiveEntry entry = entryTreeRoot.getEntry(entryTreeRoot.getChild(treeNode, c));
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
@@ -258,7 +343,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             filesV.toArray(files);
         }
 
-        return fileFilter==null?files:fileFilter.filter(files);
+        return files;
     }
 
     /**
@@ -281,14 +366,14 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Cache AbstractArchiveEntryFile instances so that there is only one AbstractArchiveEntryFile corresponding to 
         // the same entry at any given time, to avoid attribute inconsistencies.
 
-        AbstractArchiveEntryFile entryFile = archiveEntryFiles.get(entry);
-        if (entryFile == null) {
+        AbstractFile file = archiveEntryFiles.get(entry);
+        if (file == null) {
             FileURL archiveURL = getURL();
             FileURL entryURL = (FileURL)archiveURL.clone();
             entryURL.setPath(addTrailingSeparator(archiveURL.getPath()) + entryPath);
 
             // create an RO and RW entry file, depending on whether this archive file is RO or RW
-            entryFile = this instanceof AbstractRWArchiveFile
+            AbstractArchiveEntryFile entryFile = this instanceof AbstractRWArchiveFile
                 ?new RWArchiveEntryFile(
                   entryURL,
                   this,
@@ -302,9 +387,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
 
             entryFile.setParent(parentFile);
 
-            archiveEntryFiles.put(entry, entryFile);
+            file = FileFactory.wrapArchive(entryFile);
+            archiveEntryFiles.put(entry, file);
         }
-        return FileFactory.wrapArchive(entryFile);
+        return file;
     }
 
 
@@ -338,37 +424,39 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     public AbstractFile getArchiveEntryFile(String entryPath) throws IOException {
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
-
         // Todo: check if that's really necessary / if there is a way to remove this
         entryPath = entryPath.replace(File.separatorChar, ArchiveEntry.SEPARATOR_CHAR);
 
-        // Find the entry node corresponding to the given path
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entryPath);
+        synchronized (entriesTreeLock) {
+            // Make sure the entries tree is created and up-to-date
+            checkEntriesTree();
 
-        if(entryNode==null) {
-            int depth = ArchiveEntry.getDepth(entryPath);
+            // Find the entry node corresponding to the given path
+            int entryNode = entryTreeRoot.findEntryNode(entryPath);
 
-            AbstractFile parentFile;
-            if(depth==1)
-                parentFile = this;
-            else {
-                String parentPath = entryPath;
-                if(parentPath.endsWith("/"))
-                    parentPath = parentPath.substring(0, parentPath.length()-1);
+            if(entryNode==ArchiveEntryTree.NOT_FOUND) {
+                int depth = ArchiveEntry.getDepth(entryPath);
 
-                parentPath = parentPath.substring(0, parentPath.lastIndexOf('/'));
+                AbstractFile parentFile;
+                if(depth==1)
+                    parentFile = this;
+                else {
+                    String parentPath = entryPath;
+                    if(parentPath.endsWith("/"))
+                        parentPath = parentPath.substring(0, parentPath.length()-1);
 
-                parentFile = getArchiveEntryFile(parentPath);
-                if(parentFile==null)    // neither the entry nor the parent exist
-                    throw new IOException();
+                    parentPath = parentPath.substring(0, parentPath.lastIndexOf('/'));
+
+                    parentFile = getArchiveEntryFile(parentPath);
+                    if(parentFile==null)    // neither the entry nor the parent exist
+                        throw new IOException();
+                }
+
+                return getArchiveEntryFile(new ArchiveEntry(entryPath, false, 0, 0, false), parentFile);
             }
 
-            return getArchiveEntryFile(new ArchiveEntry(entryPath, false, 0, 0, false), parentFile);
+            return getArchiveEntryFile(entryNode);
         }
-
-        return getArchiveEntryFile(entryNode);
     }
 
     /**
@@ -378,11 +466,11 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @param entryNode tree node corresponding to the entry for which to return a file
      * @return an {@link AbstractFile} instance corresponding to the given entry node
      */
-    private AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+    private AbstractFile getArchiveEntryFile(int entryNode) throws IOException {
+        int parentNode = entryTreeRoot.getParent(entryNode);
         return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
-                parentNode==entryTreeRoot
+                entryTreeRoot.getEntry(entryNode),
+                parentNode==ArchiveEntryTree.ROOT
                     ?this
                     :getArchiveEntryFile(parentNode)
         );
@@ -474,10 +562,15 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if(!isArchive())
             return super.ls();
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        AbstractFile files[];
+        synchronized (entriesTreeLock) {
+            // Make sure the entries tree is created and up-to-date
+            checkEntriesTree();
+
+            files = ls(ArchiveEntryTree.ROOT, this, null);
+        }
 
-        return ls(entryTreeRoot, this, null, null);
+        return files;
     }
 
     /**
@@ -497,10 +590,15 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if (!isArchive())
             return super.ls(filter);
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        AbstractFile files[];
+        synchronized (entriesTreeLock) {
+            // Make sure the entries tree is created and up-to-date
+            checkEntriesTree();
+
+            files = ls(ArchiveEntryTree.ROOT, this, filter);
+        }
 
-        return ls(entryTreeRoot, this, filter, null);
+        return files;
     }
 
     /**
@@ -520,10 +618,15 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             return super.ls(filter);
         }
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        AbstractFile files[];
+        synchronized (entriesTreeLock) {
+            // Make sure the entries tree is created and up-to-date
+            checkEntriesTree();
+
+            files = ls(ArchiveEntryTree.ROOT, this, null);
+        }
 
-        return ls(entryTreeRoot, this, null, filter);
+        return filter==null?files:filter.filter(files);
     }
 
     // Note: do not override #isDirectory() to always return true, as AbstractArchiveFile instances may be created when
@@ -65,6 +65,17 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
     // 65536, no more gain (not sure why).
     protected final static int IO_BUFFER_SIZE = 65536;
 
+    /** Number of read/write buffers used by {@link #copyStream(InputStream, boolean, long)} to read and write concurrently */
+    protected final static int IO_PIPELINE_DEPTH = 4;
+
+    /** Minimum length of the streams that {@link #copyStream(InputStream, boolean, long)} reads and writes concurrently,
+     * shorter streams are not worth the thread hand-off */
+    protected final static long IO_PIPELINE_MIN_LENGTH = 4 * IO_BUFFER_SIZE;
+
+    /** Number of children handed over at once by {@link #ls(FileFilter, ChildrenListener)}, for filesystems that
+     * do not list children by chunks of their own */
+    protected final static int LS_BATCH_SIZE = 1000;
+
 
     /**
      * Used for method <code>getPushBackInputStream()</code>
@@ -377,7 +388,9 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
      *
      * <p>Read and write operations are buffered, with a buffer of {@link #IO_BUFFER_SIZE} bytes. For performance
      * reasons, this buffer is provided by {@link BufferPool}. Thus, there is no need to surround the InputStream
-     * with a {@link java.io.BufferedInputStream}.
+     * with a {@link java.io.BufferedInputStream}. Unless the stream is known to be short, it is read by a separate thread
+     * into {@link #IO_PIPELINE_DEPTH} buffers while this file is being written, so that a network transfer does not
+     * wait for the local disk and vice versa.
      *
      * <p>Copy progress can optionally be monitored by supplying a {@link com.mucommander.commons.io.CounterInputStream}.
      *
@@ -399,7 +412,11 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
         }
 
         try {
-            StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
+            if (length < 0 || length >= IO_PIPELINE_MIN_LENGTH) {
+                StreamUtils.copyStreamPipelined(in, out, IO_BUFFER_SIZE, IO_PIPELINE_DEPTH, Long.MAX_VALUE);
+            } else {
+                StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
+            }
         } finally {
             // Close stream even if copyStream() threw an IOException
             try {
@@ -568,6 +585,45 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
     }
 
 
+    /**
+     * Lists the children files that this file contains, filtering out files that do not match the specified
+     * FileFilter, and hands them over to the given listener by batches as they are listed, instead of returning them
+     * all at once. This allows large folders, or folders on slow filesystems, to be displayed before they have been
+     * completely listed. Listing stops as soon as the listener returns <code>false</code>.
+     * For this operation to be successful, this file must be 'browsable', i.e. {@link #isBrowsable()} must return
+     * <code>true</code>.
+     *
+     * <p>This default implementation calls {@link #ls()} and hands over all the children in a single batch. This
+     * method should be overridden by filesystems that can list children progressively.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener to hand the children over to
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        listener.childrenListed(ls(filter));
+    }
+
+
+    /**
+     * Returns a listener that filters out the children that do not match the specified FileFilter before handing
+     * them over to the given listener. This method is meant to be used by implementations of
+     * {@link #ls(FileFilter, ChildrenListener)}.
+     *
+     * @param filter the FileFilter to be used to filter files out, may be <code>null</code>
+     * @param listener the listener to hand the filtered children over to
+     * @return a listener that filters children, the given listener if <code>filter</code> is <code>null</code>
+     */
+    protected static ChildrenListener getFilteringListener(FileFilter filter, ChildrenListener listener) {
+        if (filter == null) {
+            return listener;
+        }
+        return children -> listener.childrenListed(filter.filter(children));
+    }
+
+
     /**
      * Changes this file's permissions to the specified permissions int.
      * The permissions int should be constructed using the permission types and accesses defined in
@@ -0,0 +1,367 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persists the entries trees of read-only archives to a cache folder, so that an archive that has already been listed
+ * is browsed without reading it again.
+ * <p>
+ * A tree is stored in a compact binary file, keyed by the URL, size and date of the archive: the cached tree is ignored
+ * as soon as the archive is modified. Only the attributes of the entries are cached, not the objects the archive
+ * implementations associate with their entries: entries loaded from the cache can be listed, but the archive has to
+ * be read again for their contents to be read, see {@link AbstractArchiveFile}.
+ * </p>
+ * <p>
+ * The total size of the cache folder is bounded, the least recently used trees being deleted first. The cache is
+ * disabled until a folder is set with {@link #setCacheFolder(AbstractFile)}.
+ * </p>
+ */
+public class ArchiveEntryCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryCache.class);
+
+    /** Default maximum total size of the cache files, in bytes */
+    public final static long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    /** Identifies the cache files and the version of their format */
+    private final static int MAGIC = 0x54524541;    // 'TREA'
+    private final static int VERSION = 1;
+
+    private final static String EXTENSION = ".entries";
+
+    /** Extension of the files the trees are written to before being renamed */
+    private final static String TEMP_EXTENSION = ".tmp";
+
+    private final static int FLAG_DIRECTORY = 1;
+    private final static int FLAG_EXISTS = 2;
+    private final static int FLAG_OWNER = 4;
+    private final static int FLAG_GROUP = 8;
+
+    /** Folder the trees are stored in, <code>null</code> if the cache is disabled */
+    private static AbstractFile cacheFolder;
+
+    private static long maxSize = DEFAULT_MAX_SIZE;
+
+
+    /**
+     * Sets the folder the trees are stored in. The folder is created when a tree is first stored.
+     *
+     * @param folder the cache folder, <code>null</code> to disable the cache
+     */
+    public static synchronized void setCacheFolder(AbstractFile folder) {
+        cacheFolder = folder;
+    }
+
+    /**
+     * Returns the folder the trees are stored in.
+     *
+     * @return the cache folder, <code>null</code> if the cache is disabled
+     */
+    public static synchronized AbstractFile getCacheFolder() {
+        return cacheFolder;
+    }
+
+    /**
+     * Sets the maximum total size of the cache files, {@link #DEFAULT_MAX_SIZE} by default.
+     *
+     * @param size the maximum total size of the cache files, in bytes
+     */
+    public static synchronized void setMaxSize(long size) {
+        maxSize = size;
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry has been loaded from the cache, rather than read from its archive.
+     *
+     * @param entry an archive entry
+     * @return <code>true</code> if the entry has been loaded from the cache
+     */
+    static boolean isCachedEntry(ArchiveEntry entry) {
+        return entry instanceof CachedEntry;
+    }
+
+    /**
+     * Returns the tree of the given archive stored in the cache, if the archive hasn't changed since.
+     *
+     * @param archive an archive
+     * @return the cached tree, <code>null</code> if there is none
+     */
+    static ArchiveEntryTree load(AbstractArchiveFile archive) {
+        AbstractFile file = getCacheFile(archive);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try {
+            ArchiveEntryTree tree = null;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(file.getInputStream())))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readUTF().equals(getKey(archive))
+                        && in.readLong() == archive.getSize() && in.readLong() == archive.getLastModifiedDate()) {
+                    tree = readTree(in);
+                }
+            }
+            if (tree != null) {
+                // The date of the file tells the least recently used trees
+                file.setLastModifiedDate(System.currentTimeMillis());
+            }
+            return tree;
+        } catch (IOException e) {
+            LOGGER.debug("Could not load the cached entries of " + archive, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tree of the given archive in the cache, and deletes the least recently used trees if the cache
+     * has grown too big.
+     *
+     * @param archive an archive
+     * @param tree the entries tree of the archive
+     */
+    static void save(AbstractArchiveFile archive, ArchiveEntryTree tree) {
+        AbstractFile file = getCacheFile(archive);
+        if (file == null) {
+            return;
+        }
+        AbstractFile tempFile = null;
+        try {
+            AbstractFile folder = file.getParent();
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+            // The tree is written to a temporary file first, so that concurrent loads never read a partial tree
+            tempFile = folder.getChild(file.getName() + TEMP_EXTENSION);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(tempFile.getOutputStream())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(getKey(archive));
+                out.writeLong(archive.getSize());
+                out.writeLong(archive.getLastModifiedDate());
+                writeTree(out, tree);
+            }
+            if (file.exists()) {
+                file.delete();
+            }
+            tempFile.renameTo(file);
+            evict(folder);
+        } catch (IOException e) {
+            LOGGER.debug("Could not cache the entries of " + archive, e);
+            // Don't leave a partial tree behind, it would never be used nor evicted
+            try {
+                if (tempFile != null && tempFile.exists()) {
+                    tempFile.delete();
+                }
+            } catch (IOException e2) {
+                LOGGER.debug("Could not delete " + tempFile, e2);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the given archive in the cache.
+     */
+    private static String getKey(AbstractArchiveFile archive) {
+        return archive.getURL().toString(false);
+    }
+
+    /**
+     * Returns the file the tree of the given archive is stored in, named after a digest of its key.
+     */
+    private static AbstractFile getCacheFile(AbstractArchiveFile archive) {
+        AbstractFile folder = getCacheFolder();
+        if (folder == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(getKey(archive).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return folder.getChild(name + EXTENSION);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            LOGGER.debug("Could not get the cache file of " + archive, e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the least recently used trees of the given cache folder until their total size is below the maximum.
+     * Temporary files of trees being saved are neither counted nor deleted.
+     */
+    private static void evict(AbstractFile folder) throws IOException {
+        List<AbstractFile> files = new ArrayList<>(Arrays.asList(folder.ls(new ExtensionFilenameFilter(EXTENSION))));
+        long totalSize = 0;
+        for (AbstractFile file : files) {
+            totalSize += file.getSize();
+        }
+        long maxSize;
+        synchronized (ArchiveEntryCache.class) {
+            maxSize = ArchiveEntryCache.maxSize;
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        files.sort(Comparator.comparingLong(AbstractFile::getLastModifiedDate));
+        for (AbstractFile file : files) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            long size = file.getSize();
+            try {
+                file.delete();
+                totalSize -= size;
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of the tree, parents first. As paths are sorted this way, each path is written as the length
+     * of the prefix it shares with the previous path followed by the rest of the path.
+     */
+    private static void writeTree(DataOutputStream out, ArchiveEntryTree tree) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        addEntries(tree, ArchiveEntryTree.ROOT, entries);
+        out.writeInt(entries.size());
+        String previousPath = "";
+        for (ArchiveEntry entry : entries) {
+            String path = entry.getPath();
+            int prefix = 0;
+            int maxPrefix = Math.min(path.length(), previousPath.length());
+            while (prefix < maxPrefix && path.charAt(prefix) == previousPath.charAt(prefix)) {
+                prefix++;
+            }
+            writeVarInt(out, prefix);
+            out.writeUTF(path.substring(prefix));
+            previousPath = path;
+
+            String owner = entry.getOwner();
+            String group = entry.getGroup();
+            int flags = (entry.isDirectory() ? FLAG_DIRECTORY : 0) | (entry.exists() ? FLAG_EXISTS : 0)
+                    | (owner != null ? FLAG_OWNER : 0) | (group != null ? FLAG_GROUP : 0);
+            out.writeByte(flags);
+            out.writeLong(entry.getLastModifiedDate());
+            // Unknown sizes are -1
+            writeVarInt(out, Math.max(-1, entry.getSize()) + 1);
+            FilePermissions permissions = entry.getPermissions();
+            writeVarInt(out, permissions.getIntValue());
+            writeVarInt(out, permissions.getMask().getIntValue());
+            if (owner != null) {
+                out.writeUTF(owner);
+            }
+            if (group != null) {
+                out.writeUTF(group);
+            }
+        }
+    }
+
+    private static void addEntries(ArchiveEntryTree tree, int node, List<ArchiveEntry> entries) {
+        for (int i = 0; i < tree.getChildCount(node); i++) {
+            int child = tree.getChild(node, i);
+            entries.add(tree.getEntry(child));
+            addEntries(tree, child, entries);
+        }
+    }
+
+    private static ArchiveEntryTree readTree(DataInputStream in) throws IOException {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = in.readInt();
+        String previousPath = "";
+        for (int i = 0; i < nbEntries; i++) {
+            int prefix = readVarInt(in);
+            if (prefix > previousPath.length()) {
+                throw new IOException("Corrupt cache file");
+            }
+            String path = previousPath.substring(0, prefix) + in.readUTF();
+            previousPath = path;
+
+            int flags = in.readByte();
+            CachedEntry entry = new CachedEntry(path, (flags & FLAG_DIRECTORY) != 0, in.readLong(), readVarLong(in) - 1,
+                    (flags & FLAG_EXISTS) != 0);
+            int permissions = readVarInt(in);
+            entry.setPermissions(new SimpleFilePermissions(permissions, readVarInt(in)));
+            if ((flags & FLAG_OWNER) != 0) {
+                entry.setOwner(in.readUTF());
+            }
+            if ((flags & FLAG_GROUP) != 0) {
+                entry.setGroup(in.readUTF());
+            }
+            tree.addArchiveEntry(entry);
+        }
+        return tree;
+    }
+
+    private static void writeVarInt(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Corrupt cache file");
+            }
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt cache file");
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        return (int)readVarLong(in);
+    }
+
+
+    /**
+     * An entry loaded from the cache, that is not associated with the object of the archive implementation.
+     */
+    private static class CachedEntry extends ArchiveEntry {
+        private CachedEntry(String path, boolean directory, long date, long size, boolean exists) {
+            super(path, directory, date, size, exists);
+        }
+    }
+}
@@ -19,90 +19,106 @@
 
 package com.mucommander.commons.file;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.Arrays;
 
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
- * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
- * are children of it (direct or indirect).
+ * inside the archive.
+ * <p>
+ * The tree is a trie of path components: nodes are identified by an <code>int</code>, the root being {@link #ROOT},
+ * and their entries and parents are stored in arrays indexed by node. The children of a folder are kept in the order
+ * they were added, and indexed by a hash table of their names once there are more than a few of them, so that
+ * adding or looking up an entry takes a time proportional to the depth of its path rather than to the number of
+ * entries in its folders.
+ * </p>
  *
  * @author Maxence Bernard
  */
-class ArchiveEntryTree extends DefaultMutableTreeNode {
+class ArchiveEntryTree {
     private static Logger logger = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
+    /** The root node, which has no entry */
+    static final int ROOT = 0;
+
+    /** Returned by the lookup methods when there is no such node */
+    static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Entries of the nodes, <code>null</code> for the root and removed nodes */
+    private ArchiveEntry[] entries;
+
+    /** Parents of the nodes */
+    private int[] parents;
+
+    /** Offsets in the entries' paths at which the names of the entries start */
+    private int[] nameStarts;
+
+    /** Children of the nodes, <code>null</code> for nodes that have none */
+    private Children[] children;
+
+    /** Number of nodes, the root included */
+    private int nbNodes;
+
     /**
      * Creates a new empty tree.
      */
     ArchiveEntryTree() {
+        entries = new ArchiveEntry[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        nameStarts = new int[INITIAL_CAPACITY];
+        children = new Children[INITIAL_CAPACITY];
+        parents[ROOT] = NOT_FOUND;
+        nbNodes = 1;
     }
 
     /**
-     * Adds the given entry to the archive tree, creating parent nodes as necessary.
+     * Adds the given entry to the archive tree, creating parent nodes as necessary. If the tree already contains an
+     * entry with the same path, the given entry replaces it.
      *
      * @param entry the entry to add to the tree
      */
     void addArchiveEntry(ArchiveEntry entry) {
         String entryPath = entry.getPath();
         int entryDepth = entry.getDepth();
-        int slashPos = 0;
-        DefaultMutableTreeNode node = this;
-        for(int d=1; d<=entryDepth; d++) {
-            if(d==entryDepth && !entry.isDirectory()) {
-                // create a leaf node for the entry
-                entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
-                break;
-            }
-
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
-
-            if (matchFound) {
-                if (d == entryDepth) {
-                    getLogger().trace("Replacing entry for node "+childNode);
-                    // Replace existing entry
-                    childNode.setUserObject(entry);
-                }
-                else {
-                    node = childNode;
-                }
-            }
-            else {
-                if (d == entryDepth) {
+        int node = ROOT;
+        int nameStart = 0;
+        for (int d = 1; d <= entryDepth; d++) {
+            if (d == entryDepth) {
+                int nameEnd = getNameEnd(entryPath);
+                int childNode = findChild(node, entryPath, nameStart, nameEnd);
+                if (childNode == NOT_FOUND) {
                     // create a leaf node for the entry
                     entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
+                    addNode(node, entry, nameStart, nameEnd);
                 } else {
-                    getLogger().trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true), true);
-                    node.add(childNode);
-                    node = childNode;
+                    getLogger().trace("Replacing entry for node " + entries[childNode]);
+                    if (!entry.isDirectory()) {
+                        entry.setExists(true);
+                    }
+                    entries[childNode] = entry;
                 }
+                break;
             }
+
+            int slashPos = entryPath.indexOf('/', nameStart);
+            int childNode = findChild(node, entryPath, nameStart, slashPos);
+            if (childNode == NOT_FOUND) {
+                String subPath = entryPath.substring(0, slashPos + 1);
+                getLogger().trace("Creating node for " + subPath);
+                childNode = addNode(node, new ArchiveEntry(subPath, true, entry.getLastModifiedDate(), 0, true), nameStart, slashPos);
+            }
+            node = childNode;
+            nameStart = slashPos + 1;
         }
     }
 
-
     /**
-     * Finds and returns the node that corresponds to the specified entry path, <code>null</code> if no entry matching
-     * the path could be found.
+     * Finds and returns the node that corresponds to the specified entry path, {@link #NOT_FOUND} if no entry matching
+     * the path could be found. The lookup takes a time proportional to the depth of the path.
      *
      * <p>Important note: the given path's separator character must be '/' and the path must be relative to the
      * archive's root, i.e. not start with a leading '/', otherwise the entry will not be found. Trailing separators
@@ -111,34 +127,204 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @param entryPath the path to the entry to look up in this tree
      * @return the node that corresponds to the specified entry path
      */
-    DefaultMutableTreeNode findEntryNode(String entryPath) {
+    int findEntryNode(String entryPath) {
         int entryDepth = ArchiveEntry.getDepth(entryPath);
-        int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
-        for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for (int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
-
-                // Path comparison is 'trailing slash insensitive'
-                if (PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
+        int node = ROOT;
+        int nameStart = 0;
+        for (int d = 1; d <= entryDepth && node != NOT_FOUND; d++) {
+            int nameEnd = d == entryDepth ? getNameEnd(entryPath) : entryPath.indexOf('/', nameStart);
+            node = findChild(node, entryPath, nameStart, nameEnd);
+            nameStart = nameEnd + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the entry of the given node, <code>null</code> for the root.
+     *
+     * @param node a node of this tree
+     * @return the entry of the given node
+     */
+    ArchiveEntry getEntry(int node) {
+        return entries[node];
+    }
+
+    /**
+     * Returns the parent of the given node, {@link #NOT_FOUND} for the root.
+     *
+     * @param node a node of this tree
+     * @return the parent of the given node
+     */
+    int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * Returns the number of children of the given node.
+     *
+     * @param node a node of this tree
+     * @return the number of children of the given node
+     */
+    int getChildCount(int node) {
+        Children nodeChildren = children[node];
+        return nodeChildren == null ? 0 : nodeChildren.count;
+    }
+
+    /**
+     * Returns the child of the given node at the given index, children being in the order they were added.
+     *
+     * @param node a node of this tree
+     * @param index index of the child, between <code>0</code> and {@link #getChildCount(int)} excluded
+     * @return the child of the given node at the given index
+     */
+    int getChild(int node, int index) {
+        return children[node].nodes[index];
+    }
+
+    /**
+     * Removes the given node and its children from this tree.
+     *
+     * @param node a node of this tree, other than the root
+     */
+    void removeEntryNode(int node) {
+        Children parentChildren = children[parents[node]];
+        int index = 0;
+        while (parentChildren.nodes[index] != node) {
+            index++;
+        }
+        parentChildren.count--;
+        System.arraycopy(parentChildren.nodes, index + 1, parentChildren.nodes, index, parentChildren.count - index);
+        if (parentChildren.table != null) {
+            rehash(parentChildren, parentChildren.table.length);
+        }
+        clearNode(node);
+    }
+
+    private void clearNode(int node) {
+        Children nodeChildren = children[node];
+        if (nodeChildren != null) {
+            for (int i = 0; i < nodeChildren.count; i++) {
+                clearNode(nodeChildren.nodes[i]);
+            }
+        }
+        entries[node] = null;
+        children[node] = null;
+    }
+
+    /**
+     * Adds a node for the given entry to the children of the given node, and returns it.
+     */
+    private int addNode(int parent, ArchiveEntry entry, int nameStart, int nameEnd) {
+        if (nbNodes == entries.length) {
+            int capacity = entries.length * 2;
+            entries = Arrays.copyOf(entries, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+        int node = nbNodes++;
+        entries[node] = entry;
+        parents[node] = parent;
+        nameStarts[node] = nameStart;
+
+        Children parentChildren = children[parent];
+        if (parentChildren == null) {
+            parentChildren = children[parent] = new Children();
+        } else if (parentChildren.count == parentChildren.nodes.length) {
+            parentChildren.nodes = Arrays.copyOf(parentChildren.nodes, parentChildren.count * 2);
+        }
+        parentChildren.nodes[parentChildren.count++] = node;
+
+        if (parentChildren.table != null) {
+            if (parentChildren.count * 2 > parentChildren.table.length) {
+                rehash(parentChildren, parentChildren.table.length * 2);
+            } else {
+                putInTable(parentChildren, node, hash(entry.getPath(), nameStart, nameEnd));
+            }
+        } else if (parentChildren.count > Children.MAX_UNINDEXED) {
+            rehash(parentChildren, Integer.highestOneBit(parentChildren.count) * 4);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the child of the given node whose name is the given region of the given path, {@link #NOT_FOUND} if
+     * there is none.
+     */
+    private int findChild(int node, String path, int nameStart, int nameEnd) {
+        Children nodeChildren = children[node];
+        if (nodeChildren == null) {
+            return NOT_FOUND;
+        }
+        if (nodeChildren.table == null) {
+            for (int i = 0; i < nodeChildren.count; i++) {
+                int child = nodeChildren.nodes[i];
+                if (nameEquals(child, path, nameStart, nameEnd)) {
+                    return child;
                 }
             }
+            return NOT_FOUND;
+        }
 
-            if (matchNode == null) {
-                return null;    // No node maching the provided path, return null
+        int hash = hash(path, nameStart, nameEnd);
+        int mask = nodeChildren.table.length - 1;
+        for (int i = hash & mask; nodeChildren.table[i] != 0; i = (i + 1) & mask) {
+            int child = nodeChildren.table[i] - 1;
+            if (nodeChildren.hashes[i] == hash && nameEquals(child, path, nameStart, nameEnd)) {
+                return child;
             }
+        }
+        return NOT_FOUND;
+    }
 
-            currentNode = matchNode;
+    private boolean nameEquals(int node, String path, int nameStart, int nameEnd) {
+        String nodePath = entries[node].getPath();
+        int nodeNameStart = nameStarts[node];
+        int length = nameEnd - nameStart;
+        return getNameEnd(nodePath) - nodeNameStart == length
+                && nodePath.regionMatches(nodeNameStart, path, nameStart, length);
+    }
+
+    /**
+     * Re-creates the hash table of the given children, with the given size.
+     */
+    private void rehash(Children nodeChildren, int size) {
+        nodeChildren.table = new int[size];
+        nodeChildren.hashes = new int[size];
+        for (int i = 0; i < nodeChildren.count; i++) {
+            int child = nodeChildren.nodes[i];
+            String path = entries[child].getPath();
+            putInTable(nodeChildren, child, hash(path, nameStarts[child], getNameEnd(path)));
+        }
+    }
+
+    private static void putInTable(Children nodeChildren, int node, int hash) {
+        int mask = nodeChildren.table.length - 1;
+        int i = hash & mask;
+        while (nodeChildren.table[i] != 0) {
+            i = (i + 1) & mask;
         }
+        nodeChildren.table[i] = node + 1;
+        nodeChildren.hashes[i] = hash;
+    }
 
-        return currentNode;
+    /**
+     * Returns the hash code of the given region of the given path, spread so that its low bits can be used as an index.
+     */
+    private static int hash(String path, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the length of the given path without its trailing separator, if any.
+     */
+    private static int getNameEnd(String path) {
+        int length = path.length();
+        return length > 0 && path.charAt(length - 1) == '/' ? length - 1 : length;
     }
 
     private static Logger getLogger() {
@@ -147,4 +333,25 @@ class ArchiveEntryTree extends DefaultMutableTreeNode {
         }
         return logger;
     }
+
+
+    /**
+     * The children of a node, in the order they were added. The children of folders that have more than
+     * {@link #MAX_UNINDEXED} of them are indexed by an open-addressing hash table of their names, that is kept at most
+     * half full.
+     */
+    private static class Children {
+        /** Maximum number of children that are looked up by comparing their names one by one */
+        private final static int MAX_UNINDEXED = 8;
+
+        private int[] nodes = new int[2];
+
+        private int count;
+
+        /** Children nodes plus one, <code>0</code> for empty slots, <code>null</code> while not indexed */
+        private int[] table;
+
+        /** Hash codes of the names of the children in {@link #table} */
+        private int[] hashes;
+    }
 }
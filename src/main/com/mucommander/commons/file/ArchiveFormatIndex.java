@@ -0,0 +1,143 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mucommander.commons.file.filter.AbstractExtensionFilter;
+import com.mucommander.commons.file.filter.FilenameFilter;
+
+/**
+ * An immutable index of {@link ArchiveFormatProvider} instances, which finds the provider matching a filename with
+ * a lookup of each of the filename's extensions, instead of trying the filter of every provider.
+ *
+ * <p>Providers whose filter is a case-insensitive {@link AbstractExtensionFilter} are indexed by extension.
+ * The filters of other providers are tried one after the other, as before. Either way, the provider returned for
+ * a filename is the first registered provider whose filter accepts the filename.
+ */
+class ArchiveFormatIndex {
+
+    /** Registered providers, in registration order */
+    private final ArchiveFormatProvider providers[];
+
+    /** Maps lower-cased extensions onto the index of the first provider that matches them */
+    private final Map<String, Integer> extensionIndices = new HashMap<>();
+
+    /** Indices of the providers that are not indexed by extension, in ascending order */
+    private final int unindexedProviders[];
+
+    /**
+     * Creates a new index of the given providers.
+     *
+     * @param providers registered providers, in registration order
+     */
+    ArchiveFormatIndex(ArchiveFormatProvider providers[]) {
+        this.providers = providers;
+
+        List<Integer> unindexed = new ArrayList<>();
+        for (int i = 0; i < providers.length; i++) {
+            String extensions[] = getIndexableExtensions(providers[i]);
+            if (extensions == null) {
+                if (providers[i] != null && providers[i].getFilenameFilter() != null) {
+                    unindexed.add(i);
+                }
+                continue;
+            }
+            for (String extension : extensions) {
+                extensionIndices.putIfAbsent(toLowerCase(extension, 0), i);
+            }
+        }
+
+        unindexedProviders = new int[unindexed.size()];
+        for (int i = 0; i < unindexedProviders.length; i++) {
+            unindexedProviders[i] = unindexed.get(i);
+        }
+    }
+
+    /**
+     * Returns the extensions matched by the given provider's filter, <code>null</code> if the filter does not match
+     * filenames by extension only, in a case-insensitive way.
+     */
+    private static String[] getIndexableExtensions(ArchiveFormatProvider provider) {
+        if (provider == null) {
+            return null;
+        }
+        FilenameFilter filter = provider.getFilenameFilter();
+        if (!(filter instanceof AbstractExtensionFilter) || ((AbstractExtensionFilter)filter).isCaseSensitive()) {
+            return null;
+        }
+
+        String extensions[] = ((AbstractExtensionFilter)filter).getExtensions();
+        for (String extension : extensions) {
+            // Filenames are looked up by their suffixes starting with a '.'
+            if (!extension.startsWith(".")) {
+                return null;
+            }
+        }
+        return extensions;
+    }
+
+    /**
+     * Lower-cases the given string from the given position, the same way {@link AbstractExtensionFilter} does when
+     * comparing a filename with an extension, i.e. character by character.
+     */
+    private static String toLowerCase(String s, int beginIndex) {
+        char chars[] = new char[s.length() - beginIndex];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(s.charAt(beginIndex + i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the first provider whose filter accepts the given filename, <code>null</code> if there is none.
+     *
+     * @param filename the filename to match
+     * @return the first provider whose filter accepts the given filename, <code>null</code> if there is none
+     */
+    ArchiveFormatProvider getProvider(String filename) {
+        int firstIndex = Integer.MAX_VALUE;
+
+        // Most filenames have no archive extension and at most one dot: look up each suffix starting with a dot
+        int firstDotPos = filename.indexOf('.');
+        if (firstDotPos >= 0 && !extensionIndices.isEmpty()) {
+            String suffix = toLowerCase(filename, firstDotPos);
+            for (int dotPos = 0; dotPos >= 0; dotPos = suffix.indexOf('.', dotPos + 1)) {
+                Integer index = extensionIndices.get(dotPos == 0 ? suffix : suffix.substring(dotPos));
+                if (index != null && index < firstIndex) {
+                    firstIndex = index;
+                }
+            }
+        }
+
+        for (int index : unindexedProviders) {
+            if (index >= firstIndex) {
+                break;
+            }
+            if (providers[index].getFilenameFilter().accept(filename)) {
+                firstIndex = index;
+                break;
+            }
+        }
+
+        return firstIndex == Integer.MAX_VALUE ? null : providers[firstIndex];
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Interface to be implemented by classes that wish to receive the children of a folder as they are listed by
+ * {@link AbstractFile#ls(FileFilter, ChildrenListener)}, rather than waiting for the whole folder to be listed.
+ *
+ * @see AbstractFile#ls(FileFilter, ChildrenListener)
+ */
+public interface ChildrenListener {
+
+    /**
+     * This method is called, in the thread that lists the folder, with each batch of children as soon as it has been
+     * listed. Batches do not overlap, and may be empty.
+     *
+     * @param children the children that have just been listed
+     * @return <code>true</code> to continue listing the folder, <code>false</code> to stop listing it
+     */
+    boolean childrenListed(AbstractFile children[]);
+}
@@ -21,6 +21,7 @@ package com.mucommander.commons.file;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.mucommander.commons.file.impl.avrdude.AvrdudeProtocolProvider;
 import org.slf4j.Logger;
@@ -93,11 +94,11 @@ public class FileFactory {
     /** Vector of registered ArchiveFormatMapping instances */
     private static List<ArchiveFormatProvider> archiveFormatProvidersV = new Vector<>();
 
-    /** Array of registered FileProtocolMapping instances, for quicker access */
-    private static ArchiveFormatProvider[] archiveFormatProviders;
+    /** Registered ArchiveFormatProvider instances indexed by extension, for quicker access */
+    private static volatile ArchiveFormatIndex archiveFormatIndex;
 
     /** Contains a FilePool instance for each registered scheme */
-    private static final Map<String, FilePool> FILE_POOL_MAP = new HashMap<>();
+    private static final Map<String, FilePool> FILE_POOL_MAP = new ConcurrentHashMap<>();
 
     /** System temp directory */
     private static final AbstractFile TEMP_DIRECTORY;
@@ -213,9 +214,7 @@ public class FileFactory {
         protocol = protocol.toLowerCase();
 
         // create raw and archive file pools
-        synchronized (FILE_POOL_MAP) {
-            FILE_POOL_MAP.put(protocol, new FilePool());
-        }
+        FILE_POOL_MAP.put(protocol, new FilePool());
 
         // Special case for local file provider.
         // Note that the local file provider is also added to the provider hashtable.
@@ -236,9 +235,7 @@ public class FileFactory {
         protocol = protocol.toLowerCase();
 
         // Remove raw and archive file pools
-        synchronized (FILE_POOL_MAP) {
-            FILE_POOL_MAP.remove(protocol);
-        }
+        FILE_POOL_MAP.remove(protocol);
 
         // Special case for local file provider
         if (protocol.equals(FileProtocols.FILE)) {
@@ -269,6 +266,17 @@ public class FileFactory {
         return getProtocolProvider(protocol)!=null;
     }
 
+    /**
+     * Returns the pool of file instances of the given protocol, <code>null</code> if the protocol is not registered.
+     * This method is provided for monitoring purposes, to get the pool's hit rate and eviction count.
+     *
+     * @param protocol identifier of the protocol
+     * @return the pool of file instances of the given protocol, <code>null</code> if the protocol is not registered
+     */
+    public static FilePool getFilePool(String protocol) {
+        return FILE_POOL_MAP.get(protocol.toLowerCase());
+    }
+
     /**
      * Returns an iterator on all known protocol names.
      *
@@ -313,11 +321,12 @@ public class FileFactory {
     }
 
     /**
-     * Updates the <code>ArchiveFormatProvider</code> array to reflect the contents of the Vector.
+     * Updates the <code>ArchiveFormatProvider</code> index to reflect the contents of the Vector.
      */
     private static void updateArchiveFormatProviderArray() {
-        archiveFormatProviders = new ArchiveFormatProvider[archiveFormatProvidersV.size()];
-        archiveFormatProvidersV.toArray(archiveFormatProviders);
+        ArchiveFormatProvider providers[] = new ArchiveFormatProvider[archiveFormatProvidersV.size()];
+        archiveFormatProvidersV.toArray(providers);
+        archiveFormatIndex = new ArchiveFormatIndex(providers);
     }
 
     /**
@@ -329,16 +338,12 @@ public class FileFactory {
      * @return the first <code>ArchiveFormatProvider</code> that matches the specified filename, <code>null</code> if there is none
      */
     private static ArchiveFormatProvider getArchiveFormatProvider(String filename) {
-        if (filename == null || archiveFormatProviders == null) {
+        ArchiveFormatIndex index = archiveFormatIndex;
+        if (filename == null || index == null) {
             return null;
         }
 
-        for (ArchiveFormatProvider provider : archiveFormatProviders) {
-            if (provider != null && provider.getFilenameFilter() != null && provider.getFilenameFilter().accept(filename)) {
-                return provider;
-            }
-        }
-        return null;
+        return index.getProvider(filename);
     }
 
     /**
@@ -531,7 +536,8 @@ public class FileFactory {
 
                     lastFileResolved = true;
                 } else {          // currentFile is an AbstractArchiveFile
-                    // Note: wrapArchive() is already called by AbstractArchiveFile#createArchiveEntryFile()
+                    // Note: wrapArchive() is already called by AbstractArchiveFile#createArchiveEntryFile(), and the
+                    // resulting archive file is cached by the parent archive: nested archives are not opened again
                     AbstractFile tempEntryFile = ((AbstractArchiveFile)currentFile).getArchiveEntryFile(PathUtils.removeLeadingSeparator(currentPath.substring(currentFile.getURL().getPath().length(), currentPath.length()), pathSeparator));
                     if (tempEntryFile.isArchive()) {
                         currentFile = tempEntryFile;
@@ -539,7 +545,7 @@ public class FileFactory {
                     } else {
                         lastFileResolved = false;
                     }
-                    // Note: don't cache the entry file
+                    // Note: don't cache the entry file, the parent archive does as long as it has not been modified
                 }
             } else {
                 lastFileResolved = false;
@@ -11,6 +11,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class represents a Uniform Resource Locator (URL). The general format of a URL is as follows:
@@ -104,6 +105,9 @@ public class FileURL implements Cloneable {
 
     /** Caches the value returned by #hashCode() for as long as this instance is not modified */
     private int hashCode;
+    /** Hash code of all parts but the path, null if not computed yet. Shared by clones and children for as long as
+     * they are not modified */
+    private ComponentsHash componentsHash;
 
     /** Default handler for schemes that do not have a specific handler */
     private static final SchemeHandler DEFAULT_HANDLER = new DefaultSchemeHandler();
@@ -114,6 +118,18 @@ public class FileURL implements Cloneable {
     /** String designating the localhost */
     public final static String LOCALHOST = "localhost";
 
+    /** Maximum number of locations whose parsed FileURL is cached by #getFileURL(String) */
+    private final static int PARSE_CACHE_CAPACITY = 4096;
+
+    /** Parsed FileURL of recently parsed locations. The cached instances are never modified nor handed out: clones are */
+    private static final Map<String, FileURL> parseCache = new ConcurrentHashMap<>();
+
+    /** Maximum number of distinct scheme and host strings held by #internComponent(String) */
+    private final static int INTERNED_COMPONENTS_CAPACITY = 1024;
+
+    /** Canonical instances of scheme and host strings */
+    private static final Map<String, String> internedComponents = new ConcurrentHashMap<>();
+
 
     static {
         // Register custom handlers for known schemes
@@ -170,6 +186,39 @@ public class FileURL implements Cloneable {
         hashCode = 0;
     }
 
+    /**
+     * This method is called whenever a part of this instance other than the path is modified to invalidate caches.
+     */
+    private void componentsModified() {
+        componentsHash = null;
+        urlModified();
+    }
+
+    /**
+     * Returns the canonical instance of the given scheme or host string, so that the many URLs of the same server
+     * share the same strings instead of each holding a copy.
+     *
+     * @param component the scheme or host to intern, may be <code>null</code>
+     * @return the canonical instance of the given string
+     */
+    private static String internComponent(String component) {
+        if (component == null) {
+            return null;
+        }
+
+        String interned = internedComponents.get(component);
+        if (interned != null) {
+            return interned;
+        }
+
+        // Hosts typed by the user are unbounded: start over rather than grow forever
+        if (internedComponents.size() >= INTERNED_COMPONENTS_CAPACITY) {
+            internedComponents.clear();
+        }
+        interned = internedComponents.putIfAbsent(component, component);
+        return interned == null ? component : interned;
+    }
+
     /**
      * Creates and returns a new FileURL instance from the given location, throws a <code>MalformedURLException</code>
      * if the specified location is not a valid URL or path and cannot be resolved. The {@link SchemeParser parser}
@@ -177,11 +226,46 @@ public class FileURL implements Cloneable {
      * If the scheme specified in the location does not have a specific handler, or if the location does not contain a
      * scheme (i.e. is local or UNC path, not a URL) then the default handler's parser is used.
      *
+     * <p>The FileURL of recently parsed locations are cached, so that parsing the same location again only costs
+     * a {@link #clone()}, unless they contain credentials. The returned instance is always a new one which can be
+     * freely modified.
+     *
      * @param location the URL or path for which to get a <code>FileURL</code> instance
      * @throws MalformedURLException if the specified string isn't a valid URL, according to the scheme's parser used
      * @return a FileURL corresponding to the given location
      */
     public static FileURL getFileURL(String location) throws MalformedURLException {
+        FileURL cachedURL = parseCache.get(location);
+        if (cachedURL != null) {
+            return (FileURL)cachedURL.clone();
+        }
+
+        FileURL fileURL = parse(location);
+
+        // Locations holding credentials are not cached, so that passwords are not kept around for the application's
+        // lifetime
+        if (fileURL.containsCredentials()) {
+            return fileURL;
+        }
+
+        // The cache is bounded by starting over once it is full, which is cheaper than maintaining an LRU order
+        // on every lookup
+        if (parseCache.size() >= PARSE_CACHE_CAPACITY) {
+            parseCache.clear();
+        }
+        parseCache.put(location, (FileURL)fileURL.clone());
+
+        return fileURL;
+    }
+
+    /**
+     * Parses the given location with the parser of the handler registered for its scheme.
+     *
+     * @param location the URL or path to parse
+     * @throws MalformedURLException if the specified string isn't a valid URL, according to the scheme's parser used
+     * @return a new FileURL corresponding to the given location
+     */
+    private static FileURL parse(String location) throws MalformedURLException {
         int schemeDelimPos = location.indexOf("://");
         SchemeHandler handler;
 
@@ -243,6 +327,9 @@ public class FileURL implements Cloneable {
      */
     public void setHandler(SchemeHandler handler) {
         this.handler = handler;
+
+        // The standard port is part of the hash code
+        componentsModified();
     }
 
     /**
@@ -254,6 +341,7 @@ public class FileURL implements Cloneable {
      */
     static void registerHandler(String scheme, SchemeHandler handler) {
         handlers.put(scheme.toLowerCase(), handler);
+        parseCache.clear();
     }
 
     /**
@@ -264,6 +352,7 @@ public class FileURL implements Cloneable {
      */
     static void unregisterHandler(String scheme) {
         handlers.remove(scheme.toLowerCase());
+        parseCache.clear();
     }
 
     /**
@@ -343,9 +432,9 @@ public class FileURL implements Cloneable {
             throw new IllegalArgumentException();
         }
 
-        this.scheme = scheme;
+        this.scheme = internComponent(scheme);
 
-        urlModified();
+        componentsModified();
     }
 
     /**
@@ -365,9 +454,9 @@ public class FileURL implements Cloneable {
      * @see #getHost()
      */
     public void setHost(String host) {
-        this.host = host;
+        this.host = internComponent(host);
 
-        urlModified();
+        componentsModified();
     }
 
     /**
@@ -391,7 +480,7 @@ public class FileURL implements Cloneable {
     public void setPort(int port) {
         this.port = port;
 
-        urlModified();
+        componentsModified();
     }
 
     /**
@@ -482,7 +571,7 @@ public class FileURL implements Cloneable {
     public void setCredentials(Credentials credentials) {
         // Empty credentials are equivalent to null credentials
         this.credentials = credentials == null || credentials.isEmpty() ? null : credentials;
-        urlModified();
+        componentsModified();
     }
 
     /**
@@ -588,6 +677,10 @@ public class FileURL implements Cloneable {
                 if (properties != null)
                     parentURL.properties = new HashMap<>(properties);
 
+                // The query is not part of the parent URL, other parts are the same
+                if (query == null)
+                    parentURL.componentsHash = componentsHash;
+
                 return parentURL;
             }
         }
@@ -595,6 +688,53 @@ public class FileURL implements Cloneable {
         return null;    // URL has no parent
     }
 
+    /**
+     * Returns the URL of the child of this URL with the given filename. The returned URL has the same handler, scheme,
+     * host, port, credentials and properties as this one, and no query part.
+     *
+     * <p>This method is meant to be used when listing folders: the returned URL shares the immutable parts of this
+     * one, including its cached hash code computations, and only the child's path has to be created.
+     * It returns a new FileURL instance every time it is called, which can be safely modified without any risk of
+     * side effects.
+     *
+     * @param filename name of the child, without any separator
+     * @return the URL of the child with the given filename
+     */
+    public FileURL getChildURL(String filename) {
+        String separator = getPathSeparator();
+        FileURL childURL = new FileURL(handler);
+
+        childURL.scheme = scheme;
+        childURL.host = host;
+        childURL.port = port;
+        StringBuilder childPath = new StringBuilder(path.length() + separator.length() + filename.length());
+        childPath.append(path);
+        if (!path.endsWith(separator)) {
+            childPath.append(separator);
+        }
+        childURL.path = childPath.append(filename).toString();
+        childURL.filename = filename;
+        // Note: Credentials are immutable.
+        childURL.credentials = credentials;
+
+        if (properties != null) {
+            childURL.properties = new HashMap<>(properties);
+        }
+
+        if (query == null) {
+            // The query is not part of the child URL, other parts are the same: compute their hash code once for all
+            // the children
+            ComponentsHash components = componentsHash;
+            if (components == null) {
+                components = computeComponentsHash();
+                componentsHash = components;
+            }
+            childURL.componentsHash = components;
+        }
+
+        return childURL;
+    }
+
 
     /**
      * Returns the authentication realm corresponding to this URL, i.e. the base location throughout which credentials
@@ -646,7 +786,7 @@ public class FileURL implements Cloneable {
     public void setQuery(String query) {
         this.query = query;
 
-        urlModified();
+        componentsModified();
     }
 
 	
@@ -681,7 +821,7 @@ public class FileURL implements Cloneable {
             properties.put(name, value);
         }
 
-        urlModified();
+        componentsModified();
     }
 
 
@@ -970,6 +1110,7 @@ public class FileURL implements Cloneable {
 
         // Caches
         clonedURL.hashCode = hashCode;
+        clonedURL.componentsHash = componentsHash;
 
         return clonedURL;
     }
@@ -1037,28 +1178,75 @@ public class FileURL implements Cloneable {
         if (hashCode == 0) {
             String separator = handler.getPathSeparator();
 
+            ComponentsHash components = componentsHash;
+            if (components == null) {
+                components = computeComponentsHash();
+                componentsHash = components;
+            }
+
             // #equals(Object) is trailing separator insensitive, so the hashCode must be trailing separator invariant
             int h = PathUtils.getPathHashCode(path, separator);
 
-            h = 31* h + scheme.toLowerCase().hashCode();
-            h = 31* h + (port==-1?handler.getStandardPort():port);
+            // Cache the value until for as long as this instance is not modified
+            hashCode = h * components.multiplier + components.hashCode;
+        }
 
-            if (host != null)
-                h = 31* h + host.toLowerCase().hashCode();
+        return hashCode;
+    }
 
-            if (query != null)
-                h = 31* h + query.hashCode();
+    /**
+     * Computes the part of the hash code that does not depend on the path. The hash code is computed by starting with
+     * the hash code of the path, and then applying <code>h = 31*h + c</code> for each other part <code>c</code>.
+     * This is equivalent to <code>h = pathHashCode * 31^n + componentsHashCode</code>, with
+     * <code>componentsHashCode</code> computed the same way but starting with 0 and <code>n</code> the number of parts
+     * other than the path. Those two values are the same for all the files of a folder, so they are only computed once
+     * and passed along to the URLs returned by {@link #clone()} and {@link #getChildURL(String)}.
+     *
+     * @return the hash code of all the parts of this URL but the path
+     */
+    private ComponentsHash computeComponentsHash() {
+        int h = 0;
+        int multiplier = 1;
 
-            if (credentials != null)
-                h = 31* h + credentials.hashCode();
+        h = 31* h + scheme.toLowerCase().hashCode();
+        h = 31* h + (port==-1?handler.getStandardPort():port);
+        multiplier *= 31*31;
 
-            if (properties != null)
-                h = 31* h + properties.hashCode();
+        if (host != null) {
+            h = 31* h + host.toLowerCase().hashCode();
+            multiplier *= 31;
+        }
 
-            // Cache the value until for as long as this instance is not modified
-            hashCode = h;
+        if (query != null) {
+            h = 31* h + query.hashCode();
+            multiplier *= 31;
         }
 
-        return hashCode;
+        if (credentials != null) {
+            h = 31* h + credentials.hashCode();
+            multiplier *= 31;
+        }
+
+        if (properties != null) {
+            h = 31* h + properties.hashCode();
+            multiplier *= 31;
+        }
+
+        return new ComponentsHash(h, multiplier);
+    }
+
+
+    /**
+     * The hash code of all the parts of a URL but the path, see {@link #computeComponentsHash()}. Instances are
+     * immutable, so that they can be shared by URLs used by different threads.
+     */
+    private static class ComponentsHash {
+        private final int hashCode;
+        private final int multiplier;
+
+        private ComponentsHash(int hashCode, int multiplier) {
+            this.hashCode = hashCode;
+            this.multiplier = multiplier;
+        }
     }
 }
@@ -51,6 +51,19 @@ public class AbstractExtensionFilter extends AbstractStringCriterionFilter {
     }
 
 
+    /**
+     * Returns the extensions this filter matches.
+     *
+     * @return the extensions this filter matches
+     */
+    public String[] getExtensions() {
+        String extensionStrings[] = new String[extensions.length];
+        for(int i = 0; i < extensions.length; i++)
+            extensionStrings[i] = new String(extensions[i]);
+        return extensionStrings;
+    }
+
+
     //////////////////////////////////////////////////
     // AbstractStringCriterionFilter implementation //
     //////////////////////////////////////////////////
@@ -1,6 +1,7 @@
 package com.mucommander.commons.file.impl;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ChildrenListener;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileProtocols;
@@ -213,7 +214,8 @@ public class CachedFile extends ProxyFile {
     private void getFileAttributes(AbstractFile file) {
         file = file.getTopAncestor();
 
-        if (file instanceof LocalFile) {
+        // Local files listed with their attributes answer the getters without querying the filesystem
+        if (file instanceof LocalFile && !((LocalFile)file).hasAttributesSnapshot()) {
             try {
                 int ba = (Integer) M_GET_BOOLEAN_ATTRIBUTES.invoke(FS, file.getUnderlyingFileObject());
 
@@ -576,6 +578,16 @@ public class CachedFile extends ProxyFile {
         return files;
     }
 
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
+        if ((bitmask & RECURSE_INSTANCES_MASK) != 0) {
+            file.ls(filter, children -> listener.childrenListed(createCachedFiles(children)));
+        } else {
+            file.ls(filter, listener);
+        }
+    }
+
 
     @Override
     public boolean isFileOperationSupported(FileOperation op) {
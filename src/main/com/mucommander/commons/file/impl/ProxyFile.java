@@ -336,6 +336,11 @@ public abstract class ProxyFile extends AbstractFile {
         return file.ls(filter);
     }
 
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        file.ls(filter, listener);
+    }
+
     @Override
     public void mkfile() throws IOException {
         file.mkfile();
@@ -4,6 +4,7 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionHandlerFactory;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
@@ -12,6 +13,7 @@ import com.mucommander.commons.util.StringUtils;
 import com.mucommander.core.FolderChangeMonitor;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -243,6 +245,41 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Lists the contents of the specified directory the same way {@link #listFiles(FTPConnectionHandler, String)} does,
+     * except that entries are returned by a parse engine, which parses them as they are retrieved from it.
+     *
+     * @param connHandler the connection handler to use for communicating with the server
+     * @param absPath absolute path to the directory to list
+     * @return the parse engine that holds the directory's contents
+     * @throws IOException if an error occurred while communicating with the server
+     * @throws AuthException if the user is not allowed to access this directory
+     */
+    private static FTPListParseEngine initiateListParsing(FTPConnectionHandler connHandler, String absPath) throws IOException {
+        try {
+            // The folder is listed using CWD and LIST, see #listFiles for the reason why
+            connHandler.ftpClient.changeWorkingDirectory(absPath);
+            FTPListParseEngine engine = connHandler.ftpClient.initiateListParsing();
+
+            // Throw an IOException if server replied with an error
+            connHandler.checkServerReply();
+
+            return engine;
+        }
+        // This exception is not an IOException and needs to be caught and thrown back as an IOException
+        catch(org.apache.commons.net.ftp.parser.ParserInitializationException e) {
+            LOGGER.info("ParserInitializationException caught", e);
+            throw new IOException();
+        } catch(IOException e) {
+            // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+            connHandler.checkSocketException(e);
+
+            // Throw back the IOException
+            throw e;
+        }
+    }
+
+
     /////////////////////////////////////////////
     // ConnectionHandlerFactory implementation //
     /////////////////////////////////////////////
@@ -537,6 +574,46 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             connHandler.releaseLock();
         }
 
+        return createChildren(files);
+    }
+
+    /**
+     * Overridden to hand children over by batches as the listing is parsed, instead of creating all of them before
+     * returning. Note that the FTP client reads the whole <code>LIST</code> reply before parsing starts.
+     */
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        ChildrenListener filteringListener = getFilteringListener(filter, listener);
+
+        // Retrieve a ConnectionHandler and lock it
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        FTPListParseEngine engine;
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            engine = initiateListParsing(connHandler, absPath);
+        } finally {
+            // Release the lock on the ConnectionHandler, entries are parsed once they have been retrieved
+            connHandler.releaseLock();
+        }
+
+        while (engine.hasNext()) {
+            if (!filteringListener.childrenListed(createChildren(engine.getNext(LS_BATCH_SIZE)))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Creates the children files that correspond to the given entries of this folder, discarding the '.' and '..'
+     * entries.
+     *
+     * @param files entries of this folder, may contain <code>null</code> elements
+     * @return the children files that correspond to the given entries
+     * @throws IOException if a child file could not be created
+     */
+    private AbstractFile[] createChildren(org.apache.commons.net.ftp.FTPFile files[]) throws IOException {
         if (files == null || files.length == 0) {
             return new AbstractFile[]{};
         }
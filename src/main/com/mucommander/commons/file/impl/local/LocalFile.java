@@ -33,16 +33,20 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
@@ -95,6 +99,15 @@ public class LocalFile extends ProtocolFile {
     protected File file;
     private FilePermissions permissions;
 
+    /** Attributes retrieved in bulk by the parent's ls(), <code>null</code> if there are none or if they have expired */
+    private AttributesSnapshot attributesSnapshot;
+
+    /** Period of time during which the attributes retrieved by ls() are used, before being fetched again from the filesystem. */
+    private static long attributeCachingPeriod = 5000;
+
+    /** Attributes class read by ls(): the richest one supported by the default filesystem */
+    private static final Class<? extends BasicFileAttributes> LS_ATTRIBUTES_CLASS;
+
     /** Absolute file path, free of trailing separator */
     protected String absPath;
 
@@ -150,6 +163,16 @@ public class LocalFile extends ProtocolFile {
         // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4089199
         if(IS_WINDOWS && Kernel32.isAvailable())
             Kernel32.getInstance().SetErrorMode(Kernel32API.SEM_NOOPENFILEERRORBOX|Kernel32API.SEM_FAILCRITICALERRORS);
+
+        // POSIX attributes come with the owner and group, DOS ones with the hidden flag, for the price of a single stat
+        Set<String> views = FileSystems.getDefault().supportedFileAttributeViews();
+        if (views.contains("posix")) {
+            LS_ATTRIBUTES_CLASS = PosixFileAttributes.class;
+        } else if (views.contains("dos")) {
+            LS_ATTRIBUTES_CLASS = DosFileAttributes.class;
+        } else {
+            LS_ATTRIBUTES_CLASS = BasicFileAttributes.class;
+        }
     }
 
     /**
@@ -169,6 +192,18 @@ public class LocalFile extends ProtocolFile {
      * @param file
      */
     protected LocalFile(FileURL fileURL, File file) throws IOException {
+        this(fileURL, file, null);
+    }
+
+    /**
+     * Creates a new instance of LocalFile, using the given {@link File} if not <code>null</code> and the given
+     * attributes snapshot (retrieved by the parent's {@link #ls(FilenameFilter)}) if not <code>null</code>.
+     *
+     * @param fileURL file URL
+     * @param file the java.io.File instance, can be <code>null</code>
+     * @param attributesSnapshot the file's attributes, can be <code>null</code>
+     */
+    private LocalFile(FileURL fileURL, File file, AttributesSnapshot attributesSnapshot) throws IOException {
         super(fileURL);
 
         if (file == null) {
@@ -204,6 +239,7 @@ public class LocalFile extends ProtocolFile {
 
         this.file = file;
         this.permissions = new LocalFilePermissions(file);
+        this.attributesSnapshot = attributesSnapshot;
     }
 
 
@@ -222,6 +258,92 @@ public class LocalFile extends ProtocolFile {
         return userHomePath == null ? null : FileFactory.getFile(userHomePath);
     }
 
+    /**
+     * Sets the time period during which the attributes retrieved by {@link #ls(FilenameFilter)} (size, dates,
+     * isDirectory, isSymlink...) are used by the children, before being fetched again from the filesystem.
+     * Listing a folder then costs a single <code>stat</code> call per child instead of one per attribute getter.
+     * A value of <code>0</code> disables the bulk attributes listing: <code>ls()</code> then uses
+     * <code>java.io.File#listFiles()</code> and every getter queries the filesystem.
+     *
+     * <p>Attributes changed by one of this class' methods (e.g. {@link #setLastModifiedDate(long)}, {@link #delete()})
+     * are always refreshed. They will however not be consistent if they have been changed by another process, and will
+     * remain inconsistent for up to <code>period</code> milliseconds.
+     *
+     * @param period time period during which attributes values are cached, in milliseconds. 0 disables attributes caching.
+     */
+    public static void setAttributeCachingPeriod(long period) {
+        attributeCachingPeriod = period;
+    }
+
+    /**
+     * Returns the time period during which the attributes retrieved by {@link #ls(FilenameFilter)} are used.
+     *
+     * @return time period during which attributes values are cached, in milliseconds
+     * @see #setAttributeCachingPeriod(long)
+     */
+    public static long getAttributeCachingPeriod() {
+        return attributeCachingPeriod;
+    }
+
+    /**
+     * Returns <code>true</code> if this file holds a fresh snapshot of its attributes, retrieved by its parent's
+     * {@link #ls(FilenameFilter)}. The attribute getters of such a file do not query the filesystem.
+     *
+     * @return <code>true</code> if this file holds a fresh snapshot of its attributes
+     */
+    public boolean hasAttributesSnapshot() {
+        return getAttributesSnapshot() != null;
+    }
+
+    /**
+     * Returns the attributes snapshot retrieved by the parent's {@link #ls(FilenameFilter)}, <code>null</code> if there
+     * is none or if it has expired.
+     */
+    private AttributesSnapshot getAttributesSnapshot() {
+        AttributesSnapshot snapshot = attributesSnapshot;
+        if (snapshot != null && System.currentTimeMillis() - snapshot.fetchedTime >= attributeCachingPeriod) {
+            // Expired, release it
+            attributesSnapshot = snapshot = null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the attributes held by the snapshot retrieved by the parent's {@link #ls(FilenameFilter)},
+     * <code>null</code> if there is no fresh snapshot or if this file is a broken symlink.
+     */
+    private BasicFileAttributes getSnapshotAttributes() {
+        AttributesSnapshot snapshot = getAttributesSnapshot();
+        return snapshot == null ? null : snapshot.attributes;
+    }
+
+    /**
+     * Reads the attributes of the given child path, following symlinks except broken ones.
+     *
+     * @param path the path to read the attributes of
+     * @param fetchedTime the time at which the attributes are considered to have been retrieved
+     * @return the attributes snapshot, <code>null</code> if the attributes could not be read
+     */
+    private static AttributesSnapshot readAttributesSnapshot(Path path, long fetchedTime) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, LS_ATTRIBUTES_CLASS, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isSymbolicLink()) {
+                return new AttributesSnapshot(attributes, false, fetchedTime);
+            }
+
+            // Size, dates and isDirectory are those of the symlink's target
+            try {
+                return new AttributesSnapshot(Files.readAttributes(path, LS_ATTRIBUTES_CLASS), true, fetchedTime);
+            } catch (IOException e) {
+                // Broken symlink
+                return new AttributesSnapshot(null, true, fetchedTime);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Could not read attributes of {}", path, e);
+            return null;
+        }
+    }
+
     /**
      * Returns the total and free space on the volume where this file resides.
      *
@@ -605,6 +727,11 @@ public class LocalFile extends ProtocolFile {
             return false;
         }
 
+        AttributesSnapshot snapshot = getAttributesSnapshot();
+        if (snapshot != null) {
+            return snapshot.symlink;
+        }
+
         // Check the case if we have a symbolic link with wrong target path
         if (!file.isFile()) {
             Path path = FileSystems.getDefault().getPath(getAbsolutePath(), "");
@@ -662,17 +789,29 @@ public class LocalFile extends ProtocolFile {
 
     @Override
     public long getLastModifiedDate() {
+        BasicFileAttributes attributes = getSnapshotAttributes();
+        if (attributes != null) {
+            return attributes.lastModifiedTime().toMillis();
+        }
         return file.lastModified();
     }
 
     @Override
     public long getCreationDate() throws IOException {
-        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).creationTime().toMillis();
+        BasicFileAttributes attributes = getSnapshotAttributes();
+        if (attributes == null) {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+        return attributes.creationTime().toMillis();
     }
 
     @Override
     public long getLastAccessDate() throws IOException {
-        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).lastAccessTime().toMillis();
+        BasicFileAttributes attributes = getSnapshotAttributes();
+        if (attributes == null) {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+        return attributes.lastAccessTime().toMillis();
     }
 
     @Override
@@ -683,6 +822,7 @@ public class LocalFile extends ProtocolFile {
             lastModified = 0;
         }
 
+        attributesSnapshot = null;
         if (!file.setLastModified(lastModified)) {
             throw new IOException();
         }
@@ -690,6 +830,10 @@ public class LocalFile extends ProtocolFile {
 		
     @Override
     public long getSize() {
+        BasicFileAttributes attributes = getSnapshotAttributes();
+        if (attributes != null) {
+            return attributes.size();
+        }
         return file.length();
     }
 	
@@ -716,6 +860,11 @@ public class LocalFile extends ProtocolFile {
 		
     @Override
     public boolean exists() {
+        AttributesSnapshot snapshot = getAttributesSnapshot();
+        if (snapshot != null) {
+            // Broken symlinks do not exist, as far as java.io.File is concerned
+            return snapshot.attributes != null;
+        }
         return file.exists();
     }
 	
@@ -736,6 +885,7 @@ public class LocalFile extends ProtocolFile {
             throw new IOException();
         }
 
+        attributesSnapshot = null;
         boolean success = false;
         if (permission == READ_PERMISSION) {
             success = file.setReadable(enabled);
@@ -761,6 +911,10 @@ public class LocalFile extends ProtocolFile {
 //    }
 	@Override
 	public String getOwner() {
+		BasicFileAttributes attributes = getSnapshotAttributes();
+		if (attributes instanceof PosixFileAttributes) {
+			return ((PosixFileAttributes)attributes).owner().getName();
+		}
 		try {
 			Path path = Paths.get(file.toURI());
 			if (Files.exists(path)) {
@@ -791,6 +945,10 @@ public class LocalFile extends ProtocolFile {
 
 	@Override
 	public String getGroup() {
+			BasicFileAttributes attributes = getSnapshotAttributes();
+			if (attributes instanceof PosixFileAttributes) {
+				return ((PosixFileAttributes)attributes).group().getName();
+			}
 			Path path = Paths.get(file.toURI());
 			if (Files.exists(path)) {
 				try {
@@ -842,6 +1000,10 @@ public class LocalFile extends ProtocolFile {
 //        if(IS_WINDOWS && guessFloppyDrive())
 //            return true;
 
+        AttributesSnapshot snapshot = getAttributesSnapshot();
+        if (snapshot != null) {
+            return snapshot.attributes != null && snapshot.attributes.isDirectory();
+        }
         return file.isDirectory();
     }
 
@@ -862,6 +1024,7 @@ public class LocalFile extends ProtocolFile {
      */
     @Override
     public OutputStream getOutputStream() throws IOException {
+        attributesSnapshot = null;
         return new LocalOutputStream(new FileOutputStream(absPath, false).getChannel());
     }
 
@@ -872,6 +1035,7 @@ public class LocalFile extends ProtocolFile {
      */
     @Override
     public OutputStream getAppendOutputStream() throws IOException {
+        attributesSnapshot = null;
         return new LocalOutputStream(new FileOutputStream(absPath, true).getChannel());
     }
 
@@ -892,11 +1056,13 @@ public class LocalFile extends ProtocolFile {
      */
     @Override
     public RandomAccessOutputStream getRandomAccessOutputStream() throws IOException {
+        attributesSnapshot = null;
         return new LocalRandomAccessOutputStream(new RandomAccessFile(file, "rw").getChannel());
     }
 
     @Override
     public void delete() throws IOException {
+        attributesSnapshot = null;
         boolean ret = file.delete();
 		
         if (!ret) {
@@ -912,6 +1078,7 @@ public class LocalFile extends ProtocolFile {
 
     @Override
     public void mkdir() throws IOException {
+        attributesSnapshot = null;
         Path path = FileSystems.getDefault().getPath(getAbsolutePath(), "");
         try {
             Files.createDirectory(path);
@@ -944,6 +1111,9 @@ public class LocalFile extends ProtocolFile {
         destFile = destFile.getTopAncestor();
         File destJavaIoFile = ((LocalFile)destFile).file;
 
+        attributesSnapshot = null;
+        ((LocalFile)destFile).attributesSnapshot = null;
+
         if (IS_WINDOWS) {
             // This check is necessary under Windows because java.io.File#renameTo(java.io.File) does not return false
             // if the destination file is located on a different drive, contrary for example to Mac OS X where renameTo
@@ -1099,6 +1269,16 @@ public class LocalFile extends ProtocolFile {
 
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
+        Path path = getListingPath();
+        if (path != null) {
+            List<AbstractFile> children = new ArrayList<>();
+            lsWithAttributes(path, filenameFilter, batch -> {
+                Collections.addAll(children, batch);
+                return true;
+            });
+            return children.toArray(new AbstractFile[children.size()]);
+        }
+
         File files[] = file.listFiles(filenameFilter == null ? null : new LocalFilenameFilter(filenameFilter));
 
         if (files == null) {
@@ -1109,11 +1289,9 @@ public class LocalFile extends ProtocolFile {
         AbstractFile children[] = new AbstractFile[nbFiles];
 
         for(int i=0; i<nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+            // Derive the child's URL from the FileURL of this file, this is more efficient than creating a new
             // FileURL instance from scratch.
-            FileURL childURL = (FileURL)fileURL.clone();
-
-			childURL.setPath(absPath+SEPARATOR+files[i].getName());
+            FileURL childURL = fileURL.getChildURL(files[i].getName());
 
             // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
             // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
@@ -1123,15 +1301,102 @@ public class LocalFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Overridden to hand children over as the <code>DirectoryStream</code> iterates over them, rather than after
+     * the whole folder has been read, which takes a while for folders with hundreds of thousands of files.
+     */
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        Path path = getListingPath();
+        if (path == null) {
+            super.ls(filter, listener);
+        } else {
+            lsWithAttributes(path, null, getFilteringListener(filter, listener));
+        }
+    }
+
+    /**
+     * Returns the path this folder is listed with by {@link #lsWithAttributes(Path, FilenameFilter, ChildrenListener)},
+     * <code>null</code> if the bulk attributes listing is disabled or if the path cannot be represented with the
+     * platform encoding, in which case <code>java.io.File</code> is used to list this folder.
+     */
+    private Path getListingPath() {
+        if (attributeCachingPeriod <= 0) {
+            return null;
+        }
+        try {
+            return file.toPath();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lists this folder's children with a <code>DirectoryStream</code> and reads the attributes of each child in
+     * a single call. The attributes are handed to the children so that their getters do not hit the filesystem again,
+     * for as long as {@link #setAttributeCachingPeriod(long) the attributes caching period}.
+     * Children are handed over to the given listener by batches of {@link #LS_BATCH_SIZE}.
+     *
+     * @param path this folder's path
+     * @param filenameFilter the filter to apply on children names, can be <code>null</code>
+     * @param listener the listener to hand the children over to
+     * @throws IOException if this folder could not be listed
+     */
+    private void lsWithAttributes(Path path, FilenameFilter filenameFilter, ChildrenListener listener) throws IOException {
+        List<AbstractFile> batch = new ArrayList<>();
+        long fetchedTime = System.currentTimeMillis();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path childPath : stream) {
+                String name = childPath.getFileName().toString();
+                if (filenameFilter != null && !filenameFilter.accept(name)) {
+                    continue;
+                }
+
+                // Derive the child's URL from the FileURL of this file, this is more efficient than creating a new
+                // FileURL instance from scratch.
+                FileURL childURL = fileURL.getChildURL(name);
+
+                // Archives are created by FileFactory so that their instances are shared through the file pool.
+                // Other children are not pooled: the snapshot would be handed to whoever requests the file next,
+                // for as long as the caching period, so it is kept to the consumer of this listing.
+                AttributesSnapshot snapshot = FileFactory.isArchiveFilename(name) ? null : readAttributesSnapshot(childPath, fetchedTime);
+                AbstractFile child;
+                if (snapshot == null) {
+                    child = FileFactory.getFile(childURL, this, childPath.toFile());
+                } else {
+                    child = new LocalFile(childURL, childPath.toFile(), snapshot);
+                    child.setParent(this);
+                }
+                batch.add(child);
+
+                if (batch.size() == LS_BATCH_SIZE) {
+                    if (!listener.childrenListed(batch.toArray(new AbstractFile[batch.size()]))) {
+                        return;
+                    }
+                    batch.clear();
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+
+        listener.childrenListed(batch.toArray(new AbstractFile[batch.size()]));
+    }
+
     @Override
     public boolean isHidden() {
+        BasicFileAttributes attributes = getSnapshotAttributes();
+        if (attributes instanceof DosFileAttributes) {
+            return ((DosFileAttributes)attributes).isHidden();
+        }
         return file.isHidden();
     }
 
     @Override
     public boolean isExecutable() {
         if (IS_UNIX_BASED) {
-            return !file.isDirectory() && file.canExecute();
+            return !isDirectory() && file.canExecute();
         }
         return super.isExecutable();
     }
@@ -1424,6 +1689,29 @@ public class LocalFile extends ProtocolFile {
     }
 
 
+    /**
+     * Snapshot of a file's attributes, retrieved in bulk by {@link LocalFile#ls(FilenameFilter)} and passed to the
+     * child LocalFile as an instantiation parameter.
+     */
+    static class AttributesSnapshot {
+
+        /** Attributes of the file, or of its target for symlinks. <code>null</code> for broken symlinks */
+        private final BasicFileAttributes attributes;
+
+        /** True if the file is a symlink */
+        private final boolean symlink;
+
+        /** Timestamp when the attributes were fetched */
+        private final long fetchedTime;
+
+        private AttributesSnapshot(BasicFileAttributes attributes, boolean symlink, long fetchedTime) {
+            this.attributes = attributes;
+            this.symlink = symlink;
+            this.fetchedTime = fetchedTime;
+        }
+    }
+
+
     /**
      * A Permissions implementation for LocalFile.
      */
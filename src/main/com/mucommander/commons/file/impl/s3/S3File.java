@@ -10,7 +10,10 @@ import org.jets3t.service.S3ServiceException;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Super class of {@link S3Root}, {@link S3Bucket} and {@link S3Object}.
@@ -54,58 +57,87 @@ public abstract class S3File extends ProtocolFile {
     }
     
     protected AbstractFile[] listObjects(String bucketName, String prefix, S3File parent) throws IOException {
+        List<AbstractFile> children = new ArrayList<>();
+        listObjects(bucketName, prefix, parent, chunk -> {
+            Collections.addAll(children, chunk);
+            return true;
+        });
+
+        return children.toArray(new AbstractFile[children.size()]);
+    }
+
+    /**
+     * Lists the objects of the given bucket that start with the given prefix chunk by chunk, and hands the children
+     * of each chunk over to the given listener as soon as the chunk has been retrieved.
+     *
+     * @param bucketName name of the bucket to list
+     * @param prefix prefix of the objects to list, <code>""</code> to list the bucket's root
+     * @param parent the parent of the listed children
+     * @param listener the listener to hand the children over to
+     * @throws IOException if the objects could not be listed
+     */
+    protected void listObjects(String bucketName, String prefix, S3File parent, ChildrenListener listener) throws IOException {
         try {
-            S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
-            org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
-            String[] commonPrefixes = chunk.getCommonPrefixes();
+            String priorLastKey = null;
+            boolean firstChunk = true;
+            do {
+                S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, priorLastKey, false);
+                org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
+                String[] commonPrefixes = chunk.getCommonPrefixes();
+
+                if(firstChunk && objects.length==0 && !prefix.equals("")) {
+                    // This happens only when the directory does not exist
+                    throw new IOException();
+                }
+                firstChunk = false;
 
-            if(objects.length==0 && !prefix.equals("")) {
-                // This happens only when the directory does not exist
-                throw new IOException();
-            }
+                AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
+                FileURL childURL;
+                int i=0;
+                String objectKey;
 
-            AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
-            int i=0;
-            String objectKey;
+                for(org.jets3t.service.model.S3Object object : objects) {
+                    // Discard the object corresponding to the prefix itself
+                    objectKey = object.getKey();
+                    if(objectKey.equals(prefix))
+                        continue;
 
-            for(org.jets3t.service.model.S3Object object : objects) {
-                // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
-                    continue;
+                    childURL = (FileURL)fileURL.clone();
+                    childURL.setPath(bucketName + "/" + objectKey);
 
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
+                    children[i] = FileFactory.getFile(childURL, parent, service, object);
+                    i++;
+                }
 
-                children[i] = FileFactory.getFile(childURL, parent, service, object);
-                i++;
-            }
+                org.jets3t.service.model.S3Object directoryObject;
+                for(String commonPrefix : commonPrefixes) {
+                    childURL = (FileURL)fileURL.clone();
+                    childURL.setPath(bucketName + "/" + commonPrefix);
+
+                    directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+                    // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+                    directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
+                    directoryObject.setContentLength(0);
+                    children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
+                    i++;
+                }
 
-            org.jets3t.service.model.S3Object directoryObject;
-            for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
-                i++;
-            }
+                // Trim the array if an object was discarded.
+                // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
+                // to know in advance whether the prefix will appear in the results or not.
+                if(i<children.length) {
+                    AbstractFile[] childrenTrimmed = new AbstractFile[i];
+                    System.arraycopy(children, 0, childrenTrimmed, 0, i);
+                    children = childrenTrimmed;
+                }
 
-            // Trim the array if an object was discarded.
-            // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
-            // to know in advance whether the prefix will appear in the results or not.
-            if(i<children.length) {
-                AbstractFile[] childrenTrimmed = new AbstractFile[i];
-                System.arraycopy(children, 0, childrenTrimmed, 0, i);
+                if(!listener.childrenListed(children))
+                    return;
 
-                return childrenTrimmed;
+                // The key to resume the listing from, null if the listing is complete
+                priorLastKey = chunk.getPriorLastKey();
             }
-
-            return children;
+            while(priorLastKey!=null);
         }
         catch(S3ServiceException e) {
             throw getIOException(e);
@@ -1,6 +1,7 @@
 package com.mucommander.commons.file.impl.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.RandomAccessInputStream;
@@ -123,6 +124,11 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        listObjects(bucketName, getObjectKey(true), this, getFilteringListener(filter, listener));
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
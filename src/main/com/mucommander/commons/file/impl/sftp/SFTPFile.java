@@ -20,6 +20,7 @@ package com.mucommander.commons.file.impl.sftp;
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.*;
 import com.sshtools.sftp.*;
 import com.sshtools.ssh.SshException;
@@ -31,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Vector;
 
 
 /**
@@ -424,6 +426,55 @@ public class SFTPFile extends ProtocolFile {
             connHandler.releaseLock();
         }
 
+        return createChildren(files);
+    }
+
+    /**
+     * Overridden to hand children over as the server sends them, instead of waiting for the whole folder to be read:
+     * SFTP servers return the entries of a folder by chunks, of a hundred entries or so.
+     */
+    @Override
+    public void ls(FileFilter filter, ChildrenListener listener) throws IOException {
+        ChildrenListener filteringListener = getFilteringListener(filter, listener);
+
+        // Retrieve a ConnectionHandler and lock it
+        SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(CONN_HANDLER_FACTORY, fileURL, true);
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            // Read the folder chunk by chunk, the way SftpClient.ls() does
+            SftpSubsystemChannel sftpChannel = connHandler.sftpClient.getSubsystemChannel();
+            SftpFile folder = sftpChannel.openDirectory(absPath);
+            try {
+                Vector<SftpFile> files = new Vector<>();
+                while (sftpChannel.listChildren(folder, files) > -1) {
+                    AbstractFile children[] = createChildren(files.toArray(new SftpFile[files.size()]));
+                    files.clear();
+                    if (!filteringListener.childrenListed(children)) {
+                        break;
+                    }
+                }
+            } finally {
+                folder.close();
+            }
+        } catch (SftpStatusException | SshException e) {
+            throw new IOException(e);
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+    }
+
+    /**
+     * Creates the children files that correspond to the given entries of this folder, discarding the '.' and '..'
+     * entries.
+     *
+     * @param files entries of this folder
+     * @return the children files that correspond to the given entries
+     * @throws IOException if the attributes of an entry could not be read
+     */
+    private AbstractFile[] createChildren(SftpFile files[]) throws IOException {
         int nbFiles = files.length;
 
         // File doesn't exist, return an empty file array
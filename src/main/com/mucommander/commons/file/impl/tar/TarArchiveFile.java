@@ -22,7 +22,12 @@ package com.mucommander.commons.file.impl.tar;
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.tar.provider.TarEntry;
 import com.mucommander.commons.file.impl.tar.provider.TarInputStream;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.compress.Bzip2CheckpointInputStream;
+import com.mucommander.commons.io.compress.CheckpointIndex;
+import com.mucommander.commons.io.compress.GzipCheckpointInputStream;
 import com.mucommander.commons.util.StringUtils;
 import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.slf4j.Logger;
@@ -41,12 +46,27 @@ import java.util.zip.GZIPInputStream;
  * <p>The actual decompression work is performed by the <code>Apache Ant</code> library under the terms of the
  * Apache Software License.
  *
+ * <p>The offsets of the entries are recorded while the archive is listed, so that the entries of an uncompressed
+ * archive are read by seeking to their data when the underlying file supports random access, rather than by reading
+ * the archive up to the entry. For Gzip and Bzip2-compressed archives, the positions where decompression can resume are
+ * recorded in a {@link CheckpointIndex} while the archive is listed, and an entry is read by resuming decompression at
+ * the nearest checkpoint before its data.
+ *
  * @see com.mucommander.commons.file.impl.tar.TarFormatProvider
  * @author Maxence Bernard
  */
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Initial number of uncompressed bytes between two checkpoints of a compressed archive */
+    private final static long CHECKPOINT_SPACING = 1024 * 1024;
+
+    /** Maximum number of checkpoints of a compressed archive, each holding up to 32 KB for Gzip */
+    private final static int MAX_CHECKPOINTS = 128;
+
+    /** The checkpoints of the compressed archive recorded when it was last listed, <code>null</code> if none */
+    private volatile CheckpointIndex checkpointIndex;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -62,23 +82,32 @@ public class TarArchiveFile extends AbstractROArchiveFile {
      *
      * @param entryOffset offset from the start of the archive to an entry. Must be a multiple of recordSize, or
      * <code>0</code> to start at the first entry.
+     * @param index the index to record the checkpoints of a compressed archive to, <code>null</code> for none
      * @return a TarInputStream which can be used to read TAR entries
      * @throws IOException if an error occurred while create the stream
      * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
      * or is not implemented.
      */
-    private TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
+    private TarInputStream createTarStream(long entryOffset, CheckpointIndex index) throws IOException, UnsupportedFileOperationException {
         InputStream in = file.getInputStream();
 
-        String name = getName();
+        if (index != null) {
+            try {
+                in = isGzipCompressed() ? new GzipCheckpointInputStream(in, index) : new Bzip2CheckpointInputStream(in, index);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
             // Gzip-compressed file
-        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+        else if (isGzipCompressed())
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
             in = new GZIPInputStream(in);
 
         // Bzip2-compressed file
-        else if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+        else if (isBzip2Compressed()) {
             try {
                 // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
                 // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
@@ -102,6 +131,84 @@ public class TarArchiveFile extends AbstractROArchiveFile {
         return new TarInputStream(in, entryOffset);
     }
 
+    /**
+     * Returns <code>true</code> if the archive is Gzip-compressed, based on its extension.
+     */
+    private boolean isGzipCompressed() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz");
+    }
+
+    /**
+     * Returns <code>true</code> if the archive is Bzip2-compressed, based on its extension.
+     */
+    private boolean isBzip2Compressed() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2");
+    }
+
+    /**
+     * Returns a stream to the data of the given entry, reading the underlying file from the entry's data offset, or
+     * from the nearest checkpoint before it for a compressed archive. Returns <code>null</code> if the archive would
+     * have to be read from its start, i.e. if the underlying file of an uncompressed archive can't be read randomly,
+     * or if there is no checkpoint before the entry's data.
+     *
+     * @param tarEntry an entry of this archive, as returned by {@link TarInputStream#getNextEntry()}
+     * @return a stream to the entry's data, <code>null</code> if the data can't be read at its offset
+     * @throws IOException if an error occurred while opening the file
+     */
+    private InputStream getEntryDataStream(TarEntry tarEntry) throws IOException {
+        if (tarEntry.getDataOffset() <= 0) {
+            return null;
+        }
+        if (isGzipCompressed() || isBzip2Compressed()) {
+            return getCompressedEntryDataStream(tarEntry);
+        }
+        if (!file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            return null;
+        }
+
+        RandomAccessInputStream rais = file.getRandomAccessInputStream();
+        try {
+            rais.seek(tarEntry.getDataOffset());
+        } catch (IOException e) {
+            rais.close();
+            throw e;
+        }
+        // Closing the bounded stream closes the file
+        return new BoundedInputStream(rais, tarEntry.getSize(), false);
+    }
+
+    /**
+     * Returns a stream to the data of the given entry of this compressed archive, resuming decompression at the nearest
+     * checkpoint before the entry's data, or <code>null</code> if there is no such checkpoint.
+     */
+    private InputStream getCompressedEntryDataStream(TarEntry tarEntry) throws IOException {
+        CheckpointIndex index = checkpointIndex;
+        CheckpointIndex.Checkpoint checkpoint = index == null ? null : index.getCheckpoint(tarEntry.getDataOffset());
+        if (checkpoint == null) {
+            return null;
+        }
+
+        // Seek to the checkpoint if possible, or skip to it
+        boolean randomRead = file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+        InputStream in = randomRead ? file.getRandomAccessInputStream() : file.getInputStream();
+        try {
+            if (randomRead) {
+                ((RandomAccessInputStream)in).seek(checkpoint.getCompressedOffset());
+            } else {
+                StreamUtils.skipFully(in, checkpoint.getCompressedOffset());
+            }
+            in = isGzipCompressed() ? new GzipCheckpointInputStream(in, checkpoint) : new Bzip2CheckpointInputStream(in, checkpoint);
+            StreamUtils.skipFully(in, tarEntry.getDataOffset() - checkpoint.getUncompressedOffset());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        // Closing the bounded stream closes the file
+        return new BoundedInputStream(in, tarEntry.getSize(), false);
+    }
+
 
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
@@ -109,7 +216,13 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
-        return new TarEntryIterator(createTarStream(0));
+        CheckpointIndex index = null;
+        if (isGzipCompressed() || isBzip2Compressed()) {
+            // The checkpoints are recorded as the entries are listed, replacing those of the previous listing
+            index = new CheckpointIndex(CHECKPOINT_SPACING, MAX_CHECKPOINTS);
+            checkpointIndex = index;
+        }
+        return new TarEntryIterator(createTarStream(0, index));
     }
 
 
@@ -138,10 +251,15 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
-        // Iterate through the archive until we've found the entry
+        // Seek to the entry's data if possible, or skip to the entry in the archive
         TarEntry tarEntry = (TarEntry)entry.getEntryObject();
         if (tarEntry != null) {
-            TarInputStream tin = createTarStream(tarEntry.getOffset());
+            InputStream in = getEntryDataStream(tarEntry);
+            if (in != null) {
+                return in;
+            }
+
+            TarInputStream tin = createTarStream(tarEntry.getOffset(), null);
             tin.getNextEntry();
 
             return tin;
@@ -98,6 +98,9 @@ public class TarEntry implements TarConstants {
     /** The entry's offset from the start of the archive */
     private long offset;
 
+    /** The offset of the entry's data from the start of the archive */
+    private long dataOffset;
+
     /** Maximum length of a user's name in the tar file */
     public static final int MAX_NAMELEN = 31;
 
@@ -429,6 +432,25 @@ public class TarEntry implements TarConstants {
         this.offset = offset;
     }
 
+    /**
+     * Returns the offset of this entry's data from the start of the archive, i.e. the offset of the record that
+     * follows the entry's header.
+     *
+     * @return the offset of this entry's data from the start of the archive
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Sets the offset of this entry's data from the start of the archive.
+     *
+     * @param dataOffset the offset of this entry's data from the start of the archive
+     */
+    public void setDataOffset(long dataOffset) {
+        this.dataOffset = dataOffset;
+    }
+
     /**
      * Indicate if this entry is a GNU long name block
      *
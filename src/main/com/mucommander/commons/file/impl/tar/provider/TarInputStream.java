@@ -262,6 +262,8 @@ public class TarInputStream extends InputStream {
             // allows to reposition the stream at the start of the entry
             currEntry.setOffset(buffer.getCurrentBlockNum()*buffer.getBlockSize()
                                + buffer.getCurrentRecordNum()*buffer.getRecordSize());
+            // The entry's data starts at the record that follows the header, allows to read it without the stream
+            currEntry.setDataOffset(currEntry.getOffset() + buffer.getRecordSize());
 
             if (debug) {
                 System.err.println("TarInputStream: SET CURRENTRY '"
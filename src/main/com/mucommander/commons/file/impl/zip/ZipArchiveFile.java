@@ -8,6 +8,8 @@ import com.mucommander.commons.io.FilteredOutputStream;
 
 import java.io.*;
 import java.util.Iterator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.ZipInputStream;
 
 
@@ -20,6 +22,12 @@ import java.util.zip.ZipInputStream;
  * <code>java.util.zip</code> but requires the underlying file to supply a <code>RandomAccessInputStream</code> for read
  * access and a <code>RandomAccessOutputStream</code> for write access. If the underlying file can't provide at least a
  * <code>RandomAccessInputStream</code>, the lesser <code>java.util.zip</code> package is used.
+ * <p>
+ * Entries can be listed and read by several threads at the same time: readers share the entries of the current
+ * <code>ZipFile</code>, and each entry stream reads the archive with its own <code>RandomAccessInputStream</code>.
+ * Modifications are serialized by a read-write lock, and exclude readers while they are carried out. The stream
+ * returned by {@link #addEntry(ArchiveEntry)} holds the lock until it is closed, and must thus be closed by the thread
+ * that created it.
  *
  * @see com.mucommander.commons.file.impl.zip.ZipFormatProvider
  * @see com.mucommander.commons.file.impl.zip.provider.ZipFile
@@ -28,10 +36,13 @@ import java.util.zip.ZipInputStream;
 public class ZipArchiveFile extends AbstractRWArchiveFile {
 
     /** The ZipFile object that actually reads and modifies the entries in the Zip file */
-    private ZipFile zipFile;
+    private volatile ZipFile zipFile;
 
     /** The date at which the current ZipFile object was created */
-    private long lastZipFileDate;
+    private volatile long lastZipFileDate;
+
+    /** Read lock held while the Zip file is read, write lock held while it is modified */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     /** Contents of an empty Zip file, 22 bytes long */
     private final static byte EMPTY_ZIP_BYTES[] = {
@@ -53,17 +64,20 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     /**
      * Checks if the underlying Zip file is up-to-date, i.e. exists and has not changed without this archive file
      * being aware of it. If one of those 2 conditions are not met, (re)load the ZipFile instance (parse the entries)
-     * and declare the Zip file as up-to-date.
+     * and declare the Zip file as up-to-date. This method must be called while holding {@link #lock}, the ZipFile
+     * instance is loaded only once when several readers call it at the same time.
      *
+     * @return the up-to-date ZipFile instance
      * @throws IOException if an error occurred while reloading
      */
-    private void checkZipFile() throws IOException, UnsupportedFileOperationException {
+    private synchronized ZipFile checkZipFile() throws IOException, UnsupportedFileOperationException {
         long currentDate = file.getLastModifiedDate();
 
         if(zipFile==null || currentDate!=lastZipFileDate) {
             zipFile = new ZipFile(file);
             declareZipFileUpToDate();
         }
+        return zipFile;
     }
 
     /**
@@ -116,7 +130,9 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     }
 
     /**
-     * Adds the given {@link ArchiveEntry} to the entries tree and declares the Zip file and entries tree up-to-date.
+     * Adds the given {@link ArchiveEntry} to the entries tree and declares the entries tree up-to-date. This method
+     * must be called after the write lock has been released, as the entries tree is locked before the Zip file when
+     * the tree is created.
      *
      * @param entry the entry to add to the entries tree
      * @throws IOException if an error occurred while adding the entry to the tree
@@ -124,8 +140,7 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
      * or is not implemented.
      */
     private void finishAddEntry(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
-        // Declare the zip file and entries tree up-to-date
-        declareZipFileUpToDate();
+        // Declare the entries tree up-to-date
         declareEntriesTreeUpToDate();
 
         // Add the new entry to the entries tree
@@ -138,12 +153,17 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     //////////////////////////////////////////
 
     @Override
-    public synchronized ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
+    public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
         // If the underlying AbstractFile has random read access, use our own ZipFile implementation to read entries
         if (file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
-            checkZipFile();
-
-            final Iterator<ZipEntry> iterator = zipFile.getEntries();
+            // The iterator goes through a snapshot of the entries, that is not affected by later modifications
+            final Iterator<ZipEntry> iterator;
+            lock.readLock().lock();
+            try {
+                iterator = checkZipFile().getEntries();
+            } finally {
+                lock.readLock().unlock();
+            }
 
             return new ArchiveEntryIterator() {
                 public ArchiveEntry nextEntry() throws IOException {
@@ -169,16 +189,20 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
 
 
     @Override
-    public synchronized InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
+    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
         // If the underlying AbstractFile has random read access, use our own ZipFile implementation to read the entry
         if (file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
-            checkZipFile();
-
             ZipEntry zipEntry = (com.mucommander.commons.file.impl.zip.provider.ZipEntry)entry.getEntryObject();
             if(zipEntry==null)  // Should not normally happen
                 throw new IOException();
 
-            return zipFile.getInputStream(zipEntry);
+            // The returned stream reads the Zip file on its own and can be used after the lock has been released
+            lock.readLock().lock();
+            try {
+                return checkZipFile().getInputStream(zipEntry);
+            } finally {
+                lock.readLock().unlock();
+            }
         }
         // If the underlying AbstractFile doesn't have random read access, use java.util.InputStream to
         // read the entry. This is much slower than the former method as the file cannot be seeked and needs
@@ -221,41 +245,70 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     //////////////////////////////////////////
 
     @Override
-    public synchronized OutputStream addEntry(final ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
-        checkZipFile();
-
+    public OutputStream addEntry(final ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
         final ZipEntry zipEntry = createZipEntry(entry);
 
+        lock.writeLock().lock();
         if(zipEntry.isDirectory()) {
-            // Add the new directory entry to the zip file (physically)
-            zipFile.addEntry(zipEntry);
+            try {
+                // Add the new directory entry to the zip file (physically)
+                checkZipFile().addEntry(zipEntry);
 
-            // Set the ZipEntry object into the ArchiveEntry
-            entry.setEntryObject(zipEntry);
+                // Set the ZipEntry object into the ArchiveEntry
+                entry.setEntryObject(zipEntry);
+
+                // Declare the zip file up-to-date
+                declareZipFileUpToDate();
+            } finally {
+                lock.writeLock().unlock();
+            }
 
-            // Declare the zip file and entries tree up-to-date and add the new entry to the entries tree
+            // Declare the entries tree up-to-date and add the new entry to the entries tree
             finishAddEntry(entry);
 
             return null;
         }
         else {
+            OutputStream out;
+            try {
+                out = checkZipFile().addEntry(zipEntry);
+            } catch(IOException | RuntimeException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+
             // Set the ZipEntry object into the ArchiveEntry
             entry.setEntryObject(zipEntry);
 
-            return new FilteredOutputStream(zipFile.addEntry(zipEntry)) {
+            // The write lock is held until the entry has been written
+            return new FilteredOutputStream(out) {
+                private boolean closed;
+
                 @Override
                 public void close() throws IOException {
-                    super.close();
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
 
-                    // Declare the zip file and entries tree up-to-date and add the new entry to the entries tree
-                        finishAddEntry(entry);
+                    try {
+                        super.close();
+
+                        // Declare the zip file up-to-date
+                        declareZipFileUpToDate();
+                    } finally {
+                        lock.writeLock().unlock();
                     }
+
+                    // Declare the entries tree up-to-date and add the new entry to the entries tree
+                    finishAddEntry(entry);
+                }
             };
         }
     }
 
     @Override
-    public synchronized void deleteEntry(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
+    public void deleteEntry(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
         ZipEntry zipEntry = (com.mucommander.commons.file.impl.zip.provider.ZipEntry)entry.getEntryObject();
 
         // Most of the time, the ZipEntry will not be null. However, it can be null in some rare cases, when directory
@@ -264,16 +317,21 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
         if(zipEntry!=null) {
             // Entry exists physically in the zip file
 
-            checkZipFile();
+            lock.writeLock().lock();
+            try {
+                // Delete the entry from the zip file (physically)
+                checkZipFile().deleteEntry(zipEntry);
 
-            // Delete the entry from the zip file (physically)
-            zipFile.deleteEntry(zipEntry);
+                // Remove the ZipEntry object from the AchiveEntry
+                entry.setEntryObject(null);
 
-            // Remove the ZipEntry object from the AchiveEntry
-            entry.setEntryObject(null);
+                // Declare the zip file up-to-date
+                declareZipFileUpToDate();
+            } finally {
+                lock.writeLock().unlock();
+            }
 
-            // Declare the zip file and entries tree up-to-date
-            declareZipFileUpToDate();
+            // Declare the entries tree up-to-date
             declareEntriesTreeUpToDate();
         }
         // Else entry doesn't physically exist in the zip file, only in the entries tree
@@ -292,29 +350,41 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
         if(zipEntry!=null) {
             // Entry exists physically in the zip file
 
-            checkZipFile();
+            lock.writeLock().lock();
+            try {
+                ZipFile zipFile = checkZipFile();
 
-            zipEntry.setTime(entry.getLastModifiedDate());
-            zipEntry.setUnixMode(entry.getPermissions().getIntValue());
-            
-            // Physically update the entry's attributes in the Zip file
-            zipFile.updateEntry(zipEntry);
+                zipEntry.setTime(entry.getLastModifiedDate());
+                zipEntry.setUnixMode(entry.getPermissions().getIntValue());
 
-            // Declare the zip file and entries tree up-to-date
-            declareZipFileUpToDate();
+                // Physically update the entry's attributes in the Zip file
+                zipFile.updateEntry(zipEntry);
+
+                // Declare the zip file up-to-date
+                declareZipFileUpToDate();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // Declare the entries tree up-to-date
             declareEntriesTreeUpToDate();
         }
     }
 
     @Override
-    public synchronized void optimizeArchive() throws IOException, UnsupportedFileOperationException {
-        checkZipFile();
+    public void optimizeArchive() throws IOException, UnsupportedFileOperationException {
+        lock.writeLock().lock();
+        try {
+            // Defragment the zip file
+            checkZipFile().defragment();
 
-        // Defragment the zip file
-        zipFile.defragment();
+            // Declare the zip file up-to-date
+            declareZipFileUpToDate();
+        } finally {
+            lock.writeLock().unlock();
+        }
 
-        // Declare the zip file and entries tree up-to-date
-        declareZipFileUpToDate();
+        // Declare the entries tree up-to-date
         declareEntriesTreeUpToDate();
     }
 
@@ -25,8 +25,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.zip.Deflater;
@@ -51,6 +54,11 @@ import java.util.zip.ZipException;
  * <p>Random read access is required to instantiate a <code>ZipFile</code> and retrieve its entries. Furthermore, random
  * write access is required for methods that modify the Zip file.
  *
+ * <p>The methods that read entries, {@link #getEntries()}, {@link #getEntry(String)} and {@link #getInputStream(ZipEntry)},
+ * can be called concurrently: they share an immutable snapshot of the entries, and each entry stream reads the Zip
+ * file with its own <code>RandomAccessInputStream</code>. The methods that modify the Zip file must not be called
+ * concurrently with any other method.
+ *
  * <p>The method signatures mimic the ones of <code>java.util.zip.ZipFile</code> with a few exceptions:
  * <ul>
  *   <li>There is no <code>getName</code> method.</li>
@@ -86,6 +94,10 @@ public class ZipFile implements ZipConstants {
     /** Maps entry paths to corresponding ZipEntry instances */
     private Map<String, ZipEntry> nameMap = new Hashtable<>();
 
+    /** Unmodifiable copy of {@link #entries} shared by readers, <code>null</code> until it is requested after a
+     * modification */
+    private volatile List<ZipEntry> entriesSnapshot;
+
     /** Global zip file comment */
     private String comment;
 
@@ -223,12 +235,18 @@ public class ZipFile implements ZipConstants {
     }
 
     /**
-     * Returns all entries as an <code>Iterator</code> of {@link ZipEntry} instances.
+     * Returns all entries as an <code>Iterator</code> of {@link ZipEntry} instances. The iterator is not affected by
+     * later modifications of this Zip file.
      *
      * @return Returns all entries as an <code>Iterator</code> of ZipEntry instances.
      */
     public Iterator<ZipEntry> getEntries() {
-        return entries.iterator();
+        List<ZipEntry> snapshot = entriesSnapshot;
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(entries));
+            entriesSnapshot = snapshot;
+        }
+        return snapshot.iterator();
     }
 
     /**
@@ -265,15 +283,18 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
+        // Each entry stream has its own RandomAccessInputStream, so that entries can be read concurrently
+        RandomAccessInputStream entryIn = file.getRandomAccessInputStream();
 
         // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
+        try {
+            if (entryInfo.dataOffset == -1)
+                calculateDataOffset(entryInfo, entryIn);
+        } catch(IOException e) {
+            entryIn.close();
+            throw e;
+        }
 
-        this.rais = null;
-        
         long start = entryInfo.dataOffset;
         BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
         switch (ze.getMethod()) {
@@ -377,7 +398,7 @@ public class ZipFile implements ZipConstants {
 
                     // If data offset is -1 (not calculated yet), calculate it now
                     if (entryInfo.dataOffset == -1)
-                        calculateDataOffset(entryInfo);
+                        calculateDataOffset(entryInfo, rais);
 
                     // Zero out all bytes of the local file header+data for the deleted entry
                     // Note: the data descriptor (if any) is not erased, this would require some extra check and it is
@@ -416,6 +437,7 @@ public class ZipFile implements ZipConstants {
             // All good, remove the deleted entry from the lists
             entries.removeElementAt(entryIndex);
             nameMap.remove(ze.getName());
+            entriesSnapshot = null;
         } finally {
             try {
                 closeRead();
@@ -464,6 +486,7 @@ public class ZipFile implements ZipConstants {
             entry.setEntryInfo(entryInfo);
             entries.add(entry);
             nameMap.put(entry.getName(), entry);
+            entriesSnapshot = null;
 
             // create the ZipEntryOutputStream to write the entry's contents
 
@@ -609,7 +632,7 @@ public class ZipFile implements ZipConstants {
 
             // If data offset is -1 (not calculated yet), calculate it now
             if (currentEntryInfo.dataOffset == -1)
-                calculateDataOffset(currentEntryInfo);
+                calculateDataOffset(currentEntryInfo, rais);
 
             if(currentEntryInfo.headerOffset>0) {
                 StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, 0, (currentEntryInfo.dataOffset- currentEntryInfo.headerOffset)+currentEntry.getCompressedSize());
@@ -630,7 +653,7 @@ public class ZipFile implements ZipConstants {
 
                 // If data offset is -1 (not calculated yet), calculate it now
                 if (currentEntryInfo.dataOffset == -1)
-                    calculateDataOffset(currentEntryInfo);
+                    calculateDataOffset(currentEntryInfo, rais);
 
                 // Calculate the offset to the end of the previous entry based on its data offset and compressed size
                 // and taking into account a potential data descriptor
@@ -693,13 +716,14 @@ public class ZipFile implements ZipConstants {
 
     /**
      * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset and stores the result
-     * in ZipEntryInfo.dataOffset. After calling this method, the RandomAccessInputStream will be positionned at the
-     * beginning of the filename field.
+     * in ZipEntryInfo.dataOffset. After calling this method, the given RandomAccessInputStream will be positionned at
+     * the beginning of the filename field.
      *
      * @param entryInfo the ZipEntryInfo object in which to store the data offset
+     * @param rais the stream to read the local file header from
      * @throws IOException if an unexpected I/O error occurred
      */
-    private void calculateDataOffset(ZipEntryInfo entryInfo) throws IOException {
+    private static void calculateDataOffset(ZipEntryInfo entryInfo, RandomAccessInputStream rais) throws IOException {
         // Skip the following fields:
         //  local file header signature     4 bytes
         //  version needed to extract       2 bytes
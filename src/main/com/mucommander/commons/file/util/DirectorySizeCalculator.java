@@ -0,0 +1,311 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Calculates the total size of the files of folders, recursively.
+ * <p>
+ * The subfolders of a folder are walked in parallel, by a pool of threads per volume, so that the latency of listing
+ * folders is waited for several of them at a time without overloading a single disk or server. Calculations share
+ * their work: a folder that is being walked on behalf of a calculation, e.g. the subfolder of a folder whose size is
+ * being calculated, is not walked again by another calculation, which waits for its size instead.
+ * </p>
+ * <p>
+ * The sizes of the folders that have been walked are cached by path with the date of the folder, and returned by
+ * {@link #getCachedSize(AbstractFile)} as long as the folder keeps the same date. As the date of a folder only
+ * changes when files are added to or removed from it, cached sizes don't reflect files that have been modified in
+ * place, until the size is calculated again. Symbolic links are not followed.
+ * </p>
+ */
+public class DirectorySizeCalculator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySizeCalculator.class);
+
+    /** Number of folders listed at the same time on a local volume */
+    private final static int NB_THREADS_LOCAL = 4;
+
+    /** Number of folders listed at the same time on a remote server */
+    private final static int NB_THREADS_REMOTE = 2;
+
+    /** Maximum number of folder sizes kept in {@link #CACHE} */
+    private final static int MAX_CACHED_SIZES = 50000;
+
+    /** Sizes of the folders that have been walked, by path, least recently used first */
+    private final static Map<String, CachedSize> CACHE = new LinkedHashMap<String, CachedSize>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSize> eldest) {
+            return size() > MAX_CACHED_SIZES;
+        }
+    };
+
+    /** Incremented when a calculation starts, to tell the sizes that have been cached since */
+    private final static AtomicLong GENERATION = new AtomicLong();
+
+    /** The folders being walked, by path */
+    private final static Map<String, SizeTask> RUNNING_TASKS = new ConcurrentHashMap<>();
+
+    /** The pools of threads walking folders, by volume */
+    private final static Map<String, ForkJoinPool> POOLS = new HashMap<>();
+
+
+    /**
+     * Returns the size of the given folder that has been cached when it was last calculated, if the folder has the
+     * same date.
+     *
+     * @param folder a folder
+     * @return the cached size of the folder, <code>-1</code> if there is none or if the folder has changed
+     */
+    public static long getCachedSize(AbstractFile folder) {
+        CachedSize cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(getKey(folder));
+        }
+        return cached != null && cached.date == folder.getLastModifiedDate() ? cached.size : -1;
+    }
+
+    /**
+     * Starts calculating the size of the given folder.
+     *
+     * @param folder the folder whose size is calculated
+     * @param listener notified of the calculation when it's done, from one of the threads of the calculator,
+     * <code>null</code> for none
+     * @return the calculation
+     */
+    public static Calculation calculate(AbstractFile folder, Consumer<Calculation> listener) {
+        Calculation calculation = new Calculation(folder, listener);
+        getPool(folder).execute(new SizeTask(folder, calculation, true));
+        return calculation;
+    }
+
+    /**
+     * Returns the key of the given folder in the cache and the running tasks.
+     */
+    private static String getKey(AbstractFile folder) {
+        return folder.getURL().toString(false);
+    }
+
+    /**
+     * Returns the pool of threads walking the volume of the given folder.
+     */
+    private static ForkJoinPool getPool(AbstractFile folder) {
+        boolean local = FileProtocols.FILE.equals(folder.getURL().getScheme()) && folder.getParentArchive() == null;
+        String volume = local ? getKey(folder.getVolume()) : folder.getURL().getScheme() + "://" + folder.getURL().getHost();
+        synchronized (POOLS) {
+            ForkJoinPool pool = POOLS.get(volume);
+            if (pool == null) {
+                pool = new ForkJoinPool(local ? NB_THREADS_LOCAL : NB_THREADS_REMOTE);
+                POOLS.put(volume, pool);
+            }
+            return pool;
+        }
+    }
+
+
+    /**
+     * The calculation of the size of a folder.
+     */
+    public static class Calculation {
+        private final AbstractFile folder;
+        private final Consumer<Calculation> listener;
+        /** The sizes cached since this generation have been calculated after this calculation started */
+        private final long generation = GENERATION.incrementAndGet();
+        /** The size of the files that have been walked so far */
+        private final AtomicLong size = new AtomicLong();
+        private volatile boolean done;
+        private volatile boolean cancelled;
+
+        private Calculation(AbstractFile folder, Consumer<Calculation> listener) {
+            this.folder = folder;
+            this.listener = listener;
+        }
+
+        private void done(long size) {
+            this.size.set(size);
+            done = true;
+            if (listener != null) {
+                listener.accept(this);
+            }
+        }
+
+        /**
+         * Returns the folder whose size is calculated.
+         *
+         * @return the folder whose size is calculated
+         */
+        public AbstractFile getFolder() {
+            return folder;
+        }
+
+        /**
+         * Returns the size of the folder if the calculation is done, the size of the files that have been walked so
+         * far otherwise.
+         *
+         * @return the size of the folder, or the size calculated so far
+         */
+        public long getSize() {
+            return size.get();
+        }
+
+        /**
+         * Returns <code>true</code> if the size of the folder has been calculated.
+         *
+         * @return <code>true</code> if the calculation is done
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Stops the calculation. Folders being walked on behalf of other calculations keep being walked.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * A size cached with the date of the folder.
+     */
+    private static class CachedSize {
+        private final long date;
+        private final long size;
+        private final long generation;
+
+        private CachedSize(long date, long size, long generation) {
+            this.date = date;
+            this.size = size;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Walks a folder on behalf of a calculation.
+     */
+    private static class SizeTask extends RecursiveTask<Long> {
+        private final AbstractFile folder;
+        private final Calculation calculation;
+        private final boolean root;
+
+        private SizeTask(AbstractFile folder, Calculation calculation, boolean root) {
+            this.folder = folder;
+            this.calculation = calculation;
+            this.root = root;
+        }
+
+        @Override
+        protected Long compute() {
+            long size = 0;
+            try {
+                size = getSize();
+                return size;
+            } finally {
+                if (root && !calculation.cancelled) {
+                    calculation.done(size);
+                }
+            }
+        }
+
+        private long getSize() {
+            String key = getKey(folder);
+            long date = folder.getLastModifiedDate();
+            synchronized (CACHE) {
+                CachedSize cached = CACHE.get(key);
+                if (cached != null && cached.generation >= calculation.generation && cached.date == date) {
+                    calculation.size.addAndGet(cached.size);
+                    return cached.size;
+                }
+            }
+
+            // Wait for the folder if it's being walked on behalf of another calculation
+            SizeTask running;
+            while ((running = RUNNING_TASKS.putIfAbsent(key, this)) != null) {
+                try {
+                    long size = running.join();
+                    calculation.size.addAndGet(size);
+                    return size;
+                } catch (CancellationException e) {
+                    // The other calculation has been cancelled, the folder is walked again
+                }
+            }
+
+            try {
+                long size = walk();
+                synchronized (CACHE) {
+                    CACHE.put(key, new CachedSize(date, size, GENERATION.get()));
+                }
+                return size;
+            } finally {
+                RUNNING_TASKS.remove(key, this);
+            }
+        }
+
+        /**
+         * Returns the size of the files of the folder, walking its subfolders in parallel.
+         */
+        private long walk() {
+            if (calculation.cancelled) {
+                throw new CancellationException();
+            }
+            AbstractFile files[];
+            try {
+                files = folder.ls();
+            } catch (IOException e) {
+                LOGGER.debug("Could not list " + folder, e);
+                return 0;
+            }
+
+            List<SizeTask> subfolders = new ArrayList<>();
+            long size = 0;
+            for (AbstractFile file : files) {
+                if (file.isSymlink()) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    SizeTask subfolder = new SizeTask(file, calculation, false);
+                    subfolder.fork();
+                    subfolders.add(subfolder);
+                } else {
+                    size += Math.max(0, file.getSize());
+                }
+            }
+            calculation.size.addAndGet(size);
+            for (SizeTask subfolder : subfolders) {
+                size += subfolder.join();
+            }
+            return size;
+        }
+    }
+}
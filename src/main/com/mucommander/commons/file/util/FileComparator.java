@@ -94,7 +94,7 @@ public class FileComparator implements Comparator<AbstractFile> {
      * @param c character for which to return a value
      * @return a <code>value</code> for the given character
      */
-    private static int getCharacterValue(int c) {
+    static int getCharacterValue(int c) {
         // Note: max char value is 65535
         if (Character.isLetter(c))
             c += 131070;    // yields a value higher than any other symbol or digit
@@ -163,11 +163,12 @@ public class FileComparator implements Comparator<AbstractFile> {
      * @return a negative integer, zero, or a positive integer as the first argument is less than, equal to, or greater
      * than the second.
      */
-    private static int compareStrings(String s1, String s2, boolean ignoreCase) {
+    static int compareStrings(String s1, String s2, boolean ignoreCase) {
         // Special treatment for strings that contain a number, so they are ordered by the number's value, e.g.:
         // 1 < 1a < 2 < 10, like Mac OS X Finder and Windows Explorer do.
         //
         // This special order applies only if both strings contain a number and have the same prefix. Otherwise, the general order applies.
+        // Prefixes are compared with the same case sensitivity as the rest of the strings, so that the order is transitive.
         int digitIndex1 = firstDigitPos(s1);
         if (digitIndex1 >= 0) {
             int digitIndex2 = firstDigitPos(s2);
@@ -175,7 +176,7 @@ public class FileComparator implements Comparator<AbstractFile> {
                 // So we got two filenames that both contain a number, check if they have the same prefix
 
                 // Note: compare prefixes only if start indexes match, faster that way
-                if (digitIndex1 == digitIndex2 && (digitIndex1==0 || s1.substring(0, digitIndex1).equals(s2.substring(0, digitIndex2)))) {
+                if (digitIndex1 == digitIndex2 && (digitIndex1==0 || s1.regionMatches(ignoreCase, 0, s2, 0, digitIndex1))) {
                     int g1Len = 0;
                     int l1 = s1.length();
                     for (int i = digitIndex1; i < l1; i++) {
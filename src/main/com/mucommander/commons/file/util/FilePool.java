@@ -1,7 +1,13 @@
 package com.mucommander.commons.file.util;
 
 import com.mucommander.commons.file.AbstractFile;
-import org.apache.commons.collections4.map.ReferenceMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows {@link AbstractFile} instances to be pooled, so that existing file instances can be reused,
@@ -10,17 +16,31 @@ import org.apache.commons.collections4.map.ReferenceMap;
  * but a sensible choice is to use the {@link AbstractFile#getURL() file's URL}.
  *
  * <p>Files are stored as {@link java.lang.ref.WeakReference weak references} so they can be garbage collected
- * when they are no longer hard-referenced.
+ * when they are no longer hard-referenced. Mappings whose file has been garbage collected are removed the next time
+ * a file is added to the pool, and are counted as {@link #getEvictionCount() evictions}.
  *
- * <p>This class uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
- * All accesses to the underlying map is synchronized, making this class thread-safe.
+ * <p>This class is thread-safe: mappings are held by a {@link ConcurrentHashMap}, so that lookups never block and
+ * concurrent updates only contend when they hit the same part of the map. This matters as the pool is looked up
+ * for every file created by {@link com.mucommander.commons.file.FileFactory}, from any thread.
  *
  * @author Maxence Bernard
  */
 public class FilePool {
 
     /** The actual hash map */
-    protected final ReferenceMap<Object, AbstractFile> hashMap = new ReferenceMap<>(ReferenceMap.ReferenceStrength.HARD, ReferenceMap.ReferenceStrength.WEAK);
+    private final ConcurrentMap<Object, FileReference> hashMap = new ConcurrentHashMap<>();
+
+    /** Receives the references of the files that have been garbage collected */
+    private final ReferenceQueue<AbstractFile> collectedFiles = new ReferenceQueue<>();
+
+    /** Number of lookups that found a file */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** Number of lookups that found no file */
+    private final LongAdder missCount = new LongAdder();
+
+    /** Number of mappings removed because their file was garbage collected */
+    private final LongAdder evictionCount = new LongAdder();
 
     /**
      * Creates a new file pool.
@@ -37,8 +57,10 @@ public class FilePool {
      * @return returns the file instance previously mapped onto the given key, <code>null</code> if no
      * such mapping existed
      */
-    public synchronized AbstractFile put(Object key, AbstractFile value) {
-        return hashMap.put(key, value);
+    public AbstractFile put(Object key, AbstractFile value) {
+        expungeCollectedFiles();
+        FileReference previous = hashMap.put(key, new FileReference(key, value, collectedFiles));
+        return previous == null ? null : previous.get();
     }
 
     /**
@@ -49,8 +71,15 @@ public class FilePool {
      * @return the {@link AbstractFile} instance mapped onto the given key if there is one,
      * <code>null</code> otherwise
      */
-    public synchronized AbstractFile get(Object key) {
-        return hashMap.get(key);
+    public AbstractFile get(Object key) {
+        FileReference reference = hashMap.get(key);
+        AbstractFile file = reference == null ? null : reference.get();
+        if (file == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return file;
     }
 
     /**
@@ -61,8 +90,9 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given key is used as
      * the mapping's key.
      */
-    public synchronized boolean containsKey(Object key) {
-        return hashMap.containsKey(key);
+    public boolean containsKey(Object key) {
+        FileReference reference = hashMap.get(key);
+        return reference != null && reference.get() != null;
     }
 
     /**
@@ -73,16 +103,27 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given file is used as
      * the mapping's key.
      */
-    public synchronized boolean containsValue(AbstractFile file) {
-        return hashMap.containsValue(file);
+    public boolean containsValue(AbstractFile file) {
+        if (file == null) {
+            return false;
+        }
+        for (FileReference reference : hashMap.values()) {
+            if (file.equals(reference.get())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Removes all existing key/file mapping from this pool, leaving the pool in the same state as it was right after
      * its creation.
      */
-    public synchronized void clear() {
+    public void clear() {
         hashMap.clear();
+        // References that have already been enqueued do not map anything anymore
+        while (collectedFiles.poll() != null) {
+        }
     }
 
     /**
@@ -90,7 +131,76 @@ public class FilePool {
      *
      * @return the number of key/file mapping this pool currently contains.
      */
-    public synchronized int size() {
+    public int size() {
+        expungeCollectedFiles();
         return hashMap.size();
     }
+
+    /**
+     * Returns the number of calls to {@link #get(Object)} that found a file, since this pool was created.
+     *
+     * @return the number of lookups that found a file
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #get(Object)} that found no file, since this pool was created.
+     *
+     * @return the number of lookups that found no file
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the ratio of calls to {@link #get(Object)} that found a file, between 0 and 1. Returns 0 if the pool has
+     * not been looked up yet.
+     *
+     * @return the ratio of lookups that found a file
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    /**
+     * Returns the number of mappings that have been removed because their file was garbage collected, since this pool
+     * was created.
+     *
+     * @return the number of mappings removed because their file was garbage collected
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Removes the mappings whose file has been garbage collected.
+     */
+    private void expungeCollectedFiles() {
+        Reference<? extends AbstractFile> reference;
+        while ((reference = collectedFiles.poll()) != null) {
+            FileReference fileReference = (FileReference)reference;
+            // The mapping may have been replaced with a live file in the meantime
+            if (hashMap.remove(fileReference.key, fileReference)) {
+                evictionCount.increment();
+            }
+        }
+    }
+
+
+    /**
+     * A weak reference to a pooled file, that remembers its key so that its mapping can be removed once the file
+     * has been garbage collected.
+     */
+    private static class FileReference extends WeakReference<AbstractFile> {
+        private final Object key;
+
+        private FileReference(Object key, AbstractFile file, ReferenceQueue<AbstractFile> queue) {
+            super(file, queue);
+            this.key = key;
+        }
+    }
 }
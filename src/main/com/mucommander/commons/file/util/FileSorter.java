@@ -0,0 +1,437 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.quicksearch.QuickSearch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * FileSorter sorts an array of file indexes in the same order as {@link FileComparator}, using the same criteria.
+ *
+ * <p>Contrary to a {@link FileComparator}, which queries both files for their attributes each time it compares them,
+ * FileSorter queries each file once, before sorting: the attributes used by the comparison are extracted into arrays
+ * of primitive keys (directory flag, size, date...). Strings (names, extensions, owners and groups) are turned into
+ * collation keys, which are compared code by code, without allocating or converting characters. Files are then sorted
+ * with a stable merge sort, by several threads if there are more than {@link #getParallelThreshold()} of them.
+ *
+ * <p>Collation keys follow the order of {@link FileComparator}: characters are compared case-insensitively, symbols
+ * come before digits and digits before letters, and the first numbers of strings that share the same prefix are
+ * compared by value, e.g. <code>file2 &lt; file10</code>. Files are thus in the same order as when sorted with a
+ * FileComparator, which allows to look them up or insert new files with a FileComparator.
+ */
+public class FileSorter {
+
+    /** Number of files above which files are sorted by several threads */
+    private static int parallelThreshold = 50000;
+
+    /** Number of indexes below which the parallel sort sorts a range on the current thread */
+    private final static int PARALLEL_GRANULARITY = 8192;
+
+    /** Number of indexes below which ranges are sorted with an insertion sort */
+    private final static int INSERTION_SORT_THRESHOLD = 32;
+
+    /** Value of the first number of a collation key: it is compared like an ASCII digit to other characters */
+    private final static int NUMBER_KEY = FileComparator.getCharacterValue('0');
+
+    /** Comparison criterion */
+    private final int criterion;
+    /** Ascending or descending order ? */
+    private final boolean ascending;
+    /** Specifies whether directories should precede files or be handled as regular files */
+    private final boolean directoriesFirst;
+    /** Specifies whether directories always alphabetical sorted */
+    private final boolean foldersAlwaysAlphabetical;
+
+    private final QuickSearch quickSearch;
+
+
+    /**
+     * Creates a new FileSorter using the specified comparison criterion, order (ascending or descending) and
+     * directory handling rule, see {@link FileComparator} for a description of the parameters.
+     *
+     * @param criterion comparison criterion, see {@link FileComparator} constant fields
+     * @param ascending if true, ascending order will be used, descending order otherwise
+     * @param directoriesFirst specifies whether directories should precede files or be handled as regular files
+     * @param foldersAlwaysAlphabetical specifies wether directories are sorted always alphabetical if they stay first
+     * @param quickSearch if not <code>null</code>, files matched by the quick search precede the other files
+     */
+    public FileSorter(int criterion, boolean ascending, boolean directoriesFirst, boolean foldersAlwaysAlphabetical, QuickSearch quickSearch) {
+        this.criterion = criterion;
+        this.ascending = ascending;
+        this.directoriesFirst = directoriesFirst;
+        this.foldersAlwaysAlphabetical = foldersAlwaysAlphabetical;
+        this.quickSearch = quickSearch;
+    }
+
+    public FileSorter(int criterion, boolean ascending, boolean directoriesFirst, boolean foldersAlwaysAlphabetical) {
+        this(criterion, ascending, directoriesFirst, foldersAlwaysAlphabetical, null);
+    }
+
+    /**
+     * Returns the number of files above which files are sorted by several threads, <code>50000</code> by default.
+     *
+     * @return the number of files above which files are sorted by several threads
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of files above which files are sorted by several threads. <code>Integer.MAX_VALUE</code>
+     * disables parallel sorting.
+     *
+     * @param threshold the number of files above which files are sorted by several threads
+     */
+    public static void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * Sorts the given indexes so that the files they refer to are in the order of the criterion. Files that are
+     * equal keep their relative order.
+     *
+     * @param files the files to sort, are not modified
+     * @param indexes indexes of files in the <code>files</code> array, sorted in place
+     */
+    public void sort(AbstractFile files[], int indexes[]) {
+        if (indexes.length < 2) {
+            return;
+        }
+        Keys keys = new Keys(files);
+        int buffer[] = new int[indexes.length];
+        if (indexes.length > parallelThreshold) {
+            ForkJoinPool.commonPool().invoke(new ParallelSort(keys, indexes, buffer, 0, indexes.length));
+        } else {
+            keys.mergeSort(indexes, buffer, 0, indexes.length);
+        }
+    }
+
+
+    //////////////////////////////////
+    // Collation keys               //
+    //////////////////////////////////
+
+    /**
+     * Appends the collation key of the given string to the given array, which must have room for
+     * <code>s.length() + 2</code> codes.
+     *
+     * @param s the string to create a collation key for
+     * @param key the array the collation key is written to
+     * @param pos position of the collation key in the array
+     * @return the position that follows the collation key
+     */
+    private static int appendCollationKey(String s, int key[], int pos) {
+        int len = s.length();
+        int i = 0;
+        // Characters that precede the first number
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                break;
+            }
+            key[pos++] = getCollationCode(c);
+        }
+
+        if (i < len) {
+            // The first number is compared by value: shorter numbers first, then digit by digit
+            int numberEnd = i + 1;
+            while (numberEnd < len && s.charAt(numberEnd) >= '0' && s.charAt(numberEnd) <= '9') {
+                numberEnd++;
+            }
+            key[pos++] = NUMBER_KEY;
+            key[pos++] = numberEnd - i;
+            for (; i < numberEnd; i++) {
+                key[pos++] = s.charAt(i);
+            }
+
+            // Other numbers are compared as characters, as FileComparator does
+            for (; i < len; i++) {
+                key[pos++] = getCollationCode(s.charAt(i));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the code of the given character in a collation key.
+     */
+    private static int getCollationCode(char c) {
+        // Same case folding as FileComparator, see String#regionMatches
+        return FileComparator.getCharacterValue(Character.toLowerCase(Character.toUpperCase(c)));
+    }
+
+    /**
+     * Compares two collation keys stored in the same array.
+     */
+    private static int compareCollationKeys(int data[], int start1, int end1, int start2, int end2) {
+        int len1 = end1 - start1;
+        int len2 = end2 - start2;
+        int len = Math.min(len1, len2);
+        for (int i = 0; i < len; i++) {
+            int code1 = data[start1 + i];
+            int code2 = data[start2 + i];
+            if (code1 != code2) {
+                return code1 < code2 ? -1 : 1;
+            }
+        }
+        return len1 - len2;
+    }
+
+
+    /**
+     * The collation keys of a column of strings, stored one after the other in a single array.
+     */
+    private static class CollationKeys {
+        /** The strings, <code>null</code> strings precede all others */
+        private final String strings[];
+        /** Key of string i is stored from offsets[i] (inclusive) to offsets[i+1] (exclusive) */
+        private final int offsets[];
+        private final int data[];
+
+        private CollationKeys(String strings[]) {
+            this.strings = strings;
+
+            int capacity = 0;
+            for (String s : strings) {
+                if (s != null) {
+                    capacity += s.length() + 2;
+                }
+            }
+
+            offsets = new int[strings.length + 1];
+            data = new int[capacity];
+            int pos = 0;
+            for (int i = 0; i < strings.length; i++) {
+                offsets[i] = pos;
+                if (strings[i] != null) {
+                    pos = appendCollationKey(strings[i], data, pos);
+                }
+            }
+            offsets[strings.length] = pos;
+        }
+
+        private int compare(int index1, int index2) {
+            boolean isNull1 = strings[index1] == null;
+            boolean isNull2 = strings[index2] == null;
+            if (isNull1 || isNull2) {
+                return isNull1 == isNull2 ? 0 : (isNull1 ? -1 : 1);
+            }
+            return compareCollationKeys(data, offsets[index1], offsets[index1 + 1], offsets[index2], offsets[index2 + 1]);
+        }
+
+        /**
+         * Compares case-insensitively, then case-sensitively if both strings are equal, like filenames are compared.
+         */
+        private int compareCaseSensitive(int index1, int index2) {
+            int diff = compare(index1, index2);
+            if (diff == 0 && strings[index1] != null && strings[index2] != null) {
+                diff = FileComparator.compareStrings(strings[index1], strings[index2], false);
+            }
+            return diff;
+        }
+    }
+
+
+    /**
+     * The keys extracted from the files to sort, and the sort itself.
+     */
+    private class Keys {
+        private final boolean directories[];
+        /** <code>null</code> if files matched by the quick search do not come first */
+        private final boolean quickSearchMatches[];
+        private final CollationKeys names;
+        /** Size, date or permissions, depending on the criterion */
+        private final long values[];
+        /** Extension, owner or group, depending on the criterion */
+        private final CollationKeys strings;
+
+        private Keys(AbstractFile files[]) {
+            int nbFiles = files.length;
+            directories = new boolean[nbFiles];
+            quickSearchMatches = quickSearch == null ? null : new boolean[nbFiles];
+            String nameStrings[] = new String[nbFiles];
+            boolean hasValues = criterion == FileComparator.SIZE_CRITERION || criterion == FileComparator.DATE_CRITERION
+                    || criterion == FileComparator.PERMISSIONS_CRITERION;
+            boolean hasStrings = criterion == FileComparator.EXTENSION_CRITERION || criterion == FileComparator.OWNER_CRITERION
+                    || criterion == FileComparator.GROUP_CRITERION;
+            values = hasValues ? new long[nbFiles] : null;
+            String criterionStrings[] = hasStrings ? new String[nbFiles] : null;
+
+            for (int i = 0; i < nbFiles; i++) {
+                AbstractFile file = files[i];
+                if (file == null) {
+                    continue;
+                }
+                boolean isDirectory = file.isDirectory();
+                directories[i] = isDirectory;
+                nameStrings[i] = file.getName();
+                if (quickSearchMatches != null) {
+                    quickSearchMatches[i] = quickSearch.matches(file);
+                }
+
+                switch (criterion) {
+                    case FileComparator.SIZE_CRITERION:
+                        // Consider that directories have a size of 0, and unavailable sizes (-1) as enormous
+                        long size = isDirectory ? 0 : file.getSize();
+                        values[i] = size == -1 ? Long.MAX_VALUE : size;
+                        break;
+                    case FileComparator.DATE_CRITERION:
+                        values[i] = file.getLastModifiedDate();
+                        break;
+                    case FileComparator.PERMISSIONS_CRITERION:
+                        values[i] = file.getPermissions().getIntValue();
+                        break;
+                    case FileComparator.EXTENSION_CRITERION:
+                        criterionStrings[i] = file.getExtension();
+                        break;
+                    case FileComparator.OWNER_CRITERION:
+                        criterionStrings[i] = file.getOwner();
+                        break;
+                    case FileComparator.GROUP_CRITERION:
+                        criterionStrings[i] = file.getGroup();
+                        break;
+                }
+            }
+
+            names = new CollationKeys(nameStrings);
+            strings = hasStrings ? new CollationKeys(criterionStrings) : null;
+        }
+
+        /**
+         * Compares the files at the given indexes, following the contract of {@link FileComparator#compare}.
+         */
+        private int compare(int index1, int index2) {
+            if (quickSearchMatches != null && quickSearchMatches[index1] != quickSearchMatches[index2]) {
+                return quickSearchMatches[index1] ? -1 : 1;
+            }
+
+            boolean is1Directory = directories[index1];
+            if (directoriesFirst) {
+                if (is1Directory != directories[index2]) {
+                    // ascending has no effect on the result (a directory is always first)
+                    return is1Directory ? -1 : 1;
+                }
+                if (foldersAlwaysAlphabetical && is1Directory) {
+                    return names.compareCaseSensitive(index1, index2);
+                }
+            }
+
+            int diff;
+            if (values != null) {
+                diff = Long.compare(values[index1], values[index2]);
+            } else if (strings != null) {
+                diff = strings.compare(index1, index2);
+            } else {
+                diff = names.compareCaseSensitive(index1, index2);
+            }
+
+            // If both files have the same criterion's value, compare names
+            if (diff == 0 && criterion != FileComparator.NAME_CRITERION) {
+                diff = names.compare(index1, index2);
+            }
+
+            return ascending ? diff : -diff;
+        }
+
+        /**
+         * Sorts the given range of indexes with a stable merge sort.
+         *
+         * @param indexes the indexes to sort
+         * @param buffer an array at least as large as <code>indexes</code>, used for merging
+         * @param from first index of the range, inclusive
+         * @param to last index of the range, exclusive
+         */
+        private void mergeSort(int indexes[], int buffer[], int from, int to) {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                insertionSort(indexes, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(indexes, buffer, from, middle);
+            mergeSort(indexes, buffer, middle, to);
+            merge(indexes, buffer, from, middle, to);
+        }
+
+        private void insertionSort(int indexes[], int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                int index = indexes[i];
+                int j = i - 1;
+                while (j >= from && compare(indexes[j], index) > 0) {
+                    indexes[j + 1] = indexes[j];
+                    j--;
+                }
+                indexes[j + 1] = index;
+            }
+        }
+
+        /**
+         * Merges the sorted ranges <code>[from, middle[</code> and <code>[middle, to[</code>.
+         */
+        private void merge(int indexes[], int buffer[], int from, int middle, int to) {
+            // The ranges are already in order, which is common when a sorted folder is sorted again
+            if (compare(indexes[middle - 1], indexes[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(indexes, from, buffer, from, to - from);
+            int i = from;
+            int j = middle;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < middle && compare(buffer[i], buffer[j]) <= 0)) {
+                    indexes[k] = buffer[i++];
+                } else {
+                    indexes[k] = buffer[j++];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Sorts both halves of a range in parallel, then merges them.
+     */
+    private static class ParallelSort extends RecursiveAction {
+        private final Keys keys;
+        private final int indexes[];
+        private final int buffer[];
+        private final int from;
+        private final int to;
+
+        private ParallelSort(Keys keys, int indexes[], int buffer[], int from, int to) {
+            this.keys = keys;
+            this.indexes = indexes;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRANULARITY) {
+                keys.mergeSort(indexes, buffer, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParallelSort(keys, indexes, buffer, from, middle),
+                    new ParallelSort(keys, indexes, buffer, middle, to));
+            keys.merge(indexes, buffer, from, middle, to);
+        }
+    }
+}
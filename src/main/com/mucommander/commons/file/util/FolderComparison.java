@@ -0,0 +1,308 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.runtime.OsFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the files of a folder with the files of another folder, and reports the files that differ from the file
+ * with the same name in the other folder, or that have no counterpart.
+ * <p>
+ * Files are matched with their counterparts through a hash table of the other folder's files, by name. Names are
+ * compared case-insensitively on the platforms where file names are case-insensitive, like {@link
+ * com.mucommander.commons.file.FileURL#pathEquals(com.mucommander.commons.file.FileURL)} does.
+ * Files that can be compared without reading them are reported right away, the others (contents and subfolders)
+ * are compared by a pool of threads, so that the latency of several files is waited at once.
+ * </p>
+ * <p>
+ * Comparison is one-way: files that only exist in the other folder are not reported, and a folder differs from its
+ * counterpart if one of its files, recursively, differs from its counterpart.
+ * </p>
+ */
+public class FolderComparison {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderComparison.class);
+
+    /** Number of threads that compare contents and subfolders */
+    private final static int NB_THREADS = 4;
+
+    /** Maximum number of comparisons waiting for a thread, beyond which no more comparisons are submitted */
+    private final static int MAX_PENDING_COMPARISONS = NB_THREADS * 8;
+
+    /**
+     * What a file is compared on.
+     */
+    public enum Criterion {
+        /** A file differs if it is more recent than its counterpart */
+        DATE,
+        /** A file differs if it doesn't have the same size as its counterpart */
+        SIZE,
+        /** A file differs if it doesn't have the same size or the same bytes as its counterpart */
+        CONTENT
+    }
+
+    /**
+     * Interface to be implemented by classes that wish to receive the files that differ as they are found.
+     */
+    public interface DifferenceListener {
+        /**
+         * This method is called, in the thread that called {@link FolderComparison#compare}, with each file that
+         * differs from its counterpart or has no counterpart.
+         *
+         * @param file a file that differs
+         * @return <code>true</code> to continue the comparison, <code>false</code> to stop it
+         */
+        boolean fileDiffers(AbstractFile file);
+    }
+
+    /** What files are compared on */
+    private final Criterion criterion;
+
+    /** Whether folders are compared by their contents, or not compared */
+    private final boolean recursive;
+
+    /** Whether file names are case-sensitive */
+    private final boolean caseSensitive;
+
+
+    /**
+     * Creates a new FolderComparison comparing files on the given criterion, with the file name case-sensitivity of
+     * the current platform.
+     *
+     * @param criterion what files are compared on
+     * @param recursive <code>true</code> to compare folders by their contents, <code>false</code> to skip folders
+     */
+    public FolderComparison(Criterion criterion, boolean recursive) {
+        this(criterion, recursive, !(OsFamily.WINDOWS.isCurrent() || OsFamily.OS_2.isCurrent()));
+    }
+
+    /**
+     * Creates a new FolderComparison comparing files on the given criterion.
+     *
+     * @param criterion what files are compared on
+     * @param recursive <code>true</code> to compare folders by their contents, <code>false</code> to skip folders
+     * @param caseSensitive <code>true</code> if file names are case-sensitive
+     */
+    public FolderComparison(Criterion criterion, boolean recursive, boolean caseSensitive) {
+        this.criterion = criterion;
+        this.recursive = recursive;
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Compares the given files with the files of the other folder, and notifies the listener of the files that differ
+     * from their counterpart or have no counterpart. Files that are read to be compared are notified in the order
+     * in which their comparison completes, the other files in the given order.
+     *
+     * @param files the files to compare
+     * @param otherFiles the files of the other folder
+     * @param listener notified of the files that differ
+     * @return <code>true</code> if all the files have been compared, <code>false</code> if the listener stopped the
+     * comparison
+     * @throws InterruptedException if the current thread was interrupted while waiting for a comparison
+     */
+    public boolean compare(AbstractFile files[], AbstractFile otherFiles[], DifferenceListener listener) throws InterruptedException {
+        Map<String, AbstractFile> otherFilesByName = getFilesByName(otherFiles);
+        ExecutorService executor = null;
+        CompletionService<AbstractFile> comparisons = null;
+        int nbPendingComparisons = 0;
+        try {
+            for (AbstractFile file : files) {
+                if (file == null || (file.isDirectory() && !recursive)) {
+                    continue;
+                }
+                AbstractFile otherFile = otherFilesByName.get(getKey(file.getName()));
+                if (!needsReading(file, otherFile)) {
+                    if (differs(file, otherFile) && !listener.fileDiffers(file)) {
+                        return false;
+                    }
+                    continue;
+                }
+
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(NB_THREADS);
+                    comparisons = new ExecutorCompletionService<>(executor);
+                }
+                comparisons.submit(() -> differs(file, otherFile) ? file : null);
+                nbPendingComparisons++;
+                // Notify the differences that have been found so far, waiting for one if too many are pending
+                Future<AbstractFile> comparison;
+                while ((comparison = nbPendingComparisons >= MAX_PENDING_COMPARISONS ? comparisons.take() : comparisons.poll()) != null) {
+                    nbPendingComparisons--;
+                    if (!notifyDifference(comparison, listener)) {
+                        return false;
+                    }
+                }
+            }
+
+            for (; nbPendingComparisons > 0; nbPendingComparisons--) {
+                if (!notifyDifference(comparisons.take(), listener)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Notifies the listener of the file returned by the given comparison, if it differs.
+     *
+     * @return <code>false</code> if the listener stopped the comparison
+     */
+    private static boolean notifyDifference(Future<AbstractFile> comparison, DifferenceListener listener) throws InterruptedException {
+        AbstractFile file;
+        try {
+            file = comparison.get();
+        } catch (ExecutionException e) {
+            LOGGER.info("Error while comparing files", e.getCause());
+            return true;
+        }
+        return file == null || listener.fileDiffers(file);
+    }
+
+    /**
+     * Returns the given files by key of their name.
+     */
+    private Map<String, AbstractFile> getFilesByName(AbstractFile files[]) {
+        Map<String, AbstractFile> filesByName = new HashMap<>(files.length * 4 / 3 + 1);
+        for (AbstractFile file : files) {
+            if (file != null) {
+                filesByName.put(getKey(file.getName()), file);
+            }
+        }
+        return filesByName;
+    }
+
+    /**
+     * Returns the key of the given file name in the hash table of files.
+     */
+    private String getKey(String name) {
+        return caseSensitive ? name : name.toLowerCase();
+    }
+
+    /**
+     * Returns <code>true</code> if the given files must be read to be compared: files compared on their contents
+     * and folders compared on their files.
+     */
+    private boolean needsReading(AbstractFile file, AbstractFile otherFile) {
+        if (otherFile == null || file.isDirectory() != otherFile.isDirectory()) {
+            return false;
+        }
+        if (file.isDirectory()) {
+            return !file.isSymlink();
+        }
+        return criterion == Criterion.CONTENT && file.getSize() == otherFile.getSize();
+    }
+
+    /**
+     * Returns <code>true</code> if the given file differs from its counterpart, or has no counterpart.
+     * Files that can't be read are considered different.
+     *
+     * @param file a file
+     * @param otherFile the file with the same name in the other folder, <code>null</code> if there is none
+     * @return <code>true</code> if the file differs from the other file
+     */
+    private boolean differs(AbstractFile file, AbstractFile otherFile) {
+        if (otherFile == null || file.isDirectory() != otherFile.isDirectory()) {
+            return true;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            // The comparison has been stopped
+            return false;
+        }
+        try {
+            if (file.isDirectory()) {
+                // Symbolic links to folders are not followed, as they may loop
+                return !file.isSymlink() && differs(file.ls(), otherFile.ls());
+            }
+            switch (criterion) {
+                case DATE:
+                    return otherFile.getLastModifiedDate() < file.getLastModifiedDate();
+                case SIZE:
+                    return file.getSize() != otherFile.getSize();
+                default:
+                    return file.getSize() != otherFile.getSize() || !contentEquals(file, otherFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not compare " + file + " with " + otherFile, e);
+            return true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if one of the given files of a subfolder differs from its counterpart.
+     */
+    private boolean differs(AbstractFile files[], AbstractFile otherFiles[]) {
+        Map<String, AbstractFile> otherFilesByName = getFilesByName(otherFiles);
+        for (AbstractFile file : files) {
+            if (differs(file, otherFilesByName.get(getKey(file.getName())))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the given files have the same bytes, reading them simultaneously until they differ.
+     */
+    private static boolean contentEquals(AbstractFile file, AbstractFile otherFile) throws IOException {
+        byte buffer[] = BufferPool.getByteArray();
+        byte otherBuffer[] = BufferPool.getByteArray(buffer.length);
+        try (InputStream in = file.getInputStream(); InputStream otherIn = otherFile.getInputStream()) {
+            int nbRead;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    return true;
+                }
+                nbRead = StreamUtils.readUpTo(in, buffer);
+                if (StreamUtils.readUpTo(otherIn, otherBuffer, 0, nbRead) != nbRead) {
+                    return false;
+                }
+                for (int i = 0; i < nbRead; i++) {
+                    if (buffer[i] != otherBuffer[i]) {
+                        return false;
+                    }
+                }
+            } while (nbRead == buffer.length);
+            return otherIn.read() == -1;
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+            BufferPool.releaseByteArray(otherBuffer);
+        }
+    }
+}
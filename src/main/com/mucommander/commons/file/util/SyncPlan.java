@@ -0,0 +1,201 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The operations that make a destination folder a mirror of a source folder, as computed by {@link SyncPlanner}.
+ * <p>
+ * Operations are grouped by destination folder: the operations of a folder follow each other, deletions first, so
+ * that a file can be replaced by a folder of the same name and conversely. Files that are already up to date are
+ * counted, but not listed.
+ * </p>
+ */
+public class SyncPlan {
+
+    /**
+     * What is done to a file.
+     */
+    public enum Action {
+        /** The source file or folder doesn't exist in the destination and is copied */
+        COPY,
+        /** The source file differs from the destination file, which is overwritten */
+        UPDATE,
+        /** The destination file or folder doesn't exist in the source and is deleted */
+        DELETE
+    }
+
+    /**
+     * An operation of the plan.
+     */
+    public static class Operation {
+        private final Action action;
+        private final AbstractFile file;
+        private final AbstractFile destFolder;
+        private final AbstractFile destFile;
+        private final long size;
+
+        Operation(Action action, AbstractFile file, AbstractFile destFolder, AbstractFile destFile, long size) {
+            this.action = action;
+            this.file = file;
+            this.destFolder = destFolder;
+            this.destFile = destFile;
+            this.size = size;
+        }
+
+        /**
+         * Returns what is done to the file.
+         *
+         * @return what is done to the file
+         */
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Returns the file the operation applies to: the source file for {@link Action#COPY} and
+         * {@link Action#UPDATE}, the destination file for {@link Action#DELETE}.
+         *
+         * @return the file the operation applies to
+         */
+        public AbstractFile getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the destination folder containing the destination file. The same instance is returned for all the
+         * operations of a destination folder.
+         *
+         * @return the destination folder
+         */
+        public AbstractFile getDestinationFolder() {
+            return destFolder;
+        }
+
+        /**
+         * Returns the destination file, which is created, overwritten or deleted.
+         *
+         * @return the destination file
+         */
+        public AbstractFile getDestinationFile() {
+            return destFile;
+        }
+
+        /**
+         * Returns the number of bytes to transfer: the size of the file, or the total size of the files of the folder,
+         * <code>0</code> for deletions.
+         *
+         * @return the number of bytes to transfer
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return action + " " + file.getAbsolutePath();
+        }
+    }
+
+    private final AbstractFile sourceFolder;
+    private final AbstractFile destFolder;
+    private final List<Operation> operations;
+    private final int nbUpToDateFiles;
+    private final int counts[] = new int[Action.values().length];
+    private long totalSize;
+
+
+    SyncPlan(AbstractFile sourceFolder, AbstractFile destFolder, List<Operation> operations, int nbUpToDateFiles) {
+        this.sourceFolder = sourceFolder;
+        this.destFolder = destFolder;
+        this.operations = Collections.unmodifiableList(operations);
+        this.nbUpToDateFiles = nbUpToDateFiles;
+        for (Operation operation : operations) {
+            counts[operation.getAction().ordinal()]++;
+            totalSize += operation.getSize();
+        }
+    }
+
+    /**
+     * Returns the folder that is mirrored.
+     *
+     * @return the source folder
+     */
+    public AbstractFile getSourceFolder() {
+        return sourceFolder;
+    }
+
+    /**
+     * Returns the folder that is made a mirror of the source folder.
+     *
+     * @return the destination folder
+     */
+    public AbstractFile getDestinationFolder() {
+        return destFolder;
+    }
+
+    /**
+     * Returns the operations of the plan, in the order in which they must be performed.
+     *
+     * @return the operations of the plan
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Returns the number of operations of the plan performing the given action.
+     *
+     * @param action an action
+     * @return the number of operations performing the action
+     */
+    public int getNbOperations(Action action) {
+        return counts[action.ordinal()];
+    }
+
+    /**
+     * Returns the number of files that are up to date in the destination, and are skipped.
+     *
+     * @return the number of files that are skipped
+     */
+    public int getNbUpToDateFiles() {
+        return nbUpToDateFiles;
+    }
+
+    /**
+     * Returns the total number of bytes to transfer.
+     *
+     * @return the total number of bytes to transfer
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns <code>true</code> if the destination folder is already a mirror of the source folder.
+     *
+     * @return <code>true</code> if there is nothing to do
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.runtime.OsFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the {@link SyncPlan} that makes a destination folder a mirror of a source folder.
+ * <p>
+ * Both trees are walked at once by a pool of threads, each pair of folders being listed and compared by its own task,
+ * so that the latency of listing folders and reading files is waited for several of them at a time. Files are
+ * matched by name, case-insensitively on the platforms where file names are case-insensitive. Symbolic links to
+ * folders are not followed: they are copied like files.
+ * </p>
+ * <p>
+ * Checksums are cached by path, size and date for the lifetime of the application, so that planning the same
+ * synchronization again only reads the files that have been modified since.
+ * </p>
+ * <p>
+ * A SyncPlanner computes one plan at a time.
+ * </p>
+ */
+public class SyncPlanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncPlanner.class);
+
+    /** Number of folders and files compared at the same time */
+    private final static int NB_THREADS = 8;
+
+    /** Difference of date below which files are considered to have the same date, as some file systems store dates
+     * with a 2-second precision */
+    private final static long DATE_PRECISION = 2000;
+
+    /** Maximum number of checksums kept in {@link #CHECKSUMS} */
+    private final static int MAX_CACHED_CHECKSUMS = 100000;
+
+    /** Algorithm of the checksums that files are compared on */
+    private final static String CHECKSUM_ALGORITHM = "MD5";
+
+    /** Checksums of the files that have been read, by path, least recently used first */
+    private final static Map<String, CachedChecksum> CHECKSUMS = new LinkedHashMap<String, CachedChecksum>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedChecksum> eldest) {
+            return size() > MAX_CACHED_CHECKSUMS;
+        }
+    };
+
+    /**
+     * What files are compared on.
+     */
+    public enum Criterion {
+        /** Files are up to date if they have the same size and date */
+        SIZE_AND_DATE,
+        /** Files are up to date if they have the same size and checksum */
+        CHECKSUM
+    }
+
+    /** What files are compared on */
+    private final Criterion criterion;
+
+    /** Whether destination files that don't exist in the source are deleted */
+    private final boolean deleteExtraneous;
+
+    /** Whether file names are case-sensitive */
+    private final boolean caseSensitive;
+
+    /** Set to stop the tasks of the current plan that have not completed yet */
+    private volatile boolean cancelled;
+
+
+    /**
+     * Creates a new SyncPlanner with the file name case-sensitivity of the current platform.
+     *
+     * @param criterion what files are compared on
+     * @param deleteExtraneous <code>true</code> to delete the destination files that don't exist in the source
+     */
+    public SyncPlanner(Criterion criterion, boolean deleteExtraneous) {
+        this(criterion, deleteExtraneous, !(OsFamily.WINDOWS.isCurrent() || OsFamily.OS_2.isCurrent()));
+    }
+
+    /**
+     * Creates a new SyncPlanner.
+     *
+     * @param criterion what files are compared on
+     * @param deleteExtraneous <code>true</code> to delete the destination files that don't exist in the source
+     * @param caseSensitive <code>true</code> if file names are case-sensitive
+     */
+    public SyncPlanner(Criterion criterion, boolean deleteExtraneous, boolean caseSensitive) {
+        this.criterion = criterion;
+        this.deleteExtraneous = deleteExtraneous;
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Returns <code>true</code> if the given folders can't be synchronized because they are the same folder, or one
+     * of them contains the other: the destination folder would then be a part of the mirrored folder, and deleting
+     * its extraneous files could delete the source folder.
+     *
+     * @param sourceFolder the folder to mirror
+     * @param destFolder the folder to make a mirror of the source folder
+     * @return <code>true</code> if one of the folders is the other or an ancestor of it
+     */
+    public static boolean areNested(AbstractFile sourceFolder, AbstractFile destFolder) {
+        // Note: isParentOf returns true if both files are equal
+        return sourceFolder.isParentOf(destFolder) || destFolder.isParentOf(sourceFolder);
+    }
+
+    /**
+     * Computes the operations that make the destination folder a mirror of the source folder.
+     *
+     * @param sourceFolder the folder to mirror
+     * @param destFolder the folder to make a mirror of the source folder
+     * @return the operations to perform
+     * @throws IllegalArgumentException if the folders are nested, as reported by {@link #areNested(AbstractFile, AbstractFile)}
+     * @throws IOException if a folder could not be listed
+     * @throws InterruptedException if the current thread was interrupted while the folders were being compared
+     */
+    public SyncPlan plan(AbstractFile sourceFolder, AbstractFile destFolder) throws IOException, InterruptedException {
+        if (areNested(sourceFolder, destFolder)) {
+            throw new IllegalArgumentException("Cannot synchronize nested folders: " + sourceFolder + ", " + destFolder);
+        }
+        cancelled = false;
+        ForkJoinPool pool = new ForkJoinPool(NB_THREADS);
+        try {
+            FolderResult result = pool.submit(new FolderTask(sourceFolder, destFolder)).get();
+            return new SyncPlan(sourceFolder, destFolder, result.operations, result.nbUpToDateFiles);
+        } catch (ExecutionException e) {
+            // Folders that can't be listed are reported as an UncheckedIOException, possibly wrapped by the pool
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException)cause).getCause();
+                }
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            cancelled = true;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the key of the given file name in the hash table of files.
+     */
+    private String getKey(String name) {
+        return caseSensitive ? name : name.toLowerCase();
+    }
+
+    private static AbstractFile[] ls(AbstractFile folder) {
+        try {
+            return folder.ls();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is a folder whose files are walked.
+     */
+    private static boolean isFolder(AbstractFile file) {
+        return file.isDirectory() && !file.isSymlink();
+    }
+
+    /**
+     * Returns the checksum of the given file, reading it only if it has changed since it was last read.
+     */
+    private static String getChecksum(AbstractFile file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.getSize();
+        long date = file.getLastModifiedDate();
+        synchronized (CHECKSUMS) {
+            CachedChecksum cached = CHECKSUMS.get(path);
+            if (cached != null && cached.size == size && cached.date == date) {
+                return cached.checksum;
+            }
+        }
+        String checksum;
+        try {
+            checksum = file.calculateChecksum(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        synchronized (CHECKSUMS) {
+            CHECKSUMS.put(path, new CachedChecksum(size, date, checksum));
+        }
+        return checksum;
+    }
+
+
+    /**
+     * A checksum, valid as long as the file keeps the same size and date.
+     */
+    private static class CachedChecksum {
+        private final long size;
+        private final long date;
+        private final String checksum;
+
+        private CachedChecksum(long size, long date, String checksum) {
+            this.size = size;
+            this.date = date;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * The operations of a pair of folders and their subfolders.
+     */
+    private static class FolderResult {
+        private final List<SyncPlan.Operation> operations = new ArrayList<>();
+        private int nbUpToDateFiles;
+    }
+
+    /**
+     * Compares the files of a source folder with the files of the destination folder that exists with the same name.
+     */
+    private class FolderTask extends RecursiveTask<FolderResult> {
+        private final AbstractFile sourceFolder;
+        private final AbstractFile destFolder;
+
+        private FolderTask(AbstractFile sourceFolder, AbstractFile destFolder) {
+            this.sourceFolder = sourceFolder;
+            this.destFolder = destFolder;
+        }
+
+        @Override
+        protected FolderResult compute() {
+            FolderResult result = new FolderResult();
+            if (cancelled) {
+                return result;
+            }
+            AbstractFile files[] = ls(sourceFolder);
+            AbstractFile destFiles[] = ls(destFolder);
+            Map<String, AbstractFile> destFilesByName = new HashMap<>(destFiles.length * 4 / 3 + 1);
+            for (AbstractFile destFile : destFiles) {
+                destFilesByName.put(getKey(destFile.getName()), destFile);
+            }
+
+            List<AbstractFile> copies = new ArrayList<>();
+            List<ForkJoinTask<Long>> copySizes = new ArrayList<>();
+            List<AbstractFile> updateCandidates = new ArrayList<>();
+            List<ForkJoinTask<Boolean>> updates = new ArrayList<>();
+            List<FolderTask> subfolders = new ArrayList<>();
+            for (AbstractFile file : files) {
+                AbstractFile destFile = destFilesByName.remove(getKey(file.getName()));
+                if (destFile != null && isFolder(file) == isFolder(destFile)) {
+                    if (isFolder(file)) {
+                        subfolders.add(new FolderTask(file, destFile));
+                    } else if (file.getSize() != destFile.getSize()) {
+                        updateCandidates.add(file);
+                        updates.add(null);
+                    } else if (criterion == Criterion.SIZE_AND_DATE) {
+                        if (Math.abs(file.getLastModifiedDate() - destFile.getLastModifiedDate()) < DATE_PRECISION) {
+                            result.nbUpToDateFiles++;
+                        } else {
+                            updateCandidates.add(file);
+                            updates.add(null);
+                        }
+                    } else {
+                        updateCandidates.add(file);
+                        updates.add(new ChecksumTask(file, destFile).fork());
+                    }
+                    continue;
+                }
+                if (destFile != null) {
+                    // A file replaced by a folder, or conversely
+                    result.operations.add(new SyncPlan.Operation(SyncPlan.Action.DELETE, destFile, destFolder, destFile, 0));
+                }
+                copies.add(file);
+                copySizes.add(isFolder(file) ? new SizeTask(file).fork() : null);
+            }
+            if (deleteExtraneous) {
+                for (AbstractFile destFile : destFiles) {
+                    // Only the files that have not been matched remain in the table
+                    if (destFilesByName.get(getKey(destFile.getName())) == destFile) {
+                        result.operations.add(new SyncPlan.Operation(SyncPlan.Action.DELETE, destFile, destFolder, destFile, 0));
+                    }
+                }
+            }
+            for (FolderTask subfolder : subfolders) {
+                subfolder.fork();
+            }
+
+            for (int i = 0; i < copies.size(); i++) {
+                AbstractFile file = copies.get(i);
+                ForkJoinTask<Long> size = copySizes.get(i);
+                result.operations.add(new SyncPlan.Operation(SyncPlan.Action.COPY, file, destFolder, getDestFile(file),
+                        size == null ? Math.max(0, file.getSize()) : size.join()));
+            }
+            for (int i = 0; i < updateCandidates.size(); i++) {
+                AbstractFile file = updateCandidates.get(i);
+                ForkJoinTask<Boolean> differs = updates.get(i);
+                if (differs == null || differs.join()) {
+                    result.operations.add(new SyncPlan.Operation(SyncPlan.Action.UPDATE, file, destFolder, getDestFile(file), Math.max(0, file.getSize())));
+                } else {
+                    result.nbUpToDateFiles++;
+                }
+            }
+            for (FolderTask subfolder : subfolders) {
+                FolderResult subfolderResult = subfolder.join();
+                result.operations.addAll(subfolderResult.operations);
+                result.nbUpToDateFiles += subfolderResult.nbUpToDateFiles;
+            }
+            return result;
+        }
+
+        private AbstractFile getDestFile(AbstractFile file) {
+            try {
+                return destFolder.getDirectChild(file.getName());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if two files of the same size have different checksums, or can't be read.
+     */
+    private class ChecksumTask extends RecursiveTask<Boolean> {
+        private final AbstractFile file;
+        private final AbstractFile destFile;
+
+        private ChecksumTask(AbstractFile file, AbstractFile destFile) {
+            this.file = file;
+            this.destFile = destFile;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (cancelled) {
+                return true;
+            }
+            try {
+                return !getChecksum(file).equals(getChecksum(destFile));
+            } catch (IOException e) {
+                LOGGER.debug("Could not compare " + file + " with " + destFile, e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the total size of the files of a folder that is copied.
+     */
+    private class SizeTask extends RecursiveTask<Long> {
+        private final AbstractFile folder;
+
+        private SizeTask(AbstractFile folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected Long compute() {
+            if (cancelled) {
+                return 0L;
+            }
+            AbstractFile files[];
+            try {
+                files = folder.ls();
+            } catch (IOException e) {
+                // The error will be reported when the folder is copied
+                return 0L;
+            }
+            List<SizeTask> subfolders = new ArrayList<>();
+            long size = 0;
+            for (AbstractFile file : files) {
+                if (isFolder(file)) {
+                    subfolders.add((SizeTask)new SizeTask(file).fork());
+                } else {
+                    size += Math.max(0, file.getSize());
+                }
+            }
+            for (SizeTask subfolder : subfolders) {
+                size += subfolder.join();
+            }
+            return size;
+        }
+    }
+}
@@ -21,11 +21,21 @@ package com.mucommander.commons.io;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -47,7 +57,14 @@ import java.util.List;
  * used again and from being garbage-collected.</li>
  * </ul>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. Buffers are looked up by
+ * class and exact size: each thread first checks a small cache of the buffers it has released itself, then a pool
+ * shared by all threads. Neither lookup involves a global lock, so that concurrent transfers do not wait for each other
+ * to get their buffers. Buffers released by a thread that has since died are moved to the shared pool the next time a
+ * buffer is not found, once the thread has been garbage collected.
+ *
+ * <p>Pool hits, misses and rejected releases are counted, see {@link #getHitCount()}, {@link #getMissCount()} and
+ * {@link #getDiscardCount()}, to help choose the {@link #setMaxPoolSize(long) maximum pool size}.
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -56,23 +73,47 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static List<BufferContainer> bufferContainers = new ArrayList<>();
+    /** All the buffers that currently are in the pool, whether in a thread's cache or in the shared pool */
+    private static final ConcurrentMap<BufferContainer, Boolean> pooledBuffers = new ConcurrentHashMap<>();
+
+    /** Buffers that are available to all threads, by size class */
+    private static final ConcurrentMap<SizeClass, Deque<BufferContainer>> sharedBuffers = new ConcurrentHashMap<>();
+
+    /** Maximum number of buffers of each size class cached by a thread */
+    private final static int MAGAZINE_CAPACITY = 4;
+
+    /** Buffers released by the current thread, available to it only */
+    private static final ThreadLocal<Magazine> magazine = ThreadLocal.withInitial(Magazine::new);
+
+    /** Receives the references to the threads that have been using the pool, once the threads have been garbage collected */
+    private static final ReferenceQueue<Thread> deadOwners = new ReferenceQueue<>();
+
+    /** References to the owners of the magazines that have not been recovered yet, which must stay reachable to be enqueued */
+    private static final Set<OwnerReference> ownerReferences = ConcurrentHashMap.newKeySet();
 
     /** The initial default buffer size */
     final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    private static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    private static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    private static long maxPoolSize = INITIAL_POOL_LIMIT;
+    private static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
 
     /** Current combined size of all pooled buffers, in bytes */
-    private static long poolSize;
+    private static final AtomicLong poolSize = new AtomicLong();
+
+    /** Number of buffers that were found in the pool */
+    private static final LongAdder hitCount = new LongAdder();
+
+    /** Number of buffers that had to be created because none was found in the pool */
+    private static final LongAdder missCount = new LongAdder();
+
+    /** Number of released buffers that were not added to the pool because it had reached its maximum size */
+    private static final LongAdder discardCount = new LongAdder();
 
 
     /**
@@ -81,7 +122,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -99,7 +140,7 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
+    public static byte[] getByteArray(int length) {
         return (byte[])getBuffer(new ByteArrayFactory(), length);
     }
 
@@ -109,7 +150,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -127,7 +168,7 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
+    public static char[] getCharArray(int length) {
         return (char[])getBuffer(new CharArrayFactory(), length);
     }
 
@@ -137,14 +178,16 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
     /**
      * Returns a ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
      * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
-     * a new instance is created and returned.
+     * a new instance is created and returned. The returned buffer is direct, i.e. allocated outside of the Java heap,
+     * so that it can be used for channel I/O without an extra copy. Direct buffers are expensive to allocate and are
+     * only freed by the garbage collector, which makes it all the more important to release them to the pool.
      *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseByteBuffer(ByteBuffer)}.
@@ -155,7 +198,7 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
+    public static ByteBuffer getByteBuffer(int capacity) {
         return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
     }
 
@@ -166,7 +209,7 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
@@ -184,7 +227,7 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
+    public static CharBuffer getCharBuffer(int capacity) {
         return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
     }
 
@@ -196,7 +239,7 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
@@ -213,23 +256,24 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        Iterator<BufferContainer> it = bufferContainers.iterator();
-        while (it.hasNext()) {
-            BufferContainer bufferContainer = it.next();
-            Object buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if (bufferContainer.getLength() == size && (factory.matchesBufferClass(buffer.getClass()))) {
-                it.remove();
-                //bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
+    public static Object getBuffer(BufferFactory factory, int size) {
+        SizeClass sizeClass = new SizeClass(factory.getBufferClass(), size);
+
+        // Looks for a buffer in the current thread's magazine first, then in the shared pool
+        BufferContainer bufferContainer = magazine.get().poll(sizeClass);
+        if (bufferContainer == null) {
+            bufferContainer = pollSharedBuffer(sizeClass);
+            if (bufferContainer == null && recoverDeadMagazines()) {
+                bufferContainer = pollSharedBuffer(sizeClass);
             }
         }
+        if (bufferContainer != null) {
+            hitCount.increment();
+            return bufferContainer.getBuffer();
+        }
 
-        LOGGER.trace("Creating new buffer with {} size=", factory, size);
+        missCount.increment();
+        LOGGER.trace("Creating new buffer with {} size={}", factory, size);
 
         // No buffer with the same class and size found in the pool, create a new one and return it
         return factory.newBuffer(size);
@@ -248,7 +292,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
+    public static boolean releaseByteArray(byte buffer[]) {
         return releaseBuffer(buffer, new ByteArrayFactory());
     }
 
@@ -264,7 +308,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
+    public static boolean releaseCharArray(char buffer[]) {
         return releaseBuffer(buffer, new CharArrayFactory());
     }
 
@@ -280,7 +324,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
         return releaseBuffer(buffer, new ByteBufferFactory());
     }
 
@@ -296,7 +340,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
         return releaseBuffer(buffer, new CharBufferFactory());
     }
 
@@ -314,31 +358,107 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
         BufferContainer bufferContainer = factory.newBufferContainer(buffer);
 
-        if(bufferContainers.contains(bufferContainer)) {
+        if(pooledBuffers.putIfAbsent(bufferContainer, Boolean.TRUE)!=null) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
+        if(!reservePoolSize(bufferSize)) {
+            pooledBuffers.remove(bufferContainer);
+            discardCount.increment();
             LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
             LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
             return false;
         }
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
+        SizeClass sizeClass = new SizeClass(factory.getBufferClass(), bufferContainer.getLength());
+        if(!magazine.get().offer(sizeClass, bufferContainer))
+            getSharedBuffers(sizeClass).push(bufferContainer);
+
+        return true;
+    }
+
+    /**
+     * Adds the given number of bytes to the pool size, unless the pool would then exceed its maximum size.
+     *
+     * @param bufferSize size of the buffer to add to the pool, in bytes
+     * @return <code>true</code> if the pool size was increased, <code>false</code> if the pool is full
+     */
+    private static boolean reservePoolSize(long bufferSize) {
+        while(true) {
+            long currentSize = poolSize.get();
+            long limit = maxPoolSize;
+            if(limit!=-1 && currentSize+bufferSize>limit)
+                return false;
+            if(poolSize.compareAndSet(currentSize, currentSize+bufferSize))
+                return true;
+        }
+    }
 
+    /**
+     * Removes the given buffer from the pool. Returns <code>false</code> if the buffer is not in the pool anymore,
+     * which happens when the pool has been emptied by {@link #releaseAll()} while the buffer was still cached by
+     * a thread, or when the buffer has been obtained through another reference to it.
+     *
+     * @param bufferContainer the buffer to remove from the pool
+     * @return <code>true</code> if the buffer was removed and can be handed out
+     */
+    private static boolean claimBuffer(BufferContainer bufferContainer) {
+        if(pooledBuffers.remove(bufferContainer)==null)
+            return false;
+        poolSize.addAndGet(-bufferContainer.getSize());
         return true;
     }
 
+    private static Deque<BufferContainer> getSharedBuffers(SizeClass sizeClass) {
+        return sharedBuffers.computeIfAbsent(sizeClass, key -> new ConcurrentLinkedDeque<>());
+    }
+
+    /**
+     * Removes and returns a buffer of the given size class from the shared pool, <code>null</code> if there is none.
+     *
+     * @param sizeClass class and length of the requested buffer
+     * @return a buffer of the given size class, <code>null</code> if there is none in the shared pool
+     */
+    private static BufferContainer pollSharedBuffer(SizeClass sizeClass) {
+        Deque<BufferContainer> buffers = sharedBuffers.get(sizeClass);
+        if(buffers==null)
+            return null;
+
+        BufferContainer bufferContainer;
+        while((bufferContainer = buffers.poll())!=null) {
+            if(claimBuffer(bufferContainer))
+                return bufferContainer;
+        }
+        return null;
+    }
+
+    /**
+     * Moves the buffers cached by threads that have died and been garbage collected to the shared pool. Only the
+     * magazines of these threads are visited, so this is cheap when no thread has died.
+     *
+     * @return <code>true</code> if buffers were moved to the shared pool
+     */
+    private static boolean recoverDeadMagazines() {
+        boolean recovered = false;
+        Reference<? extends Thread> reference;
+        while((reference = deadOwners.poll())!=null) {
+            OwnerReference ownerReference = (OwnerReference)reference;
+            ownerReferences.remove(ownerReference);
+            recovered |= ownerReference.magazine.drain();
+        }
+        return recovered;
+    }
+
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
@@ -350,7 +470,7 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.containsKey(factory.newBufferContainer(buffer));
     }
 
 
@@ -361,7 +481,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return pooledBuffers.size();
     }
 
     /**
@@ -373,7 +493,7 @@ public class BufferPool {
      */
     public static int getBufferCount(BufferFactory factory) {
         int count = 0;
-        for (BufferContainer bufferContainer : bufferContainers) {
+        for (BufferContainer bufferContainer : pooledBuffers.keySet()) {
             if (factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
                 count ++;
             }
@@ -399,7 +519,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +530,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -433,10 +553,52 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
+    /**
+     * Returns the number of buffers returned by <code>get*Buffer</code> methods that were found in the pool, since the
+     * application was started.
+     *
+     * @return the number of buffers that were found in the pool
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of buffers returned by <code>get*Buffer</code> methods that had to be created because no
+     * buffer of the requested class and size was in the pool, since the application was started.
+     *
+     * @return the number of buffers that were not found in the pool
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of buffers that were not added to the pool by <code>release*Buffer</code> methods because
+     * the {@link #getMaxPoolSize() maximum pool size} had been reached, since the application was started.
+     * A high number of discarded buffers combined with a high number of misses indicates that the maximum pool size
+     * is too low.
+     *
+     * @return the number of buffers that were not added to the pool because it was full
+     */
+    public static long getDiscardCount() {
+        return discardCount.sum();
+    }
+
+    /**
+     * Removes all the buffers from the pool.
+     */
+    public static void releaseAll() {
+        // Buffers that are still cached by threads are discarded when they are polled, as they are no longer in the pool
+        pooledBuffers.clear();
+        sharedBuffers.clear();
+        poolSize.set(0);
+    }
+
 
     ///////////////////
     // Inner classes //
@@ -472,10 +634,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: this method is used by the pool to look up buffers
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistently with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -659,8 +828,102 @@ public class BufferPool {
         }
     }
 
-	public static synchronized void releaseAll() {
-		bufferContainers.clear();
-		poolSize = 0;
-	}
+    /**
+     * Identifies buffers that can be handed out for a given request: buffers of the same class and length.
+     */
+    private static class SizeClass {
+        private final Class<?> bufferClass;
+        private final int length;
+
+        private SizeClass(Class<?> bufferClass, int length) {
+            this.bufferClass = bufferClass;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SizeClass)) {
+                return false;
+            }
+            SizeClass sizeClass = (SizeClass)o;
+            return length == sizeClass.length && bufferClass == sizeClass.bufferClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * bufferClass.hashCode() + length;
+        }
+    }
+
+    /**
+     * Buffers released by a thread and available to that thread only, so that a thread that repeatedly gets and
+     * releases buffers does not touch any shared structure but the pool's accounting. A magazine holds at most
+     * {@link #MAGAZINE_CAPACITY} buffers of each size class; other buffers go to the shared pool.
+     *
+     * <p>A magazine is only accessed by its thread, except once that thread has died and its buffers are moved to
+     * the shared pool.
+     */
+    private static class Magazine {
+        private final Map<SizeClass, ArrayDeque<BufferContainer>> buffers = new HashMap<>();
+
+        private Magazine() {
+            ownerReferences.add(new OwnerReference(Thread.currentThread(), this));
+        }
+
+        // Note: the methods are synchronized only for the buffers to be visible to the thread that drains the magazine,
+        // the lock is never contended
+
+        private synchronized BufferContainer poll(SizeClass sizeClass) {
+            ArrayDeque<BufferContainer> sizeClassBuffers = buffers.get(sizeClass);
+            if (sizeClassBuffers == null) {
+                return null;
+            }
+            BufferContainer bufferContainer;
+            while ((bufferContainer = sizeClassBuffers.poll()) != null) {
+                if (claimBuffer(bufferContainer)) {
+                    return bufferContainer;
+                }
+            }
+            return null;
+        }
+
+        private synchronized boolean offer(SizeClass sizeClass, BufferContainer bufferContainer) {
+            ArrayDeque<BufferContainer> sizeClassBuffers = buffers.computeIfAbsent(sizeClass, key -> new ArrayDeque<>());
+            if (sizeClassBuffers.size() >= MAGAZINE_CAPACITY) {
+                return false;
+            }
+            sizeClassBuffers.push(bufferContainer);
+            return true;
+        }
+
+        /**
+         * Moves all the buffers of this magazine to the shared pool.
+         *
+         * @return <code>true</code> if this magazine contained buffers
+         */
+        private synchronized boolean drain() {
+            boolean drained = false;
+            for (Map.Entry<SizeClass, ArrayDeque<BufferContainer>> entry : buffers.entrySet()) {
+                for (BufferContainer bufferContainer : entry.getValue()) {
+                    getSharedBuffers(entry.getKey()).push(bufferContainer);
+                    drained = true;
+                }
+            }
+            buffers.clear();
+            return drained;
+        }
+    }
+
+    /**
+     * Weak reference to the thread owning a {@link Magazine}, enqueued in {@link #deadOwners} once the thread has been
+     * garbage collected, so that the buffers of the magazine can be recovered.
+     */
+    private static class OwnerReference extends WeakReference<Thread> {
+        private final Magazine magazine;
+
+        private OwnerReference(Thread owner, Magazine magazine) {
+            super(owner, deadOwners);
+            this.magazine = magazine;
+        }
+    }
 }
@@ -19,6 +19,15 @@
 package com.mucommander.commons.io;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class provides convenience static methods that operate on streams. All read/write buffers are allocated using
@@ -28,6 +37,13 @@ import java.io.*;
  */
 public class StreamUtils {
 
+    /** Runs the reading side of {@link #copyStreamPipelined(InputStream, OutputStream, int, int, long)} */
+    private final static ExecutorService PIPELINE_READERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, StreamUtils.class.getName() + " pipeline reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * This method is a shorthand for {@link #copyStream(java.io.InputStream, java.io.OutputStream, int)} called with a
      * {@link BufferPool#getDefaultBufferSize() default buffer size}.
@@ -136,6 +152,200 @@ public class StreamUtils {
         return totalRead;
     }
 
+    /**
+     * Copies up to {@code length} bytes from the given {@code InputStream} to the specified {@code OutputStream},
+     * less if the end-of-file was reached before that, reading and writing concurrently.
+     * This method does *NOT* close any of the given streams.
+     *
+     * <p>Contrary to {@link #copyStream(InputStream, OutputStream, int, long)} which alternately reads and writes,
+     * the InputStream is read by a separate thread into a ring of {@code depth} buffers, while the calling thread
+     * writes the buffers that have been filled. When one of the streams is a network stream and the other one a local
+     * file, neither side has to sit idle while the other one is working. Buffers are retrieved from {@link BufferPool}.
+     *
+     * <p>Errors are reported the same way as by {@link #copyStream(InputStream, OutputStream, byte[], long)}, whichever
+     * thread they occurred in. The InputStream is no longer used by the reading thread when this method returns,
+     * so that it can safely be closed or reused by the caller.
+     *
+     * @param in the InputStream to read from
+     * @param out the OutputStream to write to
+     * @param bufferSize size of each buffer, in bytes
+     * @param depth number of buffers, the copy is not pipelined if it is lower than 2
+     * @param length number of bytes to copy from InputStream
+     * @return the number of bytes that were copied
+     * @throws FileTransferException if something went wrong while reading from or writing to one of the provided streams
+     */
+    public static long copyStreamPipelined(InputStream in, OutputStream out, int bufferSize, int depth, long length) throws FileTransferException {
+        if (depth < 2) {
+            return copyStream(in, out, bufferSize, length);
+        }
+
+        List<byte[]> buffers = new ArrayList<>(depth);
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            byte buffer[] = BufferPool.getByteArray(bufferSize);
+            buffers.add(buffer);
+            freeBuffers.add(buffer);
+        }
+        // Can hold all the buffers plus the end-of-stream marker: the reader never waits for the writer to make room
+        BlockingQueue<PipelineChunk> filledChunks = new ArrayBlockingQueue<>(depth + 1);
+
+        PipelineReader reader = new PipelineReader(in, freeBuffers, filledChunks, length);
+        Future<?> readerTask = PIPELINE_READERS.submit(reader);
+        try {
+            long totalWritten = 0;
+            while (true) {
+                PipelineChunk chunk = takeChunk(filledChunks, readerTask);
+                if (chunk.buffer == null) {
+                    if (chunk.exception != null) {
+                        throw chunk.exception;
+                    }
+                    return totalWritten;
+                }
+
+                try {
+                    out.write(chunk.buffer, 0, chunk.length);
+                } catch(IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION, totalWritten);
+                }
+
+                totalWritten += chunk.length;
+                freeBuffers.add(chunk.buffer);
+            }
+        } finally {
+            // Wait for the reader to be done with the InputStream before handing it back to the caller
+            reader.stop();
+            while (true) {
+                try {
+                    readerTask.get();
+                    break;
+                } catch (InterruptedException ignore) {
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+
+            // Make the buffers available for further use
+            for (byte buffer[] : buffers) {
+                BufferPool.releaseByteArray(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the next chunk filled by the reader of a pipelined copy, waiting for it if necessary. Interrupts are
+     * ignored, but the reader is checked periodically: if it has terminated without publishing the end of the stream,
+     * a {@link FileTransferException#READING_SOURCE} is thrown rather than waiting forever.
+     */
+    private static PipelineChunk takeChunk(BlockingQueue<PipelineChunk> filledChunks, Future<?> readerTask) throws FileTransferException {
+        while (true) {
+            try {
+                PipelineChunk chunk = filledChunks.poll(100, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    return chunk;
+                }
+            } catch (InterruptedException ignore) {
+            }
+
+            if (readerTask.isDone()) {
+                // The reader may have published its last chunk right before terminating
+                PipelineChunk chunk = filledChunks.poll();
+                if (chunk != null) {
+                    return chunk;
+                }
+                throw new FileTransferException(FileTransferException.READING_SOURCE);
+            }
+        }
+    }
+
+    /**
+     * A buffer filled by a {@link PipelineReader}. A chunk without buffer marks the end of the stream, and carries
+     * the exception that ended it, if any.
+     */
+    private static class PipelineChunk {
+        private final byte buffer[];
+        private final int length;
+        private final FileTransferException exception;
+
+        private PipelineChunk(byte buffer[], int length, FileTransferException exception) {
+            this.buffer = buffer;
+            this.length = length;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Reads an InputStream into the free buffers of a pipelined copy, until the end of the stream or the requested
+     * length is reached, or the copy is stopped.
+     */
+    private static class PipelineReader implements Runnable {
+        private final InputStream in;
+        private final BlockingQueue<byte[]> freeBuffers;
+        private final BlockingQueue<PipelineChunk> filledChunks;
+        private long length;
+        private volatile boolean stopped;
+
+        private PipelineReader(InputStream in, BlockingQueue<byte[]> freeBuffers, BlockingQueue<PipelineChunk> filledChunks, long length) {
+            this.in = in;
+            this.freeBuffers = freeBuffers;
+            this.filledChunks = filledChunks;
+            this.length = length;
+        }
+
+        /**
+         * Stops reading, after the current read operation if any.
+         */
+        private void stop() {
+            stopped = true;
+        }
+
+        public void run() {
+            FileTransferException exception = null;
+            try {
+                int failureCounter = 0;
+                while (length > 0) {
+                    byte buffer[] = freeBuffers.poll(100, TimeUnit.MILLISECONDS);
+                    if (stopped) {
+                        return;
+                    }
+                    if (buffer == null) {
+                        continue;
+                    }
+
+                    int nbRead;
+                    try {
+                        nbRead = in.read(buffer, 0, (int)Math.min(buffer.length, length));	// the result of min will be int
+                    } catch(IOException e) {
+                        throw new FileTransferException(FileTransferException.READING_SOURCE);
+                    }
+
+                    if (nbRead < 0) {
+                        break;
+                    } else if (nbRead == 0) {
+                        failureCounter++;
+                        if (failureCounter > 10) {
+                            throw new FileTransferException(FileTransferException.UNKNOWN_REASON);
+                        }
+                        sleepIfNoRead();
+                        freeBuffers.add(buffer);
+                        continue;
+                    }
+                    failureCounter = 0;
+
+                    filledChunks.add(new PipelineChunk(buffer, nbRead, null));
+                    length -= nbRead;
+                }
+            } catch (FileTransferException e) {
+                exception = e;
+            } catch (Throwable t) {
+                // Errors thrown by the stream (OutOfMemoryError, LinkageError...) must end the copy as well
+                exception = new FileTransferException(FileTransferException.READING_SOURCE, t);
+            } finally {
+                // The queue always has room for the end-of-stream marker, which the writer waits for
+                filledChunks.offer(new PipelineChunk(null, 0, exception));
+            }
+        }
+    }
+
     /**
      * This method is a shorthand for {@link #transcode(java.io.InputStream, String, java.io.OutputStream, String, int)}
      * called with a {@link BufferPool#getDefaultBufferSize() default buffer size}.
@@ -101,7 +101,7 @@ public class ThroughputLimitInputStream extends InputStream {
 
         // Wake up any thread waiting for data to be available to have them check the new limit counter
         synchronized(this) {
-            notify();
+            notifyAll();
         }
     }
 
@@ -170,6 +170,24 @@ public class ThroughputLimitInputStream extends InputStream {
     }
 
 
+    /**
+     * Accounts for bytes that are transferred on behalf of this stream without actually being read from it, for
+     * instance with <code>FileChannel#transferTo</code>, so that they are subject to the same throughput limit.
+     * This method blocks until at least one byte can be transferred without exceeding the limit, indefinitely if the
+     * limit is 0, and returns the number of bytes that can be transferred. Those are accounted for as read.
+     * Several threads may share the limit by calling this method concurrently.
+     *
+     * @param len the number of bytes the caller wishes to transfer
+     * @return the number of bytes that can be transferred, between 1 and <code>len</code>
+     */
+    public synchronized long acquire(long len) {
+        long nbAllowed = bpsLimit>=0 ? Math.min(getNbAllowedBytes(), len) : len;
+
+        addToLimitCounter(nbAllowed);
+
+        return nbAllowed;
+    }
+
     /**
      * Checks if the current second has changed. If that's the case, updates the current second value and resets the
      * number of bytes read this second. Returns the number of milliseconds until a new second starts.
@@ -0,0 +1,141 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.compress;
+
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.io.compress.bzip2.BZip2Constants;
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses Bzip2 data, and that records in a {@link CheckpointIndex} the positions where
+ * decompression can resume, or resumes decompression from one of these positions.
+ * <p>
+ * Bzip2 blocks are independent from each other and start with a marker, which <code>CBZip2InputStream</code> looks for
+ * when it reads the data by block. A checkpoint is recorded at the start of a block, a few bytes before the marker of
+ * the block, and doesn't hold any uncompressed data.
+ * </p>
+ */
+public class Bzip2CheckpointInputStream extends InputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Bzip2CheckpointInputStream.class);
+
+    /**
+     * Number of bytes before the position of the compressed data when a block starts, at which the marker of the
+     * block is looked for when decompression resumes
+     */
+    private final static int MARKER_MARGIN = 16;
+
+    private final CBZip2InputStream in;
+
+    /** The index checkpoints are added to, <code>null</code> for none */
+    private final CheckpointIndex index;
+
+    /** Offset of the compressed data at which the underlying stream starts */
+    private final long startOffset;
+
+    /** Offset of the next byte of uncompressed data */
+    private long position;
+
+    private final byte[] oneByte = new byte[1];
+
+
+    /**
+     * Creates a stream that decompresses the given Bzip2 data from its start, the <code>BZ</code> magic included.
+     *
+     * @param in the compressed data
+     * @param index the index to add checkpoints to, <code>null</code> for none
+     * @throws IOException if the data is not in the Bzip2 format
+     */
+    public Bzip2CheckpointInputStream(InputStream in, CheckpointIndex index) throws IOException {
+        this(in, index, 0, 0);
+    }
+
+    /**
+     * Creates a stream that resumes decompression from a checkpoint. The first byte read from this stream is the byte
+     * at the checkpoint's uncompressed offset.
+     *
+     * @param in the compressed data, from the checkpoint's {@link CheckpointIndex.Checkpoint#getCompressedOffset() compressed offset}
+     * @param checkpoint a checkpoint that has been added to an index by this class
+     * @throws IOException if an error occurred while reading the compressed data
+     */
+    public Bzip2CheckpointInputStream(InputStream in, CheckpointIndex.Checkpoint checkpoint) throws IOException {
+        this(in, null, checkpoint.getCompressedOffset(), checkpoint.getUncompressedOffset());
+    }
+
+    private Bzip2CheckpointInputStream(InputStream in, CheckpointIndex index, long startOffset, long position) throws IOException {
+        this.index = index;
+        this.startOffset = startOffset;
+        this.position = position;
+        try {
+            // CBZip2InputStream reads the compressed data one byte at a time, and looks for the marker of the first
+            // block, skipping the stream header
+            this.in = new CBZip2InputStream(new BufferedInputStream(in), SplittableCompressionCodec.READ_MODE.BYBLOCK);
+        } catch (Exception e) {
+            // CBZip2InputStream is known to throw NullPointerException if the data is not properly Bzip2-encoded
+            LOGGER.info("Exception caught while creating CBZip2InputStream, throwing IOException", e);
+            throw new IOException(e);
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            }
+            if (n == BZip2Constants.END_OF_BLOCK) {
+                // The next block starts at the current position
+                if (index != null && index.isCheckpointNeeded(position)) {
+                    long compressedOffset = startOffset + Math.max(0, in.getProcessedByteCount() - MARKER_MARGIN);
+                    index.add(new CheckpointIndex.Checkpoint(compressedOffset, 0, position, null));
+                }
+                continue;
+            }
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
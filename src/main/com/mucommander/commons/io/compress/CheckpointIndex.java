@@ -0,0 +1,191 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.compress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of the positions of a compressed stream where decompression can resume, so that the uncompressed data can
+ * be read from an offset without decompressing the stream from its start.
+ * <p>
+ * Checkpoints are added while the stream is decompressed from its start, at least {@link #getSpacing() spacing}
+ * uncompressed bytes apart. When the index is full, every other checkpoint is dropped and the spacing is doubled,
+ * so that the memory used by an index is bounded whatever the size of the stream. This class is thread-safe: an
+ * index can be looked up while it is being built.
+ * </p>
+ */
+public class CheckpointIndex {
+
+    /** Maximum number of checkpoints */
+    private final int maxCheckpoints;
+
+    /** Minimum number of uncompressed bytes between two checkpoints */
+    private long spacing;
+
+    /** Checkpoints, by increasing uncompressed offset */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+
+    /**
+     * Creates an empty index.
+     *
+     * @param spacing minimum number of uncompressed bytes between two checkpoints
+     * @param maxCheckpoints maximum number of checkpoints
+     */
+    public CheckpointIndex(long spacing, int maxCheckpoints) {
+        this.spacing = spacing;
+        this.maxCheckpoints = Math.max(2, maxCheckpoints);
+    }
+
+    /**
+     * Returns the minimum number of uncompressed bytes between two checkpoints.
+     *
+     * @return the minimum number of uncompressed bytes between two checkpoints
+     */
+    public synchronized long getSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Returns <code>true</code> if a checkpoint at the given uncompressed offset would be added to the index, i.e. if
+     * it's far enough from the last checkpoint.
+     *
+     * @param uncompressedOffset an offset in the uncompressed data
+     * @return <code>true</code> if a checkpoint is wanted at that offset
+     */
+    public synchronized boolean isCheckpointNeeded(long uncompressedOffset) {
+        long lastOffset = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).getUncompressedOffset();
+        return uncompressedOffset - lastOffset >= spacing;
+    }
+
+    /**
+     * Adds a checkpoint to the index, after the checkpoints that have been added so far.
+     *
+     * @param checkpoint a checkpoint whose uncompressed offset is greater than that of the last checkpoint
+     */
+    public synchronized void add(Checkpoint checkpoint) {
+        checkpoints.add(checkpoint);
+        if (checkpoints.size() > maxCheckpoints) {
+            // Keep every other checkpoint
+            int size = 0;
+            for (int i = 1; i < checkpoints.size(); i += 2) {
+                checkpoints.set(size++, checkpoints.get(i));
+            }
+            checkpoints.subList(size, checkpoints.size()).clear();
+            spacing *= 2;
+        }
+    }
+
+    /**
+     * Returns the checkpoint to resume decompression from to read the uncompressed data at the given offset, i.e. the
+     * last checkpoint before that offset.
+     *
+     * @param uncompressedOffset an offset in the uncompressed data
+     * @return the nearest checkpoint before the offset, <code>null</code> if there is none
+     */
+    public synchronized Checkpoint getCheckpoint(long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint result = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Checkpoint checkpoint = checkpoints.get(mid);
+            if (checkpoint.getUncompressedOffset() <= uncompressedOffset) {
+                result = checkpoint;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of checkpoints in the index.
+     *
+     * @return the number of checkpoints
+     */
+    public synchronized int size() {
+        return checkpoints.size();
+    }
+
+
+    /**
+     * A position of a compressed stream where decompression can resume.
+     */
+    public static class Checkpoint {
+        private final long compressedOffset;
+        private final int bitOffset;
+        private final long uncompressedOffset;
+        private final byte[] window;
+
+        /**
+         * Creates a new checkpoint.
+         *
+         * @param compressedOffset offset of the compressed stream to resume reading from
+         * @param bitOffset number of bits of the byte at the compressed offset that precede the checkpoint
+         * @param uncompressedOffset offset of the uncompressed data at the checkpoint
+         * @param window the uncompressed data that precedes the checkpoint and is needed to resume decompression,
+         * <code>null</code> if none is needed
+         */
+        public Checkpoint(long compressedOffset, int bitOffset, long uncompressedOffset, byte[] window) {
+            this.compressedOffset = compressedOffset;
+            this.bitOffset = bitOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.window = window;
+        }
+
+        /**
+         * Returns the offset of the compressed stream to resume reading from.
+         *
+         * @return the offset of the compressed stream to resume reading from
+         */
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        /**
+         * Returns the number of bits of the byte at the {@link #getCompressedOffset() compressed offset} that
+         * precede the checkpoint, for formats whose blocks are not byte-aligned.
+         *
+         * @return the number of bits to skip at the compressed offset
+         */
+        public int getBitOffset() {
+            return bitOffset;
+        }
+
+        /**
+         * Returns the offset of the uncompressed data at the checkpoint.
+         *
+         * @return the offset of the uncompressed data at the checkpoint
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * Returns the uncompressed data that precedes the checkpoint and is needed to resume decompression.
+         *
+         * @return the uncompressed data that precedes the checkpoint, <code>null</code> if none is needed
+         */
+        public byte[] getWindow() {
+            return window;
+        }
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * An input stream that decompresses Gzip data, and that records in a {@link CheckpointIndex} the positions where
+ * decompression can resume, or resumes decompression from one of these positions.
+ * <p>
+ * Deflate blocks are not byte-aligned and depend on the 32 KB of data that precede them, which {@link java.util.zip.Inflater}
+ * doesn't give access to. This stream thus implements the Deflate algorithm itself: a checkpoint is recorded at the start
+ * of a block, with the bit offset of the block and the preceding 32 KB of uncompressed data. Like
+ * {@link java.util.zip.GZIPInputStream}, concatenated Gzip members are decompressed one after the other, and data that
+ * follows the last member is ignored. The CRC of a member is not checked when decompression resumes in the middle of it.
+ * </p>
+ */
+public class GzipCheckpointInputStream extends InputStream {
+
+    /** Number of bytes of uncompressed data that a block may refer to */
+    private final static int HISTORY_SIZE = 32768;
+
+    /** Size of the buffer of uncompressed data, that holds the history and the data that hasn't been read yet */
+    private final static int WINDOW_SIZE = 4 * HISTORY_SIZE;
+
+    private final static int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    /** Maximum number of bytes that a single code produces */
+    private final static int MAX_MATCH = 258;
+
+    private final static int MAX_BITS = 15;
+
+    /** Number of bits of the codes that are decoded with a single lookup */
+    private final static int FAST_BITS = 10;
+
+    private final static int FAST_MASK = (1 << FAST_BITS) - 1;
+
+    private final static int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+            67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private final static int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+            5, 5, 5, 5, 0};
+    private final static int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+            513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private final static int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+            10, 11, 11, 12, 12, 13, 13};
+
+    /** Order in which the lengths of the code length codes are stored */
+    private final static int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private final static Huffman FIXED_LITERALS;
+    private final static Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        for (int i = 0; i < 288; i++) {
+            lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+        }
+        int[] distanceLengths = new int[30];
+        Arrays.fill(distanceLengths, 5);
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, lengths.length);
+            FIXED_DISTANCES = new Huffman(distanceLengths, 0, distanceLengths.length);
+        } catch (ZipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private enum State {
+        /** Reading the header of a member */
+        HEADER,
+        /** Reading the header of a block */
+        BLOCK_HEADER,
+        /** Copying the data of a stored block */
+        STORED,
+        /** Decoding the data of a compressed block */
+        HUFFMAN,
+        /** Reading the trailer of a member */
+        TRAILER,
+        /** No more data */
+        END
+    }
+
+    private final InputStream in;
+
+    /** The index checkpoints are added to, <code>null</code> for none */
+    private final CheckpointIndex index;
+
+    private final byte[] inBuffer = new byte[65536];
+    private int inBufferPos;
+    private int inBufferLength;
+    private boolean eof;
+
+    /** Offset of the compressed data at which {@link #in} starts */
+    private final long startOffset;
+
+    /** Number of bytes read from {@link #in} */
+    private long nbBytesIn;
+
+    /** Bits that have been read but not consumed yet, the next bit being the lowest */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Number of zero bits added at the end of {@link #bitBuffer} after the end of the compressed data */
+    private int paddingBits;
+
+    /** Uncompressed data, as a circular buffer */
+    private final byte[] window = new byte[WINDOW_SIZE];
+
+    /** Number of bytes written to, and read from {@link #window} */
+    private long writePos, readPos;
+
+    /** Offset of the uncompressed data at which {@link #window} starts */
+    private final long outputOffset;
+
+    /** Position in {@link #window} before which blocks may not refer to data */
+    private long historyStart;
+
+    private State state = State.HEADER;
+    private boolean firstMember = true;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private Huffman literals, distances;
+
+    private final CRC32 crc = new CRC32();
+
+    /** Position in {@link #window} up to which the CRC has been calculated */
+    private long crcPos;
+
+    /** Position in {@link #window} at which the current member starts */
+    private long memberStart;
+
+    /** <code>true</code> if decompression has resumed in the current member, whose CRC can't be checked */
+    private boolean memberResumed;
+
+    private final byte[] oneByte = new byte[1];
+
+
+    /**
+     * Creates a stream that decompresses the given Gzip data from its start, without recording checkpoints.
+     *
+     * @param in the compressed data
+     */
+    public GzipCheckpointInputStream(InputStream in) {
+        this(in, (CheckpointIndex)null);
+    }
+
+    /**
+     * Creates a stream that decompresses the given Gzip data from its start.
+     *
+     * @param in the compressed data
+     * @param index the index to add checkpoints to, <code>null</code> for none
+     */
+    public GzipCheckpointInputStream(InputStream in, CheckpointIndex index) {
+        this.in = in;
+        this.index = index;
+        this.startOffset = 0;
+        this.outputOffset = 0;
+    }
+
+    /**
+     * Creates a stream that resumes decompression from a checkpoint. The first byte read from this stream is the byte
+     * at the checkpoint's uncompressed offset.
+     *
+     * @param in the compressed data, from the checkpoint's {@link CheckpointIndex.Checkpoint#getCompressedOffset() compressed offset}
+     * @param checkpoint a checkpoint that has been added to an index by this class
+     * @throws IOException if an error occurred while reading the compressed data
+     */
+    public GzipCheckpointInputStream(InputStream in, CheckpointIndex.Checkpoint checkpoint) throws IOException {
+        this.in = in;
+        this.index = null;
+        this.startOffset = checkpoint.getCompressedOffset();
+        byte[] history = checkpoint.getWindow();
+        int historyLength = history == null ? 0 : history.length;
+        if (historyLength > 0) {
+            System.arraycopy(history, 0, window, 0, historyLength);
+        }
+        this.outputOffset = checkpoint.getUncompressedOffset() - historyLength;
+        writePos = readPos = crcPos = historyLength;
+        firstMember = false;
+        memberResumed = true;
+        refill();
+        consume(checkpoint.getBitOffset());
+        state = State.BLOCK_HEADER;
+    }
+
+
+    ///////////////////
+    // Bit input     //
+    ///////////////////
+
+    /**
+     * Fills {@link #bitBuffer} with at least 57 bits, zero bits being added after the end of the compressed data.
+     */
+    private void refill() throws IOException {
+        while (bitCount <= 56) {
+            if (inBufferPos == inBufferLength) {
+                if (!eof) {
+                    inBufferLength = in.read(inBuffer, 0, inBuffer.length);
+                    inBufferPos = 0;
+                }
+                if (eof || inBufferLength <= 0) {
+                    eof = true;
+                    inBufferLength = inBufferPos = 0;
+                    paddingBits += 8;
+                    bitCount += 8;
+                    continue;
+                }
+            }
+            bitBuffer |= (inBuffer[inBufferPos++] & 0xFFL) << bitCount;
+            bitCount += 8;
+            nbBytesIn++;
+        }
+    }
+
+    /**
+     * Discards the given number of bits, which must have been read by {@link #refill()}.
+     */
+    private void consume(int n) throws EOFException {
+        bitBuffer >>>= n;
+        bitCount -= n;
+        if (bitCount < paddingBits) {
+            throw new EOFException("Unexpected end of Gzip data");
+        }
+    }
+
+    /**
+     * Returns the next <code>n</code> bits, <code>n</code> being 16 at most.
+     */
+    private int bits(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+        }
+        int value = (int)bitBuffer & ((1 << n) - 1);
+        consume(n);
+        return value;
+    }
+
+    /**
+     * Discards the bits that remain in the current byte.
+     */
+    private void alignToByte() throws EOFException {
+        consume(bitCount & 7);
+    }
+
+    /**
+     * Returns the number of bytes of compressed data that remain in {@link #bitBuffer}.
+     */
+    private int getRemainingBufferedBytes() {
+        return (bitCount - paddingBits) >> 3;
+    }
+
+    /**
+     * Returns <code>true</code> if all the compressed data has been consumed.
+     */
+    private boolean isAtEnd() throws IOException {
+        refill();
+        return bitCount == paddingBits;
+    }
+
+    private int decode(Huffman huffman) throws IOException {
+        if (bitCount < MAX_BITS) {
+            refill();
+        }
+        int entry = huffman.fast[(int)bitBuffer & FAST_MASK];
+        if (entry != 0) {
+            consume(entry & 15);
+            return entry >>> 4;
+        }
+
+        // The code is longer than FAST_BITS, it is decoded one bit at a time
+        long bits = bitBuffer;
+        int code = 0;
+        int first = 0;
+        int symbolIndex = 0;
+        for (int length = 1; length <= MAX_BITS; length++) {
+            code |= (int)bits & 1;
+            bits >>>= 1;
+            int count = huffman.count[length];
+            if (code - count < first) {
+                consume(length);
+                return huffman.symbols[symbolIndex + code - first];
+            }
+            symbolIndex += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+        throw new ZipException("Invalid Huffman code");
+    }
+
+
+    ///////////////////
+    // Decompression //
+    ///////////////////
+
+    /**
+     * Decompresses data until {@link #window} is nearly full of data that hasn't been read, or until the end.
+     */
+    private void fill() throws IOException {
+        while (state != State.END && writePos - readPos < WINDOW_SIZE - MAX_MATCH) {
+            switch (state) {
+                case HEADER:
+                    readHeader();
+                    break;
+                case BLOCK_HEADER:
+                    readBlockHeader();
+                    break;
+                case STORED:
+                    copyStored();
+                    break;
+                case HUFFMAN:
+                    inflate();
+                    break;
+                case TRAILER:
+                    readTrailer();
+                    break;
+            }
+        }
+        updateCrc();
+    }
+
+    private void readHeader() throws IOException {
+        alignToByte();
+        if (!firstMember && isAtEnd()) {
+            state = State.END;
+            return;
+        }
+        refill();
+        if ((bitBuffer & 0xFFFFFF) != 0x088B1F) {
+            if (firstMember) {
+                throw new ZipException("Not in GZIP format");
+            }
+            // Data that follows the last member is ignored
+            state = State.END;
+            return;
+        }
+        consume(24);
+        int flags = bits(8);
+        // Modification time, extra flags and OS
+        for (int i = 0; i < 6; i++) {
+            bits(8);
+        }
+        if ((flags & 4) != 0) {
+            int length = bits(16);
+            for (int i = 0; i < length; i++) {
+                bits(8);
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (bits(8) != 0);
+        }
+        if ((flags & 16) != 0) {
+            while (bits(8) != 0);
+        }
+        if ((flags & 2) != 0) {
+            bits(16);
+        }
+
+        firstMember = false;
+        memberResumed = false;
+        updateCrc();
+        crc.reset();
+        memberStart = historyStart = writePos;
+        state = State.BLOCK_HEADER;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if (index != null && index.isCheckpointNeeded(outputOffset + writePos)) {
+            addCheckpoint();
+        }
+
+        lastBlock = bits(1) == 1;
+        int type = bits(2);
+        switch (type) {
+            case 0:
+                alignToByte();
+                int length = bits(16);
+                int complement = bits(16);
+                if (length != (~complement & 0xFFFF)) {
+                    throw new ZipException("Invalid stored block length");
+                }
+                storedRemaining = length;
+                state = State.STORED;
+                break;
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = State.HUFFMAN;
+                break;
+            case 2:
+                readDynamicTables();
+                state = State.HUFFMAN;
+                break;
+            default:
+                throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void addCheckpoint() {
+        long position = (startOffset + nbBytesIn) * 8 - (bitCount - paddingBits);
+        int historyLength = (int)Math.min(HISTORY_SIZE, writePos - historyStart);
+        byte[] history = new byte[historyLength];
+        copyFromWindow(writePos - historyLength, history, 0, historyLength);
+        index.add(new CheckpointIndex.Checkpoint(position >> 3, (int)(position & 7), outputOffset + writePos, history));
+    }
+
+    private void readDynamicTables() throws IOException {
+        int nbLiterals = bits(5) + 257;
+        int nbDistances = bits(5) + 1;
+        int nbCodeLengths = bits(4) + 4;
+        if (nbLiterals > 286 || nbDistances > 30) {
+            throw new ZipException("Too many length or distance symbols");
+        }
+
+        int[] codeLengthLengths = new int[19];
+        for (int i = 0; i < nbCodeLengths; i++) {
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        Huffman codeLengths = new Huffman(codeLengthLengths, 0, 19);
+
+        int[] lengths = new int[nbLiterals + nbDistances];
+        int i = 0;
+        while (i < lengths.length) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int length = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Invalid bit length repeat");
+                }
+                length = lengths[i - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw new ZipException("Invalid bit length repeat");
+            }
+            while (repeat-- > 0) {
+                lengths[i++] = length;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code");
+        }
+
+        literals = new Huffman(lengths, 0, nbLiterals);
+        distances = new Huffman(lengths, nbLiterals, nbDistances);
+    }
+
+    private void copyStored() throws IOException {
+        int n = (int)Math.min(storedRemaining, WINDOW_SIZE - (writePos - readPos));
+        storedRemaining -= n;
+
+        // Bytes that have already been read to the bit buffer
+        while (n > 0 && getRemainingBufferedBytes() > 0) {
+            window[(int)(writePos++ & WINDOW_MASK)] = (byte)bitBuffer;
+            consume(8);
+            n--;
+        }
+        while (n > 0) {
+            if (inBufferPos == inBufferLength) {
+                inBufferLength = eof ? -1 : in.read(inBuffer, 0, inBuffer.length);
+                inBufferPos = 0;
+                if (inBufferLength <= 0) {
+                    inBufferLength = 0;
+                    throw new EOFException("Unexpected end of Gzip data");
+                }
+            }
+            int pos = (int)(writePos & WINDOW_MASK);
+            int length = Math.min(n, Math.min(inBufferLength - inBufferPos, WINDOW_SIZE - pos));
+            System.arraycopy(inBuffer, inBufferPos, window, pos, length);
+            inBufferPos += length;
+            nbBytesIn += length;
+            writePos += length;
+            n -= length;
+        }
+
+        if (storedRemaining == 0) {
+            state = lastBlock ? State.TRAILER : State.BLOCK_HEADER;
+        }
+    }
+
+    private void inflate() throws IOException {
+        byte[] window = this.window;
+        while (writePos - readPos < WINDOW_SIZE - MAX_MATCH) {
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                window[(int)(writePos++ & WINDOW_MASK)] = (byte)symbol;
+                continue;
+            }
+            if (symbol == 256) {
+                state = lastBlock ? State.TRAILER : State.BLOCK_HEADER;
+                return;
+            }
+
+            symbol -= 257;
+            if (symbol >= 29) {
+                throw new ZipException("Invalid literal/length code");
+            }
+            int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+            symbol = decode(distances);
+            if (symbol >= 30) {
+                throw new ZipException("Invalid distance code");
+            }
+            int distance = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+            if (distance > writePos - historyStart) {
+                throw new ZipException("Invalid distance too far back");
+            }
+
+            int from = (int)((writePos - distance) & WINDOW_MASK);
+            int to = (int)(writePos & WINDOW_MASK);
+            if (distance >= length && from + length <= WINDOW_SIZE && to + length <= WINDOW_SIZE) {
+                System.arraycopy(window, from, window, to, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    window[(to + i) & WINDOW_MASK] = window[(from + i) & WINDOW_MASK];
+                }
+            }
+            writePos += length;
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        alignToByte();
+        long expectedCrc = bits(16) | ((long)bits(16) << 16);
+        long expectedSize = bits(16) | ((long)bits(16) << 16);
+        updateCrc();
+        if (!memberResumed) {
+            if (expectedCrc != crc.getValue()) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            if (expectedSize != ((writePos - memberStart) & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+        state = State.HEADER;
+    }
+
+    /**
+     * Updates the CRC of the current member with the data that has been written to {@link #window} since the last update.
+     */
+    private void updateCrc() {
+        while (crcPos < writePos) {
+            int pos = (int)(crcPos & WINDOW_MASK);
+            int length = (int)Math.min(writePos - crcPos, WINDOW_SIZE - pos);
+            crc.update(window, pos, length);
+            crcPos += length;
+        }
+    }
+
+    /**
+     * Copies data of {@link #window}, from the given position.
+     */
+    private void copyFromWindow(long from, byte[] b, int off, int len) {
+        while (len > 0) {
+            int pos = (int)(from & WINDOW_MASK);
+            int length = Math.min(len, WINDOW_SIZE - pos);
+            System.arraycopy(window, pos, b, off, length);
+            from += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (readPos == writePos) {
+            fill();
+            if (readPos == writePos) {
+                return -1;
+            }
+        }
+        int n = (int)Math.min(len, writePos - readPos);
+        copyFromWindow(readPos, b, off, n);
+        readPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (readPos == writePos) {
+                fill();
+                if (readPos == writePos) {
+                    break;
+                }
+            }
+            long length = Math.min(n - skipped, writePos - readPos);
+            readPos += length;
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)(writePos - readPos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        state = State.END;
+        in.close();
+    }
+
+
+    /**
+     * A canonical Huffman code, as used by Deflate.
+     */
+    private static class Huffman {
+        /** Symbol and length of the codes of up to {@link #FAST_BITS} bits, by bit-reversed code, <code>0</code> for none */
+        private final short[] fast = new short[1 << FAST_BITS];
+        /** Number of codes of each length */
+        private final short[] count = new short[MAX_BITS + 1];
+        /** Symbols ordered by code */
+        private final short[] symbols;
+
+        private Huffman(int[] lengths, int offset, int nbSymbols) throws ZipException {
+            symbols = new short[nbSymbols];
+            for (int i = 0; i < nbSymbols; i++) {
+                count[lengths[offset + i]]++;
+            }
+            count[0] = 0;
+
+            int left = 1;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                left <<= 1;
+                left -= count[length];
+                if (left < 0) {
+                    throw new ZipException("Over-subscribed Huffman code");
+                }
+            }
+
+            int[] offsets = new int[MAX_BITS + 2];
+            for (int length = 1; length <= MAX_BITS; length++) {
+                offsets[length + 1] = offsets[length] + count[length];
+            }
+            for (int i = 0; i < nbSymbols; i++) {
+                int length = lengths[offset + i];
+                if (length != 0) {
+                    symbols[offsets[length]++] = (short)i;
+                }
+            }
+
+            int code = 0;
+            int symbolIndex = 0;
+            for (int length = 1; length <= FAST_BITS; length++) {
+                for (int i = 0; i < count[length]; i++) {
+                    int reversed = Integer.reverse(code) >>> (32 - length);
+                    short entry = (short)((symbols[symbolIndex++] << 4) | length);
+                    for (int j = reversed; j < fast.length; j += 1 << length) {
+                        fast[j] = entry;
+                    }
+                    code++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
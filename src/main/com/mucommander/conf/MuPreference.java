@@ -62,6 +62,7 @@ public enum MuPreference {
 	FOLDERS_ALWAYS_ALPHABETICAL(MuPreferences.FOLDERS_ALWAYS_ALPHABETICAL),
 	SHOW_QUICK_SEARCH_MATCHES_FIRST(MuPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST),
 	QUICK_SEARCH_TIMEOUT(MuPreferences.QUICK_SEARCH_TIMEOUT),
+	QUICK_SEARCH_FUZZY(MuPreferences.QUICK_SEARCH_FUZZY),
 	CD_FOLLOWS_SYMLINKS(MuPreferences.CD_FOLLOWS_SYMLINKS),
 	USE_BRUSHED_METAL(MuPreferences.USE_BRUSHED_METAL),
 	USE_SCREEN_MENU_BAR(MuPreferences.USE_SCREEN_MENU_BAR),
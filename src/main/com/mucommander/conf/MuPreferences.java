@@ -332,6 +332,11 @@ public class MuPreferences implements MuPreferencesAPI {
 	/** Quick search timeout in ms. No timeout if &lt;= 0 */
 	public static final int DEFAULT_QUICK_SEARCH_TIMEOUT    = 5000;
 
+	/** Controls whether quick search also matches the names that contain the typed characters in the same order. */
+	static final String QUICK_SEARCH_FUZZY                  = QUICK_SEARCH_SECTION + '.' + "fuzzy";
+	/** Default value for 'Fuzzy quick search' option. */
+	public static final boolean DEFAULT_QUICK_SEARCH_FUZZY  = false;
+
 
 
 
@@ -350,6 +355,30 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the number of files copied concurrently, by destination protocol (e.g. <code>parallel_copy.smb</code>). */
+	public static final String PARALLEL_COPY_SECTION              = "parallel_copy";
+	/** Default number of files copied concurrently to local folders. */
+	public static final int    DEFAULT_PARALLEL_COPY_LOCAL        = 4;
+	/** Default number of files copied concurrently to other destinations, 1 to copy files one after another. */
+	public static final int    DEFAULT_PARALLEL_COPY_REMOTE       = 1;
+	/** Section describing the number of folders deleted concurrently, by protocol (e.g. <code>parallel_delete.smb</code>). */
+	public static final String PARALLEL_DELETE_SECTION            = "parallel_delete";
+	/** Default number of folders deleted concurrently in local folders. */
+	public static final int    DEFAULT_PARALLEL_DELETE_LOCAL      = 4;
+	/** Default number of folders deleted concurrently on SMB shares. */
+	public static final int    DEFAULT_PARALLEL_DELETE_SMB        = 2;
+	/** Section describing the number of segments large files are transferred in, by protocol (e.g. <code>segmented_transfer.sftp</code>).
+	 *  A file is transferred in as many segments as both its source and destination protocols allow, 1 to use a single stream. */
+	public static final String SEGMENTED_TRANSFER_SECTION         = "segmented_transfer";
+	/** Default number of segments for local files and high-latency protocols (SFTP, HTTP, S3). */
+	public static final int    DEFAULT_SEGMENTED_TRANSFER         = 4;
+	/** Default number of segments for other protocols. */
+	public static final int    DEFAULT_SEGMENTED_TRANSFER_OTHER   = 1;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
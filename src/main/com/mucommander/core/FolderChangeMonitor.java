@@ -43,17 +43,21 @@ import com.mucommander.ui.main.FolderPanel;
 /**
  * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
  * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ *
+ * <p>Local folders are not polled when the OS provides native file change notifications: they are watched by
+ * {@link LocalFolderWatcher} which notifies this monitor of any change in the folder.
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
  *
  * <p>Implementation note: the monitoring is done in one single thread for all folders, each folder being monitored
- * one after another. Current folder refreshes are performed in a separate thread.
+ * one after another. This thread sleeps until notified when none of the folders needs to be polled.
+ * Current folder refreshes are performed in a separate thread.
  *
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
-public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener {
+public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener, LocalFolderWatcher.Monitor {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FolderChangeMonitor.class);
 	
     /** Folder panel we are monitoring */
@@ -68,6 +72,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Current folder's date */
     private long currentFolderDate;
 
+    /** True if the current folder is watched by {@link LocalFolderWatcher} rather than polled */
+    private volatile boolean watched;
+
     /** Folder check/refresh while be skipped while this field is set to <code>true</code> */ 
     private boolean paused;
 
@@ -97,6 +104,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** FolderChangeMonitor instances */
     private static List<FolderChangeMonitor> instances;
 
+    /** Lock the monitor thread waits on when no folder needs to be polled */
+    private final static Object pollingLock = new Object();
+
     private static OrFileFilter disableAutoRefreshFilter = new OrFileFilter();
 		
     /** Milliseconds period between checks to current folder's date */
@@ -145,6 +155,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getLastModifiedDate();
+        watchCurrentFolder();
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -159,20 +170,25 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
             monitorThread = new Thread(this, getClass().getName());
             monitorThread.setDaemon(true);
             monitorThread.start();
+        } else {
+            wakeUpMonitorThread();
         }
     }
 
 
     public void run() {
-        // TODO: it would be more efficient to use a wait/notify scheme rather than sleeping. 
-        // It would also allow folders to be checked immediately upon certain conditions such as a window becoming activated.
-
         int needToClearRefreshQueueCounter = 0;
         while (monitorThread != null) {
 			
-            // Sleep for a while
+            // Sleep for a while, or until a folder needs to be polled
             try {
-                Thread.sleep(TICK);
+                synchronized (pollingLock) {
+                    if (isPollingNeeded()) {
+                        pollingLock.wait(TICK);
+                    } else {
+                        pollingLock.wait();
+                    }
+                }
             } catch(InterruptedException ignore) {}
 			
             // Loop on instances
@@ -196,7 +212,44 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     }
 
 
+    /**
+     * Returns <code>true</code> if at least one of the monitored folders needs to be polled, i.e. is neither watched
+     * by {@link LocalFolderWatcher} nor excluded from auto-refresh, or if folders were requested to be refreshed.
+     *
+     * @return <code>true</code> if the monitor thread needs to wake up periodically
+     */
+    private static boolean isPollingNeeded() {
+        synchronized (forceRefreshFilePath) {
+            if (!forceRefreshFilePath.isEmpty()) {
+                return true;
+            }
+        }
+        // Iterating over the Vector is not atomic, it must be locked so that instances are not added or removed meanwhile
+        synchronized (instances) {
+            for (FolderChangeMonitor instance : instances) {
+                if (!instance.watched && !disableAutoRefreshFilter.match(instance.currentFolder)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up the monitor thread, so that it re-evaluates whether it needs to poll folders.
+     */
+    private static void wakeUpMonitorThread() {
+        synchronized (pollingLock) {
+            pollingLock.notifyAll();
+        }
+    }
+
+
     private void checkForMonitor(FolderChangeMonitor monitor) {
+        // Watched folders are refreshed by LocalFolderWatcher as soon as they change
+        if (monitor.watched) {
+            return;
+        }
         // Check for changes in current folder and refresh it only if :
         // - MainFrame is in the foreground
         // - monitor is not paused
@@ -228,6 +281,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      */
     public void stop() {
         monitorThread = null;
+        wakeUpMonitorThread();
     }
 
 
@@ -261,6 +315,46 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // Reset time average
         totalCheckTime = 0;
         nbSamples = 0;
+
+        watchCurrentFolder();
+    }
+
+    /**
+     * Asks {@link LocalFolderWatcher} to watch the current folder if it is a local one, falls back to polling it
+     * otherwise.
+     */
+    private void watchCurrentFolder() {
+        if (checkPeriod >= 0 && !disableAutoRefreshFilter.match(currentFolder)) {
+            watched = LocalFolderWatcher.register(this, currentFolder);
+        } else {
+            LocalFolderWatcher.unregister(this);
+            watched = false;
+        }
+        wakeUpMonitorThread();
+    }
+
+    /**
+     * Called by {@link LocalFolderWatcher} when the current folder has changed. The folder is refreshed only if the
+     * MainFrame is in the foreground, the monitor is not paused and the current folder is not being changed.
+     *
+     * @return <code>false</code> if the folder could not be refreshed now and the refresh must be retried later
+     */
+    public boolean refreshOnChange() {
+        if (!folderPanel.getMainFrame().isForegroundActive() || folderChanging || paused) {
+            return false;
+        }
+
+        LOGGER.debug(this+" ("+currentFolder.getName()+") Notified of changes in current folder, refreshing table!");
+        return folderPanel.tryRefreshCurrentFolder() != null;
+    }
+
+    /**
+     * Called by {@link LocalFolderWatcher} when the current folder can no longer be watched (e.g. it has been deleted),
+     * the folder is polled until the next folder change.
+     */
+    public void watchCancelled() {
+        watched = false;
+        wakeUpMonitorThread();
     }
 	
 	
@@ -357,6 +451,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     public void windowClosed(WindowEvent e) {
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
+        LocalFolderWatcher.unregister(this);
         LOGGER.debug("nbInstances="+instances.size());
     }
 
@@ -368,6 +463,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         synchronized (forceRefreshFilePath) {
             forceRefreshFilePath.add(path);
         }
+        wakeUpMonitorThread();
     }
 	
 }
@@ -0,0 +1,385 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+
+/**
+ * LocalFolderWatcher notifies {@link FolderChangeMonitor} instances of changes in local folders, using the native
+ * file change notifications of the OS (inotify under Linux, ReadDirectoryChangesW under Windows) through a
+ * {@link WatchService}. Contrary to polling the folder's date, this also catches changes that do not touch the
+ * folder's date, such as a file being written to.
+ *
+ * <p>Bursts of events are coalesced: a monitor is asked to refresh its folder {@link #COALESCE_DELAY} milliseconds
+ * after the first event, whatever the number of events received in the meantime. If the monitor cannot refresh its
+ * folder at that time (e.g. paused by a job or in a background window), the refresh is retried every
+ * {@link #RETRY_DELAY} milliseconds until it succeeds.
+ *
+ * <p>Implementation note: all folders are watched by a single <code>WatchService</code> and a single thread, which
+ * sleeps until an event occurs. Monitors watching the same folder share the same <code>WatchKey</code>.
+ */
+class LocalFolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFolderWatcher.class);
+
+    /** Delay in milliseconds during which events are coalesced before the folder is refreshed */
+    private final static long COALESCE_DELAY = 300;
+
+    /** Delay in milliseconds before retrying a refresh that could not be performed */
+    private final static long RETRY_DELAY = 1000;
+
+    /** Types of the network file systems, whose folders are polled */
+    private final static Set<String> NETWORK_FILE_SYSTEM_TYPES = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb3", "smbfs", "afpfs", "webdav", "ncpfs", "9p", "osxfuse", "macfuse"));
+
+    /** The shared instance, null if native notifications are not available */
+    private static LocalFolderWatcher instance;
+
+    /** True once the creation of the shared instance has been attempted */
+    private static boolean initialized;
+
+    private final WatchService watchService;
+
+    /** Keys of the watched folders, by folder path */
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+
+    /** Monitors to notify of changes, by key */
+    private final Map<WatchKey, List<Monitor>> keyMonitors = new HashMap<>();
+
+    /** Key watched by each monitor */
+    private final Map<Monitor, WatchKey> monitorKeys = new HashMap<>();
+
+    /** Monitors whose folder has changed, and the time at which they are to be refreshed */
+    private final Map<Monitor, Long> pendingRefreshes = new HashMap<>();
+
+
+    /**
+     * Notified of the changes in a watched folder, implemented by {@link FolderChangeMonitor}.
+     */
+    interface Monitor {
+
+        /**
+         * Called when the watched folder has changed.
+         *
+         * @return <code>false</code> if the folder could not be refreshed now and the refresh must be retried later
+         */
+        boolean refreshOnChange();
+
+        /**
+         * Called when the folder can no longer be watched (e.g. it has been deleted), the monitor is unregistered.
+         */
+        void watchCancelled();
+    }
+
+
+    private LocalFolderWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * Returns the shared instance, creating it and starting its thread on first call. Returns <code>null</code> if
+     * the platform has no native file change notifications: the JDK then falls back to a <code>WatchService</code>
+     * that polls every watched folder, which is no better than {@link FolderChangeMonitor}'s own polling.
+     *
+     * @return the shared instance, <code>null</code> if native notifications are not available
+     */
+    private static synchronized LocalFolderWatcher getInstance() {
+        if (!initialized) {
+            initialized = true;
+            try {
+                WatchService watchService = FileSystems.getDefault().newWatchService();
+                if (watchService.getClass().getName().contains("Polling")) {
+                    LOGGER.info("No native file change notifications, local folders will be polled");
+                    watchService.close();
+                } else {
+                    instance = new LocalFolderWatcher(watchService);
+                    Thread thread = new Thread(instance, LocalFolderWatcher.class.getName());
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.info("Could not create a WatchService, local folders will be polled", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Watches the given folder on behalf of the given monitor, replacing the folder the monitor previously watched.
+     * Returns <code>false</code> if the folder cannot be watched (not a local folder, network file system, no native
+     * notifications, OS watch limit reached...), in which case the monitor must poll the folder itself.
+     *
+     * @param monitor the monitor to notify of changes
+     * @param folder the folder to watch
+     * @return <code>true</code> if the folder is watched
+     */
+    static boolean register(Monitor monitor, AbstractFile folder) {
+        Path path = getPath(folder);
+        if (path == null || isNetworkFileSystem(path)) {
+            unregister(monitor);
+            return false;
+        }
+
+        LocalFolderWatcher watcher = getInstance();
+        if (watcher == null) {
+            return false;
+        }
+
+        return watcher.watch(monitor, path);
+    }
+
+    /**
+     * Stops watching the folder of the given monitor, if any.
+     *
+     * @param monitor the monitor that no longer needs to be notified
+     */
+    static void unregister(Monitor monitor) {
+        LocalFolderWatcher watcher;
+        synchronized (LocalFolderWatcher.class) {
+            watcher = instance;
+        }
+        if (watcher != null) {
+            synchronized (watcher) {
+                watcher.unwatch(monitor);
+            }
+        }
+    }
+
+    /**
+     * Returns the NIO path of the given folder, <code>null</code> if it is not a plain local folder. Archives are
+     * excluded: watching their contents would require watching the archive file, not a folder.
+     */
+    private static Path getPath(AbstractFile folder) {
+        if (!FileProtocols.FILE.equals(folder.getURL().getScheme()) || folder.isArchive()) {
+            return null;
+        }
+
+        Object underlyingFile = folder.getUnderlyingFileObject();
+        if (!(underlyingFile instanceof File)) {
+            return null;
+        }
+
+        try {
+            return ((File)underlyingFile).toPath();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given folder is on a network file system (NFS, SMB, sshfs...), or if its file
+     * system cannot be determined. The OS is not notified of the changes that other hosts make to such folders,
+     * which must be polled.
+     */
+    private static boolean isNetworkFileSystem(Path path) {
+        try {
+            return isNetworkFileSystemType(Files.getFileStore(path).type());
+        } catch (IOException | SecurityException e) {
+            LOGGER.debug("Could not get the file system of {}, it will be polled", path, e);
+            return true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given {@link java.nio.file.FileStore#type() file system type} is that of a
+     * network file system. FUSE file systems are included, as most of them (sshfs, gvfs...) are network ones.
+     *
+     * @param type a file system type
+     * @return <code>true</code> if the type is that of a network file system
+     */
+    static boolean isNetworkFileSystemType(String type) {
+        type = type.toLowerCase(Locale.ROOT);
+        return NETWORK_FILE_SYSTEM_TYPES.contains(type) || type.startsWith("fuse.");
+    }
+
+    private synchronized boolean watch(Monitor monitor, Path path) {
+        WatchKey key = keys.get(path);
+        if (key != null && key == monitorKeys.get(monitor)) {
+            // Already watching this folder (e.g. the folder has just been refreshed), keep the key to not miss events
+            return true;
+        }
+
+        unwatch(monitor);
+
+        key = keys.get(path);
+        if (key == null) {
+            try {
+                key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.debug("Could not watch {}, it will be polled", path, e);
+                return false;
+            }
+            keys.put(path, key);
+        }
+
+        List<Monitor> monitors = keyMonitors.get(key);
+        if (monitors == null) {
+            monitors = new ArrayList<>();
+            keyMonitors.put(key, monitors);
+        }
+        monitors.add(monitor);
+        monitorKeys.put(monitor, key);
+
+        return true;
+    }
+
+    private void unwatch(Monitor monitor) {
+        pendingRefreshes.remove(monitor);
+
+        WatchKey key = monitorKeys.remove(monitor);
+        if (key == null) {
+            return;
+        }
+
+        List<Monitor> monitors = keyMonitors.get(key);
+        monitors.remove(monitor);
+        if (monitors.isEmpty()) {
+            // No one is interested in this folder anymore
+            keyMonitors.remove(key);
+            keys.remove((Path)key.watchable());
+            key.cancel();
+        }
+    }
+
+    /**
+     * Schedules a refresh of the monitors watching the given key, and forgets the key if it is no longer valid
+     * (e.g. the folder has been deleted).
+     */
+    private synchronized void keyChanged(WatchKey key, boolean valid) {
+        List<Monitor> monitors = keyMonitors.get(key);
+        if (monitors == null) {
+            return;
+        }
+
+        long refreshTime = System.currentTimeMillis() + COALESCE_DELAY;
+        for (Monitor monitor : monitors) {
+            // Don't postpone a refresh that has already been scheduled, it would never happen if events keep coming
+            if (!pendingRefreshes.containsKey(monitor)) {
+                pendingRefreshes.put(monitor, refreshTime);
+            }
+        }
+
+        if (!valid) {
+            keyMonitors.remove(key);
+            keys.remove((Path)key.watchable());
+            for (Monitor monitor : monitors) {
+                monitorKeys.remove(monitor);
+                monitor.watchCancelled();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds until the next pending refresh, <code>-1</code> if there is none.
+     */
+    private synchronized long getNextRefreshDelay() {
+        if (pendingRefreshes.isEmpty()) {
+            return -1;
+        }
+
+        long nextRefreshTime = Long.MAX_VALUE;
+        for (long refreshTime : pendingRefreshes.values()) {
+            nextRefreshTime = Math.min(nextRefreshTime, refreshTime);
+        }
+        return Math.max(1, nextRefreshTime - System.currentTimeMillis());
+    }
+
+    /**
+     * Asks the monitors whose refresh time has come to refresh their folder. Monitors that cannot do it right away
+     * are retried later.
+     */
+    private void refreshPendingFolders() {
+        List<Monitor> dueMonitors = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Map.Entry<Monitor, Long>> iterator = pendingRefreshes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Monitor, Long> entry = iterator.next();
+                if (entry.getValue() <= now) {
+                    dueMonitors.add(entry.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+
+        // Note: monitors are called without holding the lock, as refreshing may call back register()
+        for (Monitor monitor : dueMonitors) {
+            if (!monitor.refreshOnChange()) {
+                synchronized (this) {
+                    // Don't retry if the monitor has been unregistered while it was being refreshed
+                    if (monitorKeys.containsKey(monitor) && !pendingRefreshes.containsKey(monitor)) {
+                        pendingRefreshes.put(monitor, now + RETRY_DELAY);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        while (true) {
+            try {
+                long delay = getNextRefreshDelay();
+                WatchKey key = delay < 0 ? watchService.take() : watchService.poll(delay, TimeUnit.MILLISECONDS);
+
+                // Drain all the keys signalled so far, the events themselves don't matter: the whole folder is refreshed
+                while (key != null) {
+                    key.pollEvents();
+                    keyChanged(key, key.reset());
+                    key = watchService.poll();
+                }
+
+                refreshPendingFolders();
+            } catch (InterruptedException ignore) {
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (Throwable t) {
+                LOGGER.warn("Error while watching local folders", t);
+            }
+        }
+    }
+}
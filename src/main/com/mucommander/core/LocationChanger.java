@@ -45,6 +45,7 @@ import com.mucommander.ui.dialog.QuestionDialog;
 import com.mucommander.ui.dialog.auth.AuthDialog;
 import com.mucommander.ui.dialog.file.DownloadDialog;
 import com.mucommander.ui.event.LocationManager;
+import com.mucommander.ui.event.LocationManager.FolderLoadingControl;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.utils.Callback;
@@ -325,13 +326,15 @@ public class LocationChanger {
      * @param folder folder to be made current folder
      * @param fileToSelect file to be selected after the folder has been refreshed (if it exists in the folder), can be null in which case FileTable rules will be used to select current file
      * @param changeLockedTab - flag that indicates whether to change the presented folder in the currently selected tab although it's locked
+     * @param control controls the progressive loading of the folder, see {@link LocationManager#setCurrentFolder(AbstractFile, AbstractFile, boolean, FolderLoadingControl)}
+     * @return <code>false</code> if the folder change has been cancelled before the folder could be presented
      */
-    private void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
+    private boolean setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab, FolderLoadingControl control) {
     	// Update the timestamp right before the folder is set in case FolderChangeMonitor checks the timestamp
         // while FileTable#setCurrentFolder is being called. 
         lastFolderChangeTime = System.currentTimeMillis();
         
-    	locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab);
+    	return locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab, control);
     }
 
     /**
@@ -477,12 +480,39 @@ public class LocationChanger {
 		private boolean killedByStop;
 		/** True if it is unsafe to kill this thread */
 		private boolean doNotKill;
+		/** True if the folder is presented while its children are being loaded: killing this thread then only stops
+		 * the loading of the remaining children */
+		private boolean loadingChildren;
 
 		private boolean disposed;
 
 		/** Lock object used to ensure consistency and thread safeness when killing the thread */
 		private final Object KILL_LOCK = new Object();
 
+		/** Lets the folder be loaded progressively, until this thread is killed */
+		private final FolderLoadingControl loadingControl = new FolderLoadingControl() {
+			@Override
+			public boolean folderPresenting() {
+				synchronized(KILL_LOCK) {
+					if (killed) {
+						return false;
+					}
+					// From now on, thread cannot be killed (would comprise table integrity), killing it only stops
+					// the loading of the remaining children
+					doNotKill = true;
+					loadingChildren = true;
+					return true;
+				}
+			}
+
+			@Override
+			public boolean isLoadingCancelled() {
+				synchronized(KILL_LOCK) {
+					return killed;
+				}
+			}
+		};
+
 		/* TODO branch private ArrayList childrenList; */
 
 
@@ -552,6 +582,9 @@ public class LocationChanger {
 		 *
 		 * <p>Any subsequent calls to this method will have no effect and return <code>false</code>.
 		 *
+		 * <p>Once the folder is presented while its children are being loaded, this method only stops the loading of
+		 * the remaining children: the children loaded so far are kept.
+		 *
 		 * @return true if an attempt was made to stop this thread.
 		 */
 		public boolean tryKill() {
@@ -561,6 +594,12 @@ public class LocationChanger {
 					return false;
 				}
 
+				if (loadingChildren) {
+					LOGGER.debug("Folder is presented, stopping the loading of its remaining children");
+					killed = true;
+					return true;
+				}
+
 				if (doNotKill) {
 					LOGGER.debug("Can't kill thread now, it's too late, returning");
 					return false;
@@ -820,17 +859,23 @@ public class LocationChanger {
 								LOGGER.debug("this thread has been killed, returning");
 								break;
 							}
-							// From now on, thread cannot be killed (would comprise table integrity)
-							doNotKill = true;
 						}
 
-						// files listed -> 75% complete
+						// listing files -> 75% complete
 						folderPanel.setProgressValue(75);
 
 						LOGGER.trace("calling setCurrentFolder");
 
-						// Change the file table's current folder and select the specified file (if any)
-						setCurrentFolder(folder, fileToSelect, changeLockedTab);
+						// Change the file table's current folder and select the specified file (if any). Large folders
+						// are presented while they are being listed, this thread can be killed until they are.
+						if (!setCurrentFolder(folder, fileToSelect, changeLockedTab, loadingControl)) {
+							LOGGER.debug("this thread has been killed, returning");
+							break;
+						}
+
+						synchronized(KILL_LOCK) {
+							loadingChildren = false;
+						}
 
 						// folder set -> 95% complete
 						folderPanel.setProgressValue(95);
@@ -59,6 +59,9 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     /** True when an archive is being optimized */
     protected boolean isOptimizingArchive;
 
+    /** Transfers files concurrently, null if files are transferred one after the other */
+    private ParallelFileCopier parallelCopier;
+
 
     /**
      * Creates a new <code>AbstractCopyJob</code>.
@@ -199,6 +202,60 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         return destFile;
     }
     
+    /**
+     * Transfers the given regular file to the destination, on the job's thread, showing error dialogs if needed.
+     * This implementation copies the file, it is overridden by jobs that do more than copying files.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @return <code>true</code> if the file has been transferred
+     */
+    protected boolean transferFile(AbstractFile file, AbstractFile destFile) {
+        return tryCopyFile(file, destFile, false, errorDialogTitle);
+    }
+
+    /**
+     * Transfers the given regular file to the destination, outside of the job's thread. This method is called by the
+     * workers of {@link ParallelFileCopier} and must not show any dialog: if it fails, the file is transferred again
+     * with {@link #transferFile(AbstractFile, AbstractFile)} by the job's thread.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @throws IOException if the file could not be transferred
+     */
+    protected void transferFileConcurrently(AbstractFile file, AbstractFile destFile) throws IOException {
+        copyFileConcurrently(file, destFile);
+    }
+
+    /**
+     * Schedules the transfer of the given regular file, contained in a folder being processed, on a worker thread if
+     * files are transferred concurrently to the destination and the file can be copied outside of the job's thread.
+     * {@link #awaitConcurrentTransfers(AbstractFile)} must be called before the job is done with the destination folder.
+     *
+     * @param file the file to transfer
+     * @param destFolder the destination folder
+     * @param destFile the destination file
+     * @return <code>true</code> if the file has been scheduled, <code>false</code> if it has to be transferred now
+     */
+    protected boolean transferFileLater(AbstractFile file, AbstractFile destFolder, AbstractFile destFile) {
+        if (parallelCopier == null || append || !canCopyFileConcurrently(file, destFile)) {
+            return false;
+        }
+        parallelCopier.submit(file, destFile, destFolder);
+        return true;
+    }
+
+    /**
+     * Waits for the files scheduled by {@link #transferFileLater(AbstractFile, AbstractFile, AbstractFile)} to be
+     * transferred, and transfers again the ones of the given destination folder that could not be.
+     *
+     * @param destFolder the destination folder
+     * @return <code>true</code> if all the files scheduled for the given folder have been transferred
+     */
+    protected boolean awaitConcurrentTransfers(AbstractFile destFolder) {
+        return parallelCopier == null || parallelCopier.await(destFolder);
+    }
+
     /**
      * Optimizes the given writable archive file and notifies the user in case of an error.
      *
@@ -223,4 +280,28 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         isOptimizingArchive = false;
     }
 
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        int nbThreads = ParallelFileCopier.getNbThreads(baseDestFolder);
+        if (nbThreads > 1) {
+            parallelCopier = new ParallelFileCopier(this, nbThreads);
+        }
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        if (parallelCopier != null) {
+            parallelCopier.shutdown();
+        }
+    }
+
 }
@@ -105,7 +105,7 @@ public class ArchiveJob extends TransferFileJob {
                     archiver.createEntry(entryRelativePath, file);
 
                     // Recurse on files
-                    AbstractFile subFiles[] = file.ls();
+                    AbstractFile subFiles[] = scanDirectoryThread.ls(file);
                     boolean folderComplete = true;
                     for (int i=0; i<subFiles.length && getState() != State.INTERRUPTED; i++) {
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
@@ -179,7 +179,7 @@ public class CopyJob extends AbstractCopyJob {
             do {		// Loop for retry
                 try {
                     // for each file in folder...
-                    AbstractFile subFiles[] = file.ls();
+                    AbstractFile subFiles[] = scanDirectoryThread.ls(file);
 //filesDiscovered(subFiles);
                     for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
@@ -187,6 +187,9 @@ public class CopyJob extends AbstractCopyJob {
                         processFile(subFiles[i], destFile);
                     }
 
+                    // Wait for the files that are being copied concurrently before changing the folder's date
+                    awaitConcurrentTransfers(destFile);
+
                     // Set currentDestFile back to the enclosing folder in case an overridden processFile method
                     // needs to work with the folder after calling super.processFile.
                     currentDestFile = destFile;
@@ -216,6 +219,11 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
+            // Files contained in a folder may be copied concurrently with their siblings
+            if (recurseParams != null && transferFileLater(file, destFolder, destFile)) {
+                return true;
+            }
+
             // Copy the file
             return tryCopyFile(file, destFile, append, errorDialogTitle);
         }
@@ -41,7 +41,8 @@ import com.mucommander.ui.main.MainFrame;
  * <ul>
  *  <li>moveToTrash enabled: files are moved to the trash returned by {@link DesktopManager#getTrash()}.
  *  <li>moveToTrash disabled: files are permanently deleted, i.e deleted files cannot be recovered. In this mode,
- * folders are deleted recursively
+ * folders are deleted recursively, by a {@link ParallelFileDeleter} on file systems where folders can be deleted
+ * concurrently
  * </ul>
  *
  * @author Maxence Bernard
@@ -69,6 +70,12 @@ public class DeleteJob extends FileJob {
     /** Processed files counter */
     protected long processedFilesCount;
 
+    /** Deletes folders concurrently, <code>null</code> if folders are deleted one file after the other */
+    private ParallelFileDeleter parallelDeleter;
+
+    /** Recursion parameter of the files deleted by the job's thread, after the workers failed to delete their folder */
+    private static final Object SERIAL_DELETION = new Object();
+
 
     /**
      * Creates a new DeleteJob without starting it.
@@ -117,7 +124,8 @@ public class DeleteJob extends FileJob {
      * Deletes recursively the given file or folder. 
      *
      * @param file the file or folder to delete
-     * @param recurseParams not used
+     * @param recurseParams {@link #SERIAL_DELETION} for the files of a folder deleted by the job's thread,
+     * <code>null</code> otherwise
      * 
      * @return <code>true</code> if the file has been completely deleted.
      */
@@ -135,15 +143,24 @@ public class DeleteJob extends FileJob {
             filePath = filePath.substring(getBaseSourceFolder().getAbsolutePath(false).length()+1, filePath.length());
 
             // Important: symlinks must *not* be followed -- following symlinks could have disastrous effects.
+            if (!file.isSymlink() && parallelDeleter != null && recurseParams != SERIAL_DELETION) {
+                if (parallelDeleter.delete(file)) {
+                    return true;
+                }
+                // Delete what the workers have left the usual way, showing error dialogs
+                if (getState() == State.INTERRUPTED) {
+                    return false;
+                }
+            }
             if(!file.isSymlink()) {
                 do {		// Loop for retry
                     // Delete each file in this folder
                     try {
-                        AbstractFile subFiles[] = file.ls();
+                        AbstractFile subFiles[] = scanDirectoryThread.ls(file);
                         for(int i=0; i<subFiles.length && getState() != State.INTERRUPTED; i++) {
                             // Notify job that we're starting to process this file (needed for recursive calls to processFile)
                             nextFile(subFiles[i]);
-                            processFile(subFiles[i], null);
+                            processFile(subFiles[i], SERIAL_DELETION);
                         }
                         break;
                     }
@@ -196,10 +213,26 @@ public class DeleteJob extends FileJob {
     // Overridden methods //
     ////////////////////////
 
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        if (!moveToTrash) {
+            int nbThreads = ParallelFileDeleter.getNbThreads(getBaseSourceFolder());
+            if (nbThreads > 1) {
+                parallelDeleter = new ParallelFileDeleter(this, scanDirectoryThread, nbThreads);
+            }
+        }
+    }
+
     @Override
     protected void jobStopped() {
         super.jobStopped();
 
+        if (parallelDeleter != null) {
+            parallelDeleter.shutdown();
+        }
+
         if (moveToTrash) {
             trash.waitForPendingOperations();
         }
@@ -257,7 +290,8 @@ public class DeleteJob extends FileJob {
             float result = super.getTotalPercentDone();
             return result > 15 ? 15 : result;
         }
-        float result = 1.0f*(processedFilesCount-1) / scanDirectoryThread.getFilesCount();
+        long nbDeletedFiles = processedFilesCount + (parallelDeleter == null ? 0 : parallelDeleter.getNbDeletedFiles());
+        float result = 1.0f*(nbDeletedFiles-1) / scanDirectoryThread.getFilesCount();
         if (result < 0) {
             result = 0;
         } else if (result > 1) {
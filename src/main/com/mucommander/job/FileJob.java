@@ -451,8 +451,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's threads that are potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(State.RUNNING);
@@ -484,7 +484,18 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+
+    /**
+     * Blocks the calling thread while this job is paused. This method is called by {@link #nextFile(AbstractFile)},
+     * and by the threads that process files on behalf of this job before they start processing a new file.
+     */
+    void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,8 +508,6 @@ public abstract class FileJob implements Runnable {
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
     }
 
 
@@ -174,8 +174,10 @@ public class MoveJob extends AbstractCopyJob {
                     boolean isFolderEmpty = true;
                     for (AbstractFile subFile : subFiles) {
                         // Return now if the job was interrupted, so that we do not attempt to delete this folder
-                        if (getState() == State.INTERRUPTED)
+                        if (getState() == State.INTERRUPTED) {
+                            awaitConcurrentTransfers(destFile);
                             return false;
+                        }
 
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
                         nextFile(subFile);
@@ -183,6 +185,10 @@ public class MoveJob extends AbstractCopyJob {
                             isFolderEmpty = false;
                     }
 
+                    // Wait for the files that are being moved concurrently before changing the folder's date
+                    if (!awaitConcurrentTransfers(destFile))
+                        isFolderEmpty = false;
+
                     // Only when finished with folder, set destination folder's date to match the original folder one
                     if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
                         try {
@@ -232,33 +238,62 @@ public class MoveJob extends AbstractCopyJob {
         }
         // File is a regular file, move it by copying it to the destination and then deleting it
         else  {
-            // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
-            // try the hard way by copying the file first, and then deleting the source file.
-            if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    } catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
-
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if (ret == RETRY_ACTION) {
-                            continue;
-                        }
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
+            // Files contained in a folder may be moved concurrently with their siblings
+            if (recurseParams != null && transferFileLater(file, destFolder, destFile)) {
+                return true;
             }
 
-            return false;
+            return moveFile(file, destFile, append);
         }
     }
 
+    /**
+     * Moves the given regular file by copying it to the destination and then deleting it. This is done
+     * if renameTo() was not supported or failed, or if it wasn't possible because of 'append'.
+     *
+     * @param file the file to move
+     * @param destFile the destination file
+     * @param append true to resume the copy of the file
+     * @return <code>true</code> if the file has been moved completely (copied + deleted)
+     */
+    private boolean moveFile(AbstractFile file, AbstractFile destFile, boolean append) {
+        if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
+            // Delete the source file
+            do {		// Loop for retry
+                try  {
+                    file.delete();
+                    // All OK
+                    return true;
+                } catch(IOException e) {
+                    LOGGER.debug("IOException caught", e);
+
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
+                    // Retry loops
+                    if (ret == RETRY_ACTION) {
+                        continue;
+                    }
+                    // Cancel, skip or close dialog returns false
+                    return false;
+                }
+            } while(true);
+        }
+
+        return false;
+    }
+
+    @Override
+    protected boolean transferFile(AbstractFile file, AbstractFile destFile) {
+        return moveFile(file, destFile, false);
+    }
+
+    @Override
+    protected void transferFileConcurrently(AbstractFile file, AbstractFile destFile) throws IOException {
+        // Note: if the file cannot be deleted, it will be copied again and deleted by the job's thread, which will
+        // ask the user what to do if it still fails
+        super.transferFileConcurrently(file, destFile);
+        file.delete();
+    }
+
     // This job modifies baseDestFolder and its subfolders
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
@@ -0,0 +1,222 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * ParallelFileCopier transfers regular files on behalf of an {@link AbstractCopyJob} with a bounded pool of worker
+ * threads, so that copying a large number of small files is not bound by the latency of opening, closing and setting
+ * the attributes of each file one after the other.
+ *
+ * <p>Only the transfer of independent files is performed concurrently: folders are created, file collisions resolved
+ * and folder dates set by the job's thread, which calls {@link #await(AbstractFile)} before it is done with a folder.
+ * Files that a worker failed to transfer are handed back to the job's thread which transfers them again the usual way,
+ * so that error dialogs are shown one at a time, with the usual skip and retry choices.
+ *
+ * <p>The number of workers is configured by destination protocol, see {@link #getNbThreads(AbstractFile)}.
+ */
+class ParallelFileCopier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileCopier.class);
+
+    /** Maximum number of files waiting to be transferred, per worker */
+    private final static int QUEUE_SIZE_PER_THREAD = 4;
+
+    /** The job on behalf of which files are transferred */
+    private final AbstractCopyJob job;
+
+    private final ExecutorService executor;
+
+    /** Bounds the number of files submitted and not transferred yet */
+    private final Semaphore queueSlots;
+
+    /** Number of files submitted and not transferred yet, by destination folder */
+    private final Map<AbstractFile, Integer> nbPendingTransfers = new IdentityHashMap<>();
+
+    /** Transfers that failed and have to be performed again by the job's thread, in submission order */
+    private final List<Transfer> failedTransfers = new ArrayList<>();
+
+
+    /**
+     * Creates a new ParallelFileCopier and starts its workers.
+     *
+     * @param job the job on behalf of which files are transferred
+     * @param nbThreads number of files to transfer concurrently
+     */
+    ParallelFileCopier(AbstractCopyJob job, int nbThreads) {
+        this.job = job;
+        this.queueSlots = new Semaphore(nbThreads * QUEUE_SIZE_PER_THREAD);
+        this.executor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+            Thread thread = new Thread(runnable, ParallelFileCopier.class.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the number of files to transfer concurrently to the given destination folder. The value is read from the
+     * <code>parallel_copy.&lt;protocol&gt;</code> preference, and defaults to {@link MuPreferences#DEFAULT_PARALLEL_COPY_LOCAL}
+     * for local folders and to {@link MuPreferences#DEFAULT_PARALLEL_COPY_REMOTE} for other destinations.
+     *
+     * @param destFolder the destination folder
+     * @return the number of files to transfer concurrently, 1 if files are to be transferred one after the other
+     */
+    static int getNbThreads(AbstractFile destFolder) {
+        String scheme = destFolder.getURL().getScheme();
+        int defaultValue = FileProtocols.FILE.equals(scheme) && destFolder.getParentArchive() == null ?
+                MuPreferences.DEFAULT_PARALLEL_COPY_LOCAL : MuPreferences.DEFAULT_PARALLEL_COPY_REMOTE;
+
+        String value = MuConfigurations.getPreferences().getVariable(MuPreferences.PARALLEL_COPY_SECTION + '.' + scheme);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Invalid number of parallel copies for {}: {}", scheme, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Schedules the transfer of the given file. This method blocks if too many files are already waiting for a worker.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @param destFolder the destination folder, as passed to {@link #await(AbstractFile)}
+     */
+    void submit(AbstractFile file, AbstractFile destFile, AbstractFile destFolder) {
+        queueSlots.acquireUninterruptibly();
+        Transfer transfer = new Transfer(file, destFile, destFolder);
+        synchronized (this) {
+            nbPendingTransfers.merge(destFolder, 1, Integer::sum);
+        }
+        try {
+            executor.execute(() -> transfer(transfer));
+        } catch (RejectedExecutionException e) {
+            // The job has been stopped in the meantime
+            transferDone(transfer, false);
+        }
+    }
+
+    private void transfer(Transfer transfer) {
+        boolean success = false;
+        try {
+            job.waitWhilePaused();
+            if (job.getState() != FileJob.State.INTERRUPTED) {
+                job.transferFileConcurrently(transfer.file, transfer.destFile);
+                success = true;
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Concurrent transfer of " + transfer.file + " failed, it will be retried", e);
+        } finally {
+            transferDone(transfer, success);
+        }
+    }
+
+    private synchronized void transferDone(Transfer transfer, boolean success) {
+        if (!success) {
+            failedTransfers.add(transfer);
+        }
+        // The entry is removed once the folder has no pending transfers left
+        nbPendingTransfers.computeIfPresent(transfer.destFolder, (folder, nbPending) -> nbPending > 1 ? nbPending - 1 : null);
+        queueSlots.release();
+        notifyAll();
+    }
+
+    /**
+     * Waits until the files submitted for the given destination folder have been transferred, then transfers again, on
+     * the calling thread, the ones that the workers failed to transfer. The files of other folders, for instance of the
+     * enclosing folders, keep being transferred meanwhile.
+     *
+     * @param destFolder the destination folder whose files have to be transferred
+     * @return <code>true</code> if all the files of the given folder have been transferred
+     */
+    boolean await(AbstractFile destFolder) {
+        List<Transfer> retries = new ArrayList<>();
+        synchronized (this) {
+            while (nbPendingTransfers.containsKey(destFolder)) {
+                try {
+                    wait();
+                } catch (InterruptedException ignore) {
+                }
+            }
+
+            Iterator<Transfer> iterator = failedTransfers.iterator();
+            while (iterator.hasNext()) {
+                Transfer transfer = iterator.next();
+                if (transfer.destFolder == destFolder) {
+                    retries.add(transfer);
+                    iterator.remove();
+                }
+            }
+        }
+
+        boolean success = true;
+        for (Transfer transfer : retries) {
+            if (job.getState() == FileJob.State.INTERRUPTED) {
+                return false;
+            }
+            job.nextFile(transfer.file);
+            if (!job.transferFile(transfer.file, transfer.destFile)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Stops the workers once they are done with the files they have been given. Files that have not been started
+     * yet are not transferred if the job has been interrupted.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+
+    /**
+     * A file scheduled for transfer.
+     */
+    private static class Transfer {
+        private final AbstractFile file;
+        private final AbstractFile destFile;
+        private final AbstractFile destFolder;
+
+        private Transfer(AbstractFile file, AbstractFile destFile, AbstractFile destFolder) {
+            this.file = file;
+            this.destFile = destFile;
+            this.destFolder = destFolder;
+        }
+    }
+}
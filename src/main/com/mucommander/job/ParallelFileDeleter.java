@@ -0,0 +1,244 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.job.utils.ScanDirectoryThread;
+
+/**
+ * ParallelFileDeleter deletes folders recursively on behalf of a {@link DeleteJob}, the subfolders of a folder being
+ * deleted concurrently by a bounded pool of worker threads. The files of a folder are deleted before the folder.
+ *
+ * <p>Workers don't show any dialog: a file that can't be deleted is left in place, and so are its parent folders.
+ * The job deletes what is left the usual way once the workers are done, showing error dialogs one at a time with the
+ * usual skip and retry choices. Symbolic links are deleted, not followed.
+ *
+ * <p>Rather than notifying the job of each file, workers count the deleted files in batches, and the job's current file
+ * is updated every {@link #STATUS_REFRESH_RATE_MS} milliseconds.
+ *
+ * <p>The number of workers is configured by protocol, see {@link #getNbThreads(AbstractFile)}.
+ */
+class ParallelFileDeleter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileDeleter.class);
+
+    /** Number of deleted files that workers count before adding them to {@link #nbDeletedFiles} */
+    private final static int COUNT_BATCH_SIZE = 256;
+
+    /** Interval in milliseconds between updates of the job's current file */
+    private final static long STATUS_REFRESH_RATE_MS = 200;
+
+    /** The job on behalf of which files are deleted */
+    private final DeleteJob job;
+
+    /** The scan of the deleted files, whose listings are used when available */
+    private final ScanDirectoryThread scanDirectoryThread;
+
+    private final ForkJoinPool pool;
+
+    /** Number of files and folders deleted by the workers */
+    private final AtomicLong nbDeletedFiles = new AtomicLong();
+
+    /** The last file deleted by a worker, <code>null</code> if none */
+    private volatile AbstractFile lastDeletedFile;
+
+
+    /**
+     * Creates a new ParallelFileDeleter and starts its workers.
+     *
+     * @param job the job on behalf of which files are deleted
+     * @param scanDirectoryThread the scan of the deleted files, <code>null</code> for none
+     * @param nbThreads number of folders to delete concurrently
+     */
+    ParallelFileDeleter(DeleteJob job, ScanDirectoryThread scanDirectoryThread, int nbThreads) {
+        this.job = job;
+        this.scanDirectoryThread = scanDirectoryThread;
+        this.pool = new ForkJoinPool(nbThreads);
+    }
+
+    /**
+     * Returns the number of folders to delete concurrently in the given folder. Folders are deleted concurrently in local
+     * folders and on SMB shares, outside of archives. The value is read from the <code>parallel_delete.&lt;protocol&gt;</code>
+     * preference, and defaults to {@link MuPreferences#DEFAULT_PARALLEL_DELETE_LOCAL} for local folders and to
+     * {@link MuPreferences#DEFAULT_PARALLEL_DELETE_SMB} for SMB shares.
+     *
+     * @param folder the folder whose files are deleted
+     * @return the number of folders to delete concurrently, 1 if files are to be deleted one after the other
+     */
+    static int getNbThreads(AbstractFile folder) {
+        if (folder.getParentArchive() != null) {
+            return 1;
+        }
+        String scheme = folder.getURL().getScheme();
+        int defaultValue;
+        if (FileProtocols.FILE.equals(scheme)) {
+            defaultValue = MuPreferences.DEFAULT_PARALLEL_DELETE_LOCAL;
+        } else if (FileProtocols.SMB.equals(scheme)) {
+            defaultValue = MuPreferences.DEFAULT_PARALLEL_DELETE_SMB;
+        } else {
+            return 1;
+        }
+
+        String value = MuConfigurations.getPreferences().getVariable(MuPreferences.PARALLEL_DELETE_SECTION + '.' + scheme);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Invalid number of parallel deletions for {}: {}", scheme, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Deletes the given folder recursively, and waits for it to be deleted. Symbolic links are not followed.
+     *
+     * @param folder the folder to delete
+     * @return <code>true</code> if the folder has been completely deleted, <code>false</code> if some files could not
+     * be deleted or if the job has been interrupted
+     */
+    boolean delete(AbstractFile folder) {
+        FolderTask task = new FolderTask(folder);
+        pool.execute(task);
+        while (true) {
+            try {
+                return task.get(STATUS_REFRESH_RATE_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                AbstractFile file = lastDeletedFile;
+                if (file != null) {
+                    job.nextFile(file);
+                }
+            } catch (InterruptedException ignore) {
+            } catch (ExecutionException e) {
+                LOGGER.debug("Concurrent deletion of " + folder + " failed", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files and folders that have been deleted by the workers, updated in batches.
+     *
+     * @return the number of deleted files
+     */
+    long getNbDeletedFiles() {
+        return nbDeletedFiles.get();
+    }
+
+    /**
+     * Stops the workers. Folders that are being deleted are left as they are if the job has been interrupted.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+
+    /**
+     * Deletes the files of a folder, its subfolders concurrently, then the folder itself.
+     */
+    private class FolderTask extends RecursiveTask<Boolean> {
+        private final AbstractFile folder;
+
+        private FolderTask(AbstractFile folder) {
+            this.folder = folder;
+        }
+
+        private boolean isInterrupted() {
+            job.waitWhilePaused();
+            return job.getState() == FileJob.State.INTERRUPTED;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (isInterrupted()) {
+                return false;
+            }
+            AbstractFile files[];
+            try {
+                files = scanDirectoryThread == null ? folder.ls() : scanDirectoryThread.ls(folder, false);
+            } catch (IOException e) {
+                LOGGER.debug("Could not list " + folder + ", it will be retried", e);
+                return false;
+            }
+
+            boolean success = true;
+            List<FolderTask> subfolders = new ArrayList<>();
+            int nbDeleted = 0;
+            for (AbstractFile file : files) {
+                if (file.isDirectory() && !file.isSymlink()) {
+                    FolderTask subfolder = new FolderTask(file);
+                    subfolder.fork();
+                    subfolders.add(subfolder);
+                    continue;
+                }
+                if (isInterrupted()) {
+                    success = false;
+                    break;
+                }
+                try {
+                    file.delete();
+                    lastDeletedFile = file;
+                    if (++nbDeleted == COUNT_BATCH_SIZE) {
+                        nbDeletedFiles.addAndGet(nbDeleted);
+                        nbDeleted = 0;
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Could not delete " + file + ", it will be retried", e);
+                    success = false;
+                }
+            }
+            nbDeletedFiles.addAndGet(nbDeleted);
+
+            // Files are deleted before their folder
+            for (FolderTask subfolder : subfolders) {
+                if (subfolder.join()) {
+                    nbDeletedFiles.incrementAndGet();
+                } else {
+                    success = false;
+                }
+            }
+            if (!success || isInterrupted()) {
+                return false;
+            }
+            try {
+                folder.delete();
+                lastDeletedFile = folder;
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete " + folder + ", it will be retried", e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.SyncPlan;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.utils.text.Translator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This job performs the operations of a {@link SyncPlan}, making a destination folder a mirror of a source folder.
+ * <p>
+ * Operations are performed in the order of the plan. Files are copied concurrently, like {@link CopyJob} does, the
+ * job waiting for the files of a destination folder to be copied before moving to the next folder. The progress
+ * is that of the whole plan, based on the number of bytes to transfer and the number of operations.
+ * </p>
+ */
+public class SyncJob extends AbstractCopyJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncJob.class);
+
+    /** The operations of the plan, in the same order as the job's files */
+    private final List<SyncPlan.Operation> operations;
+
+    /** The total number of bytes to transfer */
+    private final long totalSize;
+
+    /** The operation being performed */
+    private SyncPlan.Operation currentOperation;
+
+
+    /**
+     * Creates a new SyncJob without starting it.
+     *
+     * @param progressDialog dialog which shows this job's progress
+     * @param mainFrame mainFrame this job has been triggered by
+     * @param plan the operations to perform
+     */
+    public SyncJob(ProgressDialog progressDialog, MainFrame mainFrame, SyncPlan plan) {
+        super(progressDialog, mainFrame, getFiles(plan), plan.getDestinationFolder(), null, FileCollisionDialog.OVERWRITE_ACTION);
+
+        this.operations = plan.getOperations();
+        this.totalSize = plan.getTotalSize();
+        this.errorDialogTitle = Translator.get("sync_dialog.error_title");
+    }
+
+    /**
+     * Returns the files the operations of the given plan apply to, in the order of the operations.
+     */
+    private static FileSet getFiles(SyncPlan plan) {
+        FileSet files = new FileSet(plan.getSourceFolder(), plan.getOperations().size());
+        for (SyncPlan.Operation operation : plan.getOperations()) {
+            files.add(operation.getFile());
+        }
+        return files;
+    }
+
+
+    /////////////////////////////
+    // File operations methods //
+    /////////////////////////////
+
+    /**
+     * Copies the given file or folder recursively, overwriting the destination file if it exists.
+     *
+     * @return <code>true</code> if the file has been copied
+     */
+    private boolean copy(AbstractFile file, AbstractFile destFolder, AbstractFile destFile) {
+        if (file.isSymlink() && file.hasAncestor(LocalFile.class) && destFile.hasAncestor(LocalFile.class)) {
+            return tryCopySymlinkFile(file, destFile);
+        }
+
+        if (!file.isDirectory()) {
+            // Files may be copied concurrently with the other files of the destination folder
+            if (transferFileLater(file, destFolder, destFile)) {
+                return true;
+            }
+            return tryCopyFile(file, destFile, false, errorDialogTitle);
+        }
+
+        if (file.isSymlink()) {
+            // Symbolic links to folders are not followed, as they may loop
+            return false;
+        }
+
+        // create the folder in the destination folder if it doesn't exist
+        if (!(destFile.exists() && destFile.isDirectory())) {
+            do {    // Loop for retry
+                try {
+                    destFile.mkdir();
+                } catch (IOException e) {
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_create_folder", destFile.getName()));
+                    if (ret == RETRY_ACTION) {
+                        continue;
+                    }
+                    return false;
+                }
+                break;
+            } while (true);
+        }
+
+        do {    // Loop for retry
+            try {
+                AbstractFile subFiles[] = file.ls();
+                boolean success = true;
+                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
+                    // Notify job that we're starting to process this file
+                    nextFile(subFiles[i]);
+                    AbstractFile subDestFile = createDestinationFile(destFile, subFiles[i].getName());
+                    success &= subDestFile != null && copy(subFiles[i], destFile, subDestFile);
+                }
+
+                // Wait for the files that are being copied concurrently before changing the folder's date
+                success &= awaitConcurrentTransfers(destFile);
+
+                if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+                    try {
+                        destFile.setLastModifiedDate(file.getLastModifiedDate());
+                    } catch (IOException e) {
+                        LOGGER.debug("failed to change the date of " + destFile, e);
+                    }
+                }
+                return success;
+            } catch (IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", file.getName()));
+                if (ret == RETRY_ACTION) {
+                    continue;
+                }
+                return false;
+            }
+        } while (true);
+    }
+
+    /**
+     * Deletes the given file or folder recursively. Symbolic links are deleted, not followed.
+     *
+     * @return <code>true</code> if the file has been deleted
+     */
+    private boolean delete(AbstractFile file) {
+        if (file.isDirectory() && !file.isSymlink()) {
+            do {    // Loop for retry
+                try {
+                    AbstractFile subFiles[] = file.ls();
+                    for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
+                        nextFile(subFiles[i]);
+                        delete(subFiles[i]);
+                    }
+                    break;
+                } catch (IOException e) {
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", file.getName()));
+                    if (ret == RETRY_ACTION) {
+                        continue;
+                    }
+                    return false;
+                }
+            } while (true);
+        }
+        if (getState() == State.INTERRUPTED) {
+            return false;
+        }
+
+        do {    // Loop for retry
+            try {
+                file.delete();
+                return true;
+            } catch (IOException e) {
+                int ret = showErrorDialog(errorDialogTitle,
+                        Translator.get(file.isDirectory() ? "cannot_delete_folder" : "cannot_delete_file", file.getName()));
+                if (ret == RETRY_ACTION) {
+                    continue;
+                }
+                return false;
+            }
+        } while (true);
+    }
+
+
+    ////////////////////////////////////
+    // TransferFileJob implementation //
+    ////////////////////////////////////
+
+    /**
+     * Performs the operation of the plan that applies to the given file.
+     *
+     * @param file the file the current operation applies to
+     * @param recurseParams not used
+     *
+     * @return <code>true</code> if the operation has been performed
+     */
+    @Override
+    protected boolean processFile(AbstractFile file, Object recurseParams) {
+        if (getState() == State.INTERRUPTED) {
+            return false;
+        }
+
+        int index = getCurrentFileIndex();
+        currentOperation = operations.get(index);
+        AbstractFile destFolder = currentOperation.getDestinationFolder();
+        boolean success;
+        if (currentOperation.getAction() == SyncPlan.Action.DELETE) {
+            success = delete(file);
+        } else {
+            success = copy(file, destFolder, currentOperation.getDestinationFile());
+        }
+
+        // Wait for the files that are being copied concurrently before moving to another folder
+        if (index == operations.size() - 1 || operations.get(index + 1).getDestinationFolder() != destFolder) {
+            success &= awaitConcurrentTransfers(destFolder);
+        }
+        return success;
+    }
+
+    // This job modifies baseDestFolder and its subfolders
+    @Override
+    protected boolean hasFolderChanged(AbstractFile folder) {
+        return baseDestFolder.isParentOf(folder) || baseDestFolder.equals(folder);
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    public String getStatusString() {
+        if (isCheckingIntegrity()) {
+            return super.getStatusString();
+        }
+        if (currentOperation != null && currentOperation.getAction() == SyncPlan.Action.DELETE) {
+            return Translator.get("delete.deleting_file", getCurrentFilename());
+        }
+        return Translator.get("copy_dialog.copying_file", getCurrentFilename());
+    }
+
+    @Override
+    public float getTotalPercentDone() {
+        float progressByCount = getCurrentFileIndex() / (float)Math.max(1, getNbFiles());
+        if (totalSize <= 0) {
+            return progressByCount;
+        }
+        float progressBySize = (getTotalByteCounter().getByteCount() + getTotalSkippedByteCounter().getByteCount()) / (float)totalSize;
+        return Math.min(1, (progressBySize * 8 + progressByCount * 2) / 10);
+    }
+}
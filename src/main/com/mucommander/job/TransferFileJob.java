@@ -19,13 +19,31 @@
 
 package com.mucommander.job;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
@@ -35,13 +53,18 @@ import org.slf4j.LoggerFactory;
 import com.apple.eio.FileManager;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.RandomAccessOutputStream;
 import com.mucommander.commons.io.ThroughputLimitInputStream;
 import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -90,6 +113,39 @@ public abstract class TransferFileJob extends FileJob {
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
 
+    /** Number of bytes transferred at once by {@link #transferLocalFile(File, File, AbstractFile, boolean)} */
+    private final static long LOCAL_TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** Minimum size of the files that are transferred in segments, see {@link #transferSegmented(AbstractFile, AbstractFile, int)} */
+    private final static long SEGMENTED_TRANSFER_MIN_FILE_SIZE = 32 * 1024 * 1024;
+
+    /** Maximum number of segments transferred concurrently, by all jobs */
+    private final static int SEGMENTED_TRANSFER_MAX_THREADS = 16;
+
+    /** Protocols whose files are transferred in {@link MuPreferences#DEFAULT_SEGMENTED_TRANSFER} segments by default */
+    private final static Set<String> SEGMENTED_TRANSFER_PROTOCOLS = new HashSet<>(Arrays.asList(
+            FileProtocols.FILE, FileProtocols.SFTP, FileProtocols.HTTP, FileProtocols.HTTPS, FileProtocols.S3));
+
+    /** Extension of the temporary files that segments are written to */
+    private final static String PART_FILE_EXTENSION = ".part";
+
+    /** Transfers the segments of large files, shared by all jobs */
+    private final static ExecutorService SEGMENT_EXECUTOR;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SEGMENTED_TRANSFER_MAX_THREADS, SEGMENTED_TRANSFER_MAX_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, TransferFileJob.class.getName() + " segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        SEGMENT_EXECUTOR = executor;
+    }
+
+    /** Maximum size of the files that can be copied concurrently, see {@link #canCopyFileConcurrently(AbstractFile, AbstractFile)} */
+    private final static long CONCURRENT_COPY_MAX_FILE_SIZE = 1024 * 1024;
+
     /**
      * If user changed "Overwrite all readonly" in the question dialog
      */
@@ -163,6 +219,26 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
+        // Local to local copies are performed by the kernel, unless the checksum needs to be calculated on the fly
+        if (!copied && !integrityCheckEnabled) {
+            File sourceIoFile = getLocalIoFile(sourceFile);
+            File destIoFile = getLocalIoFile(destFile);
+            if (sourceIoFile != null && destIoFile != null) {
+                transferLocalFile(sourceIoFile, destIoFile, destFile, append);
+                copied = true;
+            }
+        }
+
+        // Large files are transferred in segments, over several connections, when both protocols allow random access.
+        // Resumed transfers append to the destination with a single stream.
+        if (!copied && !integrityCheckEnabled && !append) {
+            int nbSegments = getNbSegments(sourceFile, destFile);
+            if (nbSegments > 1) {
+                transferSegmented(sourceFile, destFile, nbSegments);
+                copied = true;
+            }
+        }
+
         // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
         InputStream in = null;
         if (!copied) {
@@ -289,6 +365,400 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Returns the <code>java.io.File</code> of the given file if it is a plain local file, <code>null</code> otherwise
+     * (e.g. for entries of archives).
+     */
+    private static File getLocalIoFile(AbstractFile file) {
+        AbstractFile topAncestor = file.getTopAncestor();
+        return topAncestor instanceof LocalFile ? (File)topAncestor.getUnderlyingFileObject() : null;
+    }
+
+    /**
+     * Copies a local file to another with <code>FileChannel#transferTo</code>, having the kernel copy the bytes
+     * (<code>sendfile</code> under Linux) instead of pumping them through a user-space buffer.
+     *
+     * <p>The transfer is performed in chunks of {@link #LOCAL_TRANSFER_CHUNK_SIZE} bytes. Each chunk is accounted for
+     * in the current file's byte counter and acquired from the registered {@link ThroughputLimitInputStream}, which
+     * enforces the throughput limit and blocks while the job is paused. The source channel is registered as the current
+     * InputStream, so that skipping the file or stopping the job closes it and aborts the transfer.
+     *
+     * @param sourceIoFile the source file
+     * @param destIoFile the destination file
+     * @param destFile the destination file, used to resume the transfer
+     * @param append true to resume the transfer, if the destination file is not larger than the source file
+     * @throws FileTransferException on transfer error
+     */
+    private void transferLocalFile(File sourceIoFile, File destIoFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        FileChannel sourceChannel;
+        ThroughputLimitInputStream limiter;
+        long position = 0;
+        long length;
+        boolean resume;
+        try {
+            sourceChannel = new FileInputStream(sourceIoFile).getChannel();
+            length = sourceChannel.size();
+
+            // A destination larger than the source cannot be resumed, it is overwritten
+            long destFileSize = destFile.getSize();
+            resume = append && destFileSize > 0 && destFileSize <= length;
+            if (resume) {
+                position = destFileSize;
+                // Increase current file ByteCounter by the number of bytes skipped
+                currentFileByteCounter.add(destFileSize);
+                // Increase skipped ByteCounter by the number of bytes skipped
+                currentFileSkippedByteCounter.add(destFileSize);
+            }
+
+            synchronized(this) {
+                setCurrentInputStream(Channels.newInputStream(sourceChannel));
+                limiter = tlin;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE, e);
+        }
+
+        try {
+            FileChannel destChannel;
+            try {
+                destChannel = new FileOutputStream(destIoFile, resume).getChannel();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+            }
+
+            try {
+                while (position < length) {
+                    long nbTransferred = sourceChannel.transferTo(position, limiter.acquire(Math.min(length - position, LOCAL_TRANSFER_CHUNK_SIZE)), destChannel);
+                    // The source file has been truncated in the meantime
+                    if (nbTransferred <= 0) {
+                        break;
+                    }
+                    position += nbTransferred;
+                    currentFileByteCounter.add(nbTransferred);
+                }
+            } catch (IOException e) {
+                // transferTo() doesn't tell which file failed, the source is read again to find out
+                int reason = isReadable(sourceChannel, position) ? FileTransferException.WRITING_DESTINATION : FileTransferException.READING_SOURCE;
+                throw new FileTransferException(reason, currentFileByteCounter.getByteCount(), e);
+            } finally {
+                // Close stream even if transferTo() threw an IOException
+                try {
+                    destChannel.close();
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.CLOSING_DESTINATION, e);
+                }
+            }
+        } finally {
+            closeCurrentInputStream();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if a byte can be read from the given channel at the given position.
+     */
+    private static boolean isReadable(FileChannel channel, long position) {
+        try {
+            channel.read(ByteBuffer.allocate(1), position);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of segments the given file is to be transferred in, <code>1</code> if it is to be transferred
+     * with a single stream. Only files that are large enough are transferred in segments, when the source and
+     * destination protocols allow random access and the destination can be renamed, and in as many segments as both
+     * protocols are configured for, see {@link #getMaxNbSegments(AbstractFile)}.
+     */
+    private static int getNbSegments(AbstractFile sourceFile, AbstractFile destFile) {
+        if (sourceFile.getSize() < SEGMENTED_TRANSFER_MIN_FILE_SIZE
+                || !sourceFile.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)
+                || !destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)
+                || !destFile.isFileOperationSupported(FileOperation.RENAME)
+                || destFile.getTopAncestor() instanceof AdbFile) {
+            return 1;
+        }
+        return Math.min(getMaxNbSegments(sourceFile), getMaxNbSegments(destFile));
+    }
+
+    /**
+     * Returns the maximum number of segments, i.e. of concurrent connections, files of the given protocol are
+     * transferred in. The value is read from the <code>segmented_transfer.&lt;protocol&gt;</code> preference, and
+     * defaults to {@link MuPreferences#DEFAULT_SEGMENTED_TRANSFER} for local files and the high-latency protocols
+     * (SFTP, HTTP, S3), to {@link MuPreferences#DEFAULT_SEGMENTED_TRANSFER_OTHER} for other protocols.
+     *
+     * @param file a file
+     * @return the maximum number of segments, 1 if files are to be transferred with a single stream
+     */
+    static int getMaxNbSegments(AbstractFile file) {
+        if (file.getParentArchive() != null) {
+            return 1;
+        }
+        String scheme = file.getURL().getScheme();
+        int defaultValue = SEGMENTED_TRANSFER_PROTOCOLS.contains(scheme) ?
+                MuPreferences.DEFAULT_SEGMENTED_TRANSFER : MuPreferences.DEFAULT_SEGMENTED_TRANSFER_OTHER;
+
+        String value = MuConfigurations.getPreferences().getVariable(MuPreferences.SEGMENTED_TRANSFER_SECTION + '.' + scheme);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Math.min(SEGMENTED_TRANSFER_MAX_THREADS, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Invalid number of segments for {}: {}", scheme, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Transfers a large file in segments, each one being copied on a thread of a pool shared by all jobs, with its
+     * own <code>RandomAccessInputStream</code> and <code>RandomAccessOutputStream</code>. On high-latency links,
+     * a single stream is often not enough to use all the available bandwidth.
+     *
+     * <p>The segments are written to a temporary <code>.part</code> file next to the destination, which is first given
+     * its final size and replaces the destination once all the segments have been transferred: the destination never
+     * holds the gaps of the segments that have not been transferred yet, even if the application dies in the middle of
+     * the transfer. The bytes of all the segments are accounted for in the current file's byte counter and acquired
+     * from the registered {@link ThroughputLimitInputStream}, which enforces the throughput limit and blocks while the
+     * job is paused. The segments' streams are all closed when the file is skipped or the job stopped.
+     *
+     * <p>If the transfer fails, the part of the file that has been written without gaps replaces the destination, so
+     * that the transfer can be resumed. Resumed transfers are not performed in segments.
+     *
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @param nbSegments number of segments to transfer the file in
+     * @throws FileTransferException on transfer error
+     */
+    private void transferSegmented(AbstractFile sourceFile, AbstractFile destFile, int nbSegments) throws FileTransferException {
+        long length = sourceFile.getSize();
+
+        // Allocate the part file, truncating it if it is left over from a previous transfer
+        AbstractFile partFile;
+        try {
+            partFile = destFile.getParent().getDirectChild(destFile.getName() + PART_FILE_EXTENSION);
+            try (RandomAccessOutputStream out = partFile.getRandomAccessOutputStream()) {
+                out.setLength(length);
+            }
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+        }
+
+        SegmentStreams streams = new SegmentStreams();
+        ThroughputLimitInputStream limiter;
+        synchronized(this) {
+            setCurrentInputStream(streams);
+            limiter = tlin;
+        }
+
+        long segmentSize = (length + nbSegments - 1) / nbSegments;
+        // Current position and end offset of each segment
+        long positions[] = new long[nbSegments];
+        long ends[] = new long[nbSegments];
+        List<Future<?>> segments = new ArrayList<>();
+        for (int i = 0; i < nbSegments; i++) {
+            positions[i] = Math.min(length, i * segmentSize);
+            ends[i] = Math.min(length, positions[i] + segmentSize);
+            int segment = i;
+            segments.add(SEGMENT_EXECUTOR.submit(() -> {
+                transferSegment(sourceFile, partFile, streams, limiter, positions, segment, ends[segment]);
+                return null;
+            }));
+        }
+
+        FileTransferException failure = null;
+        try {
+            for (Future<?> segment : segments) {
+                try {
+                    segment.get();
+                } catch (ExecutionException | InterruptedException | CancellationException e) {
+                    if (failure == null) {
+                        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                        failure = cause instanceof FileTransferException ? (FileTransferException)cause
+                                : new FileTransferException(FileTransferException.UNKNOWN_REASON, cause);
+                        // Abort the other segments, the ones that are waiting for a thread are not started
+                        streams.close();
+                        for (Future<?> otherSegment : segments) {
+                            otherSegment.cancel(false);
+                        }
+                    }
+                }
+            }
+        } finally {
+            closeCurrentInputStream();
+        }
+
+        if (failure != null) {
+            long contiguousLength = length;
+            for (int i = 0; i < nbSegments; i++) {
+                if (positions[i] < ends[i]) {
+                    contiguousLength = positions[i];
+                    break;
+                }
+            }
+            try {
+                try (RandomAccessOutputStream out = partFile.getRandomAccessOutputStream()) {
+                    out.setLength(contiguousLength);
+                }
+                replaceFile(partFile, destFile);
+            } catch (IOException e) {
+                LOGGER.debug("failed to keep the transferred part of "+destFile, e);
+                try {
+                    partFile.delete();
+                } catch (IOException e2) {
+                    LOGGER.debug("failed to delete "+partFile, e2);
+                }
+            }
+            throw failure;
+        }
+
+        try {
+            replaceFile(partFile, destFile);
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION, e);
+        }
+    }
+
+    /**
+     * Renames the given file to the given destination, deleting the destination first if it exists.
+     */
+    private static void replaceFile(AbstractFile file, AbstractFile destFile) throws IOException {
+        if (destFile.exists()) {
+            destFile.delete();
+        }
+        file.renameTo(destFile);
+    }
+
+    /**
+     * Copies the bytes of a segment, from <code>positions[segment]</code> to <code>end</code>, updating
+     * <code>positions[segment]</code> as bytes are written.
+     */
+    private void transferSegment(AbstractFile sourceFile, AbstractFile destFile, SegmentStreams streams,
+                                 ThroughputLimitInputStream limiter, long positions[], int segment, long end) throws FileTransferException {
+        RandomAccessInputStream in;
+        try {
+            in = streams.register(sourceFile.getRandomAccessInputStream());
+            in.seek(positions[segment]);
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE, e);
+        }
+
+        try {
+            RandomAccessOutputStream out;
+            try {
+                out = streams.register(destFile.getRandomAccessOutputStream());
+                out.seek(positions[segment]);
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+            }
+
+            byte buffer[] = BufferPool.getByteArray();
+            try {
+                while (positions[segment] < end) {
+                    int len = (int)limiter.acquire(Math.min(buffer.length, end - positions[segment]));
+                    int nbRead;
+                    try {
+                        nbRead = in.read(buffer, 0, len);
+                    } catch (IOException e) {
+                        throw new FileTransferException(FileTransferException.READING_SOURCE, e);
+                    }
+                    // The source file has been truncated in the meantime
+                    if (nbRead < 0) {
+                        throw new FileTransferException(FileTransferException.READING_SOURCE);
+                    }
+
+                    try {
+                        out.write(buffer, 0, nbRead);
+                    } catch (IOException e) {
+                        throw new FileTransferException(FileTransferException.WRITING_DESTINATION, currentFileByteCounter.getByteCount(), e);
+                    }
+                    positions[segment] += nbRead;
+                    currentFileByteCounter.add(nbRead);
+                }
+            } finally {
+                BufferPool.releaseByteArray(buffer);
+                // Close stream even if write() threw an IOException
+                try {
+                    streams.close(out);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.CLOSING_DESTINATION, e);
+                }
+            }
+        } finally {
+            try {
+                streams.close(in);
+            } catch (IOException e) {
+                LOGGER.debug("failed to close "+sourceFile, e);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given file can be copied by {@link #copyFileConcurrently(AbstractFile, AbstractFile)},
+     * i.e. outside of the job's thread. This is the case of small regular files that are neither read from nor written
+     * to an archive, when the transfer is not throttled and not checked for integrity: such a transfer is too short to
+     * be paused or skipped, and its progress is accounted for once the file has been copied.
+     *
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @return true if the file can be copied concurrently with other files
+     */
+    boolean canCopyFileConcurrently(AbstractFile sourceFile, AbstractFile destFile) {
+        if (integrityCheckEnabled || throughputLimit > 0) {
+            return false;
+        }
+
+        long size = sourceFile.getSize();
+        return size >= 0 && size <= CONCURRENT_COPY_MAX_FILE_SIZE
+                && !sourceFile.isSymlink()
+                && sourceFile.getParentArchive() == null && destFile.getParentArchive() == null
+                && !sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)
+                && !(sourceFile.getTopAncestor() instanceof AdbFile) && !(destFile.getTopAncestor() instanceof AdbFile);
+    }
+
+    /**
+     * Copies the given source file to the specified destination file, preserving its date and permissions like
+     * {@link #copyFile(AbstractFile, AbstractFile, boolean)} does. Contrary to the latter, this method can be called
+     * from any thread: the file's bytes are added to the total byte counter once it has been copied, and the transfer
+     * cannot be paused, throttled or skipped. It must only be called for files accepted by
+     * {@link #canCopyFileConcurrently(AbstractFile, AbstractFile)}.
+     *
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @throws IOException if the file could not be copied
+     */
+    void copyFileConcurrently(AbstractFile sourceFile, AbstractFile destFile) throws IOException {
+        long nbCopied = 0;
+        File sourceIoFile = getLocalIoFile(sourceFile);
+        File destIoFile = getLocalIoFile(destFile);
+        if (sourceIoFile != null && destIoFile != null) {
+            try (FileChannel sourceChannel = new FileInputStream(sourceIoFile).getChannel();
+                 FileChannel destChannel = new FileOutputStream(destIoFile).getChannel()) {
+                long length = sourceChannel.size();
+                while (nbCopied < length) {
+                    long nbTransferred = sourceChannel.transferTo(nbCopied, length - nbCopied, destChannel);
+                    if (nbTransferred <= 0) {
+                        break;
+                    }
+                    nbCopied += nbTransferred;
+                }
+            }
+        } else {
+            try (InputStream in = sourceFile.getInputStream()) {
+                CounterInputStream cin = new CounterInputStream(in);
+                destFile.copyStream(cin, false, sourceFile.getSize());
+                nbCopied = cin.getCounter().getByteCount();
+            }
+        }
+        totalByteCounter.add(nbCopied);
+
+        tryCopyFileDate(sourceFile, destFile);
+        tryCopyFilePermissions(sourceFile, destFile);
+        tryCopyFileTypeAndCreator(sourceFile, destFile);
+    }
+
     private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
         currentFileByteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
@@ -745,6 +1215,63 @@ public abstract class TransferFileJob extends FileJob {
     }
 
 
+    /**
+     * Keeps track of the streams opened by the segments of a transfer, in order to close them all when the job closes
+     * the current InputStream (file skipped or job stopped). This stream is registered as the current InputStream
+     * but is never read from.
+     */
+    private static class SegmentStreams extends InputStream {
+        private final List<Closeable> streams = new ArrayList<>();
+        private boolean closed;
+
+        /**
+         * Registers the given stream, closing it right away if the transfer has been aborted.
+         */
+        synchronized <T extends Closeable> T register(T stream) throws IOException {
+            if (closed) {
+                stream.close();
+                throw new IOException("Transfer aborted");
+            }
+            streams.add(stream);
+            return stream;
+        }
+
+        /**
+         * Closes the given stream, unless it has already been closed by {@link #close()}.
+         */
+        void close(Closeable stream) throws IOException {
+            synchronized (this) {
+                if (!streams.remove(stream)) {
+                    return;
+                }
+            }
+            stream.close();
+        }
+
+        @Override
+        public int read() {
+            return -1;
+        }
+
+        @Override
+        public void close() {
+            List<Closeable> openStreams;
+            synchronized (this) {
+                closed = true;
+                openStreams = new ArrayList<>(streams);
+                streams.clear();
+            }
+            for (Closeable stream : openStreams) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    LOGGER.debug("failed to close "+stream, e);
+                }
+            }
+        }
+    }
+
+
 //    /**
 //     * Method overridden to return a more accurate percentage of job processed so far by taking
 //     * into account the current file's processed percentage.
@@ -19,22 +19,45 @@ package com.mucommander.job.utils;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
- * Thread to calculating the total size of files
+ * Thread to calculating the total size of files.
+ * <p>
+ * The folders are scanned depth-first, in the same order as a job processes them, and their listings are kept until
+ * the job gets them with {@link #ls(AbstractFile)}: the job processes the files that have been scanned while the
+ * scan continues, and the folders are listed once. A listing is released once the job has got it, and listings are
+ * not kept beyond {@link #MAX_PENDING_FILES} files that the job hasn't got yet, the job listing those folders itself.
+ * </p>
  */
 public class ScanDirectoryThread extends Thread {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanDirectoryThread.class);
+
+    /** Maximum number of files in the listings that haven't been got by the job yet */
+    private static final int MAX_PENDING_FILES = 100000;
 
     private final FileSet files;
-    private long totalBytes;
-    private boolean completed;
+    private volatile long totalBytes;
+    private volatile boolean completed;
     private long executionTime;
-    private long filesCount;
-    private boolean interrupted;
+    private volatile long filesCount;
+    private volatile boolean interrupted;
     private final boolean calcSize;
 
+    /**
+     * Listings of the scanned folders, by folder instance. A <code>null</code> listing has already been got by the
+     * job, or has not been kept, and the folder is to be listed by the job.
+     */
+    private final Map<AbstractFile, AbstractFile[]> listings = new IdentityHashMap<>();
+
+    /** Number of files in {@link #listings} */
+    private int pendingFiles;
+
     public ScanDirectoryThread(FileSet files) {
         this.files = files;
         this.calcSize = true;
@@ -50,15 +73,21 @@ public class ScanDirectoryThread extends Thread {
     @Override
     public void run() {
         executionTime = System.currentTimeMillis();
-        for (AbstractFile file : files) {
-            if (interrupted) {
-                break;
+        try {
+            for (AbstractFile file : files) {
+                if (interrupted) {
+                    break;
+                }
+                try {
+                    processFile(file);
+                } catch (Throwable ignore) {}
+            }
+        } finally {
+            synchronized (listings) {
+                completed = true;
+                listings.notifyAll();
             }
-            try {
-                processFile(file);
-            } catch (Throwable ignore) {}
         }
-        completed = true;
         executionTime = System.currentTimeMillis() - executionTime;
 //System.out.println("finished  " + totalBytes + " " + filesCount + "    time " + executionTime);
     }
@@ -72,16 +101,40 @@ public class ScanDirectoryThread extends Thread {
             return; // ignore symlinks
         }
         if (file.isDirectory()) {
+            synchronized (listings) {
+                if (listings.containsKey(file)) {
+                    // Already listed by the job, that is ahead of the scan there and may even have deleted the folder
+                    return;
+                }
+            }
+            AbstractFile[] subfiles = null;
             try {
-                AbstractFile[] subfiles = file.ls();
-                for (AbstractFile subfile : subfiles ) {
+                subfiles = file.ls();
+            } catch (IOException e) {
+                // The folder may have been deleted by the job in the meantime
+                LOGGER.debug("Could not list " + file, e);
+            } finally {
+                // A folder that could not be listed is left to the job, that reports the error. The listing is not
+                // kept either if the job has listed the folder itself in the meantime.
+                synchronized (listings) {
+                    if (listings.containsKey(file)) {
+                        // Listed by the job in the meantime
+                    } else if (subfiles != null && pendingFiles + subfiles.length <= MAX_PENDING_FILES) {
+                        listings.put(file, subfiles);
+                        pendingFiles += subfiles.length;
+                    } else {
+                        listings.put(file, null);
+                    }
+                    listings.notifyAll();
+                }
+            }
+            if (subfiles != null) {
+                for (AbstractFile subfile : subfiles) {
                     if (interrupted) {
                         return;
                     }
                     processFile(subfile);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         } else {
             if (calcSize) {
@@ -90,6 +143,49 @@ public class ScanDirectoryThread extends Thread {
         }
     }
 
+    /**
+     * Returns the files of the given folder, as listed by the scan. The method waits for the scan to reach the
+     * folder if it hasn't been listed yet. The folder is listed by this method if the scan has not kept its listing,
+     * if it has already been returned, or if the folder is not scanned, like symbolic links.
+     *
+     * @param folder a folder of the scanned files, as returned by a previous call to this method for its parent
+     * @return the files of the folder
+     * @throws IOException if the folder could not be listed
+     */
+    public AbstractFile[] ls(AbstractFile folder) throws IOException {
+        return ls(folder, true);
+    }
+
+    /**
+     * Returns the files of the given folder, as listed by the scan if it has already been listed, or as listed by
+     * this method otherwise. This method can be called concurrently.
+     *
+     * @param folder a folder of the scanned files
+     * @param wait if <code>true</code>, waits for the scan to reach the folder, see {@link #ls(AbstractFile)}
+     * @return the files of the folder
+     * @throws IOException if the folder could not be listed
+     */
+    public AbstractFile[] ls(AbstractFile folder, boolean wait) throws IOException {
+        AbstractFile[] subfiles = null;
+        if (!folder.isSymlink()) {
+            synchronized (listings) {
+                while (wait && !listings.containsKey(folder) && !completed && !interrupted) {
+                    try {
+                        listings.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                subfiles = listings.put(folder, null);
+                if (subfiles != null) {
+                    pendingFiles -= subfiles.length;
+                }
+            }
+        }
+        return subfiles != null ? subfiles : folder.ls();
+    }
+
     public long getTotalBytes() {
         return totalBytes;
     }
@@ -103,6 +199,9 @@ public class ScanDirectoryThread extends Thread {
     }
 
     public void interrupt() {
-        interrupted = true;
+        synchronized (listings) {
+            interrupted = true;
+            listings.notifyAll();
+        }
     }
 }
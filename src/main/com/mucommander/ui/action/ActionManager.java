@@ -212,6 +212,7 @@ public class ActionManager {
 		registerAction(new ToggleSinglePanelAction.Descriptor());
     	registerAction(new SwapFoldersAction.Descriptor());
     	registerAction(new SwitchActiveTableAction.Descriptor());
+    	registerAction(new SyncFoldersAction.Descriptor());
     	registerAction(new ToggleAutoSizeAction.Descriptor());
 //    	registerAction(new ToggleColumnAction.Descriptor());
     	registerAction(new ToggleCommandBarAction.Descriptor());
@@ -18,74 +18,93 @@
 
 package com.mucommander.ui.action.impl;
 
-import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparison;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionDescriptor;
 import com.mucommander.ui.action.MuAction;
 import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.CompareFoldersWorker;
 import com.mucommander.ui.main.table.FileTable;
-import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.*;
 import java.awt.event.KeyEvent;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * This action compares the content of the 2 MainFrame's file tables and marks the files that are different.
+ * <p>
+ * Files are compared in the background by a {@link FolderComparison}, and marked as they are found. This action
+ * supports the following optional properties:
+ * <ul>
+ *   <li>
+ *     <code>criterion</code>: what files are compared on, <code>date</code> (the default, files are marked if they
+ *     are more recent than their counterpart), <code>size</code> or <code>content</code>.
+ *   </li>
+ *   <li>
+ *     If the <code>recursive</code> property is set to <code>true</code>, folders are marked if one of their files
+ *     differs, recursively.
+ *   </li>
+ * </ul>
  *
  * @author Maxence Bernard
  */
 public class CompareFoldersAction extends MuAction {
+    /** Key that controls what files are compared on */
+    private static final String CRITERION_PROPERTY_KEY = "criterion";
+    /** Key that controls whether folders are compared by their contents (defaults to false) */
+    private static final String RECURSIVE_PROPERTY_KEY = "recursive";
+
+    /** The comparisons in progress, <code>null</code> if there are none */
+    private CompareFoldersWorker workers[];
 
     CompareFoldersAction(MainFrame mainFrame, Map<String, Object> properties) {
         super(mainFrame, properties);
     }
 
-    @Override
-    public void performAction() {
-        FileTable leftTable = mainFrame.getLeftPanel().getFileTable();
-        FileTable rightTable = mainFrame.getRightPanel().getFileTable();
-
-        BaseFileTableModel leftTableModel = leftTable.getFileTableModel();
-        BaseFileTableModel rightTableModel = rightTable.getFileTableModel();
-        if (compare(leftTableModel, rightTableModel)) {
-            leftTable.repaint();
+    /**
+     * Returns the criterion configured in the action's properties, {@link FolderComparison.Criterion#DATE} if none.
+     */
+    private FolderComparison.Criterion getCriterion() {
+        Object o = getValue(CRITERION_PROPERTY_KEY);
+        if (o == null) {
+            return FolderComparison.Criterion.DATE;
         }
-        if (compare(rightTableModel, leftTableModel)) {
-            rightTable.repaint();
+        try {
+            return FolderComparison.Criterion.valueOf(o.toString().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return FolderComparison.Criterion.DATE;
         }
-
-        // Notify registered listeners that currently marked files have changed on the file tables
-        leftTable.fireMarkedFilesChangedEvent();
-        rightTable.fireMarkedFilesChangedEvent();
     }
 
-    private boolean compare(BaseFileTableModel firstTableModel, BaseFileTableModel secondTableModel) {
-        boolean result = false;
-        int nbFilesFirst = firstTableModel.getFileCount();
-        int nbFilesSecond = secondTableModel.getFileCount();
+    /**
+     * Returns <code>true</code> if the action's properties require folders to be compared by their contents.
+     */
+    private boolean isRecursive() {
+        Object o = getValue(RECURSIVE_PROPERTY_KEY);
+        return o != null && (o instanceof Boolean ? (Boolean)o : Boolean.parseBoolean(o.toString()));
+    }
 
-        for (int i = 0; i < nbFilesFirst; i++) {
-            AbstractFile tempFile = firstTableModel.getFileAt(i);
-            if (tempFile.isDirectory()) {
-                continue;
+    @Override
+    public void performAction() {
+        // Cancel the previous comparison if it's still in progress
+        if (workers != null) {
+            for (CompareFoldersWorker worker : workers) {
+                worker.cancel(true);
             }
+        }
 
-            String tempFileName = tempFile.getName();
-            int fileIndex = -1;
-            for (int j = 0; j < nbFilesSecond; j++) {
-                if (secondTableModel.getFileAt(j).getName().equals(tempFileName)) {
-                    fileIndex = j;
-                    break;
-                }
-            }
-            if (fileIndex < 0 || secondTableModel.getFileAt(fileIndex).getLastModifiedDate() < tempFile.getLastModifiedDate()) {
-                firstTableModel.setFileMarked(tempFile, true);
-                result = true;
-            }
+        FileTable leftTable = mainFrame.getLeftPanel().getFileTable();
+        FileTable rightTable = mainFrame.getRightPanel().getFileTable();
+        FolderComparison comparison = new FolderComparison(getCriterion(), isRecursive());
+        workers = new CompareFoldersWorker[] {
+                new CompareFoldersWorker(leftTable, rightTable, comparison),
+                new CompareFoldersWorker(rightTable, leftTable, comparison)
+        };
+        for (CompareFoldersWorker worker : workers) {
+            worker.execute();
         }
-        return result;
     }
 
 	@Override
@@ -0,0 +1,194 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.action.impl;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.SyncPlan;
+import com.mucommander.commons.file.util.SyncPlanner;
+import com.mucommander.job.SyncJob;
+import com.mucommander.ui.action.AbstractActionDescriptor;
+import com.mucommander.ui.action.ActionCategory;
+import com.mucommander.ui.action.ActionDescriptor;
+import com.mucommander.ui.action.MuAction;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.utils.text.SizeFormat;
+import com.mucommander.utils.text.Translator;
+
+import javax.swing.*;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This action makes the folder of the inactive panel a mirror of the folder of the active panel.
+ * <p>
+ * Both folders are compared in the background, then the operations to perform are summarized to the user, and
+ * performed by a {@link SyncJob} once confirmed. This action supports the following optional properties:
+ * <ul>
+ *   <li>
+ *     If the <code>checksum</code> property is set to <code>true</code>, files of the same size are compared on their
+ *     checksum rather than on their date.
+ *   </li>
+ *   <li>
+ *     If the <code>delete_extraneous</code> property is set to <code>false</code>, files that only exist in the
+ *     destination folder are kept.
+ *   </li>
+ * </ul>
+ */
+public class SyncFoldersAction extends MuAction {
+    /** Key that controls whether files are compared on their checksum (defaults to false) */
+    private static final String CHECKSUM_PROPERTY_KEY = "checksum";
+    /** Key that controls whether files that only exist in the destination are deleted (defaults to true) */
+    private static final String DELETE_EXTRANEOUS_PROPERTY_KEY = "delete_extraneous";
+
+    /** Action value of the dialog's synchronize button */
+    private static final int SYNCHRONIZE_ACTION = 0;
+    /** Action value of the dialog's cancel button */
+    private static final int CANCEL_ACTION = 1;
+
+    /** The comparison in progress, <code>null</code> if there is none */
+    private PlanWorker worker;
+
+    SyncFoldersAction(MainFrame mainFrame, Map<String, Object> properties) {
+        super(mainFrame, properties);
+    }
+
+    /**
+     * Returns the value of the given boolean property, or the given default value if the property is not set.
+     */
+    private boolean getBooleanValue(String key, boolean defaultValue) {
+        Object o = getValue(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        return o instanceof Boolean ? (Boolean)o : Boolean.parseBoolean(o.toString());
+    }
+
+    @Override
+    public void performAction() {
+        // Cancel the previous comparison if it's still in progress
+        if (worker != null) {
+            worker.cancel(true);
+        }
+
+        SyncPlanner planner = new SyncPlanner(getBooleanValue(CHECKSUM_PROPERTY_KEY, false) ? SyncPlanner.Criterion.CHECKSUM : SyncPlanner.Criterion.SIZE_AND_DATE,
+                getBooleanValue(DELETE_EXTRANEOUS_PROPERTY_KEY, true));
+        AbstractFile sourceFolder = mainFrame.getActivePanel().getCurrentFolder();
+        AbstractFile destFolder = mainFrame.getInactivePanel().getCurrentFolder();
+        if (sourceFolder.equalsCanonical(destFolder)) {
+            return;
+        }
+        if (SyncPlanner.areNested(sourceFolder, destFolder)) {
+            InformationDialog.showErrorDialog(mainFrame, Translator.get("sync_dialog.error_title"),
+                    Translator.get("sync_dialog.nested_folders"));
+            return;
+        }
+        mainFrame.getStatusBar().setStatusInfo(Translator.get("sync_dialog.comparing"));
+        worker = new PlanWorker(planner, sourceFolder, destFolder);
+        worker.execute();
+    }
+
+    /**
+     * Shows the operations of the given plan and performs them if the user confirms.
+     */
+    private void confirmAndSynchronize(SyncPlan plan) {
+        if (plan.isEmpty()) {
+            InformationDialog.showDialog(InformationDialog.INFORMATION_DIALOG_TYPE, mainFrame, getLabel(),
+                    Translator.get("sync_dialog.up_to_date"), null, null);
+            return;
+        }
+        String message = Translator.get("sync_dialog.confirmation",
+                plan.getDestinationFolder().getAbsolutePath(), plan.getSourceFolder().getAbsolutePath()) + "\n\n" +
+                Translator.get("sync_dialog.summary",
+                        Integer.toString(plan.getNbOperations(SyncPlan.Action.COPY)),
+                        Integer.toString(plan.getNbOperations(SyncPlan.Action.UPDATE)),
+                        Integer.toString(plan.getNbOperations(SyncPlan.Action.DELETE)),
+                        Integer.toString(plan.getNbUpToDateFiles()),
+                        SizeFormat.format(plan.getTotalSize(), SizeFormat.DIGITS_MEDIUM | SizeFormat.UNIT_LONG | SizeFormat.ROUND_TO_KB));
+        QuestionDialog dialog = new QuestionDialog(mainFrame, getLabel(), message, mainFrame,
+                new String[] {Translator.get("sync_dialog.synchronize"), Translator.get("cancel")},
+                new int[] {SYNCHRONIZE_ACTION, CANCEL_ACTION}, 0);
+        if (dialog.getActionValue() != SYNCHRONIZE_ACTION) {
+            return;
+        }
+
+        ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("sync_dialog.synchronizing"));
+        progressDialog.start(new SyncJob(progressDialog, mainFrame, plan));
+    }
+
+    /**
+     * Computes the synchronization plan in the background.
+     */
+    private class PlanWorker extends SwingWorker<SyncPlan, Void> {
+        private final SyncPlanner planner;
+        private final AbstractFile sourceFolder;
+        private final AbstractFile destFolder;
+
+        private PlanWorker(SyncPlanner planner, AbstractFile sourceFolder, AbstractFile destFolder) {
+            this.planner = planner;
+            this.sourceFolder = sourceFolder;
+            this.destFolder = destFolder;
+        }
+
+        @Override
+        protected SyncPlan doInBackground() throws Exception {
+            return planner.plan(sourceFolder, destFolder);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || worker != this) {
+                return;
+            }
+            worker = null;
+            mainFrame.getStatusBar().updateSelectedFilesInfo();
+            try {
+                confirmAndSynchronize(get());
+            } catch (InterruptedException e) {
+                // Cancelled
+            } catch (ExecutionException e) {
+                InformationDialog.showErrorDialog(mainFrame, Translator.get("sync_dialog.error_title"),
+                        Translator.get("sync_dialog.cannot_compare"), null, e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public ActionDescriptor getDescriptor() {
+        return new Descriptor();
+    }
+
+
+    public static final class Descriptor extends AbstractActionDescriptor {
+        public static final String ACTION_ID = "SyncFolders";
+
+        public String getId() { return ACTION_ID; }
+
+        public ActionCategory getCategory() { return ActionCategory.FILES; }
+
+        public KeyStroke getDefaultAltKeyStroke() { return null; }
+
+        public KeyStroke getDefaultKeyStroke() { return null; }
+
+        public MuAction createAction(MainFrame mainFrame, Map<String,Object> properties) {
+            return new SyncFoldersAction(mainFrame, properties);
+        }
+    }
+}
@@ -93,6 +93,9 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
     /** Show quick search matches first in file panels */
     private PrefCheckBox cbShowQuickSearchMatchesFirst;
 
+    /** Quick search also matches names containing the typed characters in the same order */
+    private PrefCheckBox cbQuickSearchFuzzy;
+
     /** Calculate folder size on mark action */
     private PrefCheckBox cbCalculateFolderSizeOnMark;
 
@@ -206,8 +209,14 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
         pnlQuickSearch.add(cbShowQuickSearchMatchesFirst);
         pnlQuickSearch.add(Box.createHorizontalGlue());
 
+        cbQuickSearchFuzzy = new PrefCheckBox(Translator.get("prefs_dialog.quick_search_fuzzy"),
+                checkBox -> checkBox.isSelected() != getVariable(QUICK_SEARCH_FUZZY, MuPreferences.DEFAULT_QUICK_SEARCH_FUZZY));
+        cbQuickSearchFuzzy.setSelected(getVariable(QUICK_SEARCH_FUZZY, MuPreferences.DEFAULT_QUICK_SEARCH_FUZZY));
+        pnlQuickSearch.add(cbQuickSearchFuzzy);
+        pnlQuickSearch.add(Box.createHorizontalGlue());
+
         SpringUtilities.makeCompactGrid(pnlQuickSearch,
-                2, 2,       // rows, cols
+                3, 2,       // rows, cols
                 6, 6,      // initX, initY
                 6, 6);      // xPad, yPad
 
@@ -276,6 +285,7 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
         cbFollowSymlinks.addDialogListener(parent);
         cbShowTabHeader.addDialogListener(parent);
         cbShowQuickSearchMatchesFirst.addDialogListener(parent);
+        cbQuickSearchFuzzy.addDialogListener(parent);
         cbCalculateFolderSizeOnMark.addDialogListener(parent);
         comboQuickSearchTimeout.addDialogListener(parent);
         if (OsFamily.MAC_OS_X.isCurrent()) {
@@ -314,6 +324,7 @@ class FoldersPanel extends PreferencesPanel implements ItemListener, KeyListener
         pref.setVariable(SHOW_TAB_HEADER, cbShowTabHeader.isSelected());
 
         pref.setVariable(SHOW_QUICK_SEARCH_MATCHES_FIRST, cbShowQuickSearchMatchesFirst.isSelected());
+        pref.setVariable(QUICK_SEARCH_FUZZY, cbQuickSearchFuzzy.isSelected());
 
 		pref.setVariable(CALCULATE_FOLDER_SIZE_ON_MARK, cbCalculateFolderSizeOnMark.isSelected());
 
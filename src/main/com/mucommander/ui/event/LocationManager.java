@@ -18,17 +18,22 @@
 
 package com.mucommander.ui.event;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ChildrenListener;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.MainFrame;
 
 /**
  * @author Maxence Bernard
@@ -42,6 +47,12 @@ public class LocationManager {
     /** The FolderPanel instance this LocationManager manages location events for */
     private final FolderPanel folderPanel;
 
+    /** Delay after which a folder that is still being listed is presented with the children listed so far, in milliseconds */
+    private final static long PROGRESSIVE_DISPLAY_DELAY = 300;
+
+    /** Delay between two additions of children to a folder that is presented while being listed, in milliseconds */
+    private final static long PROGRESSIVE_UPDATE_INTERVAL = 500;
+
     /** Current location presented in the FolderPanel */
     private AbstractFile currentFolder;
 
@@ -69,18 +80,45 @@ public class LocationManager {
      * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
      */
     public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
-    	LOGGER.trace("calling ls()");
-    	AbstractFile[] children;
-		try {
-			children = folder.ls(configurableFolderFilter);
-		} catch (Exception e) {
-			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
-			children = new AbstractFile[0];
-		}
+        setCurrentFolder(folder, fileToSelect, changeLockedTab, null);
+    }
 
-    	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+    /**
+     * Set the given {@link AbstractFile} as the folder presented in the {@link FolderPanel}, and notify the
+     * {@link LocationListener}s that the location was changed to it once the folder has been listed.
+     *
+     * <p>If a {@link FolderLoadingControl} is given and the folder is not the current one, the folder is loaded
+     * progressively: if listing it takes more than {@link #PROGRESSIVE_DISPLAY_DELAY}, the folder is presented with
+     * the children listed so far and the other children are added as they are listed, while the status bar shows
+     * the number of children loaded. The current folder is always listed completely before being presented, so that
+     * the table can be refreshed incrementally.
+     *
+     * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
+     * @param fileToSelect the file to select, <code>null</code> for the default selection
+     * @param changeLockedTab flag that indicates whether to change the presented folder in the currently selected tab
+     * although it's locked
+     * @param control controls the progressive loading of the folder, <code>null</code> to present the folder once
+     * it has been listed completely
+     * @return <code>false</code> if the folder change has been cancelled before the folder could be presented
+     */
+    public boolean setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab, FolderLoadingControl control) {
+        boolean progressive = control != null && !folder.equals(currentFolder);
+        FolderLoader loader = new FolderLoader(folder, fileToSelect, changeLockedTab, control, progressive);
 
-    	this.currentFolder = folder;
+    	LOGGER.trace("calling ls()");
+        try {
+            if (progressive) {
+                folder.ls(configurableFolderFilter, loader);
+            } else {
+                loader.childrenListed(folder.ls(configurableFolderFilter));
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+        }
+
+        if (!loader.finish()) {
+            return false;
+        }
 
     	// Notify listeners that the location has changed
     	fireLocationChanged(folder.getURL());
@@ -89,6 +127,7 @@ public class LocationManager {
     	if (folderChangeMonitor == null) {
             folderChangeMonitor = new FolderChangeMonitor(folderPanel);
         }
+        return true;
     }
 
     /**
@@ -172,4 +211,121 @@ public class LocationManager {
             listener.locationFailed(new LocationEvent(folderPanel, folderURL));
         }
     }
+
+
+    /**
+     * Controls the progressive loading of a folder by
+     * {@link LocationManager#setCurrentFolder(AbstractFile, AbstractFile, boolean, FolderLoadingControl)}.
+     */
+    public interface FolderLoadingControl {
+
+        /**
+         * Called right before the folder is presented with the children listed so far.
+         *
+         * @return <code>false</code> if the folder change has been cancelled and the folder must not be presented
+         */
+        boolean folderPresenting();
+
+        /**
+         * Returns <code>true</code> if the loading of the folder has been cancelled after the folder has been
+         * presented. The children that have not been listed yet are then left out.
+         *
+         * @return <code>true</code> if the loading of the folder has been cancelled
+         */
+        boolean isLoadingCancelled();
+    }
+
+    /**
+     * Receives the children of the folder being loaded, and presents them in the {@link FolderPanel}.
+     */
+    private class FolderLoader implements ChildrenListener {
+        private final AbstractFile folder;
+        private final AbstractFile fileToSelect;
+        private final boolean changeLockedTab;
+        private final FolderLoadingControl control;
+        private final boolean progressive;
+
+        /** Children that have been listed but not presented yet */
+        private final List<AbstractFile> pendingChildren = new ArrayList<>();
+
+        private final long startTime = System.currentTimeMillis();
+        private long lastUpdateTime;
+        private boolean presented;
+        private int nbPresentedChildren;
+
+        private FolderLoader(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab, FolderLoadingControl control, boolean progressive) {
+            this.folder = folder;
+            this.fileToSelect = fileToSelect;
+            this.changeLockedTab = changeLockedTab;
+            this.control = control;
+            this.progressive = progressive;
+        }
+
+        @Override
+        public boolean childrenListed(AbstractFile children[]) {
+            Collections.addAll(pendingChildren, children);
+            if (!progressive) {
+                return true;
+            }
+
+            long now = System.currentTimeMillis();
+            if (!presented) {
+                if (now - startTime >= PROGRESSIVE_DISPLAY_DELAY && !present()) {
+                    return false;
+                }
+            } else if (now - lastUpdateTime >= PROGRESSIVE_UPDATE_INTERVAL) {
+                presentPendingChildren();
+            }
+            return !control.isLoadingCancelled();
+        }
+
+        /**
+         * Presents the folder with the children that have not been presented yet, once the folder has been listed.
+         *
+         * @return <code>false</code> if the folder change has been cancelled before the folder could be presented
+         */
+        private boolean finish() {
+            if (!presented) {
+                return present();
+            }
+            presentPendingChildren();
+            return true;
+        }
+
+        private boolean present() {
+            if (control != null && !control.folderPresenting()) {
+                return false;
+            }
+            folderPanel.setCurrentFolder(folder, takePendingChildren(), fileToSelect, changeLockedTab);
+            currentFolder = folder;
+            presented = true;
+            showLoadingInfo();
+            return true;
+        }
+
+        private void presentPendingChildren() {
+            if (!pendingChildren.isEmpty()) {
+                folderPanel.addFiles(takePendingChildren());
+                showLoadingInfo();
+            }
+        }
+
+        private AbstractFile[] takePendingChildren() {
+            AbstractFile children[] = pendingChildren.toArray(new AbstractFile[pendingChildren.size()]);
+            pendingChildren.clear();
+            nbPresentedChildren += children.length;
+            lastUpdateTime = System.currentTimeMillis();
+            return children;
+        }
+
+        /**
+         * Shows the number of children loaded so far in the status bar, if the folder is still being listed.
+         */
+        private void showLoadingInfo() {
+            MainFrame mainFrame = folderPanel.getMainFrame();
+            if (progressive && mainFrame.getActivePanel() == folderPanel) {
+                mainFrame.getStatusBar().setFolderLoadingInfo(nbPresentedChildren);
+            }
+        }
+    }
 }
@@ -432,6 +432,17 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
         }
     }
 
+    /**
+     * Adds the given children to the current folder while it is being loaded progressively, i.e. after
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile, boolean)} has been called with the children
+     * listed so far.
+     *
+     * @param children children of the current folder that are not presented yet
+     */
+    public void addFiles(AbstractFile children[]) {
+        fileTable.addFiles(children);
+    }
+
     /**
      * Shows the pop up which is located the given index in fileTablePopups.
      * 
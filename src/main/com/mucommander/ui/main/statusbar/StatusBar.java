@@ -502,6 +502,17 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
     }
 	
 
+    /**
+     * Displays the number of children loaded so far while the current folder of the active panel is being loaded
+     * progressively.
+     *
+     * @param nbChildren number of children loaded so far
+     */
+    public void setFolderLoadingInfo(int nbChildren) {
+        setStatusInfo(Translator.get("status_bar.loading_folder", String.valueOf(nbChildren)), dial, true);
+    }
+
+
     /**
      * Starts a volume info auto-update thread, only if there isn't already one running.
      */    
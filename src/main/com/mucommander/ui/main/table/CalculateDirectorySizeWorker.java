@@ -18,93 +18,106 @@
 package com.mucommander.ui.main.table;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.DirectorySizeCalculator;
 import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.SwingWorker;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Calculates the sizes of the directories queued in a table model, all at the same time, with a
+ * {@link DirectorySizeCalculator}. The sizes calculated so far are published every {@link #REFRESH_RATE_MS}
+ * milliseconds, and the size of a directory as soon as it's calculated.
+ *
  * @author Oleg Trifonov
  * Created on 09/01/14.
  */
-public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
+public class CalculateDirectorySizeWorker extends SwingWorker<Void, DirectorySizeCalculator.Calculation> {
     /** Refresh rate in milliseconds  */
     private static final long REFRESH_RATE_MS = 300;
 
     private final BaseFileTableModel fileTableModel;
-    private final AbstractFile path;
     private final FileTable table;
-    private long size;
-    private long lastRefreshTime;
 
-    public CalculateDirectorySizeWorker(BaseFileTableModel fileTableModel, FileTable table, AbstractFile path) {
+    /** Calculations in progress, by directory */
+    private final Map<AbstractFile, DirectorySizeCalculator.Calculation> calculations = new ConcurrentHashMap<>();
+
+    /** Calculations that are done and haven't been published yet */
+    private final BlockingQueue<DirectorySizeCalculator.Calculation> doneCalculations = new LinkedBlockingQueue<>();
+
+    public CalculateDirectorySizeWorker(BaseFileTableModel fileTableModel, FileTable table) {
         this.fileTableModel = fileTableModel;
         this.table = table;
-        this.path = path;
     }
 
     @Override
-    protected Long doInBackground() throws Exception {
-        size = 0;
+    protected Void doInBackground() throws Exception {
+        Set<AbstractFile> startedDirectories = new HashSet<>();
         try {
-            calcDirectorySize(path);
-        } catch (Exception e) {
-            e.printStackTrace();
-            size = -1;
+            while (!isCancelled()) {
+                for (AbstractFile directory : fileTableModel.getQueuedDirectories()) {
+                    if (startedDirectories.add(directory)) {
+                        calculations.put(directory, DirectorySizeCalculator.calculate(directory, doneCalculations::add));
+                    }
+                }
+                if (calculations.isEmpty()) {
+                    break;
+                }
+
+                List<DirectorySizeCalculator.Calculation> updates = new ArrayList<>();
+                DirectorySizeCalculator.Calculation calculation = doneCalculations.poll(REFRESH_RATE_MS, TimeUnit.MILLISECONDS);
+                while (calculation != null) {
+                    calculations.remove(calculation.getFolder());
+                    updates.add(calculation);
+                    calculation = doneCalculations.poll();
+                }
+                updates.addAll(calculations.values());
+                publish(updates.toArray(new DirectorySizeCalculator.Calculation[updates.size()]));
+            }
+        } finally {
+            for (DirectorySizeCalculator.Calculation calculation : calculations.values()) {
+                calculation.cancel();
+            }
         }
-        return size;
+        return null;
     }
 
     @Override
     protected void done() {
-        fileTableModel.addProcessedDirectory(path, table, size, true);
-        fileTableModel.fillCellCache();
-        table.repaint();
+        if (!isCancelled()) {
+            fileTableModel.directorySizeCalculationFinished(table);
+        }
     }
 
     @Override
-    protected void process(List<Long> chunks) {
-        fileTableModel.addProcessedDirectory(path, table, size, false);
-        fileTableModel.fillCellCache();
-        table.repaint();
-        table.updateSelectedFilesStatusBar();
-    }
-
-    private void calcDirectorySize(AbstractFile path) throws IOException {
+    protected void process(List<DirectorySizeCalculator.Calculation> chunks) {
         if (isCancelled()) {
             return;
         }
-        long tm = System.currentTimeMillis();
-        if (tm - lastRefreshTime > REFRESH_RATE_MS) {
-            lastRefreshTime = tm;
-            publish(size);
+        for (DirectorySizeCalculator.Calculation calculation : chunks) {
+            fileTableModel.addProcessedDirectory(calculation.getFolder(), calculation.getSize(), calculation.isDone());
         }
-        if (path.isSymlink() && path != this.path) {
-            return;
-        }
-        AbstractFile[] childs;
-        try {
-            childs = path.ls();
-        } catch (IOException e) {
-            return;
-        }
-        for (AbstractFile f : childs) {
-            if (isCancelled()) {
-                return;
-            }
-            if (f.isDirectory()) {
-                calcDirectorySize(f);
-            } else if (!f.isSymlink()) {
-                size += f.getSize();
-            }
-        }
-
+        fileTableModel.fillCellCache();
+        table.repaint();
+        table.updateSelectedFilesStatusBar();
     }
 
-
-    public AbstractFile getFile() {
-        return path;
+    /**
+     * Returns <code>true</code> if the size of the given directory is being calculated.
+     *
+     * @param file a directory
+     * @return <code>true</code> if the size of the directory is being calculated
+     */
+    public boolean isCalculating(AbstractFile file) {
+        return calculations.containsKey(file);
     }
 
 }
@@ -0,0 +1,88 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FolderComparison;
+import com.mucommander.ui.main.table.views.BaseFileTableModel;
+
+import javax.swing.SwingWorker;
+import java.util.List;
+
+/**
+ * Compares the files of a table with the files of another table in the background, and marks the files that differ
+ * as they are found.
+ * <p>
+ * The files of both tables are taken when the worker is created. The comparison stops if the worker is cancelled or
+ * if the table changes folder.
+ * </p>
+ */
+public class CompareFoldersWorker extends SwingWorker<Boolean, AbstractFile> {
+
+    private final FileTable table;
+    private final BaseFileTableModel tableModel;
+    private final AbstractFile folder;
+    private final AbstractFile files[];
+    private final AbstractFile otherFiles[];
+    private final FolderComparison comparison;
+
+    /**
+     * Creates a new worker marking the files of the given table that differ from the files of the other table.
+     *
+     * @param table the table whose files are marked
+     * @param otherTable the table the files are compared with
+     * @param comparison how files are compared
+     */
+    public CompareFoldersWorker(FileTable table, FileTable otherTable, FolderComparison comparison) {
+        this.table = table;
+        this.tableModel = table.getFileTableModel();
+        this.folder = tableModel.getCurrentFolder();
+        this.files = tableModel.getFiles();
+        this.otherFiles = otherTable.getFileTableModel().getFiles();
+        this.comparison = comparison;
+    }
+
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        return comparison.compare(files, otherFiles, file -> {
+            if (isCancelled()) {
+                return false;
+            }
+            publish(file);
+            return true;
+        });
+    }
+
+    @Override
+    protected void process(List<AbstractFile> chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        if (folder == null || !folder.equals(tableModel.getCurrentFolder())) {
+            cancel(true);
+            return;
+        }
+        for (AbstractFile file : chunks) {
+            tableModel.setFileMarked(file, true);
+        }
+        table.repaint();
+        // Notify registered listeners that currently marked files have changed on the file table
+        table.fireMarkedFilesChangedEvent();
+    }
+
+}
@@ -127,6 +127,12 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Column currently selected */
     private int currentColumn;
 
+    /** File to select that could not be found when the current folder was set, <code>null</code> for none */
+    private AbstractFile pendingFileToSelect;
+
+    /** File that was selected when the current folder was set */
+    private AbstractFile fileSelectedAtFolderChange;
+
     // Used when right button is pressed and mouse is dragged
     private boolean markOnRightClick;
     private int lastDraggedRow = -1;
@@ -635,14 +641,39 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
         // Wait for the getTask to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
-        // Note: we use a wait/notify scheme rather than calling SwingUtilities#invokeAndWait to avoid deadlocks
-        // due to AWT thread synchronization issues.
-        synchronized(folderChangeThread) {
-            SwingUtilities.invokeLater(folderChangeThread);
+        invokeAndWait(folderChangeThread);
+    }
+
+    /**
+     * Adds the given children to the current folder while it is being loaded progressively, i.e. after
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)} has been called with the children listed
+     * so far. The selected file remains selected, unless the file to select could not be found when the folder was
+     * set and is one of the given children, in which case it gets selected if the selection has not moved since.
+     *
+     * <p>This method returns only when the table has been updated. As <code>setCurrentFolder</code>, it should only
+     * be called by {@link FolderPanel}.
+     *
+     * @param children children of the current folder that are not displayed yet
+     */
+    public void addFiles(AbstractFile children[]) {
+        invokeAndWait(new AddFilesThread(children));
+    }
+
+    /**
+     * Runs the given task in the event dispatch thread and waits for it to call <code>notify</code> on itself.
+     *
+     * <p>Note: we use a wait/notify scheme rather than calling SwingUtilities#invokeAndWait to avoid deadlocks
+     * due to AWT thread synchronization issues.
+     *
+     * @param task the task to run, which must notify itself when done
+     */
+    private static void invokeAndWait(Runnable task) {
+        synchronized(task) {
+            SwingUtilities.invokeLater(task);
             while(true) {
                 try {
-                    // FolderChangeThread will call notify when done
-                    folderChangeThread.wait();
+                    // The task will call notify when done
+                    task.wait();
                     break;
                 } catch (InterruptedException e) {
                     // will keep looping
@@ -2039,6 +2070,16 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             return tableModel.getFileNameAt(index);
 		}
 
+        @Override
+        protected String[] getItemStrings() {
+            return tableModel.getListedFileNames();
+        }
+
+        @Override
+        protected int getItemId(int index) {
+            return tableModel.getListedFileIndex(index);
+        }
+
 		@Override
 		protected void searchStringBecameEmpty(String searchString) {
 			mainFrame.getStatusBar().setStatusInfo(searchString); // TODO: is needed?			
@@ -2283,36 +2324,45 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
         public void run() {
             try {
-                // Set the new current folder.
-                tableModel.setCurrentFolder(folder, children);
-                // Update the visibility state of conditional columns
-                FileTableColumnModel columnModel = getFileTableColumnModel();
-
-                updateColumnsVisibility();
-
-                // The column corresponding to the current 'sort by' criterion may have become invisible.
-                // If that is the case, change the criterion to NAME. 
-                if (columnModel != null && !columnModel.isColumnVisible(sortInfo.getCriterion())) {
-                    sortInfo.setCriterion(Column.NAME);
-
-                    // Mac OS X 10.5 (Leopard) and up uses JTableHeader properties to render sort indicators on table headers
-                    if (usesTableHeaderRenderingProperties()) {
-                        setTableHeaderRenderingProperties();
+                // If the current folder is refreshed, only apply the changes to the model, if there are not too many
+                // of them. Marked files and calculated directory sizes are preserved by the model.
+                boolean refreshed = markedFiles != null && tableModel.refreshCurrentFolder(folder, children);
+
+                if (!refreshed) {
+                    // Set the new current folder.
+                    tableModel.setCurrentFolder(folder, children);
+                    // Update the visibility state of conditional columns
+                    FileTableColumnModel columnModel = getFileTableColumnModel();
+
+                    updateColumnsVisibility();
+
+                    // The column corresponding to the current 'sort by' criterion may have become invisible.
+                    // If that is the case, change the criterion to NAME.
+                    if (columnModel != null && !columnModel.isColumnVisible(sortInfo.getCriterion())) {
+                        sortInfo.setCriterion(Column.NAME);
+
+                        // Mac OS X 10.5 (Leopard) and up uses JTableHeader properties to render sort indicators on table headers
+                        if (usesTableHeaderRenderingProperties()) {
+                            setTableHeaderRenderingProperties();
+                        }
                     }
-                }
 
-                // Sort the new folder using the current sort criteria, ascending/descending order and
-                // 'show folders first' values.
-                tableModel.sortRows();
+                    // Sort the new folder using the current sort criteria, ascending/descending order and
+                    // 'show folders first' values.
+                    tableModel.sortRows();
+                }
 
                 // Computes the index of the new row selection.
                 int indexToSelect;
                 int currentIndex = tableModel.getFileIndexAt(currentRow, currentColumn);
+                pendingFileToSelect = null;
                 if (selectedFile != null) {
                     // Tries to find the index of the file to select. If it cannot be found (the file might not
                     // exist anymore, for example), use the closest possible row.
                     indexToSelect = tableModel.getFileIndex(selectedFile);
                     if (indexToSelect < 0) {
+                        // The file may be among the children that have not been listed yet
+                        pendingFileToSelect = selectedFile;
                         int filesCount = tableModel.getFilesCount();
                         indexToSelect = currentIndex < filesCount ? currentIndex : filesCount - 1;
                     }
@@ -2323,21 +2373,27 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
                 selectFile(indexToSelect);
                 fireSelectedFileChangedEvent();
+                fileSelectedAtFolderChange = getSelectedFile();
 
                 // Restore previously marked files (if any / current folder hasn't changed)
                 if (markedFiles != null) {
-                    // Restore previously marked files
-                    int nbMarkedFiles = markedFiles.size();
-                    for (int i = 0; i < nbMarkedFiles; i++) {
-                        int fileIndex = tableModel.getFileIndex(markedFiles.elementAt(i));
-                        if (fileIndex != -1) {
-                            tableModel.setFileMarked(fileIndex, true);
+                    // Restore previously marked files, unless the model has kept them
+                    if (!refreshed) {
+                        int nbMarkedFiles = markedFiles.size();
+                        for (int i = 0; i < nbMarkedFiles; i++) {
+                            int fileIndex = tableModel.getFileIndex(markedFiles.elementAt(i));
+                            if (fileIndex != -1) {
+                                tableModel.setFileMarked(fileIndex, true);
+                            }
                         }
                     }
                     // Notify registered listeners that currently marked files have changed on this FileTable
                     fireMarkedFilesChangedEvent();
                 }
-                resizeAndRepaint();
+                // The model has notified the table of the rows that have changed if it was refreshed
+                if (!refreshed) {
+                    resizeAndRepaint();
+                }
             } catch (Throwable e) {
                 // While no such thing should happen, we want to make absolutely sure no exception
                 // is propagated to the AWT event dispatch thread.
@@ -2355,6 +2411,48 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         }
     }
 
+    /**
+     * This thread adds children to the current folder while it is being loaded progressively.
+     */
+    private class AddFilesThread implements Runnable {
+        private final AbstractFile[] children;
+
+        private AddFilesThread(AbstractFile[] children) {
+            this.children = children;
+        }
+
+        public void run() {
+            try {
+                AbstractFile selectedFile = getSelectedFile();
+                tableModel.addFiles(children);
+
+                // Select the file that could not be found when the folder was set, unless the selection has moved
+                AbstractFile fileToSelect = selectedFile;
+                if (pendingFileToSelect != null && tableModel.getFileIndex(pendingFileToSelect) >= 0) {
+                    if (selectedFile != null && selectedFile.equals(fileSelectedAtFolderChange)) {
+                        fileToSelect = pendingFileToSelect;
+                    }
+                    pendingFileToSelect = null;
+                }
+                if (fileToSelect != null) {
+                    selectFile(fileToSelect);
+                    if (fileToSelect != selectedFile) {
+                        fireSelectedFileChangedEvent();
+                    }
+                }
+            } catch (Throwable e) {
+                // While no such thing should happen, we want to make absolutely sure no exception
+                // is propagated to the AWT event dispatch thread.
+                getLogger().warn("Caught exception while adding files, this should not happen!", e);
+            } finally {
+                // Notify #addFiles that we're done adding the files.
+                synchronized(this) {
+                    notify();
+                }
+            }
+        }
+    }
+
     void updateSelectedFilesStatusBar() {
         mainFrame.getStatusBar().updateSelectedFilesInfo();
     }
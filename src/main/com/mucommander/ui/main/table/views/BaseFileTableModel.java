@@ -18,15 +18,19 @@
 package com.mucommander.ui.main.table.views;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.file.util.DirectorySizeCalculator;
 import com.mucommander.commons.file.util.FileComparator;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.FileSorter;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.utils.text.SizeFormat;
+import com.mucommander.utils.text.StringCache;
 import com.mucommander.ui.main.table.CalculateDirectorySizeWorker;
 import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.SortInfo;
@@ -54,9 +58,16 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** True if the name column is temporarily editable */
     protected boolean nameColumnEditable;
 
+    /** Maximum number of added, removed and modified files for which a refresh is applied incrementally */
+    private static final int MAX_INCREMENTAL_REFRESH_CHANGES = 1000;
+
+
     /** SizeFormat format used to create the size column's string */
     protected static int sizeFormat;
 
+    /** Strings of the size column, by size, shared by all the tables */
+    private static final StringCache formattedSizes = new StringCache(4096);
+
     /** Contains sort-related variables */
     private SortInfo sortInfo;
 
@@ -90,8 +101,8 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     private boolean fileMarked[];
 
 
-    /** Tasks queue for directory size calculate */
-    protected final List<AbstractFile> calculateSizeQueue = new LinkedList<>();
+    /** Directories queued for size calculation, until their size starts being known */
+    protected final Set<AbstractFile> calculateSizeQueue = new LinkedHashSet<>();
 
     /** Worker to calculate directories sizes */
     private CalculateDirectorySizeWorker calculateDirectorySizeWorker;
@@ -105,8 +116,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** Here will be stored sizes of directories calculated by F3 command */
     protected final Map<AbstractFile, Long> directorySizes = new HashMap<>();
 
-    private FileComparator fileComparator;
-
     /*
      * First visible row
      */
@@ -130,6 +139,15 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      */
     protected abstract void initCellValuesCache();
 
+    /**
+     * Recreates the cell cache after the current folder has been refreshed by {@link #refreshCurrentFolder}, keeping
+     * the cached values of the files that have not changed.
+     *
+     * @param cacheSources for each file, the index the file had before the refresh if it has not changed,
+     * <code>-1</code> if the file is new or has been modified
+     */
+    protected abstract void updateCellValuesCache(int cacheSources[]);
+
     /**
      * Returns index of file in directory (index of '..' == 0)
      * @param row table row
@@ -176,6 +194,23 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         }
 
         sizeFormat |= SizeFormat.INCLUDE_SPACE;
+        formattedSizes.clear();
+    }
+
+    /**
+     * Formats the given size with the SizeFormat format of the size column. Each size is formatted once, and the
+     * returned string is shared by all the files that have this size.
+     *
+     * @param size a size in bytes
+     * @return the string of the size column for the given size
+     */
+    protected static String formatSize(long size) {
+        String result = formattedSizes.get(size);
+        if (result == null) {
+            result = SizeFormat.format(size, sizeFormat);
+            formattedSizes.put(size, result);
+        }
+        return result;
     }
 
     /**
@@ -287,9 +322,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     public synchronized void sortRows() {
-        this.fileComparator = createFileComparator(sortInfo);
-        sort(0, fileArrayIndex.length - 1);
-        this.fileComparator = null;
+        createFileSorter(sortInfo).sort(cachedFiles, fileArrayIndex);
     }
 
 
@@ -297,77 +330,22 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     // Sort methods //
     //////////////////
 
+    private QuickSearch getSortQuickSearch(SortInfo sortInfo) {
+        return quickSearch != null && quickSearch.isActive() && sortInfo.getQuickSearchMatchesFirst() ? quickSearch : null;
+    }
+
     private FileComparator createFileComparator(SortInfo sortInfo) {
-        QuickSearch qs = quickSearch != null && quickSearch.isActive() && sortInfo.getQuickSearchMatchesFirst() ? quickSearch : null;
         return new FileComparator(sortInfo.getCriterion().getFileComparatorCriterion(), sortInfo.getAscendingOrder(),
-                sortInfo.getFoldersFirst(), sortInfo.getFoldersAlwaysAlphabetical(), qs);
+                sortInfo.getFoldersFirst(), sortInfo.getFoldersAlwaysAlphabetical(), getSortQuickSearch(sortInfo));
     }
 
-
     /**
-     * Quick sort implementation, based on James Gosling's implementation.
+     * Creates a sorter for the given sort info: the sorter extracts the sort keys of each file once, instead of
+     * querying both files each time they are compared, which matters for folders with many files.
      */
-    protected void sort(int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        if (lo >= hi) {
-            return;
-        } else if (lo == hi - 1) {
-            // sort a two element list by swapping if necessary
-            int loIndex = fileArrayIndex[lo];
-            int hiIndex = fileArrayIndex[hi];
-            if (compare(loIndex, hiIndex) > 0) {
-                fileArrayIndex[lo] = hiIndex;
-                fileArrayIndex[hi] = loIndex;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        while (lo < hi) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            //while (compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-            while (compare(fileArrayIndex[lo], pivotIndex) <= 0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            //while (compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-            while (compare(pivotIndex, fileArrayIndex[hi]) <= 0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if (lo < hi) {
-                int temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than pivot.
-        sort(lo0, lo-1);
-        sort(hi+1, hi0);
-    }
-
-
-    private int compare(int index1, int index2) {
-        if (index1 == index2) {
-            return 0;
-        }
-        return fileComparator.compare(cachedFiles[index1], cachedFiles[index2]);
+    private FileSorter createFileSorter(SortInfo sortInfo) {
+        return new FileSorter(sortInfo.getCriterion().getFileComparatorCriterion(), sortInfo.getAscendingOrder(),
+                sortInfo.getFoldersFirst(), sortInfo.getFoldersAlwaysAlphabetical(), getSortQuickSearch(sortInfo));
     }
 
 
@@ -445,6 +423,324 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         initCellValuesCache();
 
         fillCellCache();
+        itemsChanged();
+    }
+
+    /**
+     * Refreshes the children of the current folder with the given ones, without rebuilding the whole model: files are
+     * matched by name with the current ones, and only the files that have been added, removed or modified
+     * (type, size, date or permissions) are inserted at or removed from their sorted position. Marked files, including
+     * modified ones, remain marked and calculated directory sizes are kept. Listeners are notified of the rows that
+     * have been deleted, inserted and updated.
+     *
+     * <p>If too many files have changed, the model is left unchanged and <code>false</code> is returned:
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[])} should be called instead.
+     *
+     * @param folder the current folder
+     * @param children the current folder's children
+     * @return <code>true</code> if the model has been refreshed, <code>false</code> if too many files have changed
+     */
+    public synchronized boolean refreshCurrentFolder(AbstractFile folder, AbstractFile children[]) {
+        int nbOldFiles = cachedFiles.length;
+        int nbFiles = children.length;
+
+        // Match the new children with the current files by name
+        Map<String, Integer> oldIndexes = new HashMap<>(nbOldFiles * 4 / 3 + 1);
+        for (int i = 0; i < nbOldFiles; i++) {
+            oldIndexes.put(cachedFiles[i].getName(), i);
+        }
+
+        boolean needPrefetch = nbFiles > 0 && !(children[0] instanceof LocalFile);
+        AbstractFile newCachedFiles[] = new AbstractFile[nbFiles];
+        int newToOld[] = new int[nbFiles];
+        int oldToNew[] = new int[nbOldFiles];
+        Arrays.fill(oldToNew, -1);
+        boolean modified[] = new boolean[nbFiles];
+        int nbChanges = 0;
+        for (int i = 0; i < nbFiles; i++) {
+            Integer oldIndex = oldIndexes.remove(children[i].getName());
+            if (oldIndex != null && !hasChanged(cachedFiles[oldIndex], children[i])) {
+                newCachedFiles[i] = cachedFiles[oldIndex];
+            } else {
+                // A new file, or a modified one which counts as a removal and an insertion
+                nbChanges += oldIndex == null ? 1 : 2;
+                if (nbChanges > MAX_INCREMENTAL_REFRESH_CHANGES) {
+                    return false;
+                }
+                AbstractFile file = children[i] instanceof CachedFile ? children[i] : new CachedFile(children[i], true);
+                if (needPrefetch) {
+                    prefetchCachedFileAttributes(file);
+                }
+                newCachedFiles[i] = file;
+                modified[i] = oldIndex != null;
+            }
+            newToOld[i] = oldIndex == null ? -1 : oldIndex;
+            if (oldIndex != null) {
+                oldToNew[oldIndex] = i;
+            }
+        }
+        if (nbChanges + oldIndexes.size() > MAX_INCREMENTAL_REFRESH_CHANGES) {
+            return false;
+        }
+
+        // Carry over marks, and update the combined size of marked files
+        boolean newFileMarked[] = new boolean[nbFiles];
+        for (int i = 0; i < nbOldFiles; i++) {
+            if (!fileMarked[i]) {
+                continue;
+            }
+            AbstractFile oldFile = cachedFiles[i];
+            long oldSize = oldFile.isDirectory() ? 0 : oldFile.getSize();
+            if (oldSize > 0) {
+                markedTotalSize -= oldSize;
+            }
+            int newIndex = oldToNew[i];
+            if (newIndex < 0) {
+                nbFilesMarked--;
+                if (oldFile.isDirectory()) {
+                    markedDirectories.remove(oldFile);
+                }
+                continue;
+            }
+            AbstractFile newFile = newCachedFiles[newIndex];
+            long newSize = newFile.isDirectory() ? 0 : newFile.getSize();
+            if (newSize > 0) {
+                markedTotalSize += newSize;
+            }
+            newFileMarked[newIndex] = true;
+        }
+
+        // Remove the rows of removed files, rows that remain are still sorted
+        int nbOldRows = fileArrayIndex.length;
+        int sortedIndexes[] = new int[nbOldRows];
+        int nbSorted = 0;
+        int removedRows[] = new int[nbOldRows];
+        int nbRemoved = 0;
+        for (int row = 0; row < nbOldRows; row++) {
+            int newIndex = oldToNew[fileArrayIndex[row]];
+            if (newIndex < 0) {
+                removedRows[nbRemoved++] = row;
+            } else {
+                sortedIndexes[nbSorted++] = newIndex;
+            }
+        }
+
+        // Modified files stay in place if they are still in order with their neighbours, which is the case of a file
+        // growing in a folder sorted by name. Unmodified files are in order with one another, so a modified file is
+        // only compared with the previous file that stays and with the next unmodified file.
+        FileComparator comparator = createFileComparator(sortInfo);
+        int movedRows[] = new int[nbSorted];
+        int movedIndexes[] = new int[nbSorted];
+        int nbMoved = 0;
+        int nbKept = 0;
+        int nextUnmodified = -1;
+        for (int i = 0; i < nbSorted; i++) {
+            int index = sortedIndexes[i];
+            if (modified[index]) {
+                if (nextUnmodified <= i) {
+                    nextUnmodified = i + 1;
+                    while (nextUnmodified < nbSorted && modified[sortedIndexes[nextUnmodified]]) {
+                        nextUnmodified++;
+                    }
+                }
+                AbstractFile file = newCachedFiles[index];
+                if ((nbKept > 0 && comparator.compare(newCachedFiles[sortedIndexes[nbKept - 1]], file) > 0)
+                        || (nextUnmodified < nbSorted && comparator.compare(file, newCachedFiles[sortedIndexes[nextUnmodified]]) > 0)) {
+                    movedRows[nbMoved] = i;
+                    movedIndexes[nbMoved++] = index;
+                    continue;
+                }
+            }
+            sortedIndexes[nbKept++] = index;
+        }
+
+        // Insert new and moved files at their sorted position
+        List<Integer> insertedIndexes = new ArrayList<>();
+        for (int i = 0; i < nbFiles; i++) {
+            if (newToOld[i] < 0) {
+                insertedIndexes.add(i);
+            }
+        }
+        for (int i = 0; i < nbMoved; i++) {
+            insertedIndexes.add(movedIndexes[i]);
+        }
+        insertedIndexes.sort((index1, index2) -> comparator.compare(newCachedFiles[index1], newCachedFiles[index2]));
+
+        int newFileArrayIndex[] = new int[nbFiles];
+        int insertedRows[] = new int[insertedIndexes.size()];
+        int row = 0;
+        int keptPos = 0;
+        for (int i = 0; i < insertedRows.length; i++) {
+            int index = insertedIndexes.get(i);
+            int pos = upperBound(comparator, newCachedFiles, sortedIndexes, keptPos, nbKept, newCachedFiles[index]);
+            while (keptPos < pos) {
+                newFileArrayIndex[row++] = sortedIndexes[keptPos++];
+            }
+            insertedRows[i] = row;
+            newFileArrayIndex[row++] = index;
+        }
+        while (keptPos < nbKept) {
+            newFileArrayIndex[row++] = sortedIndexes[keptPos++];
+        }
+
+        // Modified files that stayed in place are updated
+        int updatedRows[] = new int[nbFiles];
+        int nbUpdated = 0;
+        int insertedPos = 0;
+        for (row = 0; row < nbFiles; row++) {
+            if (insertedPos < insertedRows.length && insertedRows[insertedPos] == row) {
+                insertedPos++;
+            } else if (modified[newFileArrayIndex[row]]) {
+                updatedRows[nbUpdated++] = row;
+            }
+        }
+
+        int cacheSources[] = new int[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            cacheSources[i] = modified[i] ? -1 : newToOld[i];
+        }
+
+        this.currentFolder = (folder instanceof CachedFile) ? folder : new CachedFile(folder, true);
+        this.cachedFiles = newCachedFiles;
+        this.fileArrayIndex = newFileArrayIndex;
+        this.fileMarked = newFileMarked;
+        updateCellValuesCache(cacheSources);
+        itemsChanged();
+
+        fireRowsChanged(Arrays.copyOf(removedRows, nbRemoved), Arrays.copyOf(movedRows, nbMoved), insertedRows,
+                Arrays.copyOf(updatedRows, nbUpdated));
+        return true;
+    }
+
+    /**
+     * Adds the given children to the current folder, while the folder is being loaded progressively: the children are
+     * sorted and merged with the current files at their sorted position, and listeners are notified of the rows that
+     * have been inserted. Marked files remain marked.
+     *
+     * @param children children of the current folder that are not part of the model yet
+     */
+    public synchronized void addFiles(AbstractFile children[]) {
+        int nbNewFiles = children.length;
+        if (nbNewFiles == 0) {
+            return;
+        }
+        int nbOldFiles = cachedFiles.length;
+        int nbFiles = nbOldFiles + nbNewFiles;
+
+        boolean needPrefetch = !(children[0] instanceof LocalFile);
+        AbstractFile newCachedFiles[] = Arrays.copyOf(cachedFiles, nbFiles);
+        for (int i = 0; i < nbNewFiles; i++) {
+            AbstractFile file = children[i] instanceof CachedFile ? children[i] : new CachedFile(children[i], true);
+            if (needPrefetch) {
+                prefetchCachedFileAttributes(file);
+            }
+            newCachedFiles[nbOldFiles + i] = file;
+        }
+
+        // Sort the new files, then insert them after the current files they are equal to, as a sort of all the files
+        // would do
+        int insertedIndexes[] = new int[nbNewFiles];
+        for (int i = 0; i < nbNewFiles; i++) {
+            insertedIndexes[i] = nbOldFiles + i;
+        }
+        createFileSorter(sortInfo).sort(newCachedFiles, insertedIndexes);
+
+        FileComparator comparator = createFileComparator(sortInfo);
+        int newFileArrayIndex[] = new int[nbFiles];
+        int insertedRows[] = new int[nbNewFiles];
+        int row = 0;
+        int currentPos = 0;
+        for (int i = 0; i < nbNewFiles; i++) {
+            int index = insertedIndexes[i];
+            int pos = upperBound(comparator, newCachedFiles, fileArrayIndex, currentPos, fileArrayIndex.length, newCachedFiles[index]);
+            while (currentPos < pos) {
+                newFileArrayIndex[row++] = fileArrayIndex[currentPos++];
+            }
+            insertedRows[i] = row;
+            newFileArrayIndex[row++] = index;
+        }
+        while (currentPos < fileArrayIndex.length) {
+            newFileArrayIndex[row++] = fileArrayIndex[currentPos++];
+        }
+
+        int cacheSources[] = new int[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            cacheSources[i] = i < nbOldFiles ? i : -1;
+        }
+
+        this.cachedFiles = newCachedFiles;
+        this.fileArrayIndex = newFileArrayIndex;
+        this.fileMarked = Arrays.copyOf(fileMarked, nbFiles);
+        updateCellValuesCache(cacheSources);
+        itemsChanged();
+
+        // Notifying listeners of each inserted row is slower than having them reload the table past a few rows
+        if (nbNewFiles > MAX_INCREMENTAL_REFRESH_CHANGES) {
+            fireTableDataChanged();
+        } else {
+            fireRowsChanged(new int[0], new int[0], insertedRows, new int[0]);
+        }
+    }
+
+    /**
+     * Notifies the quick search that the files have changed, so that they are indexed again.
+     */
+    private void itemsChanged() {
+        if (quickSearch != null) {
+            quickSearch.itemsChanged();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the attributes displayed by the table or used for sorting differ between the given
+     * current file and its new instance.
+     */
+    private static boolean hasChanged(AbstractFile currentFile, AbstractFile newFile) {
+        boolean isDirectory = currentFile.isDirectory();
+        if (isDirectory != newFile.isDirectory() || currentFile.getLastModifiedDate() != newFile.getLastModifiedDate()
+                || (!isDirectory && currentFile.getSize() != newFile.getSize())) {
+            return true;
+        }
+        FilePermissions permissions = currentFile.getPermissions();
+        FilePermissions newPermissions = newFile.getPermissions();
+        if (permissions == null || newPermissions == null) {
+            return permissions != newPermissions;
+        }
+        return permissions.getIntValue() != newPermissions.getIntValue();
+    }
+
+    /**
+     * Returns the position, between <code>from</code> and <code>to</code>, of the first file of the sorted indexes
+     * that is greater than the given file.
+     */
+    private static int upperBound(FileComparator comparator, AbstractFile files[], int sortedIndexes[], int from, int to, AbstractFile file) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (comparator.compare(file, files[sortedIndexes[mid]]) < 0) {
+                to = mid;
+            } else {
+                from = mid + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Notifies listeners of the changes made by {@link #refreshCurrentFolder}. Row indexes do not include the parent
+     * folder's row. Changes are to be applied in the following order:
+     * <ol>
+     *   <li><code>removedRows</code>: rows of removed files, in ascending order, before any change</li>
+     *   <li><code>movedRows</code>: rows of modified files that have to be moved, in ascending order, once removed files
+     *   have been removed</li>
+     *   <li><code>insertedRows</code>: rows of new and moved files, in ascending order, once all changes have been
+     *   applied</li>
+     *   <li><code>updatedRows</code>: rows of modified files that have not moved, once all changes have been applied</li>
+     * </ol>
+     *
+     * <p>This implementation notifies listeners that all the table data has changed.
+     */
+    protected void fireRowsChanged(int removedRows[], int movedRows[], int insertedRows[], int updatedRows[]) {
+        fireTableDataChanged();
     }
 
     /**
@@ -811,7 +1107,9 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
 
     /**
-     * Add directory to size calculation and start calculation worker if it doesn't busy
+     * Add directory to size calculation and start calculation worker if it doesn't busy.
+     * The size cached by a previous calculation, if the directory hasn't changed since, is shown until the new
+     * calculation is done.
      * @param table file table
      * @param file directory to add
      */
@@ -826,56 +1124,81 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
             }
         }
         synchronized (calculateSizeQueue) {
-            if (calculateSizeQueue.contains(file)) {
+            if (!calculateSizeQueue.add(file)) {
                 return;
             }
-            calculateSizeQueue.add(file);
+        }
+        long cachedSize = DirectorySizeCalculator.getCachedSize(file);
+        if (cachedSize >= 0) {
+            synchronized (directorySizes) {
+                directorySizes.put(file, cachedSize);
+            }
         }
         if (calculateDirectorySizeWorker == null) {
-            processNextQueuedFile(table);
+            startSizeCalculationWorker(table);
         }
     }
 
 
+    /**
+     * Starts calculation worker for the queued directories
+     * @param table file table
+     */
+    private void startSizeCalculationWorker(FileTable table) {
+        calculateDirectorySizeWorker = new CalculateDirectorySizeWorker(this, table);
+        table.getParent().setCursor(WAIT_CURSOR);
+        calculateDirectorySizeWorker.execute();
+    }
 
     /**
-     * Takes a first ask for queue and starts calculation worker
+     * Returns the directories queued for size calculation.
+     *
+     * @return a copy of the queued directories
+     */
+    public List<AbstractFile> getQueuedDirectories() {
+        synchronized (calculateSizeQueue) {
+            return new ArrayList<>(calculateSizeQueue);
+        }
+    }
+
+    /**
+     * Called from size-calculation worker after it finish. Starts a new worker if directories have been queued
+     * after the worker took its last ones.
+     *
      * @param table file table
      */
-    private void processNextQueuedFile(FileTable table) {
-        AbstractFile nextFile;
+    public void directorySizeCalculationFinished(FileTable table) {
+        boolean queued;
         synchronized (calculateSizeQueue) {
-            nextFile = calculateSizeQueue.isEmpty() ? null : calculateSizeQueue.remove(0);
-            }
-        if (nextFile == null) {
+            queued = !calculateSizeQueue.isEmpty();
+        }
+        if (queued) {
+            startSizeCalculationWorker(table);
+        } else {
             calculateDirectorySizeWorker = null;
             table.getParent().setCursor(Cursor.getDefaultCursor());
-        } else {
-            calculateDirectorySizeWorker = new CalculateDirectorySizeWorker(this, table, nextFile);
-            table.getParent().setCursor(WAIT_CURSOR);
-            calculateDirectorySizeWorker.execute();
         }
     }
 
     /**
-     * Called from size-calculation worker after it finish or requests to repaint table.
-     * Updates map of directory sizes and starts next task if worker finished
+     * Called from size-calculation worker to update the size of a directory.
+     * Until the directory is completely processed, its size isn't decreased, so that the size of a previous
+     * calculation keeps being shown.
      *
      * @param path directory to process
-     * @param table file table
      * @param size calculated directory size
-     * @param finish true if worker completely finish task, false if it will just repaint table
+     * @param finish true if the size of the directory is completely calculated, false if it will just repaint table
      */
-    public void addProcessedDirectory(AbstractFile path, FileTable table, long size, boolean finish) {
+    public void addProcessedDirectory(AbstractFile path, long size, boolean finish) {
         synchronized (directorySizes) {
-            directorySizes.put(path, size);
+            Long previousSize = directorySizes.get(path);
+            if (finish || previousSize == null || previousSize < size) {
+                directorySizes.put(path, size);
+            }
         }
         synchronized (calculateSizeQueue) {
             calculateSizeQueue.remove(path);
         }
-        if (finish) {
-            processNextQueuedFile(table);
-        }
     }
 
 
@@ -929,16 +1252,57 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         return fileArrayIndex.length + (parent == null ? 0 : 1);
     }
 
+    /**
+     * Returns the names of the files, '..' included, in the order of the children of the current folder rather than
+     * in the order of the rows: the position of a file in the returned array doesn't change when the files are sorted.
+     *
+     * @return the names of the files, by position in the current folder
+     */
+    public synchronized String[] getListedFileNames() {
+        int indexOffset = parent == null ? 0 : 1;
+        String names[] = new String[cachedFiles.length + indexOffset];
+        if (parent != null) {
+            names[0] = "..";
+        }
+        for (int i = 0; i < cachedFiles.length; i++) {
+            names[i + indexOffset] = cachedFiles[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the position in {@link #getListedFileNames()} of the file at the given index.
+     *
+     * @param index index of a file (index of '..' == 0)
+     * @return the position of the file in the current folder, <code>-1</code> if the index is out of bounds
+     */
+    public synchronized int getListedFileIndex(int index) {
+        if (parent != null) {
+            if (index == 0) {
+                return 0;
+            }
+            index--;
+        }
+        if (index < 0 || index >= fileArrayIndex.length) {
+            return -1;
+        }
+        return parent == null ? fileArrayIndex[index] : fileArrayIndex[index] + 1;
+    }
+
 //    public void setFirstVisibleRow(int row) {
 //        this.firstVisibleRow = row;
 //    }
 
 
-    public AbstractFile getCurrentCalculatedSizeDirectory() {
-        if (calculateDirectorySizeWorker != null) {
-            return calculateDirectorySizeWorker.getFile();
-        }
-        return null;
+    /**
+     * Returns <code>true</code> if the size of the given directory is being calculated.
+     *
+     * @param file a directory
+     * @return <code>true</code> if the size of the directory is being calculated
+     */
+    public boolean isCalculatingDirectorySize(AbstractFile file) {
+        CalculateDirectorySizeWorker worker = calculateDirectorySizeWorker;
+        return worker != null && worker.isCalculating(file);
     }
 
 
@@ -106,6 +106,20 @@ public class CompactFileTableModel extends BaseFileTableModel {
         this.cellValuesCache = new String[getFileCount()];
     }
 
+    @Override
+    protected void updateCellValuesCache(int cacheSources[]) {
+        if (parent != null) {
+            currentFolderDateSnapshot = currentFolder.getLastModifiedDate();
+        }
+        String oldCellValuesCache[] = cellValuesCache;
+        cellValuesCache = new String[cacheSources.length];
+        for (int i = 0; i < cacheSources.length; i++) {
+            if (cacheSources[i] >= 0) {
+                cellValuesCache[i] = oldCellValuesCache[cacheSources[i]];
+            }
+        }
+    }
+
     @Override
     public int getRowCount() {
         return visibleRows;
@@ -19,11 +19,14 @@
 package com.mucommander.ui.main.table.views.full;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.DirectorySizeCalculator;
 import com.mucommander.utils.text.CustomDateFormat;
-import com.mucommander.utils.text.SizeFormat;
+import com.mucommander.utils.text.StringCache;
 import com.mucommander.ui.main.table.Column;
 import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
+import java.util.Arrays;
+
 
 /**
  * This class maps table cells onto file attributes.
@@ -32,8 +35,25 @@ import com.mucommander.ui.main.table.views.BaseFileTableModel;
  */
 public class FileTableModel extends BaseFileTableModel {
 
-    /** Cell values cache */
-    private Object cellValuesCache[][];
+    /** All the columns, by index (<code>Column.values()</code> creates a new array each time it is called) */
+    private static final Column COLUMNS[] = Column.values();
+
+    /** Number of columns that have cell values: all of them but the extension column */
+    private static final int CACHED_COLUMN_COUNT = COLUMNS.length - 1;
+
+    /** Permissions, owner and group strings, shared by all the tables */
+    private static final StringCache sharedAttributes = new StringCache(256);
+
+    /**
+     * Cell values cache, by column (the extension column excepted) and then by file index, '..' excluded.
+     * The values of a column are allocated when one of its cells is first displayed, and the value of a cell is
+     * retrieved when the cell is first displayed, so that hidden columns and rows that are never displayed
+     * cost nothing.
+     */
+    private String cellValuesCache[][];
+
+    /** Cell values of the special '..' file */
+    private final String parentCellValues[] = new String[CACHED_COLUMN_COUNT];
 
 
     /**
@@ -41,7 +61,7 @@ public class FileTableModel extends BaseFileTableModel {
      */
     public FileTableModel() {
         super();
-        cellValuesCache = new Object[0][Column.values().length-1];
+        cellValuesCache = new String[CACHED_COLUMN_COUNT][];
     }
 
 
@@ -57,22 +77,29 @@ public class FileTableModel extends BaseFileTableModel {
      */
     @Override
     protected void initCellValuesCache() {
-        this.cellValuesCache = new Object[getRowCount()][Column.values().length-1];
+        this.cellValuesCache = new String[CACHED_COLUMN_COUNT][];
     }
 
 
     /**
-     * Retrieves all cell values and stores them in an array for fast access.
+     * Clears the cell values, so that they are retrieved again when the cells are displayed.
      */
     @Override
     public synchronized void fillCellCache() {
-        int len = cellValuesCache.length;
-        if (len == 0) {
-            return;
+        fillParentCellCache();
+        for (String[] columnValues : cellValuesCache) {
+            if (columnValues != null) {
+                Arrays.fill(columnValues, null);
+            }
         }
-        // Special '..' file
+    }
+
+    /**
+     * Fills the cell values of the special '..' file, if there is one.
+     */
+    private void fillParentCellCache() {
         if (parent != null) {
-            Object[] cell = cellValuesCache[0];
+            String[] cell = parentCellValues;
             cell[Column.NAME.ordinal()-1] = "..";
             cell[Column.SIZE.ordinal()-1] = DIRECTORY_SIZE_STRING;
             currentFolderDateSnapshot = currentFolder.getLastModifiedDate();
@@ -83,56 +110,94 @@ public class FileTableModel extends BaseFileTableModel {
             cell[Column.OWNER.ordinal()-1] = "";
             cell[Column.GROUP.ordinal()-1] = "";
         }
+    }
 
-        int fileIndex = 0;
-        final int indexOffset = parent == null ? 0 : 1;
-        for (int i = indexOffset; i < len; i++) {
-            int cellIndex = fileIndex + indexOffset;
-            //int cellIndex = fileArrayIndex[fileIndex] + indexOffset;
-            //fillOneCellCache(cellIndex, cellIndex);
-            Object[] cell = cellValuesCache[cellIndex];
-            for (int ci = Column.NAME.ordinal()-1; ci <= Column.GROUP.ordinal()-1; ci++) {
-                cell[ci] = null;
+    @Override
+    protected void updateCellValuesCache(int cacheSources[]) {
+        fillParentCellCache();
+        for (int column = 0; column < CACHED_COLUMN_COUNT; column++) {
+            String oldColumnValues[] = cellValuesCache[column];
+            if (oldColumnValues == null) {
+                continue;
             }
-            fileIndex++;
+            String columnValues[] = new String[cacheSources.length];
+            for (int i = 0; i < cacheSources.length; i++) {
+                // Cell values of new and modified files are retrieved when they are displayed
+                int source = cacheSources[i];
+                if (source >= 0) {
+                    columnValues[i] = oldColumnValues[source];
+                }
+            }
+            cellValuesCache[column] = columnValues;
         }
     }
 
-    private Object[] fillOneCellCache(int cellIndex, int fileIndex) {
-        AbstractFile file = getCachedFileAt(fileIndex);
-        Object[] cell = cellValuesCache[cellIndex];
-        cell[Column.NAME.ordinal()-1] = file.getName();
+    @Override
+    protected void fireRowsChanged(int removedRows[], int movedRows[], int insertedRows[], int updatedRows[]) {
+        int indexOffset = parent == null ? 0 : 1;
+        // Rows are removed from the last one, so that the index of the rows that remain to be removed doesn't change
+        for (int i = removedRows.length - 1; i >= 0; i--) {
+            fireTableRowsDeleted(removedRows[i] + indexOffset, removedRows[i] + indexOffset);
+        }
+        for (int i = movedRows.length - 1; i >= 0; i--) {
+            fireTableRowsDeleted(movedRows[i] + indexOffset, movedRows[i] + indexOffset);
+        }
+        for (int row : insertedRows) {
+            fireTableRowsInserted(row + indexOffset, row + indexOffset);
+        }
+        for (int row : updatedRows) {
+            fireTableRowsUpdated(row + indexOffset, row + indexOffset);
+        }
+        // The date of the current folder is displayed by the parent folder's row
+        if (parent != null) {
+            fireTableRowsUpdated(0, 0);
+        }
+    }
 
-        Object sizeValue;
-        if (file.isDirectory()) {
-            if (hasCalculatedDirectories) {
-                Long dirSize;
-                synchronized (directorySizes) {
-                    dirSize = directorySizes.get(file);
+    /**
+     * Returns the value of the given column for the given file. Strings that repeat among the files (sizes, dates,
+     * permissions, owners and groups) are shared rather than formatted for each file.
+     *
+     * @param file a file of the current folder
+     * @param column a column, other than the extension column
+     * @return the value of the given column for the given file
+     */
+    private String getCellValue(AbstractFile file, Column column) {
+        switch (column) {
+            case NAME:
+                return file.getName();
+            case SIZE:
+                if (!file.isDirectory()) {
+                    return formatSize(file.getSize());
                 }
-                if (dirSize != null) {
-                    sizeValue = SizeFormat.format(dirSize, sizeFormat);
-                } else {
+                if (hasCalculatedDirectories) {
+                    Long dirSize;
+                    synchronized (directorySizes) {
+                        dirSize = directorySizes.get(file);
+                    }
+                    if (dirSize != null) {
+                        return formatSize(dirSize);
+                    }
                     synchronized (calculateSizeQueue) {
-                        sizeValue = calculateSizeQueue.contains(file) ? QUEUED_DIRECTORY_SIZE_STRING : DIRECTORY_SIZE_STRING;
+                        if (calculateSizeQueue.contains(file)) {
+                            return QUEUED_DIRECTORY_SIZE_STRING;
+                        }
                     }
                 }
-            } else {
-                sizeValue = DIRECTORY_SIZE_STRING;
-            }
-        } else {
-            sizeValue = SizeFormat.format(file.getSize(), sizeFormat);
-        }
-        cell[Column.SIZE.ordinal()-1] = sizeValue;
-        cell[Column.DATE.ordinal()-1] = CustomDateFormat.format(file.getLastModifiedDate());
-        cell[Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
-        if (file.canGetOwner()) {
-            cell[Column.OWNER.ordinal() - 1] = file.getOwner();
+                // Size calculated when the folder was previously shown
+                long cachedSize = DirectorySizeCalculator.getCachedSize(file);
+                return cachedSize >= 0 ? formatSize(cachedSize) : DIRECTORY_SIZE_STRING;
+            case DATE:
+                return CustomDateFormat.format(file.getLastModifiedDate());
+            case PERMISSIONS:
+                return sharedAttributes.intern(file.getPermissionsString());
+            case OWNER:
+                return file.canGetOwner() ? sharedAttributes.intern(file.getOwner()) : null;
+            case GROUP:
+                return file.canGetGroup() ? sharedAttributes.intern(file.getGroup()) : null;
+            default:
+                return null;
         }
-        if (file.canGetGroup()) {
-            cell[Column.GROUP.ordinal() - 1] = file.getGroup();
-        }
-        return cell;
     }
 
 
@@ -142,7 +207,7 @@ public class FileTableModel extends BaseFileTableModel {
 
     @Override
     public int getColumnCount() {
-        return Column.values().length; // icon, name, size, date, permissions, owner, group
+        return COLUMNS.length; // icon, name, size, date, permissions, owner, group
     }
 
     @Override
@@ -161,19 +226,16 @@ public class FileTableModel extends BaseFileTableModel {
 
     @Override
     public synchronized Object getValueAt(int rowIndex, int columnIndex) {
-        if (rowIndex >= cellValuesCache.length || columnIndex >= cellValuesCache[rowIndex].length) {
-            return null;
-        }
         // Need to check that row index is not larger than actual number of rows
         // because if table has just been changed (rows have been removed),
         // JTable may have an old row count value and may try to repaint rows that are out of bounds.
-        if (rowIndex >= getRowCount()) {
+        if (rowIndex >= getRowCount() || columnIndex >= getColumnCount()) {
             // Returning null will have JTable ignore this row
             return null;
         }
 
         // Icon/extension column, return a null value
-        Column column = Column.valueOf(columnIndex);
+        Column column = COLUMNS[columnIndex];
         if (column == Column.EXTENSION) {
             return null;
         }
@@ -182,21 +244,19 @@ public class FileTableModel extends BaseFileTableModel {
         columnIndex--;
         // Handle special '..' file
         if (rowIndex == 0 && parent != null) {
-            return cellValuesCache[0][columnIndex];
-//            Object result = cellValuesCache[0][columnIndex];
-//            if (result == null) {
-//                result = fillOneCellCache(0, 0)[columnIndex];
-//            }
-//            return result;
+            return parentCellValues[columnIndex];
         }
         int fileIndex = parent == null ? rowIndex : rowIndex-1;
-        int index = fileArrayIndex[fileIndex];
-        if (parent != null) {
-            index++;
+        String columnValues[] = cellValuesCache[columnIndex];
+        if (columnValues == null) {
+            columnValues = new String[getFileCountWithoutParent()];
+            cellValuesCache[columnIndex] = columnValues;
         }
-        Object result = cellValuesCache[index][columnIndex];
+        int index = fileArrayIndex[fileIndex];
+        String result = columnValues[index];
         if (result == null) {
-            result = fillOneCellCache(index, parent != null ? fileIndex + 1 : fileIndex)[columnIndex];
+            result = getCellValue(getCachedFileAt(parent != null ? fileIndex + 1 : fileIndex), column);
+            columnValues[index] = result;
         }
         return result;
     }
@@ -52,6 +52,15 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
     /** Quick search string */
     private String searchString;
 
+    /** Quick search string, case-folded */
+    private String foldedSearchString;
+
+    /** Whether items containing the characters of the search string in the same order match it, see QuickSearchIndex */
+    private boolean fuzzy;
+
+    /** Index of the items, created by the first search on the items and dropped when they change */
+    private volatile QuickSearchIndex index;
+
 	/** Timestamp of the last search string change, used when quick search is active */
     private long lastSearchStringChange;
 
@@ -81,7 +90,8 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
     protected synchronized void start() {
         if (!isActive()) {
             // Reset search string
-            searchString = "";
+            setSearchString("");
+            fuzzy = MuConfigurations.getPreferences().getVariable(MuPreference.QUICK_SEARCH_FUZZY, MuPreferences.DEFAULT_QUICK_SEARCH_FUZZY);
             // Start the thread that's responsible for canceling the quick search on timeout
             quickSearchTimeout = MuConfigurations.getPreferences().getVariable(MuPreference.QUICK_SEARCH_TIMEOUT, MuPreferences.DEFAULT_QUICK_SEARCH_TIMEOUT);
             if (quickSearchTimeout > 0) {
@@ -124,7 +134,11 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
      * @return true if the current quick search string matches the given string
      */
     public boolean matches(String string) {
-        return isActive() && string.toLowerCase().contains(searchString.toLowerCase());
+        if (!isActive()) {
+            return false;
+        }
+        return fuzzy ? QuickSearchIndex.getFuzzyScore(string, foldedSearchString) >= 0
+                : QuickSearchIndex.containsFolded(string, foldedSearchString);
     }
 
     public boolean matches(AbstractFile file) {
@@ -162,6 +176,11 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
 		this.lastSearchStringChange = lastSearchStringChange;
 	}
 
+	private void setSearchString(String searchString) {
+		this.searchString = searchString;
+		this.foldedSearchString = QuickSearchIndex.fold(searchString);
+	}
+
 	protected boolean isSearchStringEmpty() {
 		return searchString.isEmpty();
 	}
@@ -173,7 +192,7 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
         // Note that we only repaint if the search string is not empty: if it's empty,
         // the cancel() method will be called, and repainting twice would result in an
         // unpleasant graphical artifact.
-        searchString = searchString.substring(0, searchString.length()-1);
+        setSearchString(searchString.substring(0, searchString.length()-1));
         if (!searchString.isEmpty()) {
             component.repaint();
         }
@@ -183,7 +202,7 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
 		// Update search string with the key that has just been typed
         // Since the search string has been updated, match information has changed as well
         // and we need to repaint the table.
-        searchString += keyChar;
+        setSearchString(searchString + keyChar);
         component.repaint();
 	}
 	
@@ -210,12 +229,15 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
     }
 	
 	private int getBestMatch(int startIndex, boolean descending, boolean findBestMatch) {
-    	String searchStringLC = searchString.toLowerCase();
-    	int searchStringLen = searchString.length();
+        QuickSearchIndex index = getIndex();
+        index.setSearchString(searchString);
+        int searchStringLen = searchString.length();
         int startsWithCaseMatch = -1;
         int startsWithNoCaseMatch = -1;
         int containsCaseMatch = -1;
         int containsNoCaseMatch = -1;
+        int fuzzyMatch = -1;
+        int fuzzyMatchScore = -1;
         int nbFiles = getNumOfItems();
 
         // Iterate on rows and look the first strings to match one of the following tests,
@@ -224,20 +246,20 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
         // - search string matches the beginning of the string with a different case
         // - string contains search string with the same case
         // - string contains search string with a different case
+        // - in fuzzy mode, string contains the characters of the search string in the same order, with the best score
+        // Only the rows of the items matched by the index are tested.
         for (int i = startIndex; descending ? i < nbFiles : i >= 0; i = descending ? i+1 : i-1) {
             // if findBestMatch was not specified, stop to the first match
-            if (!findBestMatch && (startsWithCaseMatch != -1 || startsWithNoCaseMatch != -1 || containsCaseMatch != -1 || containsNoCaseMatch != -1)) {
+            if (!findBestMatch && (startsWithCaseMatch != -1 || startsWithNoCaseMatch != -1 || containsCaseMatch != -1 || containsNoCaseMatch != -1 || fuzzyMatch != -1)) {
                 break;
             }
 
-            String item = getItemString(i);
-            int itemLen = item.length();
-
-            // No need to compare strings if quick search string is longer than compared string,
-            // they won't match
-            if (itemLen < searchStringLen) {
+            int id = getItemId(i);
+            if (!index.matches(id)) {
                 continue;
             }
+            String item = index.getItem(id);
+            int itemLen = item.length();
 
             // Compare quick search string against
             if (item.startsWith(searchString)) {
@@ -251,8 +273,8 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
                 continue;
             }
 
-            String itemLC = item.toLowerCase();
-            if (itemLC.startsWith(searchStringLC)) {
+            String itemLC = index.getFoldedItem(id);
+            if (itemLC.startsWith(foldedSearchString)) {
                 // We've got a match, let's see if we can find a better match on the next string
                 startsWithNoCaseMatch = i;
             }
@@ -279,10 +301,19 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
                 continue;
             }
 
-            if (itemLC.contains(searchStringLC)) {
+            if (itemLC.contains(foldedSearchString)) {
                 // We've got a match, let's see if we can find a better match on the next string
                 containsNoCaseMatch = i;
-                //continue;
+                continue;
+            }
+
+            if (index.isFuzzy()) {
+                int score = index.getFuzzyScore(id, foldedSearchString);
+                if (score > fuzzyMatchScore) {
+                    // We've got a match, let's see if we can find a better match on the next string
+                    fuzzyMatch = i;
+                    fuzzyMatchScore = score;
+                }
             }
         }
     	
@@ -291,13 +322,61 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
             : startsWithNoCaseMatch != -1 ? startsWithNoCaseMatch
             : containsCaseMatch !=-1 ? containsCaseMatch
             : containsNoCaseMatch != -1 ? containsNoCaseMatch
-            : -1;
-        LOGGER.trace("startsWithCaseMatch="+startsWithCaseMatch+" containsCaseMatch="+containsCaseMatch+" startsWithNoCaseMatch="+startsWithNoCaseMatch+" containsNoCaseMatch="+containsNoCaseMatch);
+            : fuzzyMatch;
+        LOGGER.trace("startsWithCaseMatch="+startsWithCaseMatch+" containsCaseMatch="+containsCaseMatch+" startsWithNoCaseMatch="+startsWithNoCaseMatch+" containsNoCaseMatch="+containsNoCaseMatch+" fuzzyMatch="+fuzzyMatch);
         LOGGER.trace("bestMatch="+bestMatch);
 
         return bestMatch;
     }
 
+    /**
+     * Returns the index of the items, creating it if the items have changed since it was created.
+     *
+     * @return the index of the items
+     */
+    private QuickSearchIndex getIndex() {
+        QuickSearchIndex index = this.index;
+        if (index == null || index.isFuzzy() != fuzzy) {
+            index = new QuickSearchIndex(getItemStrings(), fuzzy);
+            this.index = index;
+        }
+        return index;
+    }
+
+    /**
+     * Notifies this quick search that the items have changed, so that they are indexed again by the next search.
+     * This method must be called when items are added or removed, or when their ids change.
+     */
+    public void itemsChanged() {
+        index = null;
+    }
+
+    /**
+     * Returns the strings of all the items, by item id, see {@link #getItemId(int)}.
+     * By default, ids are the indexes of the items and this method returns the strings of the items.
+     *
+     * @return the strings of all the items, by id
+     */
+    protected String[] getItemStrings() {
+        String items[] = new String[getNumOfItems()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = getItemString(i);
+        }
+        return items;
+    }
+
+    /**
+     * Returns the id of the item at the given index, that identifies it in {@link #getItemStrings()}. Unlike its
+     * index, the id of an item must not change when the items are reordered, e.g. sorted.
+     * By default, ids are the indexes of the items.
+     *
+     * @param index index of an item
+     * @return the id of the item
+     */
+    protected int getItemId(int index) {
+        return index;
+    }
+
 	//////////////////////
 	// Abstract methods //
 	//////////////////////
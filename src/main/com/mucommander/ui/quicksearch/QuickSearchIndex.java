@@ -0,0 +1,277 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.quicksearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The items searched by a {@link QuickSearch}, with their case-folded strings computed once, and the items that match
+ * the current search string.
+ * <p>
+ * Items are identified by an id that doesn't depend on their order, so that the index remains valid when the items
+ * are sorted. The matches of the successive search strings are kept: when a character is typed, only the items that
+ * matched the previous search string are tested, and when the last character is removed, the previous matches are
+ * restored without testing any item.
+ * </p>
+ * <p>
+ * An item matches a search string if it contains it, case-insensitively, or in fuzzy mode if it contains all the
+ * characters of the search string in the same order (e.g. <code>fbr</code> matches <code>FooBar.txt</code>).
+ * </p>
+ */
+class QuickSearchIndex {
+
+    /** The strings of the items, by id */
+    private final String items[];
+
+    /** The case-folded strings of the items, by id */
+    private final String foldedItems[];
+
+    /** Whether items match the characters of the search string in the same order rather than the whole string */
+    private final boolean fuzzy;
+
+    /** Whether each item matches the current search string, by id */
+    private final boolean matching[];
+
+    /** The case-folded successive search strings, each of them starting with the previous one */
+    private final List<String> searchStrings = new ArrayList<>();
+
+    /** The ids of the items matching each of the {@link #searchStrings} */
+    private final List<int[]> matches = new ArrayList<>();
+
+
+    /**
+     * Creates a new index of the given items.
+     *
+     * @param items the strings of the items, by id
+     * @param fuzzy <code>true</code> if items match the characters of the search string in the same order,
+     * <code>false</code> if they must contain the search string
+     */
+    QuickSearchIndex(String items[], boolean fuzzy) {
+        this.items = items;
+        this.fuzzy = fuzzy;
+        foldedItems = new String[items.length];
+        for (int i = 0; i < items.length; i++) {
+            foldedItems[i] = fold(items[i]);
+        }
+        matching = new boolean[items.length];
+    }
+
+    /**
+     * Returns <code>true</code> if items match the characters of the search string in the same order.
+     *
+     * @return <code>true</code> in fuzzy mode
+     */
+    boolean isFuzzy() {
+        return fuzzy;
+    }
+
+    /**
+     * Sets the search string that items are matched against.
+     *
+     * @param searchString the new search string
+     */
+    void setSearchString(String searchString) {
+        String foldedSearchString = fold(searchString);
+        int depth = searchStrings.size();
+        if (depth > 0 && searchStrings.get(depth - 1).equals(foldedSearchString)) {
+            return;
+        }
+        if (depth > 0) {
+            for (int id : matches.get(depth - 1)) {
+                matching[id] = false;
+            }
+        }
+
+        // Forget the search strings the new one doesn't start with, e.g. when characters have been removed
+        while (depth > 0 && !foldedSearchString.startsWith(searchStrings.get(depth - 1))) {
+            depth--;
+            searchStrings.remove(depth);
+            matches.remove(depth);
+        }
+
+        int newMatches[];
+        if (depth > 0 && searchStrings.get(depth - 1).equals(foldedSearchString)) {
+            newMatches = matches.get(depth - 1);
+        } else {
+            // Only the items that matched a shorter search string may match this one
+            int candidates[] = depth > 0 ? matches.get(depth - 1) : null;
+            int nbCandidates = candidates != null ? candidates.length : items.length;
+            int found[] = new int[nbCandidates];
+            int nbFound = 0;
+            for (int i = 0; i < nbCandidates; i++) {
+                int id = candidates != null ? candidates[i] : i;
+                if (fuzzy ? getFuzzyScore(id, foldedSearchString) >= 0 : foldedItems[id].contains(foldedSearchString)) {
+                    found[nbFound++] = id;
+                }
+            }
+            newMatches = nbFound == found.length ? found : Arrays.copyOf(found, nbFound);
+            searchStrings.add(foldedSearchString);
+            matches.add(newMatches);
+        }
+
+        for (int id : newMatches) {
+            matching[id] = true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the item with the given id matches the current search string.
+     *
+     * @param id the id of an item
+     * @return <code>true</code> if the item matches the current search string
+     */
+    boolean matches(int id) {
+        return id >= 0 && id < matching.length && matching[id];
+    }
+
+    /**
+     * Returns the string of the item with the given id.
+     *
+     * @param id the id of an item
+     * @return the string of the item
+     */
+    String getItem(int id) {
+        return items[id];
+    }
+
+    /**
+     * Returns the case-folded string of the item with the given id.
+     *
+     * @param id the id of an item
+     * @return the case-folded string of the item
+     */
+    String getFoldedItem(int id) {
+        return foldedItems[id];
+    }
+
+    /**
+     * Returns the fuzzy score of the item with the given id for the given search string, see
+     * {@link #getFuzzyScore(String, String)}.
+     *
+     * @param id the id of an item
+     * @param foldedSearchString a case-folded search string
+     * @return the score of the item, <code>-1</code> if it doesn't contain the characters of the search string
+     */
+    int getFuzzyScore(int id, String foldedSearchString) {
+        return getFuzzyScore(items[id], foldedSearchString);
+    }
+
+
+    /**
+     * Returns the given character, case-folded the same way as <code>String.regionMatches(true, ...)</code> does.
+     *
+     * @param c a character
+     * @return the case-folded character
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Returns the given string with each of its characters case-folded by {@link #fold(char)}: unlike
+     * <code>String.toLowerCase()</code>, this doesn't depend on the default locale, and a string contains another
+     * one case-insensitively if its folded string contains the other folded string.
+     *
+     * @param s a string
+     * @return the case-folded string
+     */
+    static String fold(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length && fold(s.charAt(i)) == s.charAt(i)) {
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+        char chars[] = s.toCharArray();
+        for (; i < length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns <code>true</code> if the given string contains the given case-folded search string, case-insensitively.
+     * Unlike folding the string first, this doesn't allocate anything.
+     *
+     * @param s a string
+     * @param foldedSearchString a case-folded search string
+     * @return <code>true</code> if the string contains the search string
+     */
+    static boolean containsFolded(String s, String foldedSearchString) {
+        int length = foldedSearchString.length();
+        int last = s.length() - length;
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < length && fold(s.charAt(start + i)) == foldedSearchString.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how well the given string matches the characters of the given case-folded search string, in fuzzy mode.
+     * Each matched character scores a point, and more if it follows the previously matched character or starts a word
+     * (the string itself, or a word after a separator or a lower-case letter): <code>fb</code> scores better on
+     * <code>foo_bar</code> or <code>FooBar</code> than on <code>fabric</code>.
+     *
+     * @param s a string
+     * @param foldedSearchString a case-folded search string
+     * @return the score of the string, <code>-1</code> if it doesn't contain the characters of the search string
+     * in the same order
+     */
+    static int getFuzzyScore(String s, String foldedSearchString) {
+        int score = 0;
+        int position = -1;
+        int length = s.length();
+        for (int i = 0; i < foldedSearchString.length(); i++) {
+            char c = foldedSearchString.charAt(i);
+            int previous = position;
+            do {
+                position++;
+            } while (position < length && fold(s.charAt(position)) != c);
+            if (position == length) {
+                return -1;
+            }
+            score++;
+            if (position == previous + 1 && previous >= 0) {
+                score += 2;
+            }
+            if (isWordStart(s, position)) {
+                score += 3;
+            }
+        }
+        return score;
+    }
+
+    private static boolean isWordStart(String s, int position) {
+        if (position == 0) {
+            return true;
+        }
+        char previous = s.charAt(position - 1);
+        char c = s.charAt(position);
+        return !Character.isLetterOrDigit(previous) || (Character.isUpperCase(c) && Character.isLowerCase(previous));
+    }
+}
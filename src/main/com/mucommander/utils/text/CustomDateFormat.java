@@ -26,6 +26,7 @@ import com.mucommander.conf.MuPreferences;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 
 /**
@@ -41,6 +42,12 @@ public class CustomDateFormat implements ConfigurationListener {
     /** Custom SimpleDateFormat instance */
     private static SimpleDateFormat dateFormat;
 
+    /** Dates formatted by {@link #format(long)}, by period of {@link #dateResolution} in local time */
+    private final static StringCache formattedDates = new StringCache(4096);
+
+    /** Duration in milliseconds of the smallest field displayed by the date format, e.g. one minute */
+    private static long dateResolution;
+
 
     /**
      * Creates a new CustomDateFormat instance.
@@ -58,7 +65,7 @@ public class CustomDateFormat implements ConfigurationListener {
         singleton = new CustomDateFormat();
         MuConfigurations.addPreferencesListener(singleton);
 
-        dateFormat = createDateFormat();
+        updateDateFormat();
     }
 
 
@@ -93,6 +100,27 @@ public class CustomDateFormat implements ConfigurationListener {
      */
     public static synchronized void updateDateFormat() {
         dateFormat = createDateFormat();
+        dateResolution = getDateResolution(dateFormat.toPattern());
+        formattedDates.clear();
+    }
+
+
+    /**
+     * Returns the duration in milliseconds of the smallest field displayed by the given date format: dates in the
+     * same period of that duration (in local time) are formatted the same way.
+     * Formats displaying the time zone are not cached, as a local time may be ambiguous when daylight saving time ends.
+     *
+     * @param pattern a <code>java.text.SimpleDateFormat</code> pattern
+     * @return the duration of the smallest field displayed by the given date format, 1 if dates can't be grouped
+     */
+    private static long getDateResolution(String pattern) {
+        if (pattern.indexOf('S') >= 0 || pattern.indexOf('z') >= 0 || pattern.indexOf('Z') >= 0 || pattern.indexOf('X') >= 0) {
+            return 1;
+        }
+        if (pattern.indexOf('s') >= 0) {
+            return 1000;
+        }
+        return 60 * 1000;
     }
 
 
@@ -120,11 +148,24 @@ public class CustomDateFormat implements ConfigurationListener {
 
     /**
      * Formats the given timestamp with custom date format and returns a formatted date string.
+     * Dates are formatted once per period of the smallest displayed field (e.g. per minute), so that the files of
+     * a folder share the strings of their dates, and formatting a date that has already been formatted doesn't
+     * allocate anything.
      *
      * @return a formatted string representing the given date.
      */
-    public static String format(long date) {
-        return format(new Date(date));
+    public static synchronized String format(long date) {
+        if (dateResolution == 1) {
+            return format(new Date(date));
+        }
+        TimeZone timeZone = dateFormat.getTimeZone();
+        long period = Math.floorDiv(date + timeZone.getOffset(date), dateResolution);
+        String result = formattedDates.get(period);
+        if (result == null) {
+            result = format(new Date(date));
+            formattedDates.put(period, result);
+        }
+        return result;
     }
 	
 
@@ -0,0 +1,118 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2014-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.utils.text;
+
+/**
+ * A small fixed-size cache of strings, used to share formatted values that repeat many times, e.g. the dates or
+ * permissions of the files of a folder.
+ * <p>
+ * The cache is direct-mapped: each key has a single slot, and a new value simply replaces the one that was in its
+ * slot. Looking up a value neither allocates nor grows the cache, so that it can be done each time a value is
+ * displayed. A cache instance is meant to be used either with <code>long</code> keys
+ * ({@link #get(long)}/{@link #put(long, String)}) or to share equal strings ({@link #intern(String)}), not both.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class StringCache {
+
+    /** Key of each slot, for the values cached by a <code>long</code> key */
+    private final long keys[];
+
+    /** Value of each slot, <code>null</code> for empty slots */
+    private final String values[];
+
+    /** Mask applied to the hash of a key to get its slot */
+    private final int mask;
+
+
+    /**
+     * Creates a new empty cache.
+     *
+     * @param capacity the number of slots of the cache, rounded up to a power of 2
+     */
+    public StringCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        keys = new long[size];
+        values = new String[size];
+        mask = size - 1;
+    }
+
+    private int getSlot(int hash) {
+        // Spreads the high bits, as keys often only differ by their high bits (e.g. multiples of a unit)
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int getSlot(long key) {
+        return getSlot((int)(key ^ (key >>> 32)) * 0x9E3779B9);
+    }
+
+    /**
+     * Returns the value cached for the given key, <code>null</code> if there is none.
+     *
+     * @param key the key of the value
+     * @return the value cached for the given key, <code>null</code> if there is none
+     */
+    public synchronized String get(long key) {
+        int slot = getSlot(key);
+        return keys[slot] == key ? values[slot] : null;
+    }
+
+    /**
+     * Caches the given value for the given key, in place of the value that had the same slot, if any.
+     *
+     * @param key the key of the value
+     * @param value the value to cache
+     */
+    public synchronized void put(long key, String value) {
+        int slot = getSlot(key);
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * Returns a cached string equal to the given one, if there is one, or caches and returns the given string.
+     * Equal strings that are interned one after the other thus share the same instance.
+     *
+     * @param value the string to intern, may be <code>null</code>
+     * @return a string equal to the given one
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int slot = getSlot(value.hashCode());
+        String cachedValue = values[slot];
+        if (value.equals(cachedValue)) {
+            return cachedValue;
+        }
+        values[slot] = value;
+        return value;
+    }
+
+    /**
+     * Removes all the values from the cache.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = 0;
+            values[i] = null;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.archiver.ArchiveFormat;
+import com.mucommander.commons.file.archiver.Archiver;
+import com.mucommander.commons.file.impl.tar.TarArchiveFile;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A test case for {@link ArchiveEntryCache}.
+ */
+public class ArchiveEntryCacheTest {
+
+    /** Date of the archives, in the past so that it can be set on all file systems */
+    private final static long DATE = 1500000000000L;
+
+    private AbstractFile tempFolder;
+
+    private AbstractFile cacheFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFolder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        tempFolder.mkdir();
+        cacheFolder = tempFolder.getChild("cache");
+        ArchiveEntryCache.setCacheFolder(cacheFolder);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        ArchiveEntryCache.setCacheFolder(null);
+        ArchiveEntryCache.setMaxSize(ArchiveEntryCache.DEFAULT_MAX_SIZE);
+        tempFolder.deleteRecursively();
+    }
+
+    /**
+     * Creates a TAR archive with a file of the given content in a subfolder.
+     */
+    private AbstractFile createArchive(String name, String content, long date) throws IOException {
+        AbstractFile file = tempFolder.getChild(name);
+        Archiver archiver = Archiver.getArchiver(file, ArchiveFormat.TAR);
+        byte[] bytes = content.getBytes("UTF-8");
+        archiver.createEntry("dir", new ArchiveEntry("dir", true, DATE, 0, true));
+        OutputStream out = archiver.createEntry("dir/file.txt", new ArchiveEntry("dir/file.txt", false, DATE, bytes.length, true));
+        out.write(bytes);
+        archiver.createEntry("top.txt", new ArchiveEntry("top.txt", false, DATE, 0, true));
+        archiver.close();
+        file.setLastModifiedDate(date);
+        return file;
+    }
+
+    private static String read(AbstractFile file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = file.getInputStream()) {
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Asserts that the tree of an archive that has been listed is loaded from the cache, and that the archive is read
+     * again when the contents of an entry is read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCachedTree() throws IOException {
+        AbstractFile file = createArchive("test.tar", "abc", DATE);
+        CountingTarArchiveFile archive = new CountingTarArchiveFile(file);
+        assert archive.ls().length == 2;
+        assert archive.nbListings == 1;
+        assert cacheFolder.ls().length == 1;
+
+        archive = new CountingTarArchiveFile(file);
+        assert archive.ls().length == 2;
+        AbstractFile entry = archive.getArchiveEntryFile("dir/file.txt");
+        assert entry.exists() && !entry.isDirectory();
+        assert entry.getSize() == 3;
+        assert entry.getLastModifiedDate() == DATE;
+        assert archive.getArchiveEntryFile("dir").isDirectory();
+        assert archive.nbListings == 0;
+
+        assert read(entry).equals("abc");
+        assert archive.nbListings == 1;
+        assert read(entry).equals("abc");
+        assert archive.nbListings == 1;
+    }
+
+    /**
+     * Asserts that the cached tree of an archive is ignored once the archive has changed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testModifiedArchive() throws IOException {
+        AbstractFile file = createArchive("test.tar", "abc", DATE);
+        new CountingTarArchiveFile(file).ls();
+
+        file = createArchive("test.tar", "abcdef", DATE + 60000);
+        CountingTarArchiveFile archive = new CountingTarArchiveFile(file);
+        archive.ls();
+        assert archive.nbListings == 1;
+        assert archive.getArchiveEntryFile("dir/file.txt").getSize() == 6;
+    }
+
+    /**
+     * Asserts that the least recently used trees are deleted when the cache grows too big.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testEviction() throws IOException {
+        AbstractFile file1 = createArchive("test1.tar", "abc", DATE);
+        new CountingTarArchiveFile(file1).ls();
+        AbstractFile cacheFile = cacheFolder.ls()[0];
+        cacheFile.setLastModifiedDate(DATE);
+        ArchiveEntryCache.setMaxSize(cacheFile.getSize() * 3 / 2);
+
+        AbstractFile file2 = createArchive("test2.tar", "abc", DATE);
+        new CountingTarArchiveFile(file2).ls();
+        assert cacheFolder.ls().length == 1;
+        assert !cacheFile.exists();
+
+        CountingTarArchiveFile archive = new CountingTarArchiveFile(file2);
+        archive.ls();
+        assert archive.nbListings == 0;
+    }
+
+    /**
+     * Asserts that the temporary file a tree is written to is deleted if the tree cannot be stored.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFailedSave() throws IOException {
+        AbstractFile file = createArchive("test.tar", "abc", DATE);
+        new CountingTarArchiveFile(file).ls();
+        AbstractFile cacheFile = cacheFolder.ls()[0];
+
+        // A non-empty folder in place of the cache file cannot be replaced
+        cacheFile.delete();
+        cacheFile.mkdir();
+        cacheFile.getChild("file").mkfile();
+        new CountingTarArchiveFile(file).ls();
+        assert cacheFolder.ls().length == 1;
+        assert cacheFile.isDirectory();
+    }
+
+    /**
+     * Asserts that temporary files are not taken into account by the eviction of the least recently used trees.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testEvictionIgnoresTemporaryFiles() throws IOException {
+        AbstractFile file = createArchive("test.tar", "abc", DATE);
+        new CountingTarArchiveFile(file).ls();
+        AbstractFile cacheFile = cacheFolder.ls()[0];
+        ArchiveEntryCache.setMaxSize(cacheFile.getSize() * 3 / 2);
+
+        try (OutputStream out = cacheFolder.getChild("other.entries.tmp").getOutputStream()) {
+            out.write(new byte[(int)cacheFile.getSize() * 2]);
+        }
+        cacheFile.delete();
+        new CountingTarArchiveFile(file).ls();
+        assert cacheFile.exists();
+    }
+
+
+    /**
+     * Counts the listings of the archive.
+     */
+    private static class CountingTarArchiveFile extends TarArchiveFile {
+        private int nbListings;
+
+        private CountingTarArchiveFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public ArchiveEntryIterator getEntryIterator() throws IOException {
+            nbListings++;
+            return super.getEntryIterator();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.archiver.ArchiveFormat;
+import com.mucommander.commons.file.archiver.Archiver;
+
+import java.io.IOException;
+
+/**
+ * Measures the cost of indexing the entries of archives with many entries in flat folders: building an
+ * {@link ArchiveEntryTree} from synthetic entries, then listing synthetic Zip and Tar archives with
+ * {@link AbstractArchiveFile#ls()} and looking up their entries with {@link AbstractArchiveFile#getArchiveEntryFile(String)}.
+ * The time spent reading the archives' entries without indexing them is measured as well.
+ *
+ * <p>This is not a unit test, run it from the command line:
+ * <pre>
+ *   java -Xmx4g com.mucommander.commons.file.ArchiveEntryTreeBenchmark [nbEntries] [nbFolders] [nbRuns]
+ * </pre>
+ * The archives are created in the temporary folder, the Tar archive takes 512 bytes per entry.
+ */
+public class ArchiveEntryTreeBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        int nbEntries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int nbFolders = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int nbRuns = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        FileFactory.registerProtocolArchives();
+        String paths[] = new String[nbEntries];
+        for (int i = 0; i < nbEntries; i++) {
+            paths[i] = "folder" + (i % nbFolders) + "/file" + i;
+        }
+
+        for (int run = 0; run < nbRuns; run++) {
+            long start = System.nanoTime();
+            ArchiveEntryTree tree = new ArchiveEntryTree();
+            for (String path : paths) {
+                tree.addArchiveEntry(new ArchiveEntry(path, false, 0, 0, true));
+            }
+            System.out.println("run " + run + ": build tree   " + elapsed(start) + " ms");
+
+            start = System.nanoTime();
+            long checksum = 0;
+            for (String path : paths) {
+                checksum += tree.findEntryNode(path);
+            }
+            System.out.println("run " + run + ": find entries " + elapsed(start) + " ms");
+
+            // Prevents the JIT from optimizing the loops away
+            if (checksum == 42) {
+                System.out.println();
+            }
+        }
+
+        AbstractFile tempFolder = FileFactory.getTemporaryFile(ArchiveEntryTreeBenchmark.class.getName(), true);
+        tempFolder.mkdir();
+        try {
+            benchmarkArchive(createArchive(tempFolder.getChild("entries.zip"), ArchiveFormat.ZIP, paths), paths, nbRuns);
+            benchmarkArchive(createArchive(tempFolder.getChild("entries.tar"), ArchiveFormat.TAR, paths), paths, nbRuns);
+        } finally {
+            tempFolder.deleteRecursively();
+        }
+    }
+
+    private static AbstractFile createArchive(AbstractFile file, ArchiveFormat format, String paths[]) throws IOException {
+        Archiver archiver = Archiver.getArchiver(file, format);
+        for (String path : paths) {
+            archiver.createEntry(path, new ArchiveEntry(path, false, 0, 0, true));
+        }
+        archiver.close();
+        return file;
+    }
+
+    private static void benchmarkArchive(AbstractFile file, String paths[], int nbRuns) throws IOException {
+        System.out.println(file.getName() + ", " + (file.getSize() / (1024 * 1024)) + " MB");
+        for (int run = 0; run < nbRuns; run++) {
+            // A new instance is created so that the archive is read again
+            AbstractArchiveFile archive = (AbstractArchiveFile)FileFactory.wrapArchive(((AbstractArchiveFile)file).getProxiedFile());
+
+            long start = System.nanoTime();
+            int nbRead = 0;
+            ArchiveEntryIterator iterator = archive.getEntryIterator();
+            try {
+                while (iterator.nextEntry() != null) {
+                    nbRead++;
+                }
+            } finally {
+                iterator.close();
+            }
+            System.out.println("run " + run + ": read entries " + elapsed(start) + " ms");
+
+            start = System.nanoTime();
+            int nbListed = 0;
+            for (AbstractFile folder : archive.ls()) {
+                nbListed += folder.ls().length;
+            }
+            System.out.println("run " + run + ": ls           " + elapsed(start) + " ms");
+
+            start = System.nanoTime();
+            for (String path : paths) {
+                if (!archive.getArchiveEntryFile(path).exists()) {
+                    throw new IOException("Entry not found: " + path);
+                }
+            }
+            System.out.println("run " + run + ": find entries " + elapsed(start) + " ms");
+
+            if (nbRead != paths.length || nbListed != paths.length) {
+                throw new IOException("Read " + nbRead + " and listed " + nbListed + " of " + paths.length + " entries");
+            }
+        }
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
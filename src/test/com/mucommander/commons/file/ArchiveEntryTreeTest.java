@@ -0,0 +1,97 @@
+package com.mucommander.commons.file;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link ArchiveEntryTree}.
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry createEntry(String path, boolean directory) {
+        return new ArchiveEntry(path, directory, 0, 0, false);
+    }
+
+    /**
+     * Asserts that entries can be looked up by path, trailing separators being ignored, and that the parents of an
+     * entry are created when they are not in the tree.
+     */
+    @Test
+    public void testFindEntryNode() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        ArchiveEntry file = createEntry("a/b/file.txt", false);
+        tree.addArchiveEntry(file);
+        tree.addArchiveEntry(createEntry("a/c/", true));
+
+        int node = tree.findEntryNode("a/b/file.txt");
+        assert tree.getEntry(node) == file;
+        assert file.exists();
+
+        int parent = tree.getParent(node);
+        assert parent == tree.findEntryNode("a/b");
+        assert parent == tree.findEntryNode("a/b/");
+        assert tree.getEntry(parent).isDirectory();
+        assert tree.getEntry(parent).getPath().equals("a/b/");
+
+        int a = tree.findEntryNode("a");
+        assert tree.getParent(a) == ArchiveEntryTree.ROOT;
+        assert tree.getChildCount(ArchiveEntryTree.ROOT) == 1;
+        assert tree.getChildCount(a) == 2;
+        assert tree.getChild(a, 0) == parent;
+        assert tree.getEntry(tree.getChild(a, 1)).getPath().equals("a/c/");
+
+        assert tree.findEntryNode("a/b/file") == ArchiveEntryTree.NOT_FOUND;
+        assert tree.findEntryNode("a/b/file.txt/x") == ArchiveEntryTree.NOT_FOUND;
+        assert tree.findEntryNode("A") == ArchiveEntryTree.NOT_FOUND;
+    }
+
+    /**
+     * Asserts that an entry replaces the entry with the same path, and keeps its children.
+     */
+    @Test
+    public void testReplaceEntry() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(createEntry("dir/file", false));
+        ArchiveEntry dir = createEntry("dir", true);
+        tree.addArchiveEntry(dir);
+        ArchiveEntry file = createEntry("dir/file", false);
+        tree.addArchiveEntry(file);
+
+        int node = tree.findEntryNode("dir/");
+        assert tree.getEntry(node) == dir;
+        assert tree.getChildCount(node) == 1;
+        assert tree.getEntry(tree.getChild(node, 0)) == file;
+        assert file.exists();
+    }
+
+    /**
+     * Asserts that the children of a folder with many entries are found and kept in the order they were added, also
+     * once some of them have been removed.
+     */
+    @Test
+    public void testLargeFolder() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = 10000;
+        for (int i = 0; i < nbEntries; i++) {
+            tree.addArchiveEntry(createEntry("dir/file" + i, false));
+        }
+        int dir = tree.findEntryNode("dir");
+        assert tree.getChildCount(dir) == nbEntries;
+        for (int i = 0; i < nbEntries; i++) {
+            assert tree.getEntry(tree.findEntryNode("dir/file" + i)).getPath().equals("dir/file" + i);
+            assert tree.getEntry(tree.getChild(dir, i)).getPath().equals("dir/file" + i);
+        }
+
+        for (int i = 0; i < nbEntries; i += 2) {
+            tree.removeEntryNode(tree.findEntryNode("dir/file" + i));
+        }
+        assert tree.getChildCount(dir) == nbEntries / 2;
+        for (int i = 0; i < nbEntries; i++) {
+            assert (tree.findEntryNode("dir/file" + i) == ArchiveEntryTree.NOT_FOUND) == (i % 2 == 0);
+        }
+        assert tree.getEntry(tree.getChild(dir, 0)).getPath().equals("dir/file1");
+
+        tree.removeEntryNode(dir);
+        assert tree.getChildCount(ArchiveEntryTree.ROOT) == 0;
+        assert tree.findEntryNode("dir/file1") == ArchiveEntryTree.NOT_FOUND;
+    }
+}
@@ -1,8 +1,19 @@
 package com.mucommander.commons.file;
 
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * A test case for {@link FileFactory}.
@@ -11,6 +22,16 @@ import java.io.IOException;
  */
 public class FileFactoryTest {
 
+    /**
+     * Registers the built-in archive formats, as the application does on startup.
+     */
+    @BeforeClass
+    public void registerArchiveFormats() {
+        if (!FileFactory.isArchiveFilename("file.zip")) {
+            FileFactory.registerProtocolArchives();
+        }
+    }
+
     /**
      * Tests {@link com.mucommander.commons.file.FileFactory#getTemporaryFolder()}.
      *
@@ -61,4 +82,80 @@ public class FileFactoryTest {
         assert temporaryFile1 != null;
         assert !temporaryFile1.exists();
     }
+
+    /**
+     * Asserts that the archive format matched by a filename is that of the first registered provider whose filter
+     * accepts the filename, as when filters were tried one after the other.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testArchiveFormatLookup() throws IOException {
+        String filenames[] = {"file", "file.txt", "file.zip", "FILE.ZIP", "file.zip.txt", "file.tar.gz", "file.TGZ",
+                "file.gz", "file.tar.bz2", "file.deb", ".zip", "file.", "file..zip", "archive.7z", "file.Z", "tar.gz"};
+        assert FileFactory.archiveFormats().hasNext();
+
+        for (String filename : filenames) {
+            ArchiveFormatProvider expectedProvider = null;
+            for (Iterator<ArchiveFormatProvider> providers = FileFactory.archiveFormats(); providers.hasNext(); ) {
+                ArchiveFormatProvider provider = providers.next();
+                if (provider.getFilenameFilter().accept(filename)) {
+                    expectedProvider = provider;
+                    break;
+                }
+            }
+
+            assert (expectedProvider != null) == FileFactory.isArchiveFilename(filename) : filename;
+
+            TestFile file = new TestFile("/" + filename, false, 0, 0, null);
+            AbstractFile archiveFile = FileFactory.wrapArchive(file);
+            if (expectedProvider == null) {
+                assert archiveFile == file : filename;
+            } else {
+                assert archiveFile.getClass() == expectedProvider.getFile(file).getClass() : filename;
+            }
+        }
+    }
+
+    /**
+     * Resolves an entry of a Zip archive located inside another Zip archive and asserts that the nested archive is
+     * not created (and thus read) again when the entry is resolved a second time.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testNestedArchive() throws IOException {
+        ByteArrayOutputStream innerZip = new ByteArrayOutputStream();
+        try (ZipOutputStream zout = new ZipOutputStream(innerZip)) {
+            zout.putNextEntry(new ZipEntry("file.txt"));
+            zout.write("content".getBytes("UTF-8"));
+            zout.closeEntry();
+        }
+
+        AbstractFile folder = FileFactory.getTemporaryFile("nested", true);
+        folder.mkdir();
+        File outerZip = new File((File)folder.getUnderlyingFileObject(), "outer.zip");
+        try {
+            try (OutputStream out = new FileOutputStream(outerZip); ZipOutputStream zout = new ZipOutputStream(out)) {
+                zout.putNextEntry(new ZipEntry("folder/inner.zip"));
+                zout.write(innerZip.toByteArray());
+                zout.closeEntry();
+            }
+
+            String path = outerZip.getAbsolutePath() + "/folder/inner.zip/file.txt";
+            AbstractFile file = FileFactory.getFile(path);
+            assert file.exists();
+            try (InputStream in = file.getInputStream()) {
+                assert "content".equals(new String(StreamUtils.readFully(in, new byte[7]), "UTF-8"));
+            }
+
+            AbstractFile innerArchive = file.getParent();
+            assert innerArchive instanceof AbstractArchiveFile;
+            assert innerArchive.isArchive();
+            assert innerArchive == FileFactory.getFile(path).getParent();
+            assert innerArchive == FileFactory.getFile(outerZip.getAbsolutePath() + "/folder/inner.zip");
+        } finally {
+            folder.deleteRecursively();
+        }
+    }
 }
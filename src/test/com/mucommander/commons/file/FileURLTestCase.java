@@ -5,7 +5,9 @@ import org.testng.annotations.Test;
 
 import com.mucommander.commons.runtime.OsFamily;
 
+import java.lang.reflect.Field;
 import java.net.MalformedURLException;
+import java.util.Map;
 
 /**
  * A generic test case for {@link com.mucommander.commons.file.FileURL}. This class is abstract and must be extended for
@@ -699,6 +701,88 @@ public abstract class FileURLTestCase {
         Assert.assertEquals("value",clonedURL.getProperty("name"));
     }
 
+    /**
+     * Tests {@link FileURL#getChildURL(String)}: the child URL must be equal to, and have the same hash code as, the URL
+     * resulting from the parsing of the child's location.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testChildURL() throws MalformedURLException {
+        FileURL url = getURL("login", "password", "host", 10000, "/path/to", null);
+        url.setProperty("name", "value");
+        url.hashCode();
+
+        FileURL childURL = url.getChildURL("child");
+        FileURL expectedURL = (FileURL)url.clone();
+        expectedURL.setPath(url.getPath() + url.getPathSeparator() + "child");
+
+        assertEquals(expectedURL, childURL);
+        assert expectedURL.hashCode() == childURL.hashCode();
+        Assert.assertEquals("child", childURL.getFilename());
+        Assert.assertEquals("value", childURL.getProperty("name"));
+        assertEquals(url, childURL.getParent());
+        assert url.hashCode() == childURL.getParent().hashCode();
+
+        // A trailing separator in the parent's path must not be doubled
+        FileURL folderURL = (FileURL)url.clone();
+        folderURL.setPath(url.getPath() + url.getPathSeparator());
+        assertEquals(childURL, folderURL.getChildURL("child"));
+
+        // Modifying the child must not affect the parent, nor the shared hash code
+        childURL.setHost("otherhost");
+        childURL.setProperty("name", "othervalue");
+        Assert.assertEquals("value", url.getProperty("name"));
+        assert childURL.hashCode() != expectedURL.hashCode();
+        assert url.hashCode() == expectedURL.getParent().hashCode();
+
+        // The query part is not carried over to children
+        url.setQuery("query");
+        assert url.getChildURL("child").getQuery() == null;
+        assert expectedURL.hashCode() == url.getChildURL("child").hashCode();
+    }
+
+    /**
+     * Asserts that parsing the same location twice returns distinct instances, so that modifying one does not affect
+     * subsequent parsings.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testParseCache() throws MalformedURLException {
+        String location = getURL(null, null, "host", 10000, "/path/to", null).toString(true, false);
+
+        FileURL url = FileURL.getFileURL(location);
+        FileURL url2 = FileURL.getFileURL(location);
+        assert url != url2;
+        assertEquals(url, url2);
+        assert url.getHost() == url2.getHost();
+
+        url.setPath("/other/path");
+        url.setProperty("name", "value");
+        assertEquals(url2, FileURL.getFileURL(location));
+        assert FileURL.getFileURL(location).getProperty("name") == null;
+    }
+
+    /**
+     * Asserts that locations containing credentials are parsed every time rather than cached, so that passwords are
+     * not retained by the parse cache.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testParseCacheCredentials() throws Exception {
+        String location = getURL("login", "password", "host", 10000, "/path/to", null).toString(true, false);
+
+        FileURL url = FileURL.getFileURL(location);
+        assert url.containsCredentials();
+        assertEquals(url, FileURL.getFileURL(location));
+
+        Field parseCacheField = FileURL.class.getDeclaredField("parseCache");
+        parseCacheField.setAccessible(true);
+        assert !((Map<?, ?>)parseCacheField.get(null)).containsKey(location);
+    }
+
     /**
      * Tests a few invalid URLs and makes sure {@link FileURL#getFileURL} throws a <code>MalformedURLException</code>.
      *
@@ -0,0 +1,76 @@
+package com.mucommander.commons.file.impl.local;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the wall time of listing a local folder and querying the attributes the file table needs (size, date,
+ * isDirectory, isHidden, isSymlink) with and without the bulk attributes listing of {@link LocalFile#ls()}.
+ *
+ * <p>This is not a unit test, run it from the command line:
+ * <pre>
+ *   java com.mucommander.commons.file.impl.local.LocalFileListingBenchmark [nbFiles] [nbRuns]
+ * </pre>
+ * To compare syscall counts, run it under <code>strace -c -f -e trace=%file,%stat,getdents64</code> once with
+ * <code>-Dmode=legacy</code> and once with <code>-Dmode=bulk</code>: each mode then only performs its own listings.
+ */
+public class LocalFileListingBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String mode = System.getProperty("mode", "both");
+
+        AbstractFile folder = FileFactory.getTemporaryFile("LocalFileListingBenchmark", true);
+        folder.mkdir();
+        try {
+            System.out.println("Creating " + nbFiles + " files in " + folder.getAbsolutePath());
+            File ioFolder = (File)folder.getUnderlyingFileObject();
+            for (int i = 0; i < nbFiles; i++) {
+                if (!new File(ioFolder, "file" + i + ".txt").createNewFile()) {
+                    throw new IOException("Could not create file " + i);
+                }
+            }
+
+            long defaultPeriod = LocalFile.getAttributeCachingPeriod();
+            for (int run = 0; run < nbRuns; run++) {
+                if (!"bulk".equals(mode)) {
+                    LocalFile.setAttributeCachingPeriod(0);
+                    System.out.println("run " + run + ": java.io.File listing     " + listAndQuery(folder) + " ms");
+                }
+                if (!"legacy".equals(mode)) {
+                    LocalFile.setAttributeCachingPeriod(defaultPeriod);
+                    System.out.println("run " + run + ": bulk attributes listing " + listAndQuery(folder) + " ms");
+                }
+            }
+            LocalFile.setAttributeCachingPeriod(defaultPeriod);
+        } finally {
+            folder.deleteRecursively();
+        }
+    }
+
+    /**
+     * Lists the given folder and queries the attributes displayed by the file table for each child.
+     *
+     * @return the elapsed time, in milliseconds
+     */
+    private static long listAndQuery(AbstractFile folder) throws IOException {
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (AbstractFile child : folder.ls()) {
+            checksum += child.getSize() + child.getLastModifiedDate();
+            if (child.isDirectory() || child.isHidden() || child.isSymlink()) {
+                checksum++;
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        // Prevents the JIT from optimizing the getters away
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+}
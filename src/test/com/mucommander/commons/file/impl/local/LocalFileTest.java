@@ -8,6 +8,11 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 
 
@@ -158,4 +163,59 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Lists a large folder with {@link LocalFile#ls(com.mucommander.commons.file.filter.FileFilter, com.mucommander.commons.file.ChildrenListener)}
+     * and asserts that the children are delivered in several batches, that all of them are delivered,
+     * and that the listing stops when the listener returns <code>false</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLsWithListener() throws IOException {
+        tempFile.mkdir();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 2500; i++) {
+            tempFile.getDirectChild("file" + i).mkfile();
+            names.add("file" + i);
+        }
+
+        List<AbstractFile[]> batches = new ArrayList<>();
+        tempFile.ls(null, children -> batches.add(children));
+        Set<String> listedNames = new HashSet<>();
+        for (AbstractFile[] batch : batches) {
+            for (AbstractFile child : batch) {
+                assert listedNames.add(child.getName());
+            }
+        }
+        assert batches.size() > 1;
+        assert names.equals(listedNames);
+
+        List<AbstractFile> firstBatch = new ArrayList<>();
+        tempFile.ls(null, children -> {
+            Collections.addAll(firstBatch, children);
+            return false;
+        });
+        assert firstBatch.size() == batches.get(0).length;
+    }
+
+    /**
+     * Asserts that the attributes read by {@link LocalFile#ls()} are not handed to the instances that are later
+     * returned by {@link FileFactory}, which must reflect changes made to the files after the listing.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLsAttributesNotPooled() throws IOException {
+        tempFile.mkdir();
+        tempFile.getDirectChild("file").mkfile();
+
+        AbstractFile children[] = tempFile.ls();
+        assert children.length == 1;
+        assert children[0].exists();
+
+        new java.io.File(tempFile.getAbsolutePath(), "file").delete();
+        assert !FileFactory.getFile(children[0].getAbsolutePath()).exists();
+        assert !tempFile.getChild("file").exists();
+    }
 }
@@ -0,0 +1,115 @@
+package com.mucommander.commons.file.impl.zip;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ArchiveEntry;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.archiver.ArchiveFormat;
+import com.mucommander.commons.file.archiver.Archiver;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the entries of a {@link ZipArchiveFile} from several threads at the same time.
+ */
+public class ZipArchiveFileConcurrencyTest {
+
+    private final static int NB_ENTRIES = 50;
+
+    private final static int NB_THREADS = 8;
+
+    private AbstractFile tempFolder;
+
+    private ZipArchiveFile zipFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFolder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        tempFolder.mkdir();
+        AbstractFile file = tempFolder.getChild("test.zip");
+        Archiver archiver = Archiver.getArchiver(file, ArchiveFormat.ZIP);
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            byte[] bytes = getContent(i);
+            OutputStream out = archiver.createEntry("dir/file" + i, new ArchiveEntry("dir/file" + i, false, 0, bytes.length, true));
+            out.write(bytes);
+        }
+        archiver.close();
+        zipFile = new ZipArchiveFile(file);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        tempFolder.deleteRecursively();
+    }
+
+    private static byte[] getContent(int entry) {
+        byte[] bytes = new byte[10000 + entry];
+        Arrays.fill(bytes, (byte)entry);
+        return bytes;
+    }
+
+    /**
+     * Asserts that entries are read properly by concurrent threads, while other entries are added to the archive.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < NB_THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < NB_ENTRIES; i++) {
+                        if (!Arrays.equals(read(zipFile.getArchiveEntryFile("dir/file" + i)), getContent(i))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+
+            for (int i = 0; i < 5; i++) {
+                try (OutputStream out = zipFile.getArchiveEntryFile("added" + i).getOutputStream()) {
+                    out.write(getContent(i));
+                }
+            }
+
+            for (Future<Boolean> result : results) {
+                assert result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assert zipFile.ls().length == 6;
+        for (int i = 0; i < 5; i++) {
+            assert Arrays.equals(read(zipFile.getArchiveEntryFile("added" + i)), getContent(i));
+        }
+    }
+
+    private static byte[] read(AbstractFile file) throws IOException {
+        byte[] bytes = new byte[(int)file.getSize()];
+        try (InputStream in = file.getInputStream()) {
+            int off = 0;
+            int n;
+            while (off < bytes.length && (n = in.read(bytes, off, bytes.length - off)) > 0) {
+                off += n;
+            }
+            if (off < bytes.length || in.read() != -1) {
+                throw new IOException("Unexpected size: " + file);
+            }
+        }
+        return bytes;
+    }
+}
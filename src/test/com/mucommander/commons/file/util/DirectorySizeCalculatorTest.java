@@ -0,0 +1,108 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A test case for {@link DirectorySizeCalculator}.
+ */
+public class DirectorySizeCalculatorTest {
+
+    /** The folder whose size is calculated */
+    private AbstractFile folder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+
+        createFile(folder, "a", 3);
+        createFile(folder.getChild("dir1"), "b", 5);
+        createFile(folder.getChild("dir1"), "c", 7);
+        createFile(folder.getChild("dir1").getChild("sub"), "d", 11);
+        createFile(folder.getChild("dir2"), "e", 13);
+        folder.getChild("empty").mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder.deleteRecursively();
+    }
+
+    private static void createFile(AbstractFile folder, String name, int size) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        try (OutputStream out = folder.getChild(name).getOutputStream()) {
+            out.write(new byte[size]);
+        }
+    }
+
+    /**
+     * Calculates the size of the given folders at the same time and waits for the calculations to be done.
+     */
+    private static DirectorySizeCalculator.Calculation[] calculate(AbstractFile... folders) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(folders.length);
+        DirectorySizeCalculator.Calculation calculations[] = new DirectorySizeCalculator.Calculation[folders.length];
+        for (int i = 0; i < folders.length; i++) {
+            calculations[i] = DirectorySizeCalculator.calculate(folders[i], calculation -> latch.countDown());
+        }
+        assert latch.await(10, TimeUnit.SECONDS);
+        for (DirectorySizeCalculator.Calculation calculation : calculations) {
+            assert calculation.isDone();
+        }
+        return calculations;
+    }
+
+    /**
+     * Asserts that the size of a folder is the total size of its files, recursively, and that it's cached.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testSize() throws Exception {
+        assert calculate(folder)[0].getSize() == 3 + 5 + 7 + 11 + 13;
+        assert DirectorySizeCalculator.getCachedSize(folder) == 3 + 5 + 7 + 11 + 13;
+        assert DirectorySizeCalculator.getCachedSize(folder.getChild("dir1")) == 5 + 7 + 11;
+        assert DirectorySizeCalculator.getCachedSize(folder.getChild("empty")) == 0;
+    }
+
+    /**
+     * Asserts that overlapping calculations, a folder and its subfolders, all get their size.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testOverlappingCalculations() throws Exception {
+        DirectorySizeCalculator.Calculation calculations[] = calculate(folder.getChild("dir1"), folder,
+                folder.getChild("dir1").getChild("sub"), folder.getChild("dir2"));
+        assert calculations[0].getSize() == 5 + 7 + 11;
+        assert calculations[1].getSize() == 3 + 5 + 7 + 11 + 13;
+        assert calculations[2].getSize() == 11;
+        assert calculations[3].getSize() == 13;
+    }
+
+    /**
+     * Asserts that the cached size of a folder is discarded when the folder changes, and that a new calculation
+     * takes the change into account.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testChangedFolder() throws Exception {
+        calculate(folder);
+        AbstractFile dir2 = folder.getChild("dir2");
+        createFile(dir2, "f", 17);
+        dir2.setLastModifiedDate(dir2.getLastModifiedDate() + 10000);
+        assert DirectorySizeCalculator.getCachedSize(FileFactory.getFile(dir2.getAbsolutePath())) == -1;
+        assert calculate(folder)[0].getSize() == 3 + 5 + 7 + 11 + 13 + 17;
+    }
+}
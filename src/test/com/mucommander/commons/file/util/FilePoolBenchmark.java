@@ -0,0 +1,103 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.TestFile;
+import org.apache.commons.collections4.map.ReferenceMap;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of {@link FilePool} with that of a synchronized weak-value <code>ReferenceMap</code>, which
+ * is how files used to be pooled, when several threads look up and add files at the same time.
+ *
+ * <p>This is not a unit test, run it from the command line:
+ * <pre>
+ *   java com.mucommander.commons.file.util.FilePoolBenchmark [nbThreads] [nbFiles] [nbRuns]
+ * </pre>
+ */
+public class FilePoolBenchmark {
+
+    /** Number of lookups performed by each thread, per run */
+    private final static int NB_LOOKUPS = 2000000;
+
+    private interface Pool {
+        AbstractFile get(Object key);
+        void put(Object key, AbstractFile file);
+    }
+
+    public static void main(String args[]) throws Exception {
+        int nbThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int nbFiles = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int nbRuns = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        AbstractFile files[] = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            files[i] = new TestFile("/benchmark/folder" + (i % 100) + "/file" + i, false, i, i, null);
+        }
+
+        for (int run = 0; run < nbRuns; run++) {
+            ReferenceMap<Object, AbstractFile> referenceMap = new ReferenceMap<>(ReferenceMap.ReferenceStrength.HARD, ReferenceMap.ReferenceStrength.WEAK);
+            Pool synchronizedPool = new Pool() {
+                public synchronized AbstractFile get(Object key) { return referenceMap.get(key); }
+                public synchronized void put(Object key, AbstractFile file) { referenceMap.put(key, file); }
+            };
+            System.out.println("run " + run + ": synchronized ReferenceMap " + lookUp(synchronizedPool, files, nbThreads) + " lookups/ms");
+
+            FilePool filePool = new FilePool();
+            Pool concurrentPool = new Pool() {
+                public AbstractFile get(Object key) { return filePool.get(key); }
+                public void put(Object key, AbstractFile file) { filePool.put(key, file); }
+            };
+            System.out.println("run " + run + ": FilePool                  " + lookUp(concurrentPool, files, nbThreads) + " lookups/ms"
+                    + " (hit rate " + Math.round(filePool.getHitRate() * 100) + "%)");
+        }
+    }
+
+    /**
+     * Looks up the given files from several threads at once, adding the ones that are not in the pool yet.
+     *
+     * @return the number of lookups per millisecond
+     */
+    private static long lookUp(Pool pool, AbstractFile files[], int nbThreads) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(nbThreads);
+        AtomicLong checksum = new AtomicLong();
+        for (int t = 0; t < nbThreads; t++) {
+            int seed = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    long sum = 0;
+                    for (int i = 0; i < NB_LOOKUPS; i++) {
+                        AbstractFile file = files[(i * 7 + seed * 13) % files.length];
+                        FileURL url = file.getURL();
+                        AbstractFile pooledFile = pool.get(url);
+                        if (pooledFile == null) {
+                            pool.put(url, file);
+                            pooledFile = file;
+                        }
+                        sum += pooledFile.getSize();
+                    }
+                    checksum.addAndGet(sum);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+        // Prevents the JIT from optimizing the lookups away
+        if (checksum.get() == 42) {
+            System.out.println();
+        }
+        return (long)nbThreads * NB_LOOKUPS / elapsed;
+    }
+}
@@ -0,0 +1,125 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.TestFile;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A test case for {@link FilePool}.
+ */
+public class FilePoolTest {
+
+    private static TestFile createFile(int i) throws MalformedURLException {
+        return new TestFile("/pool/file" + i, false, i, i, null);
+    }
+
+    /**
+     * Tests lookups and the hit and miss counters.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testPutGet() throws MalformedURLException {
+        FilePool pool = new FilePool();
+        TestFile file = createFile(0);
+        TestFile otherFile = createFile(0);
+
+        assert pool.get(file.getURL()) == null;
+        assert pool.put(file.getURL(), file) == null;
+        assert pool.get(file.getURL()) == file;
+        assert pool.containsKey(file.getURL());
+        assert pool.containsValue(file);
+        assert 1 == pool.size();
+
+        assert pool.put(file.getURL(), otherFile) == file;
+        assert pool.get(file.getURL()) == otherFile;
+        assert 1 == pool.size();
+
+        assert 2 == pool.getHitCount();
+        assert 1 == pool.getMissCount();
+        assert 2 / 3d == pool.getHitRate();
+
+        pool.clear();
+        assert 0 == pool.size();
+        assert !pool.containsKey(file.getURL());
+    }
+
+    /**
+     * Asserts that a file that is no longer referenced is removed from the pool once it has been garbage collected.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testEviction() throws Exception {
+        FilePool pool = new FilePool();
+        TestFile keptFile = createFile(1);
+        FileURL collectedURL = createFile(2).getURL();
+        pool.put(keptFile.getURL(), keptFile);
+        pool.put(collectedURL, createFile(2));
+
+        for (int i = 0; i < 50 && pool.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assert 1 == pool.size();
+        assert 1 == pool.getEvictionCount();
+        assert pool.get(keptFile.getURL()) == keptFile;
+        assert pool.get(collectedURL) == null;
+    }
+
+    /**
+     * Resolves the same files from several threads at once, the way {@link com.mucommander.commons.file.FileFactory}
+     * does, and asserts that every lookup returns a file with the requested URL.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int nbFiles = 500;
+        FilePool pool = new FilePool();
+        FileURL urls[] = new FileURL[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            urls[i] = createFile(i).getURL();
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread threads[] = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    // Keeps the files it creates referenced, so that some of them survive garbage collections
+                    AbstractFile files[] = new AbstractFile[nbFiles];
+                    for (int i = 0; i < 20000; i++) {
+                        int index = (i * 31) % nbFiles;
+                        AbstractFile file = pool.get(urls[index]);
+                        if (file == null) {
+                            file = createFile(index);
+                            pool.put(urls[index], file);
+                        }
+                        if (!urls[index].equals(file.getURL())) {
+                            throw new AssertionError("Wrong file returned for " + urls[index]);
+                        }
+                        if (i % 2 == 0) {
+                            files[index] = file;
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert failure.get() == null : failure.get();
+        assert 8 * 20000 == pool.getHitCount() + pool.getMissCount();
+        assert pool.size() <= nbFiles;
+    }
+}
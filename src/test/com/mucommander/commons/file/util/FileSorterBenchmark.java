@@ -0,0 +1,58 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.file.impl.TestFile;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the time it takes to sort a large folder by name with a {@link FileComparator}, which queries and compares
+ * the names of both files for each comparison, and with a {@link FileSorter}, which extracts collation keys once.
+ * Files are wrapped in {@link CachedFile} instances, like in a file table.
+ *
+ * <p>This is not a unit test, run it from the command line:
+ * <pre>
+ *   java com.mucommander.commons.file.util.FileSorterBenchmark [nbFiles] [nbRuns]
+ * </pre>
+ */
+public class FileSorterBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int nbFiles = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String prefixes[] = {"IMG_", "document ", "Report-", "track", "photo"};
+        Random random = new Random(0);
+        AbstractFile files[] = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            String name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(nbFiles) + (i % 3 == 0 ? ".jpg" : ".txt");
+            files[i] = new CachedFile(new TestFile("/benchmark/" + name, i % 20 == 0, i, i, null), true);
+        }
+
+        for (int run = 0; run < nbRuns; run++) {
+            AbstractFile sortedFiles[] = files.clone();
+            long start = System.nanoTime();
+            Arrays.sort(sortedFiles, new FileComparator(FileComparator.NAME_CRITERION, true, true, false));
+            System.out.println("run " + run + ": FileComparator " + elapsed(start) + " ms");
+
+            int indexes[] = new int[nbFiles];
+            for (int i = 0; i < nbFiles; i++) {
+                indexes[i] = i;
+            }
+            start = System.nanoTime();
+            new FileSorter(FileComparator.NAME_CRITERION, true, true, false).sort(files, indexes);
+            System.out.println("run " + run + ": FileSorter     " + elapsed(start) + " ms");
+
+            // Sorting again an already sorted folder, e.g. after a refresh
+            start = System.nanoTime();
+            new FileSorter(FileComparator.NAME_CRITERION, true, true, false).sort(files, indexes);
+            System.out.println("run " + run + ": FileSorter (already sorted) " + elapsed(start) + " ms");
+        }
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
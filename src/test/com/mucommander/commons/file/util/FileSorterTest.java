@@ -0,0 +1,133 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.TestFile;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A test case for {@link FileSorter}.
+ */
+public class FileSorterTest {
+
+    private final static int CRITERIA[] = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION,
+            FileComparator.DATE_CRITERION, FileComparator.EXTENSION_CRITERION};
+
+    /**
+     * Creates files with names that mix prefixes, numbers and extensions.
+     */
+    private static AbstractFile[] createFiles(int nbFiles, long seed) throws MalformedURLException {
+        String prefixes[] = {"", "a", "A", "b_", "file", "File", "File ", "Photo-", "z", "été ", "ÉTÉ "};
+        String extensions[] = {"", ".txt", ".TXT", ".tar.gz", ".7z", ".e10", ".e9"};
+        Random random = new Random(seed);
+        AbstractFile files[] = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            String name = prefixes[random.nextInt(prefixes.length)];
+            if (random.nextBoolean()) {
+                name += (random.nextInt(10) == 0 ? "0" : "") + random.nextInt(2000);
+            }
+            name += random.nextBoolean() ? "x" + i : i + "y";
+            name += extensions[random.nextInt(extensions.length)];
+            files[i] = new TestFile("/sort/" + name, random.nextInt(4) == 0, random.nextInt(20) * 100, random.nextInt(50), null);
+        }
+        return files;
+    }
+
+    private static int[] sort(AbstractFile files[], FileSorter sorter) {
+        int indexes[] = new int[files.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        sorter.sort(files, indexes);
+        return indexes;
+    }
+
+    /**
+     * Asserts that files are sorted in the order of {@link FileComparator} for all criteria and options.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testFileComparatorOrder() throws MalformedURLException {
+        AbstractFile files[] = createFiles(3000, 0);
+        for (int criterion : CRITERIA) {
+            for (int options = 0; options < 8; options++) {
+                boolean ascending = (options & 1) != 0;
+                boolean directoriesFirst = (options & 2) != 0;
+                boolean foldersAlwaysAlphabetical = (options & 4) != 0;
+                FileComparator comparator = new FileComparator(criterion, ascending, directoriesFirst, foldersAlwaysAlphabetical);
+                int indexes[] = sort(files, new FileSorter(criterion, ascending, directoriesFirst, foldersAlwaysAlphabetical));
+
+                for (int i = 1; i < indexes.length; i++) {
+                    AbstractFile previous = files[indexes[i - 1]];
+                    AbstractFile file = files[indexes[i]];
+                    assert comparator.compare(previous, file) <= 0 : "criterion " + criterion + ", options " + options
+                            + ": " + previous.getName() + " > " + file.getName();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the natural order of names that contain numbers.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testNaturalOrder() throws MalformedURLException {
+        String expectedNames[] = {"_file", "1", "1a", "2", "10", "a", "a1", "a2", "A3", "a10", "A10b10", "a10b2", "ab", "B", "file"};
+        AbstractFile files[] = new AbstractFile[expectedNames.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new TestFile("/sort/" + expectedNames[(i * 7) % files.length], false, 0, 0, null);
+        }
+
+        int indexes[] = sort(files, new FileSorter(FileComparator.NAME_CRITERION, true, false, false));
+        for (int i = 0; i < indexes.length; i++) {
+            assert expectedNames[i].equals(files[indexes[i]].getName()) : i + ": " + files[indexes[i]].getName();
+        }
+    }
+
+    /**
+     * Asserts that files with the same criterion's value keep their relative order.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testStability() throws MalformedURLException {
+        AbstractFile files[] = new AbstractFile[1000];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new TestFile("/sort/file" + (i % 10), false, i % 3, 0, null);
+        }
+
+        int indexes[] = sort(files, new FileSorter(FileComparator.SIZE_CRITERION, false, false, false));
+        for (int i = 1; i < indexes.length; i++) {
+            if (files[indexes[i - 1]].getSize() == files[indexes[i]].getSize()
+                    && files[indexes[i - 1]].getName().equals(files[indexes[i]].getName())) {
+                assert indexes[i - 1] < indexes[i];
+            }
+        }
+    }
+
+    /**
+     * Asserts that the parallel sort yields the same order as the sequential one.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testParallelSort() throws MalformedURLException {
+        AbstractFile files[] = createFiles(60000, 1);
+        int threshold = FileSorter.getParallelThreshold();
+        try {
+            FileSorter.setParallelThreshold(Integer.MAX_VALUE);
+            int sequentialIndexes[] = sort(files, new FileSorter(FileComparator.NAME_CRITERION, true, true, false));
+            FileSorter.setParallelThreshold(0);
+            int parallelIndexes[] = sort(files, new FileSorter(FileComparator.NAME_CRITERION, true, true, false));
+            assert Arrays.equals(sequentialIndexes, parallelIndexes);
+        } finally {
+            FileSorter.setParallelThreshold(threshold);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A test case for {@link FolderComparison}.
+ */
+public class FolderComparisonTest {
+
+    /** Date of the files, in the past so that it can be set on all file systems */
+    private final static long DATE = 1500000000000L;
+
+    /** The compared folders */
+    private AbstractFile folder, otherFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+        otherFolder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        otherFolder.mkdir();
+
+        createFile(folder, "same", "abcdef", DATE);
+        createFile(otherFolder, "same", "abcdef", DATE);
+        createFile(folder, "missing", "abc", DATE);
+        createFile(folder, "newer", "abc", DATE + 60000);
+        createFile(otherFolder, "newer", "abc", DATE);
+        createFile(folder, "older", "abc", DATE);
+        createFile(otherFolder, "older", "abc", DATE + 60000);
+        createFile(folder, "size", "abc", DATE);
+        createFile(otherFolder, "size", "abcd", DATE);
+        createFile(folder, "content", "abc", DATE);
+        createFile(otherFolder, "content", "abd", DATE);
+
+        createFile(folder.getChild("dir"), "same", "abc", DATE);
+        createFile(otherFolder.getChild("dir"), "same", "abc", DATE);
+        createFile(folder.getChild("subdir"), "content", "abc", DATE);
+        createFile(otherFolder.getChild("subdir"), "content", "abd", DATE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder.deleteRecursively();
+        otherFolder.deleteRecursively();
+    }
+
+    private static void createFile(AbstractFile folder, String name, String content, long date) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdir();
+        }
+        AbstractFile file = folder.getChild(name);
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        file.setLastModifiedDate(date);
+    }
+
+    private Set<String> compare(FolderComparison.Criterion criterion, boolean recursive) throws IOException, InterruptedException {
+        Set<String> names = new HashSet<>();
+        assert new FolderComparison(criterion, recursive, true).compare(folder.ls(), otherFolder.ls(), file -> names.add(file.getName()));
+        return names;
+    }
+
+    private static Set<String> names(String... names) {
+        Set<String> set = new HashSet<>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+
+    /**
+     * Asserts that the files that differ on each criterion are reported, folders being skipped unless the comparison
+     * is recursive.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCriteria() throws Exception {
+        assert compare(FolderComparison.Criterion.DATE, false).equals(names("missing", "newer"));
+        assert compare(FolderComparison.Criterion.SIZE, false).equals(names("missing", "size"));
+        assert compare(FolderComparison.Criterion.CONTENT, false).equals(names("missing", "size", "content"));
+        assert compare(FolderComparison.Criterion.CONTENT, true).equals(names("missing", "size", "content", "subdir"));
+        assert compare(FolderComparison.Criterion.DATE, true).equals(names("missing", "newer"));
+    }
+
+    /**
+     * Asserts that the comparison stops when the listener returns <code>false</code>.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testStop() throws Exception {
+        int count[] = new int[1];
+        assert !new FolderComparison(FolderComparison.Criterion.CONTENT, true).compare(folder.ls(), otherFolder.ls(), file -> {
+            count[0]++;
+            return false;
+        });
+        assert count[0] == 1;
+    }
+
+    /**
+     * Asserts that names are matched case-insensitively if file names are not case-sensitive.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCaseSensitivity() throws Exception {
+        createFile(otherFolder, "MISSING", "abc", DATE);
+        assert compare(FolderComparison.Criterion.SIZE, false).contains("missing");
+        Set<String> names = new HashSet<>();
+        new FolderComparison(FolderComparison.Criterion.SIZE, false, false).compare(folder.ls(), otherFolder.ls(), file -> names.add(file.getName()));
+        assert names.equals(names("size"));
+    }
+}
@@ -0,0 +1,179 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A test case for {@link SyncPlanner}.
+ */
+public class SyncPlannerTest {
+
+    /** Date of the files, in the past so that it can be set on all file systems */
+    private final static long DATE = 1500000000000L;
+
+    /** The synchronized folders */
+    private AbstractFile sourceFolder, destFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        sourceFolder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        sourceFolder.mkdir();
+        destFolder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        destFolder.mkdir();
+
+        createFile(sourceFolder, "same", "abc", DATE);
+        createFile(destFolder, "same", "abc", DATE);
+        createFile(sourceFolder, "new", "abcd", DATE);
+        createFile(sourceFolder, "date", "abc", DATE + 60000);
+        createFile(destFolder, "date", "abc", DATE);
+        createFile(sourceFolder, "size", "abc", DATE);
+        createFile(destFolder, "size", "abcde", DATE);
+        createFile(sourceFolder, "content", "abc", DATE);
+        createFile(destFolder, "content", "abd", DATE);
+        createFile(destFolder, "extraneous", "abc", DATE);
+        createFile(sourceFolder, "type", "abc", DATE);
+        createFile(destFolder.getChild("type"), "file", "abc", DATE);
+
+        createFile(sourceFolder.getChild("dir"), "same", "abc", DATE);
+        createFile(destFolder.getChild("dir"), "same", "abc", DATE);
+        createFile(sourceFolder.getChild("dir"), "size", "abc", DATE);
+        createFile(destFolder.getChild("dir"), "size", "ab", DATE);
+        createFile(sourceFolder.getChild("newdir").getChild("sub"), "file", "abcdefgh", DATE);
+        createFile(sourceFolder.getChild("newdir"), "file", "ab", DATE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        sourceFolder.deleteRecursively();
+        destFolder.deleteRecursively();
+    }
+
+    private static void createFile(AbstractFile folder, String name, String content, long date) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        AbstractFile file = folder.getChild(name);
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        file.setLastModifiedDate(date);
+    }
+
+    /**
+     * Returns the operations of the given plan, as action and path relative to the synchronized folders.
+     */
+    private Set<String> getOperations(SyncPlan plan) {
+        Set<String> operations = new HashSet<>();
+        for (SyncPlan.Operation operation : plan.getOperations()) {
+            AbstractFile baseFolder = operation.getAction() == SyncPlan.Action.DELETE ? destFolder : sourceFolder;
+            String path = operation.getFile().getAbsolutePath().substring(baseFolder.getAbsolutePath(true).length());
+            path = PathUtils.removeTrailingSeparator(path, baseFolder.getSeparator()).replace(baseFolder.getSeparator(), "/");
+            operations.add(operation.getAction() + " " + path);
+            assert operation.getDestinationFile().getParent().equals(operation.getDestinationFolder());
+        }
+        return operations;
+    }
+
+    private static Set<String> operations(String... operations) {
+        Set<String> set = new HashSet<>();
+        for (String operation : operations) {
+            set.add(operation);
+        }
+        return set;
+    }
+
+    /**
+     * Asserts that the plan copies the missing files and folders, updates the files that differ on each criterion,
+     * and deletes the extraneous files, a file replaced by a folder being deleted before the folder is copied.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testPlan() throws Exception {
+        SyncPlan plan = new SyncPlanner(SyncPlanner.Criterion.SIZE_AND_DATE, true, true).plan(sourceFolder, destFolder);
+        assert getOperations(plan).equals(operations("COPY new", "UPDATE date", "UPDATE size", "DELETE extraneous",
+                "DELETE type", "COPY type", "COPY newdir", "UPDATE dir/size")) : getOperations(plan);
+        assert plan.getNbUpToDateFiles() == 3;
+        assert plan.getTotalSize() == 4 + 3 + 3 + 3 + 10 + 3;
+        assert plan.getNbOperations(SyncPlan.Action.DELETE) == 2;
+        int deleteType = -1, copyType = -1;
+        for (int i = 0; i < plan.getOperations().size(); i++) {
+            SyncPlan.Operation operation = plan.getOperations().get(i);
+            if (operation.getFile().getName().equals("type")) {
+                if (operation.getAction() == SyncPlan.Action.DELETE) {
+                    deleteType = i;
+                } else {
+                    copyType = i;
+                }
+            }
+        }
+        assert deleteType >= 0 && deleteType < copyType;
+
+        plan = new SyncPlanner(SyncPlanner.Criterion.CHECKSUM, false, true).plan(sourceFolder, destFolder);
+        assert getOperations(plan).equals(operations("COPY new", "UPDATE content", "UPDATE size",
+                "DELETE type", "COPY type", "COPY newdir", "UPDATE dir/size")) : getOperations(plan);
+        assert plan.getNbUpToDateFiles() == 3;
+    }
+
+    /**
+     * Asserts that the operations of a destination folder follow each other.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testOperationsGroupedByFolder() throws Exception {
+        SyncPlan plan = new SyncPlanner(SyncPlanner.Criterion.SIZE_AND_DATE, true, true).plan(sourceFolder, destFolder);
+        Set<AbstractFile> doneFolders = new HashSet<>();
+        AbstractFile previousFolder = null;
+        for (SyncPlan.Operation operation : plan.getOperations()) {
+            if (operation.getDestinationFolder() != previousFolder) {
+                assert doneFolders.add(operation.getDestinationFolder());
+                previousFolder = operation.getDestinationFolder();
+            }
+        }
+    }
+
+    /**
+     * Asserts that a folder that can't be listed fails the plan.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testMissingFolder() throws Exception {
+        new SyncPlanner(SyncPlanner.Criterion.SIZE_AND_DATE, true).plan(sourceFolder, destFolder.getChild("missing"));
+    }
+
+    /**
+     * Asserts that a folder is not synchronized with one of its subfolders, so that the source folder is not deleted
+     * as an extraneous file of the destination folder.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSourceInsideDestination() throws Exception {
+        AbstractFile subfolder = destFolder.getChild("dir");
+        assert SyncPlanner.areNested(subfolder, destFolder);
+        new SyncPlanner(SyncPlanner.Criterion.SIZE_AND_DATE, true).plan(subfolder, destFolder);
+    }
+
+    /**
+     * Asserts that a folder is not synchronized into one of its subfolders, which would copy the folder into itself.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDestinationInsideSource() throws Exception {
+        AbstractFile subfolder = sourceFolder.getChild("dir");
+        assert SyncPlanner.areNested(sourceFolder, subfolder);
+        assert !SyncPlanner.areNested(sourceFolder, destFolder);
+        new SyncPlanner(SyncPlanner.Criterion.SIZE_AND_DATE, true).plan(sourceFolder, subfolder);
+    }
+}
@@ -22,6 +22,14 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -195,6 +203,130 @@ public class BufferPoolTest {
         BufferPool.setMaxPoolSize(BufferPool.INITIAL_POOL_LIMIT);
     }
 
+    /**
+     * Asserts that hits and misses are counted, and that a buffer released by a thread that has since died is handed
+     * out to other threads.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testDeadThreadBuffer() throws InterruptedException {
+        BufferPool.ByteArrayFactory factory = new BufferPool.ByteArrayFactory();
+        Object buffers[] = new Object[1];
+        Thread thread = new Thread(() -> {
+            buffers[0] = BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+            BufferPool.releaseBuffer(buffers[0], factory);
+        });
+        thread.start();
+        thread.join();
+        Thread threads[] = {thread};
+        thread = null;
+        awaitCollected(threads);
+
+        assert BufferPool.containsBuffer(buffers[0], factory);
+        long hitCount = BufferPool.getHitCount();
+        long missCount = BufferPool.getMissCount();
+        assert buffers[0] == BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+        assert hitCount + 1 == BufferPool.getHitCount();
+        assert missCount == BufferPool.getMissCount();
+
+        assert buffers[0] != BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+        assert missCount + 1 == BufferPool.getMissCount();
+        assertBufferCount(0, factory);
+    }
+
+    /**
+     * Gets and releases buffers from several threads at once, and asserts that a buffer is never handed out twice and
+     * that the pool size is consistent once all threads are done.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        BufferPool.ByteArrayFactory factory = new BufferPool.ByteArrayFactory();
+        Set<Object> usedBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean failed[] = new boolean[1];
+        Thread threads[] = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Object buffer = BufferPool.getBuffer(factory, i % 2 == 0 ? TEST_BUFFER_SIZE_1 : TEST_BUFFER_SIZE_2);
+                    synchronized (usedBuffers) {
+                        failed[0] |= !usedBuffers.add(buffer);
+                    }
+                    Thread.yield();
+                    synchronized (usedBuffers) {
+                        usedBuffers.remove(buffer);
+                    }
+                    BufferPool.releaseBuffer(buffer, factory);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        awaitCollected(threads);
+
+        assert !failed[0];
+        int nbBuffers2 = countBuffers(factory, TEST_BUFFER_SIZE_2);
+        int nbBuffers1 = BufferPool.getBufferCount(factory) - nbBuffers2;
+        Assert.assertEquals(BufferPool.getPoolSize(), nbBuffers1 * TEST_BUFFER_SIZE_1 + nbBuffers2 * TEST_BUFFER_SIZE_2);
+
+        BufferPool.releaseAll();
+        assert 0 == BufferPool.getPoolSize();
+        assertBufferCount(0, factory);
+    }
+
+    /**
+     * Waits until the given threads, which must have terminated, have been garbage collected: the pool recovers the
+     * buffers cached by dead threads only then. The references to the threads are removed from the given array.
+     *
+     * @param threads the threads to wait for
+     * @throws InterruptedException should not happen
+     */
+    private static void awaitCollected(Thread threads[]) throws InterruptedException {
+        ReferenceQueue<Thread> collectedThreads = new ReferenceQueue<>();
+        List<WeakReference<Thread>> references = new ArrayList<>();
+        for (int i = 0; i < threads.length; i++) {
+            references.add(new WeakReference<>(threads[i], collectedThreads));
+            threads[i] = null;
+        }
+        int nbCollected = 0;
+        while (nbCollected < references.size()) {
+            if (collectedThreads.remove(100) == null) {
+                System.gc();
+            } else {
+                nbCollected++;
+            }
+        }
+        // Let the reference handler enqueue the pool's references to the threads as well
+        Thread.sleep(100);
+    }
+
+    /**
+     * Gets all the buffers of the given length from the pool and returns their number.
+     *
+     * @param factory the factory corresponding to the kind of buffer to count
+     * @param length the length of the buffers to count
+     * @return the number of buffers of the given length that were in the pool
+     */
+    private int countBuffers(BufferPool.BufferFactory factory, int length) {
+        List<Object> buffers = new ArrayList<>();
+        long missCount = BufferPool.getMissCount();
+        while (true) {
+            Object buffer = BufferPool.getBuffer(factory, length);
+            if (BufferPool.getMissCount() != missCount) {
+                break;
+            }
+            buffers.add(buffer);
+        }
+        for (Object buffer : buffers) {
+            BufferPool.releaseBuffer(buffer, factory);
+        }
+        return buffers.size();
+    }
+
     /**
      * Asserts that the given buffer's size matches the specified one.
      *
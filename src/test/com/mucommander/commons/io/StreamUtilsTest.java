@@ -0,0 +1,178 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A test case for the pipelined copy of {@link StreamUtils}.
+ *
+ * @see StreamUtils#copyStreamPipelined(InputStream, OutputStream, int, int, long)
+ */
+public class StreamUtilsTest {
+
+    private final static int BUFFER_SIZE = 1024;
+
+    private static byte[] getTestBytes(int length) {
+        byte bytes[] = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies streams of various lengths, some of them not a multiple of the buffer size, with various pipeline depths.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testPipelinedCopy() throws IOException {
+        for (int length : new int[]{0, 1, BUFFER_SIZE - 1, BUFFER_SIZE, 10 * BUFFER_SIZE + 7}) {
+            byte bytes[] = getTestBytes(length);
+            for (int depth : new int[]{1, 2, 4}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assert length == StreamUtils.copyStreamPipelined(new ByteArrayInputStream(bytes), out, BUFFER_SIZE, depth, Long.MAX_VALUE);
+                assert Arrays.equals(bytes, out.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Asserts that no more than the requested number of bytes are copied, and that the remaining bytes are left in
+     * the InputStream.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testPipelinedCopyLength() throws IOException {
+        byte bytes[] = getTestBytes(10 * BUFFER_SIZE);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assert 3 * BUFFER_SIZE + 5 == StreamUtils.copyStreamPipelined(in, out, BUFFER_SIZE, 4, 3 * BUFFER_SIZE + 5);
+        assert Arrays.equals(Arrays.copyOf(bytes, 3 * BUFFER_SIZE + 5), out.toByteArray());
+        assert bytes.length - (3 * BUFFER_SIZE + 5) == in.available();
+    }
+
+    /**
+     * Asserts that an error occurring in the reading thread is reported as a {@link FileTransferException#READING_SOURCE}.
+     */
+    @Test
+    public void testPipelinedCopyReadError() {
+        InputStream in = new ByteArrayInputStream(getTestBytes(10 * BUFFER_SIZE)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return available() < 5 * BUFFER_SIZE ? -2 : super.read(b, off, len);
+            }
+        };
+        InputStream failingIn = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int nbRead = in.read(b, off, len);
+                if (nbRead == -2) {
+                    throw new IOException();
+                }
+                return nbRead;
+            }
+        };
+
+        try {
+            StreamUtils.copyStreamPipelined(failingIn, new ByteArrayOutputStream(), BUFFER_SIZE, 4, Long.MAX_VALUE);
+            assert false;
+        } catch (FileTransferException e) {
+            assert FileTransferException.READING_SOURCE == e.getReason();
+        }
+    }
+
+    /**
+     * Asserts that an <code>Error</code> thrown by the InputStream in the reading thread ends the copy with a
+     * {@link FileTransferException#READING_SOURCE}, rather than leaving the writing thread waiting for the end of the
+     * stream.
+     */
+    @Test(timeOut = 10000)
+    public void testPipelinedCopyReadThrowable() {
+        ByteArrayInputStream in = new ByteArrayInputStream(getTestBytes(10 * BUFFER_SIZE));
+        InputStream failingIn = new InputStream() {
+            @Override
+            public int read() {
+                throw new Error();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (in.available() < 5 * BUFFER_SIZE) {
+                    throw new Error();
+                }
+                return in.read(b, off, len);
+            }
+        };
+
+        try {
+            StreamUtils.copyStreamPipelined(failingIn, new ByteArrayOutputStream(), BUFFER_SIZE, 4, Long.MAX_VALUE);
+            assert false;
+        } catch (FileTransferException e) {
+            assert FileTransferException.READING_SOURCE == e.getReason();
+        }
+    }
+
+    /**
+     * Asserts that an error occurring while writing is reported as a {@link FileTransferException#WRITING_DESTINATION},
+     * and that the InputStream is no longer read once the copy has returned.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testPipelinedCopyWriteError() throws InterruptedException {
+        ByteArrayInputStream in = new ByteArrayInputStream(getTestBytes(1000 * BUFFER_SIZE));
+        OutputStream out = new OutputStream() {
+            private int nbWritten;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (++nbWritten > 2 * BUFFER_SIZE) {
+                    throw new IOException();
+                }
+            }
+        };
+
+        try {
+            StreamUtils.copyStreamPipelined(in, out, BUFFER_SIZE, 4, Long.MAX_VALUE);
+            assert false;
+        } catch (FileTransferException e) {
+            assert FileTransferException.WRITING_DESTINATION == e.getReason();
+        }
+
+        int available = in.available();
+        Thread.sleep(200);
+        assert available == in.available();
+        assert available > 0;
+    }
+}
@@ -0,0 +1,133 @@
+package com.mucommander.commons.io.compress;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A test case for {@link GzipCheckpointInputStream}.
+ */
+public class GzipCheckpointInputStreamTest {
+
+    /**
+     * Returns data that is partly compressible, partly random.
+     */
+    private static byte[] getData(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte)(i % 10000 < 7000 ? 'a' + random.nextInt(8) : random.nextInt(256));
+        }
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data, final int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(level); }}) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Asserts that data compressed with stored, fixed and dynamic blocks is decompressed, checkpoints being recorded.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDecompression() throws IOException {
+        byte[] data = getData(2000000);
+        for (int level : new int[] {0, 1, 6, 9}) {
+            CheckpointIndex index = new CheckpointIndex(100000, 8);
+            assert Arrays.equals(readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(gzip(data, level)), index)), data);
+            assert index.size() > 1 && index.size() <= 8;
+        }
+        assert readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(gzip(new byte[0], 6)))).length == 0;
+        byte[] smallData = getData(100);
+        assert Arrays.equals(readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(gzip(smallData, 6)))), smallData);
+    }
+
+    /**
+     * Asserts that concatenated members are decompressed one after the other, and that data that follows them is ignored.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testConcatenatedMembers() throws IOException {
+        byte[] data = getData(500000);
+        byte[] first = gzip(Arrays.copyOf(data, 200000), 6);
+        byte[] second = gzip(Arrays.copyOfRange(data, 200000, data.length), 6);
+        byte[] gzip = Arrays.copyOf(first, first.length + second.length + 512);
+        System.arraycopy(second, 0, gzip, first.length, second.length);
+        assert Arrays.equals(readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(gzip))), data);
+    }
+
+    /**
+     * Asserts that decompression resumes from the checkpoints of an index.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResume() throws IOException {
+        byte[] data = getData(2000000);
+        byte[] gzip = gzip(data, 6);
+        CheckpointIndex index = new CheckpointIndex(100000, 16);
+        readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(gzip), index));
+        assert index.size() > 1;
+
+        for (long offset = 0; offset < data.length; offset += 150001) {
+            CheckpointIndex.Checkpoint checkpoint = index.getCheckpoint(offset);
+            if (checkpoint == null) {
+                // Before the first checkpoint
+                continue;
+            }
+            assert checkpoint.getUncompressedOffset() <= offset;
+            InputStream in = new ByteArrayInputStream(gzip, (int)checkpoint.getCompressedOffset(), gzip.length);
+            in = new GzipCheckpointInputStream(in, checkpoint);
+            StreamUtils.skipFully(in, offset - checkpoint.getUncompressedOffset());
+            assert Arrays.equals(readFully(in), Arrays.copyOfRange(data, (int)offset, data.length));
+        }
+    }
+
+    /**
+     * Asserts that corrupt and truncated data is reported.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCorruptData() throws IOException {
+        byte[] gzip = gzip(getData(100000), 6);
+        byte[] corrupt = gzip.clone();
+        corrupt[corrupt.length - 6] ^= 1;
+        try {
+            readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(corrupt)));
+            assert false;
+        } catch (ZipException e) {
+            // Expected
+        }
+        try {
+            readFully(new GzipCheckpointInputStream(new ByteArrayInputStream(Arrays.copyOf(gzip, gzip.length / 2))));
+            assert false;
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
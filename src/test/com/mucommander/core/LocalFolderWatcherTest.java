@@ -0,0 +1,151 @@
+package com.mucommander.core;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+/**
+ * A test case for {@link LocalFolderWatcher}.
+ */
+public class LocalFolderWatcherTest {
+
+    /** Maximum time to wait for a refresh, in milliseconds */
+    private final static long TIMEOUT = 5000;
+
+    /** Time after which a refresh that has not happened is assumed not to happen, longer than the retry delay */
+    private final static long QUIET_PERIOD = 2500;
+
+    /** The watched folder */
+    private AbstractFile folder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder.deleteRecursively();
+    }
+
+    /**
+     * Asserts that a monitor is refreshed when its folder changes, and no longer once it has been unregistered.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testRefreshUntilUnregistered() throws Exception {
+        CountingMonitor monitor = new CountingMonitor(true);
+        register(monitor);
+
+        folder.getDirectChild("file1").mkfile();
+        monitor.waitForRefreshes(1);
+
+        LocalFolderWatcher.unregister(monitor);
+        folder.getDirectChild("file2").mkfile();
+        Thread.sleep(QUIET_PERIOD);
+        assert monitor.getRefreshCount() == 1;
+    }
+
+    /**
+     * Asserts that a refresh that could not be performed is retried.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testRetry() throws Exception {
+        CountingMonitor monitor = new CountingMonitor(false);
+        register(monitor);
+
+        folder.getDirectChild("file").mkfile();
+        monitor.waitForRefreshes(2);
+        LocalFolderWatcher.unregister(monitor);
+    }
+
+    /**
+     * Asserts that a refresh that could not be performed is not retried if the monitor has been unregistered while
+     * it was being refreshed.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testNoRetryAfterUnregister() throws Exception {
+        CountingMonitor monitor = new CountingMonitor(false) {
+            @Override
+            public boolean refreshOnChange() {
+                LocalFolderWatcher.unregister(this);
+                return super.refreshOnChange();
+            }
+        };
+        register(monitor);
+
+        folder.getDirectChild("file").mkfile();
+        monitor.waitForRefreshes(1);
+        Thread.sleep(QUIET_PERIOD);
+        assert monitor.getRefreshCount() == 1;
+    }
+
+    /**
+     * Asserts that folders of network file systems are recognized, so that they are polled rather than watched.
+     */
+    @Test
+    public void testNetworkFileSystemTypes() {
+        assert LocalFolderWatcher.isNetworkFileSystemType("nfs");
+        assert LocalFolderWatcher.isNetworkFileSystemType("nfs4");
+        assert LocalFolderWatcher.isNetworkFileSystemType("cifs");
+        assert LocalFolderWatcher.isNetworkFileSystemType("smbfs");
+        assert LocalFolderWatcher.isNetworkFileSystemType("fuse.sshfs");
+        assert !LocalFolderWatcher.isNetworkFileSystemType("ext4");
+        assert !LocalFolderWatcher.isNetworkFileSystemType("tmpfs");
+        assert !LocalFolderWatcher.isNetworkFileSystemType("NTFS");
+        assert !LocalFolderWatcher.isNetworkFileSystemType("fuseblk");
+    }
+
+    private void register(LocalFolderWatcher.Monitor monitor) {
+        if (!LocalFolderWatcher.register(monitor, folder)) {
+            throw new SkipException("No native file change notifications");
+        }
+    }
+
+
+    /**
+     * Counts the refreshes it is asked for, and succeeds or fails to refresh as specified.
+     */
+    private static class CountingMonitor implements LocalFolderWatcher.Monitor {
+
+        private final boolean refreshResult;
+
+        private int refreshCount;
+
+        CountingMonitor(boolean refreshResult) {
+            this.refreshResult = refreshResult;
+        }
+
+        public synchronized boolean refreshOnChange() {
+            refreshCount++;
+            notifyAll();
+            return refreshResult;
+        }
+
+        public void watchCancelled() {
+        }
+
+        synchronized int getRefreshCount() {
+            return refreshCount;
+        }
+
+        synchronized void waitForRefreshes(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (refreshCount < count && System.currentTimeMillis() < end) {
+                wait(end - System.currentTimeMillis());
+            }
+            assert refreshCount >= count : "refreshed " + refreshCount + " times, expected " + count;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.mucommander.ui.main.table;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.ui.main.table.views.full.FileTableModel;
+import com.mucommander.utils.text.CustomDateFormat;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A test case for the incremental updates of {@link FileTableModel}.
+ */
+public class FileTableModelTest {
+
+    /**
+     * Initializes the date format used by the date column, as the application does on startup.
+     */
+    @BeforeClass
+    public void initDateFormat() {
+        CustomDateFormat.init();
+    }
+
+    private static AbstractFile createFile(String name, Random random) throws MalformedURLException {
+        return new TestFile("/folder/" + name, random.nextInt(5) == 0, random.nextInt(100) * 10, random.nextInt(100), null);
+    }
+
+    private static FileTableModel createModel(AbstractFile folder, AbstractFile children[], Column criterion) {
+        SortInfo sortInfo = new SortInfo();
+        sortInfo.setCriterion(criterion);
+        sortInfo.setFoldersFirst(true);
+        FileTableModel model = new FileTableModel();
+        model.setSortInfo(sortInfo);
+        model.setCurrentFolder(folder, children);
+        model.sortRows();
+        return model;
+    }
+
+    private static List<String> getRowNames(FileTableModel model) {
+        List<String> names = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            names.add(model.getFileNameAt(row));
+        }
+        return names;
+    }
+
+    /**
+     * Refreshes a folder where files have been added, removed and modified, and asserts that the rows are those of
+     * a model created from scratch, that marked files are preserved and that listeners are notified of the changes.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testRefreshCurrentFolder() throws MalformedURLException {
+        for (Column criterion : new Column[] {Column.NAME, Column.SIZE, Column.DATE}) {
+            Random random = new Random(criterion.ordinal());
+            AbstractFile folder = new TestFile("/folder", true, 0, 0, new TestFile("/", true, 0, 0, null));
+
+            List<AbstractFile> children = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                children.add(createFile("file" + i + (i % 3 == 0 ? ".txt" : ""), random));
+            }
+            FileTableModel model = createModel(folder, children.toArray(new AbstractFile[children.size()]), criterion);
+            for (int row = 1; row < model.getRowCount(); row += 3) {
+                model.setFileMarked(row, true);
+            }
+            Set<String> markedNames = new HashSet<>();
+            for (AbstractFile file : model.getMarkedFiles()) {
+                markedNames.add(file.getName());
+            }
+
+            // List the folder again: new instances of the same files, some of them removed, modified or added
+            List<AbstractFile> newChildren = new ArrayList<>();
+            for (AbstractFile child : children) {
+                int change = random.nextInt(10);
+                if (change == 0) {
+                    markedNames.remove(child.getName());
+                } else if (change == 1) {
+                    newChildren.add(new TestFile(child.getURL().getPath(), child.isDirectory(), child.getSize() + 5, child.getLastModifiedDate() + 1, null));
+                } else {
+                    newChildren.add(new TestFile(child.getURL().getPath(), child.isDirectory(), child.getSize(), child.getLastModifiedDate(), null));
+                }
+            }
+            for (int i = 0; i < 20; i++) {
+                newChildren.add(random.nextInt(newChildren.size()), createFile("new" + i, random));
+            }
+            AbstractFile newChildrenArray[] = newChildren.toArray(new AbstractFile[newChildren.size()]);
+
+            // Replays the events on the current rows
+            List<String> rows = getRowNames(model);
+            model.addTableModelListener(e -> {
+                if (e.getType() == TableModelEvent.DELETE) {
+                    rows.remove(e.getFirstRow());
+                } else if (e.getType() == TableModelEvent.INSERT) {
+                    rows.add(e.getFirstRow(), null);
+                } else if (e.getFirstRow() != TableModelEvent.HEADER_ROW) {
+                    rows.set(e.getFirstRow(), null);
+                }
+            });
+
+            assert model.refreshCurrentFolder(folder, newChildrenArray);
+
+            List<String> expectedNames = getRowNames(createModel(folder, newChildrenArray, criterion));
+            List<String> names = getRowNames(model);
+            assert expectedNames.equals(names) : criterion;
+            assert rows.size() == names.size();
+            for (int row = 0; row < rows.size(); row++) {
+                assert rows.get(row) == null || rows.get(row).equals(names.get(row)) : criterion + ", row " + row;
+            }
+
+            Set<String> newMarkedNames = new HashSet<>();
+            long markedSize = 0;
+            for (AbstractFile file : model.getMarkedFiles()) {
+                newMarkedNames.add(file.getName());
+                markedSize += file.isDirectory() ? 0 : file.getSize();
+            }
+            assert markedNames.equals(newMarkedNames);
+            assert markedNames.size() == model.getNbMarkedFiles();
+            assert markedSize == model.getTotalMarkedSize();
+        }
+    }
+
+    /**
+     * Adds files by batches to a folder being loaded, and asserts that the rows are those of a model created from
+     * scratch, that marked files are preserved and that listeners are notified of the inserted rows.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testAddFiles() throws MalformedURLException {
+        for (Column criterion : new Column[] {Column.NAME, Column.SIZE, Column.DATE}) {
+            Random random = new Random(criterion.ordinal());
+            AbstractFile folder = new TestFile("/folder", true, 0, 0, new TestFile("/", true, 0, 0, null));
+
+            List<AbstractFile> children = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                children.add(createFile("file" + random.nextInt(500) + "-" + i, random));
+            }
+            FileTableModel model = createModel(folder, children.subList(0, 100).toArray(new AbstractFile[100]), criterion);
+            model.setFileMarked(1, true);
+            String markedName = model.getFileNameAt(1);
+
+            // Replays the events on the current rows
+            List<String> rows = getRowNames(model);
+            model.addTableModelListener(e -> {
+                if (e.getType() == TableModelEvent.INSERT) {
+                    rows.add(e.getFirstRow(), null);
+                } else if (e.getLastRow() == Integer.MAX_VALUE) {
+                    rows.clear();
+                    rows.addAll(getRowNames(model));
+                }
+            });
+
+            // Small batches are notified row by row, large ones as a change of the whole table
+            for (int from = 100, to = 150; from < children.size(); from = to, to = Math.min(children.size(), to * 3)) {
+                model.addFiles(children.subList(from, to).toArray(new AbstractFile[to - from]));
+            }
+
+            AbstractFile allChildren[] = children.toArray(new AbstractFile[children.size()]);
+            List<String> expectedNames = getRowNames(createModel(folder, allChildren, criterion));
+            List<String> names = getRowNames(model);
+            assert expectedNames.equals(names) : criterion;
+            assert rows.size() == names.size();
+            for (int row = 0; row < rows.size(); row++) {
+                assert rows.get(row) == null || rows.get(row).equals(names.get(row)) : criterion + ", row " + row;
+            }
+
+            assert model.getNbMarkedFiles() == 1;
+            assert markedName.equals(model.getMarkedFiles().elementAt(0).getName());
+        }
+    }
+
+    /**
+     * Asserts that the model is left unchanged if too many files have changed.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testRefreshTooManyChanges() throws MalformedURLException {
+        Random random = new Random(0);
+        AbstractFile folder = new TestFile("/folder", true, 0, 0, null);
+        AbstractFile children[] = new AbstractFile[2000];
+        AbstractFile newChildren[] = new AbstractFile[2000];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = createFile("file" + i, random);
+            newChildren[i] = createFile("other" + i, random);
+        }
+        FileTableModel model = createModel(folder, children, Column.NAME);
+        List<String> names = getRowNames(model);
+
+        assert !model.refreshCurrentFolder(folder, newChildren);
+        assert names.equals(getRowNames(model));
+    }
+
+    /**
+     * Asserts that files with the same size and date share the strings of their size and date cells, and that the
+     * cached values are returned when the cells are displayed again.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testSharedCellValues() throws MalformedURLException {
+        AbstractFile folder = new TestFile("/folder", true, 0, 0, null);
+        AbstractFile children[] = new AbstractFile[100];
+        for (int i = 0; i < children.length; i++) {
+            // Dates in the same minute are displayed the same way
+            children[i] = new TestFile("/folder/file" + i, false, 1024 * (i % 2), 1500000000000L + i * 10, null);
+        }
+        FileTableModel model = createModel(folder, children, Column.NAME);
+
+        for (Column column : new Column[] {Column.SIZE, Column.DATE}) {
+            Object firstValue = model.getValueAt(0, column.ordinal());
+            Object secondValue = model.getValueAt(1, column.ordinal());
+            for (int row = 2; row < model.getRowCount(); row++) {
+                Object value = model.getValueAt(row, column.ordinal());
+                assert value == (row % 2 == 0 ? firstValue : secondValue) : column + ", row " + row;
+                assert value == model.getValueAt(row, column.ordinal());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.mucommander.ui.quicksearch;
+
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import org.testng.annotations.Test;
+
+import javax.swing.JPanel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test case for {@link QuickSearch} and {@link QuickSearchIndex}.
+ */
+public class QuickSearchTest {
+
+    /**
+     * A quick search on a list of strings, that records the best match.
+     */
+    private static class ListQuickSearch extends QuickSearch {
+        private final String items[];
+        private int match = -2;
+
+        private ListQuickSearch(String... items) {
+            super(new JPanel());
+            this.items = items;
+        }
+
+        private int search(String searchString) {
+            while (!isSearchStringEmpty()) {
+                removeLastCharacterFromSearchString();
+            }
+            for (char c : searchString.toCharArray()) {
+                appendCharacterToSearchString(c);
+            }
+            findMatch(0, true, true);
+            return match;
+        }
+
+        @Override
+        protected void searchStarted() {}
+
+        @Override
+        protected void searchStopped() {}
+
+        @Override
+        protected int getNumOfItems() {
+            return items.length;
+        }
+
+        @Override
+        protected String getItemString(int index) {
+            return items[index];
+        }
+
+        @Override
+        protected void searchStringBecameEmpty(String searchString) {
+            match = -2;
+        }
+
+        @Override
+        protected void matchFound(int row, String searchString, boolean itsBestMatch) {
+            match = row;
+        }
+
+        @Override
+        protected void matchNotFound(String searchString) {
+            match = -1;
+        }
+    }
+
+    /**
+     * Asserts that the best match follows the order of importance of the tests: starts with the search string with the
+     * same case, with a different case, contains it with the same case, with a different case.
+     */
+    @Test
+    public void testBestMatchPriority() {
+        ListQuickSearch quickSearch = new ListQuickSearch("xyzabc", "xyzABC", "ABCxyz", "abcxyz", "other");
+        quickSearch.start();
+        try {
+            assert quickSearch.search("abc") == 3;
+            assert quickSearch.search("ABC") == 2;
+            assert quickSearch.search("aBc") == 2;
+            assert quickSearch.search("zabc") == 0;
+            assert quickSearch.search("zABC") == 1;
+            assert quickSearch.search("zAbC") == 0;
+            assert quickSearch.search("axz") == -1;
+            quickSearch.search("abc");
+            assert quickSearch.matches("xABCx");
+            assert !quickSearch.matches("xAB");
+        } finally {
+            quickSearch.stop();
+        }
+    }
+
+    /**
+     * Asserts that the matches of the index are those of a scan of all the items, when characters are typed and
+     * removed, in both modes.
+     */
+    @Test
+    public void testIndexMatches() {
+        Random random = new Random(0);
+        String items[] = new String[2000];
+        for (int i = 0; i < items.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(12); j >= 0; j--) {
+                sb.append("aBcD._x".charAt(random.nextInt(7)));
+            }
+            items[i] = sb.toString();
+        }
+
+        for (boolean fuzzy : new boolean[] {false, true}) {
+            QuickSearchIndex index = new QuickSearchIndex(items, fuzzy);
+            List<String> searchStrings = new ArrayList<>();
+            for (String searchString : new String[] {"a", "ab", "abc", "ab", "a", "b", "bD", "bd.", "X", "x_", "d"}) {
+                searchStrings.add(searchString);
+                index.setSearchString(searchString);
+                String folded = QuickSearchIndex.fold(searchString);
+                for (int id = 0; id < items.length; id++) {
+                    boolean expected = fuzzy ? QuickSearchIndex.getFuzzyScore(items[id], folded) >= 0
+                            : items[id].toLowerCase().contains(searchString.toLowerCase());
+                    assert index.matches(id) == expected : searchStrings + ", " + items[id];
+                    assert QuickSearchIndex.containsFolded(items[id], folded) == items[id].toLowerCase().contains(searchString.toLowerCase());
+                }
+            }
+        }
+    }
+
+    /**
+     * Asserts that in fuzzy mode, items containing the search string come first, then the items that contain its
+     * characters in the same order, with the best score.
+     */
+    @Test
+    public void testFuzzyMatch() {
+        assert QuickSearchIndex.getFuzzyScore("FooBar.txt", "fbr") > QuickSearchIndex.getFuzzyScore("fabric", "fbr");
+        assert QuickSearchIndex.getFuzzyScore("foo_bar", "fb") > QuickSearchIndex.getFuzzyScore("fabric", "fb");
+        assert QuickSearchIndex.getFuzzyScore("fabric", "fbz") == -1;
+
+        ListQuickSearch quickSearch = new ListQuickSearch("fabric", "FooBar.txt", "other", "xfbr");
+        MuConfigurations.getPreferences().setVariable(MuPreference.QUICK_SEARCH_FUZZY, true);
+        quickSearch.start();
+        try {
+            assert quickSearch.search("fbr") == 3;
+            assert quickSearch.search("fobr") == 1;
+            assert quickSearch.search("fbrq") == -1;
+            quickSearch.search("fbr");
+            assert quickSearch.matches("f_b_r");
+        } finally {
+            quickSearch.stop();
+            MuConfigurations.getPreferences().setVariable(MuPreference.QUICK_SEARCH_FUZZY, MuPreferences.DEFAULT_QUICK_SEARCH_FUZZY);
+        }
+    }
+}